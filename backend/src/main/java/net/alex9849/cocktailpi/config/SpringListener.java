@@ -2,6 +2,7 @@ package net.alex9849.cocktailpi.config;
 
 import net.alex9849.cocktailpi.model.eventaction.EventTrigger;
 import net.alex9849.cocktailpi.service.EventService;
+import net.alex9849.cocktailpi.service.pumps.CocktailOrderQueueService;
 import net.alex9849.cocktailpi.service.pumps.PumpMaintenanceService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
@@ -19,9 +20,13 @@ public class SpringListener {
     @Autowired
     private PumpMaintenanceService pumpUpService;
 
+    @Autowired
+    private CocktailOrderQueueService cocktailOrderQueueService;
+
     @EventListener
     public void handleContextRefreshed(ContextRefreshedEvent event) {
         pumpUpService.postConstruct();
+        cocktailOrderQueueService.postConstruct();
     }
 
     @EventListener
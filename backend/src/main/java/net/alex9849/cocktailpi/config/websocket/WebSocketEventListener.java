@@ -2,12 +2,15 @@ package net.alex9849.cocktailpi.config.websocket;
 
 import lombok.SneakyThrows;
 import net.alex9849.cocktailpi.service.EventService;
+import net.alex9849.cocktailpi.model.user.User;
 import net.alex9849.cocktailpi.service.WebSocketService;
+import net.alex9849.cocktailpi.service.pumps.CocktailOrderQueueService;
 import net.alex9849.cocktailpi.service.pumps.CocktailOrderService;
 import net.alex9849.cocktailpi.service.pumps.PumpDataService;
 import net.alex9849.cocktailpi.service.pumps.PumpMaintenanceService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationListener;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionSubscribeEvent;
 
@@ -31,6 +34,9 @@ public class WebSocketEventListener implements ApplicationListener<SessionSubscr
     @Autowired
     private CocktailOrderService cocktailOrderService;
 
+    @Autowired
+    private CocktailOrderQueueService cocktailOrderQueueService;
+
     @SneakyThrows
     @Override
     public void onApplicationEvent(SessionSubscribeEvent event) {
@@ -46,7 +52,21 @@ public class WebSocketEventListener implements ApplicationListener<SessionSubscr
             */
         Thread.sleep(10);
         if (Objects.equals(simpDestination, "/user" + WebSocketService.WS_COCKTAIL_DESTINATION)) {
-            webSocketService.sendCurrentCocktailProgessToUser(cocktailOrderService.getCurrentCocktailProgress(), event.getUser().getName());
+            webSocketService.sendCurrentCocktailProgessToUser(null, cocktailOrderService.getCurrentCocktailProgress(null), event.getUser().getName());
+        }
+        final String userStationCocktailDestination = "/user" + WebSocketService.WS_STATION_COCKTAIL_DESTINATION + "/";
+        if (simpDestination.startsWith(userStationCocktailDestination)) {
+            try {
+                long stationId = Long.parseLong(simpDestination.substring(userStationCocktailDestination.length()));
+                webSocketService.sendCurrentCocktailProgessToUser(stationId, cocktailOrderService.getCurrentCocktailProgress(stationId), event.getUser().getName());
+            } catch (NumberFormatException e) {
+                //Ignore
+            }
+        }
+        if (Objects.equals(simpDestination, "/user" + WebSocketService.WS_COCKTAIL_QUEUE_DESTINATION)
+                && event.getUser() instanceof UsernamePasswordAuthenticationToken token
+                && token.getPrincipal() instanceof User user) {
+            cocktailOrderQueueService.sendQueueToUser(user);
         }
         if (Objects.equals(simpDestination, "/user" + WebSocketService.WS_PUMP_LAYOUT_DESTINATION)) {
             webSocketService.sendPumpLayoutToUser(pumpService.getAllPumps(), event.getUser().getName());
@@ -1,22 +1,29 @@
 package net.alex9849.cocktailpi.endpoints;
 
 import jakarta.validation.Valid;
+import net.alex9849.cocktailpi.model.Station;
 import net.alex9849.cocktailpi.model.cocktail.CocktailProgress;
+import net.alex9849.cocktailpi.model.cocktail.QueuedCocktailOrder;
 import net.alex9849.cocktailpi.model.recipe.CocktailOrderConfiguration;
 import net.alex9849.cocktailpi.model.recipe.Recipe;
 import net.alex9849.cocktailpi.model.user.ERole;
 import net.alex9849.cocktailpi.model.user.User;
 import net.alex9849.cocktailpi.payload.dto.cocktail.CocktailOrderConfigurationDto;
 import net.alex9849.cocktailpi.payload.dto.cocktail.FeasibilityReportDto;
-import net.alex9849.cocktailpi.service.PumpService;
+import net.alex9849.cocktailpi.payload.dto.cocktail.QueuedCocktailOrderDto;
+import net.alex9849.cocktailpi.payload.dto.cocktail.RecipeAvailabilityDto;
 import net.alex9849.cocktailpi.service.RecipeService;
+import net.alex9849.cocktailpi.service.StationService;
+import net.alex9849.cocktailpi.service.pumps.CocktailOrderQueueService;
 import net.alex9849.cocktailpi.service.pumps.CocktailOrderService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.Objects;
 
 @RestController
@@ -30,13 +37,21 @@ public class CocktailEndpoint {
     private CocktailOrderService cocktailOrderService;
 
     @Autowired
-    private PumpService pumpService;
+    private CocktailOrderQueueService cocktailOrderQueueService;
+
+    @Autowired
+    private StationService stationService;
 
     @RequestMapping(value = "{recipeId}", method = RequestMethod.PUT)
     public ResponseEntity<?> orderCocktail(@PathVariable("recipeId") long recipeId,
                                            @RequestParam(value = "isIngredient", defaultValue = "false") boolean isIngredient,
+                                           @RequestParam(value = "priority", defaultValue = "0") int priority,
+                                           @RequestParam(value = "stationId", required = false) Long stationId,
                                            @Valid @RequestBody CocktailOrderConfigurationDto.Request.Create orderConfigDto) {
         User user = (User) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        if(priority != 0 && !user.getAuthorities().contains(ERole.ROLE_ADMIN)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
         Recipe recipe;
         if(isIngredient) {
             recipe = recipeService.getIngredientRecipe(recipeId);
@@ -49,15 +64,15 @@ public class CocktailEndpoint {
         if(orderConfigDto.getAmountOrderedInMl() == null) {
             orderConfigDto.setAmountOrderedInMl((int) recipe.getDefaultGlass().getSize());
         }
-        CocktailOrderConfiguration orderConfig = cocktailOrderService.fromDto(orderConfigDto);
-        pumpService.orderCocktail(user, recipe, orderConfig);
-        return ResponseEntity.accepted().build();
+        QueuedCocktailOrder order = cocktailOrderQueueService.enqueue(user, recipe, isIngredient, orderConfigDto, priority, stationId);
+        return ResponseEntity.accepted().body(new QueuedCocktailOrderDto.Response.Detailed(order));
     }
 
     @RequestMapping(value = "{recipeId}/feasibility", method = RequestMethod.PUT)
     public ResponseEntity<?> checkFeasibility(@PathVariable("recipeId") long recipeId,
                                               @Valid @RequestBody CocktailOrderConfigurationDto.Request.Create orderConfigDto,
-                                              @RequestParam(value = "isIngredient", defaultValue = "false") boolean isIngredient) {
+                                              @RequestParam(value = "isIngredient", defaultValue = "false") boolean isIngredient,
+                                              @RequestParam(value = "stationId", required = false) Long stationId) {
         Recipe recipe;
         if(isIngredient) {
             recipe = recipeService.getIngredientRecipe(recipeId);
@@ -70,29 +85,114 @@ public class CocktailEndpoint {
         if(orderConfigDto.getAmountOrderedInMl() == null) {
             orderConfigDto.setAmountOrderedInMl((int) recipe.getDefaultGlass().getSize());
         }
+        Station station = null;
+        if(stationId != null) {
+            station = stationService.getById(stationId);
+            if(station == null) {
+                return ResponseEntity.notFound().build();
+            }
+        }
         CocktailOrderConfiguration orderConfig = cocktailOrderService.fromDto(orderConfigDto);
-        return ResponseEntity.ok(new FeasibilityReportDto.Response.Detailed(cocktailOrderService.checkFeasibility(recipe, orderConfig).getFeasibilityReport()));
+        return ResponseEntity.ok(new FeasibilityReportDto.Response.Detailed(cocktailOrderService.checkFeasibilityAndPreparePlan(recipe, orderConfig, station).getFeasibilityReport()));
+    }
+
+    @RequestMapping(value = "availability", method = RequestMethod.GET)
+    public ResponseEntity<?> getAvailability(@RequestParam(value = "recipeIds", required = false) Long[] recipeIds,
+                                             @RequestParam(value = "collectionId", required = false) Long collectionId,
+                                             @RequestParam(value = "stationId", required = false) Long stationId) {
+        if((recipeIds == null) == (collectionId == null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        Station station = null;
+        if(stationId != null) {
+            station = stationService.getById(stationId);
+            if(station == null) {
+                return ResponseEntity.notFound().build();
+            }
+        }
+        if(collectionId != null) {
+            recipeIds = recipeService.getIdsInCollection(collectionId).toArray(new Long[0]);
+        }
+        if(recipeIds.length == 0) {
+            return ResponseEntity.ok(List.of());
+        }
+        List<Recipe> recipes = recipeService.getByIds(recipeIds);
+        return ResponseEntity.ok(cocktailOrderService.getAvailability(recipes, station).stream()
+                .map(RecipeAvailabilityDto.Response.Detailed::new).toList());
     }
 
     @RequestMapping(value = "", method = RequestMethod.DELETE)
-    public ResponseEntity<?> cancelCocktail() {
+    public ResponseEntity<?> cancelCocktail(@RequestParam(value = "stationId", required = false) Long stationId) {
         User user = (User) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        CocktailProgress progress = cocktailOrderService.getCurrentCocktailProgress();
+        CocktailProgress progress = cocktailOrderService.getCurrentCocktailProgress(stationId);
         if(progress == null) {
             return ResponseEntity.notFound().build();
         }
         if(!Objects.equals(progress.getUser().getId(), user.getId()) && !user.getAuthorities().contains(ERole.ROLE_ADMIN)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
-        if(!cocktailOrderService.cancelCocktailOrder()) {
+        if(!cocktailOrderService.cancelCocktailOrder(stationId)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    @RequestMapping(value = "queue", method = RequestMethod.GET)
+    public ResponseEntity<?> getQueue() {
+        User user = (User) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        return ResponseEntity.ok(new QueuedCocktailOrderDto.Response.Queue(cocktailOrderQueueService.getQueue(),
+                cocktailOrderQueueService.getStationsAwaitingGlassSwap(), user));
+    }
+
+    @RequestMapping(value = "queue/{orderId}", method = RequestMethod.DELETE)
+    public ResponseEntity<?> cancelQueuedOrder(@PathVariable("orderId") long orderId) {
+        User user = (User) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        QueuedCocktailOrder order = cocktailOrderQueueService.getOrder(orderId);
+        if(order == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if(!CocktailOrderQueueService.isVisibleFor(order, user)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if(!cocktailOrderQueueService.cancelOrder(orderId)) {
             return ResponseEntity.notFound().build();
         }
         return ResponseEntity.ok().build();
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "queue/{orderId}/priority", method = RequestMethod.PUT)
+    public ResponseEntity<?> setQueuedOrderPriority(@PathVariable("orderId") long orderId, @RequestBody int priority) {
+        cocktailOrderQueueService.setPriority(orderId, priority);
+        return ResponseEntity.ok().build();
+    }
+
+    @RequestMapping(value = "queue/glassswapped", method = RequestMethod.POST)
+    public ResponseEntity<?> confirmGlassSwapped(@RequestParam(value = "stationId", required = false) Long stationId) {
+        User user = (User) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        if(!cocktailOrderQueueService.mayConfirmGlassSwap(stationId, user)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        cocktailOrderQueueService.confirmGlassSwapped(stationId);
+        return ResponseEntity.ok().build();
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "queue/glassswapconfirmation", method = RequestMethod.GET)
+    public ResponseEntity<?> isGlassSwapConfirmation() {
+        return ResponseEntity.ok(cocktailOrderQueueService.isGlassSwapConfirmation());
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "queue/glassswapconfirmation", method = RequestMethod.PUT)
+    public ResponseEntity<?> setGlassSwapConfirmation(@RequestBody boolean enable) {
+        cocktailOrderQueueService.setGlassSwapConfirmation(enable);
+        return ResponseEntity.ok().build();
+    }
+
     @RequestMapping(value = "continueproduction", method = RequestMethod.POST)
-    public ResponseEntity<?> continueCocktailProduction() {
-        cocktailOrderService.continueCocktailProduction();
+    public ResponseEntity<?> continueCocktailProduction(@RequestParam(value = "stationId", required = false) Long stationId) {
+        cocktailOrderService.continueCocktailProduction(stationId);
         return ResponseEntity.accepted().build();
     }
 
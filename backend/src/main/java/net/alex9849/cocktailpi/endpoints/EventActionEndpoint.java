@@ -45,6 +45,14 @@ public class EventActionEndpoint {
         return ResponseEntity.notFound().build();
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "/{id}/log", method = RequestMethod.GET)
+    public ResponseEntity<?> getActionLog(@PathVariable long id,
+                                          @RequestParam(value = "page", defaultValue = "0") int page,
+                                          @RequestParam(value = "size", defaultValue = "100") int size) {
+        return ResponseEntity.ok(eventService.getEventActionLog(id, page, size));
+    }
+
     @PreAuthorize("hasRole('ADMIN')")
     @RequestMapping(value = "/{id}", method = RequestMethod.GET)
     public ResponseEntity<?> getAction(@PathVariable long id) {
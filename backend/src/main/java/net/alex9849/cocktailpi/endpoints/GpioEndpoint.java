@@ -4,6 +4,7 @@ import net.alex9849.cocktailpi.model.gpio.GpioBoard;
 import net.alex9849.cocktailpi.payload.dto.gpio.GpioBoardDto;
 import net.alex9849.cocktailpi.payload.dto.gpio.PinDto;
 import net.alex9849.cocktailpi.service.GpioService;
+import net.alex9849.cocktailpi.service.pumps.PumpLockService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -21,6 +22,9 @@ public class GpioEndpoint {
     @Autowired
     private GpioService gpioService;
 
+    @Autowired
+    private PumpLockService lockService;
+
     @PreAuthorize("hasRole('ADMIN')")
     @RequestMapping(path = "", method = RequestMethod.GET)
     private ResponseEntity<?> getGpioBoards(@RequestParam(value = "dType", required = false) String dType) {
@@ -61,8 +65,9 @@ public class GpioEndpoint {
         }
         GpioBoard gpioBoard = gpioService.fromDto(gpioBoardDto);
         gpioBoard.setId(id);
-        gpioBoard = gpioService.updateGpioBoard(gpioBoard);
-        return ResponseEntity.ok(GpioBoardDto.Response.Detailed.toDto(gpioBoard));
+        //Waits for running productions before the transaction starts
+        GpioBoard updatedGpioBoard = lockService.callWithGlobal(gpioService, () -> gpioService.updateGpioBoard(gpioBoard));
+        return ResponseEntity.ok(GpioBoardDto.Response.Detailed.toDto(updatedGpioBoard));
     }
 
     @PreAuthorize("hasRole('ADMIN')")
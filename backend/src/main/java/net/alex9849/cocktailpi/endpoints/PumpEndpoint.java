@@ -18,6 +18,8 @@ import org.springframework.web.util.UriComponents;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -175,4 +177,59 @@ public class PumpEndpoint {
         return ResponseEntity.ok(jobMetrics);
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "steptiming", method = RequestMethod.GET)
+    public ResponseEntity<?> getStepTiming() {
+        Map<String, Object> stepTiming = new LinkedHashMap<>();
+        stepTiming.put("pumps", pumpService.getStepTimingByPumpId());
+        stepTiming.put("cores", pumpService.getStepTimingByCpu());
+        return ResponseEntity.ok(stepTiming);
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "steptiming", method = RequestMethod.DELETE)
+    public ResponseEntity<?> resetStepTiming() {
+        pumpService.resetStepTiming();
+        return ResponseEntity.ok().build();
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "locks", method = RequestMethod.GET)
+    public ResponseEntity<?> getPumpLocks() {
+        Map<String, Object> locks = new LinkedHashMap<>();
+        locks.put("held", pumpService.getHeldPumpLocks());
+        locks.put("requested", pumpService.getRequestedPumpLocks());
+        locks.put("metrics", pumpService.getPumpLockMetrics());
+        return ResponseEntity.ok(locks);
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "locks/metrics", method = RequestMethod.DELETE)
+    public ResponseEntity<?> resetPumpLockMetrics() {
+        pumpService.resetPumpLockMetrics();
+        return ResponseEntity.ok().build();
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "telemetry/pumps", method = RequestMethod.GET)
+    public ResponseEntity<?> getTelemetryByPump(@RequestParam(value = "from", required = false) Long from,
+                                                @RequestParam(value = "to", required = false) Long to) {
+        return ResponseEntity.ok(pumpService.getTelemetryByPump(from, to));
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "telemetry/days", method = RequestMethod.GET)
+    public ResponseEntity<?> getTelemetryByDay(@RequestParam(value = "from", required = false) Long from,
+                                               @RequestParam(value = "to", required = false) Long to,
+                                               @RequestParam(value = "pumpId", required = false) Long pumpId) {
+        return ResponseEntity.ok(pumpService.getTelemetryByDay(from, to, pumpId));
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "telemetry/ingredients", method = RequestMethod.GET)
+    public ResponseEntity<?> getTelemetryByIngredient(@RequestParam(value = "from", required = false) Long from,
+                                                      @RequestParam(value = "to", required = false) Long to) {
+        return ResponseEntity.ok(pumpService.getTelemetryByIngredient(from, to));
+    }
+
 }
@@ -3,11 +3,19 @@ package net.alex9849.cocktailpi.endpoints;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
 import net.alex9849.cocktailpi.model.LoadCell;
+import net.alex9849.cocktailpi.model.system.settings.IngredientSplitMode;
+import net.alex9849.cocktailpi.model.system.settings.ValveDosingMode;
+import net.alex9849.cocktailpi.model.system.settings.PowerLimitSettings;
 import net.alex9849.cocktailpi.model.system.settings.ReversePumpSettings;
 import net.alex9849.cocktailpi.payload.dto.system.settings.LoadCellDto;
+import net.alex9849.cocktailpi.payload.dto.system.settings.PowerLimitSettingsDto;
 import net.alex9849.cocktailpi.payload.dto.system.settings.ReversePumpSettingsDto;
+import net.alex9849.cocktailpi.service.IngredientSplitSettingsService;
+import net.alex9849.cocktailpi.service.ValveDosingSettingsService;
 import net.alex9849.cocktailpi.service.LoadCellService;
+import net.alex9849.cocktailpi.service.PowerLimitSettingsService;
 import net.alex9849.cocktailpi.service.ReversePumpSettingsService;
+import net.alex9849.cocktailpi.service.pumps.PumpLockService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.lang.Nullable;
@@ -27,6 +35,18 @@ public class PumpSettingsEndpoint {
     @Autowired
     private LoadCellService loadCellService;
 
+    @Autowired
+    private PowerLimitSettingsService powerLimitSettingsService;
+
+    @Autowired
+    private IngredientSplitSettingsService ingredientSplitSettingsService;
+
+    @Autowired
+    private ValveDosingSettingsService valveDosingSettingsService;
+
+    @Autowired
+    private PumpLockService lockService;
+
     @PreAuthorize("hasRole('ADMIN')")
     @RequestMapping(value = "reversepumping", method = RequestMethod.PUT)
     public ResponseEntity<?> setReversePumpSettings(@RequestBody @Valid ReversePumpSettingsDto.Request.Create settings) {
@@ -34,7 +54,11 @@ public class PumpSettingsEndpoint {
             throw new IllegalStateException("Settings-Details are null!");
         }
         ReversePumpSettings reversePumpSettings = reversePumpSettingsService.fromDto(settings);
-        reversePumpSettingsService.setReversePumpingSettings(reversePumpSettings);
+        //Waits for running productions before the transaction starts
+        lockService.callWithGlobal(reversePumpSettingsService, () -> {
+            reversePumpSettingsService.setReversePumpingSettings(reversePumpSettings);
+            return null;
+        });
         return ResponseEntity.ok().build();
     }
 
@@ -44,6 +68,44 @@ public class PumpSettingsEndpoint {
         return ResponseEntity.ok(new ReversePumpSettingsDto.Response.Detailed(reversePumpSettingsService.getReversePumpingSettings()));
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "powerlimit", method = RequestMethod.PUT)
+    public ResponseEntity<?> setPowerLimitSettings(@RequestBody @Valid PowerLimitSettingsDto.Duplex.Detailed settings) {
+        PowerLimitSettings powerLimitSettings = powerLimitSettingsService.fromDto(settings);
+        powerLimitSettings = powerLimitSettingsService.setPowerLimitSettings(powerLimitSettings);
+        return ResponseEntity.ok(new PowerLimitSettingsDto.Duplex.Detailed(powerLimitSettings));
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "powerlimit", method = RequestMethod.GET)
+    public ResponseEntity<?> getPowerLimitSettings() {
+        return ResponseEntity.ok(new PowerLimitSettingsDto.Duplex.Detailed(powerLimitSettingsService.getPowerLimitSettings()));
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "ingredientsplit", method = RequestMethod.PUT)
+    public ResponseEntity<?> setIngredientSplitMode(@RequestBody @NotNull IngredientSplitMode mode) {
+        return ResponseEntity.ok(ingredientSplitSettingsService.setIngredientSplitMode(mode));
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "ingredientsplit", method = RequestMethod.GET)
+    public ResponseEntity<?> getIngredientSplitMode() {
+        return ResponseEntity.ok(ingredientSplitSettingsService.getIngredientSplitMode());
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "valvedosing", method = RequestMethod.PUT)
+    public ResponseEntity<?> setValveDosingMode(@RequestBody @NotNull ValveDosingMode mode) {
+        return ResponseEntity.ok(valveDosingSettingsService.setValveDosingMode(mode));
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "valvedosing", method = RequestMethod.GET)
+    public ResponseEntity<?> getValveDosingMode() {
+        return ResponseEntity.ok(valveDosingSettingsService.getValveDosingMode());
+    }
+
     @PreAuthorize("hasRole('ADMIN')")
     @RequestMapping(value = "loadcell", method = RequestMethod.GET)
     public ResponseEntity<?> getLoadCell() {
@@ -58,9 +120,12 @@ public class PumpSettingsEndpoint {
     @PreAuthorize("hasRole('ADMIN')")
     @RequestMapping(value = "loadcell", method = RequestMethod.PUT)
     public ResponseEntity<?> setLoadCell(@RequestBody(required = false) @Valid LoadCellDto.Request.Create settings) {
-        LoadCell loadCell = loadCellService.fromDto(settings);
-        loadCellService.setLoadCell(loadCell);
-        loadCell = loadCellService.getLoadCell();
+        LoadCell newLoadCell = loadCellService.fromDto(settings);
+        //Waits for running productions before the transaction starts
+        LoadCell loadCell = lockService.callWithGlobal(loadCellService, () -> {
+            loadCellService.setLoadCell(newLoadCell);
+            return loadCellService.getLoadCell();
+        });
         if(loadCell == null) {
             return ResponseEntity.ok(null);
         } else {
@@ -77,13 +142,16 @@ public class PumpSettingsEndpoint {
     @PreAuthorize("hasRole('ADMIN')")
     @RequestMapping(value = "loadcell/calibratezero", method = RequestMethod.PUT)
     public ResponseEntity<?> calibrateLoadCellZero() {
-        return ResponseEntity.ok(new LoadCellDto.Response.Detailed(loadCellService.calibrateLoadCellZero()));
+        //Keeps the load cell from being reconfigured while it is calibrated
+        LoadCell loadCell = lockService.callWithGlobalRead(loadCellService, loadCellService::calibrateLoadCellZero);
+        return ResponseEntity.ok(new LoadCellDto.Response.Detailed(loadCell));
     }
 
     @PreAuthorize("hasRole('ADMIN')")
     @RequestMapping(value = "loadcell/calibratereference", method = RequestMethod.PUT)
     public ResponseEntity<?> calibrateLoadCellRefWeight(@RequestBody @NotNull Long referenceWeight) {
-        return ResponseEntity.ok(new LoadCellDto.Response.Detailed(loadCellService.calibrateRefValue(referenceWeight)));
+        LoadCell loadCell = lockService.callWithGlobalRead(loadCellService, () -> loadCellService.calibrateRefValue(referenceWeight));
+        return ResponseEntity.ok(new LoadCellDto.Response.Detailed(loadCell));
     }
 
 }
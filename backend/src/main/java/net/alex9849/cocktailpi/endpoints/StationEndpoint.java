@@ -0,0 +1,70 @@
+package net.alex9849.cocktailpi.endpoints;
+
+import jakarta.validation.Valid;
+import net.alex9849.cocktailpi.model.Station;
+import net.alex9849.cocktailpi.payload.dto.station.StationDto;
+import net.alex9849.cocktailpi.service.StationService;
+import net.alex9849.cocktailpi.service.pumps.PumpLockService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+@RestController
+@RequestMapping("/api/station/")
+public class StationEndpoint {
+
+    @Autowired
+    private StationService stationService;
+
+    @Autowired
+    private PumpLockService lockService;
+
+    @RequestMapping(value = "", method = RequestMethod.GET)
+    public ResponseEntity<?> getAllStations() {
+        return ResponseEntity.ok(stationService.getAll()
+                .stream().map(StationDto.Duplex.Detailed::new).toList());
+    }
+
+    @RequestMapping(value = "{id}", method = RequestMethod.GET)
+    public ResponseEntity<?> getStation(@PathVariable(value = "id") long id) {
+        Station station = stationService.getById(id);
+        if(station == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(new StationDto.Duplex.Detailed(station));
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "", method = RequestMethod.POST)
+    public ResponseEntity<?> createStation(@Valid @RequestBody StationDto.Duplex.Detailed stationDto, UriComponentsBuilder uriBuilder) {
+        Station newStation = stationService.fromDto(stationDto);
+        //Waits for running productions before the transaction starts
+        Station station = lockService.callWithGlobal(stationService, () -> stationService.createStation(newStation));
+        UriComponents uriComponents = uriBuilder.path("/api/station/{id}").buildAndExpand(station.getId());
+        return ResponseEntity.created(uriComponents.toUri()).body(new StationDto.Duplex.Detailed(station));
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "{id}", method = RequestMethod.PUT)
+    public ResponseEntity<?> updateStation(@PathVariable(value = "id") long id, @Valid @RequestBody StationDto.Duplex.Detailed stationDto) {
+        if(stationService.getById(id) == null) {
+            return ResponseEntity.notFound().build();
+        }
+        Station station = stationService.fromDto(stationDto);
+        station.setId(id);
+        lockService.callWithGlobal(stationService, () -> stationService.updateStation(station));
+        return ResponseEntity.ok().build();
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "{id}", method = RequestMethod.DELETE)
+    public ResponseEntity<?> deleteStation(@PathVariable(value = "id") long id) {
+        if(!lockService.callWithGlobal(stationService, () -> stationService.deleteStation(id))) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok().build();
+    }
+}
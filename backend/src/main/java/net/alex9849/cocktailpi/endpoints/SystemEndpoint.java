@@ -5,6 +5,9 @@ import net.alex9849.cocktailpi.model.system.settings.DefaultFilterSettings;
 import net.alex9849.cocktailpi.model.system.settings.I2CSettings;
 import net.alex9849.cocktailpi.model.system.settings.Language;
 import net.alex9849.cocktailpi.model.system.settings.ReversePumpSettings;
+import net.alex9849.cocktailpi.payload.dto.system.ExecutionLaneMetricsDto;
+import net.alex9849.cocktailpi.payload.dto.system.I2CDeviceMetricsDto;
+import net.alex9849.cocktailpi.payload.dto.system.TimingErrorHistogramDto;
 import net.alex9849.cocktailpi.payload.dto.system.I2cAddressDto;
 import net.alex9849.cocktailpi.payload.dto.system.settings.AppearanceSettingsDto;
 import net.alex9849.cocktailpi.payload.dto.system.settings.DefaultFilterDto;
@@ -99,6 +102,38 @@ public class SystemEndpoint {
         return ResponseEntity.ok(systemService.probeI2c().stream().map(I2cAddressDto.Response::new).toList());
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "executors", method = RequestMethod.GET)
+    public ResponseEntity<?> getExecutionLaneMetrics() {
+        return ResponseEntity.ok(systemService.getExecutionLaneMetrics().stream().map(ExecutionLaneMetricsDto.Response::new).toList());
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "i2cmetrics", method = RequestMethod.GET)
+    public ResponseEntity<?> getI2CDeviceMetrics() {
+        return ResponseEntity.ok(systemService.getI2CDeviceMetrics().stream().map(I2CDeviceMetricsDto.Response::new).toList());
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "i2cmetrics", method = RequestMethod.DELETE)
+    public ResponseEntity<?> resetI2CDeviceMetrics() {
+        systemService.resetI2CDeviceMetrics();
+        return ResponseEntity.ok().build();
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "motortiming", method = RequestMethod.GET)
+    public ResponseEntity<?> getMotorTimingErrors() {
+        return ResponseEntity.ok(new TimingErrorHistogramDto.Response(systemService.getMotorTimingErrors()));
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "motortiming", method = RequestMethod.DELETE)
+    public ResponseEntity<?> resetMotorTimingErrors() {
+        systemService.resetMotorTimingErrors();
+        return ResponseEntity.ok().build();
+    }
+
     @RequestMapping(value = "settings/defaultfilter", method = RequestMethod.GET)
     public ResponseEntity<?> getDefaultFilter() {
         return ResponseEntity.ok(new DefaultFilterDto.Duplex.Detailed(systemService.getDefaultFilterSettings()));
@@ -3,6 +3,7 @@ package net.alex9849.cocktailpi.model;
 import com.pi4j.io.gpio.digital.PullResistance;
 import lombok.Getter;
 import net.alex9849.cocktailpi.model.gpio.Pin;
+import net.alex9849.cocktailpi.service.pumps.LoadCellSampler;
 import net.alex9849.motorlib.sensor.HX711;
 
 public class LoadCell {
@@ -17,8 +18,24 @@ public class LoadCell {
     @Getter
     private Long referenceForceValueWeight;
     private HX711 hx711;
+    private LoadCellSampler sampler;
 
-    public HX711 getHX711() {
+    /**
+     * The sampler owns the chip. All reads and calibrations need to go through it.
+     * @return the sampler or null if the load cell isn't calibrateable
+     */
+    public synchronized LoadCellSampler getSampler() {
+        if(sampler == null || sampler.isStopped()) {
+            HX711 hx711 = getHX711();
+            if(hx711 == null) {
+                return null;
+            }
+            sampler = LoadCellSampler.startSampling(hx711);
+        }
+        return sampler;
+    }
+
+    protected HX711 getHX711() {
         if(hx711 == null) {
             if(!isCalibrateable()) {
                 return null;
@@ -40,29 +57,44 @@ public class LoadCell {
         return isCalibrateable() && referenceForceValueWeight != null;
     }
 
+    /**
+     * Needs to be called once the load cell doesn't get used anymore.
+     */
+    public synchronized void stopSampling() {
+        if(sampler != null) {
+            sampler.stop();
+            sampler = null;
+        }
+    }
+
+    private void resetHX711() {
+        stopSampling();
+        hx711 = null;
+    }
+
     public void setClkPin(Pin clkPin) {
         this.clkPin = clkPin;
-        hx711 = null;
+        resetHX711();
     }
 
     public void setDtPin(Pin dtPin) {
         this.dtPin = dtPin;
-        hx711 = null;
+        resetHX711();
     }
 
     public void setZeroForceValue(long zeroForceValue) {
         this.zeroForceValue = zeroForceValue;
-        hx711 = null;
+        resetHX711();
     }
 
     public void setReferenceForceValue(Long referenceForceValue) {
         this.referenceForceValue = referenceForceValue;
-        hx711 = null;
+        resetHX711();
     }
 
     public void setReferenceForceValueWeight(Long referenceForceValueWeight) {
         this.referenceForceValueWeight = referenceForceValueWeight;
-        hx711 = null;
+        resetHX711();
     }
 
 }
@@ -0,0 +1,50 @@
+package net.alex9849.cocktailpi.model;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A dispensing head that is fed by its own group of pumps. A pump can belong to one station at most.
+ * Stations with disjoint pump sets can produce cocktails at the same time.
+ */
+public class Station {
+    private long id;
+    private String name;
+    private String glassPosition;
+    private Set<Long> pumpIds = new HashSet<>();
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return a description of the place where the glass needs to be put for this station
+     */
+    public String getGlassPosition() {
+        return glassPosition;
+    }
+
+    public void setGlassPosition(String glassPosition) {
+        this.glassPosition = glassPosition;
+    }
+
+    public Set<Long> getPumpIds() {
+        return pumpIds;
+    }
+
+    public void setPumpIds(Set<Long> pumpIds) {
+        this.pumpIds = pumpIds;
+    }
+}
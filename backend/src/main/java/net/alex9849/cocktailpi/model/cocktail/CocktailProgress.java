@@ -10,6 +10,10 @@ public class CocktailProgress {
     private Recipe recipe;
     private int progress;
     private User user;
+    private Long stationId;
+    private int servings;
+    private int currentServing;
+    private long primingTimeSavedInMs;
     private State previousState;
     private State state;
     private List<ProductionStepIngredient> currentIngredientsToAddManually;
@@ -47,6 +51,44 @@ public class CocktailProgress {
         this.user = user;
     }
 
+    /**
+     * @return the id of the station that produces the cocktail or null if the cocktail is produced using all pumps
+     */
+    public Long getStationId() {
+        return stationId;
+    }
+
+    public void setStationId(Long stationId) {
+        this.stationId = stationId;
+    }
+
+    public int getServings() {
+        return servings;
+    }
+
+    public void setServings(int servings) {
+        this.servings = servings;
+    }
+
+    /**
+     * @return the serving (starting at 1) that currently gets produced
+     */
+    public int getCurrentServing() {
+        return currentServing;
+    }
+
+    public void setCurrentServing(int currentServing) {
+        this.currentServing = currentServing;
+    }
+
+    public long getPrimingTimeSavedInMs() {
+        return primingTimeSavedInMs;
+    }
+
+    public void setPrimingTimeSavedInMs(long primingTimeSavedInMs) {
+        this.primingTimeSavedInMs = primingTimeSavedInMs;
+    }
+
     public State getPreviousState() {
         return previousState;
     }
@@ -0,0 +1,149 @@
+package net.alex9849.cocktailpi.model.cocktail;
+
+import net.alex9849.cocktailpi.model.user.User;
+
+import java.util.Date;
+
+public class QueuedCocktailOrder {
+    private long id;
+    private long userId;
+    private User user;
+    private long recipeId;
+    private String recipeName;
+    private boolean ingredient;
+    private String orderConfiguration;
+    private int priority;
+    private Long stationId;
+    private long estimatedDuration;
+    private Date createdAt;
+    private int position;
+    private Date estimatedStartTime;
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(long userId) {
+        this.userId = userId;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+        if(user != null) {
+            this.userId = user.getId();
+        }
+    }
+
+    public long getRecipeId() {
+        return recipeId;
+    }
+
+    public void setRecipeId(long recipeId) {
+        this.recipeId = recipeId;
+    }
+
+    public String getRecipeName() {
+        return recipeName;
+    }
+
+    public void setRecipeName(String recipeName) {
+        this.recipeName = recipeName;
+    }
+
+    /**
+     * @return true if the recipe is the generated recipe of a single ingredient
+     */
+    public boolean isIngredient() {
+        return ingredient;
+    }
+
+    public void setIngredient(boolean ingredient) {
+        this.ingredient = ingredient;
+    }
+
+    /**
+     * @return the serialized CocktailOrderConfigurationDto
+     */
+    public String getOrderConfiguration() {
+        return orderConfiguration;
+    }
+
+    public void setOrderConfiguration(String orderConfiguration) {
+        this.orderConfiguration = orderConfiguration;
+    }
+
+    /**
+     * @return orders with a higher priority get produced first. Orders with the same priority are produced in FIFO order.
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * @return the station that should produce the order or null if any station may produce it
+     */
+    public Long getStationId() {
+        return stationId;
+    }
+
+    public void setStationId(Long stationId) {
+        this.stationId = stationId;
+    }
+
+    /**
+     * @return the estimated production time in ms
+     */
+    public long getEstimatedDuration() {
+        return estimatedDuration;
+    }
+
+    public void setEstimatedDuration(long estimatedDuration) {
+        this.estimatedDuration = estimatedDuration;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * @return the position in the queue, starting with 1. Not persisted.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    public void setPosition(int position) {
+        this.position = position;
+    }
+
+    /**
+     * @return the estimated point in time at which the production of this order starts. Not persisted.
+     */
+    public Date getEstimatedStartTime() {
+        return estimatedStartTime;
+    }
+
+    public void setEstimatedStartTime(Date estimatedStartTime) {
+        this.estimatedStartTime = estimatedStartTime;
+    }
+}
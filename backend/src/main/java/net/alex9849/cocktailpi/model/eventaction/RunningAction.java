@@ -6,8 +6,13 @@ import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class RunningAction {
+    public static final int LOG_CAPACITY = 1000;
+    private static final int LOG_FLUSH_BATCH_SIZE = 100;
     private static long nextRunId;
-    private final List<LogEntry> log;
+    private final LogEntry[] log;
+    private long logEntriesTotal;
+    private List<LogEntry> pendingLogEntries;
+    private final Object flushLock = new Object();
     private final List<Consumer<List<LogEntry>>> logSubscribers;
     private final EventAction eventAction;
     private final long runId;
@@ -17,7 +22,9 @@ public class RunningAction {
         this.runId = nextRunId++;
         this.eventAction = eventAction;
         this.future = null;
-        this.log = new LinkedList<>();
+        this.log = new LogEntry[LOG_CAPACITY];
+        this.logEntriesTotal = 0;
+        this.pendingLogEntries = new ArrayList<>();
         this.logSubscribers = new ArrayList<>();
     }
 
@@ -37,14 +44,60 @@ public class RunningAction {
         return runId;
     }
 
-    public List<LogEntry> getLog() {
-        return Collections.unmodifiableList(log);
+    /**
+     * @return all log entries that are still retained by the ring buffer (at most LOG_CAPACITY)
+     */
+    public synchronized List<LogEntry> getLog() {
+        return getLog(getFirstRetainedLogIndex(), LOG_CAPACITY);
+    }
+
+    /**
+     * @param fromIndex index of the first entry. Entries that already have been evicted are skipped.
+     * @param limit the maximal number of entries to return
+     */
+    public synchronized List<LogEntry> getLog(long fromIndex, int limit) {
+        long from = Math.max(fromIndex, getFirstRetainedLogIndex());
+        long to = Math.min(logEntriesTotal, from + Math.max(0, limit));
+        List<LogEntry> entries = new ArrayList<>();
+        for(long i = from; i < to; i++) {
+            entries.add(log[(int) (i % log.length)]);
+        }
+        return entries;
+    }
+
+    /**
+     * @return the number of log entries that have been written since the action has been started.
+     * Includes entries that already have been evicted.
+     */
+    public synchronized long getLogSize() {
+        return logEntriesTotal;
+    }
+
+    public synchronized long getFirstRetainedLogIndex() {
+        return Math.max(0, logEntriesTotal - log.length);
     }
 
     public void subscribeToLog(Consumer<List<LogEntry>> consumer) {
         logSubscribers.add(consumer);
     }
 
+    /**
+     * Passes all log entries that have been written since the last flush to the subscribers.
+     */
+    public void flushLog() {
+        synchronized (flushLock) {
+            List<LogEntry> logEntries;
+            synchronized (this) {
+                if(pendingLogEntries.isEmpty()) {
+                    return;
+                }
+                logEntries = Collections.unmodifiableList(pendingLogEntries);
+                pendingLogEntries = new ArrayList<>();
+            }
+            logSubscribers.forEach(x -> x.accept(logEntries));
+        }
+    }
+
     protected void addLog(LogEntry.Type type, String message) {
         addLog(type, Collections.singletonList(message));
     }
@@ -58,26 +111,42 @@ public class RunningAction {
     }
 
     protected void addLog(LogEntry.Type type, List<String> messages) {
-        List<LogEntry> logEntries = new LinkedList<>();
-        Date currentDate = new Date();
-        for(String message : messages) {
-            LogEntry logEntry = new LogEntry(currentDate, type, message);
-            logEntries.add(logEntry);
+        boolean flush;
+        synchronized (this) {
+            Date currentDate = new Date();
+            for(String message : messages) {
+                LogEntry logEntry = new LogEntry(logEntriesTotal, currentDate, type, message);
+                log[(int) (logEntriesTotal % log.length)] = logEntry;
+                logEntriesTotal++;
+                pendingLogEntries.add(logEntry);
+            }
+            //Don't let the pending entries outgrow the ring buffer
+            if(pendingLogEntries.size() > log.length) {
+                pendingLogEntries.subList(0, pendingLogEntries.size() - log.length).clear();
+            }
+            flush = pendingLogEntries.size() >= LOG_FLUSH_BATCH_SIZE;
+        }
+        if(flush) {
+            flushLog();
         }
-        this.log.addAll(logEntries);
-        logSubscribers.forEach(x -> x.accept(logEntries));
     }
 
     public static class LogEntry {
+        private final long index;
         private final Date timeStamp;
         private final Type type;
         private final String message;
-        protected LogEntry(Date timeStamp, Type type, String message) {
+        protected LogEntry(long index, Date timeStamp, Type type, String message) {
+            this.index = index;
             this.timeStamp = timeStamp;
             this.type = type;
             this.message = message;
         }
 
+        public long getIndex() {
+            return index;
+        }
+
         public Date getTimeStamp() {
             return timeStamp;
         }
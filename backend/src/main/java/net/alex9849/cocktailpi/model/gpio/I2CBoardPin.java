@@ -1,6 +1,7 @@
 package net.alex9849.cocktailpi.model.gpio;
 
 import com.pi4j.io.gpio.digital.PullResistance;
+import net.alex9849.motorlib.mcp230xx.Mcp23017;
 import net.alex9849.motorlib.pin.IInputPin;
 import net.alex9849.motorlib.pin.IOutputPin;
 
@@ -12,7 +13,11 @@ public class I2CBoardPin extends Pin {
 
     @Override
     public IOutputPin getOutputPin() {
-        return getGpioBoard().getBoardDriver().getOutputPin((byte) this.getPinNr());
+        I2CGpioBoard board = getGpioBoard();
+        Mcp23017 boardDriver = board.getBoardDriver();
+        //The driver of the motor library configures the pin as output
+        return board.getOutputLatch().configureOutputPin(this.getPinNr(),
+                () -> boardDriver.getOutputPin((byte) this.getPinNr()));
     }
 
     @Override
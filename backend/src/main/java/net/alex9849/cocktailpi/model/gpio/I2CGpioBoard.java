@@ -1,7 +1,10 @@
 package net.alex9849.cocktailpi.model.gpio;
 
 
+import com.pi4j.io.i2c.I2C;
 import jakarta.persistence.DiscriminatorValue;
+import net.alex9849.cocktailpi.service.i2c.I2CBusArbiter;
+import net.alex9849.cocktailpi.service.i2c.I2CPriority;
 import net.alex9849.cocktailpi.utils.PinUtils;
 import net.alex9849.cocktailpi.utils.SpringUtility;
 import net.alex9849.motorlib.mcp230xx.Mcp23017;
@@ -13,6 +16,7 @@ import java.util.Map;
 @DiscriminatorValue("i2c")
 public class I2CGpioBoard extends GpioBoard {
     private static final Map<Byte, Mcp23017> boardMap = new HashMap<>();
+    private static final Map<Byte, Mcp23017OutputLatch> outputLatchMap = new HashMap<>();
     private final BoardModel boardModel;
     private byte i2cAddress;
 
@@ -33,14 +37,33 @@ public class I2CGpioBoard extends GpioBoard {
     }
 
     public Mcp23017 getBoardDriver() {
-        if(boardMap.containsKey(getI2cAddress()) && !boardMap.get(getI2cAddress()).isOpen()) {
-            boardMap.remove(getI2cAddress());
+        synchronized (boardMap) {
+            if(boardMap.containsKey(getI2cAddress()) && !boardMap.get(getI2cAddress()).isOpen()) {
+                boardMap.remove(getI2cAddress());
+                outputLatchMap.remove(getI2cAddress());
+            }
+            if(!boardMap.containsKey(getI2cAddress())) {
+                PinUtils pinUtils = SpringUtility.getBean(PinUtils.class);
+                I2C i2c = pinUtils.getI2c(getI2cAddress());
+                //The driver might initialize the chip
+                boardMap.put(getI2cAddress(), I2CBusArbiter.execute(i2c, I2CPriority.NORMAL, Mcp23017::new));
+            }
+            return boardMap.get(getI2cAddress());
         }
-        if(!boardMap.containsKey(getI2cAddress())) {
-            PinUtils pinUtils = SpringUtility.getBean(PinUtils.class);
-            boardMap.put(getI2cAddress(), new Mcp23017(pinUtils.getI2c(getI2cAddress())));
+    }
+
+    /**
+     * @return the latch that writes the output pins of the board. Shares the I2C device with the board driver.
+     */
+    public Mcp23017OutputLatch getOutputLatch() {
+        synchronized (boardMap) {
+            getBoardDriver();
+            if(!outputLatchMap.containsKey(getI2cAddress())) {
+                PinUtils pinUtils = SpringUtility.getBean(PinUtils.class);
+                outputLatchMap.put(getI2cAddress(), new Mcp23017OutputLatch(pinUtils.getI2c(getI2cAddress())));
+            }
+            return outputLatchMap.get(getI2cAddress());
         }
-        return boardMap.get(getI2cAddress());
     }
 
     @Override
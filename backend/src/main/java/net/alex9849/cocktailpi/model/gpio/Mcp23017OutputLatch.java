@@ -0,0 +1,119 @@
+package net.alex9849.cocktailpi.model.gpio;
+
+import com.pi4j.io.i2c.I2C;
+import net.alex9849.cocktailpi.service.i2c.I2CBusArbiter;
+import net.alex9849.cocktailpi.service.i2c.I2CPriority;
+import net.alex9849.cocktailpi.service.pumps.clock.OutputBatch;
+import net.alex9849.motorlib.pin.IOutputPin;
+import net.alex9849.motorlib.pin.PinState;
+
+/**
+ * Writes the output pins of a MCP23017 port by port. A shadow copy of the output latches is kept, so that a pin change
+ * only needs a single register write instead of a read-modify-write.
+ * Pin changes within an {@link OutputBatch} get merged into one write per port. If both ports have changed, they get
+ * written with one sequential write of GPIOA and GPIOB.
+ * The chip needs to run in its default configuration (IOCON.BANK = 0, sequential addressing enabled).
+ * The pin directions are still configured by the motor library driver.
+ * All transactions go through the {@link I2CBusArbiter}. The latch always gets locked before the bus.
+ */
+public class Mcp23017OutputLatch {
+    private static final int REGISTER_GPIOA = 0x12;
+    private static final int REGISTER_OLATA = 0x14;
+
+    private final I2C i2c;
+    private final byte[] shadow = new byte[2];
+    private final boolean[] dirty = new boolean[2];
+
+    public Mcp23017OutputLatch(I2C i2c) {
+        this.i2c = i2c;
+        I2CBusArbiter.run(i2c, I2CPriority.NORMAL, this::readLatches);
+    }
+
+    /**
+     * Reads the output latches into the shadow copy.
+     */
+    private synchronized void readLatches(I2C i2c) {
+        byte[] latches = new byte[2];
+        i2c.readRegister(REGISTER_OLATA, latches, 0, 2);
+        System.arraycopy(latches, 0, shadow, 0, 2);
+    }
+
+    /**
+     * @param pinSetup configures the pin as output. Might write the output latches, so they get read again afterwards.
+     *                 Both happen within one bus transaction.
+     */
+    public synchronized IOutputPin configureOutputPin(int pin, Runnable pinSetup) {
+        I2CBusArbiter.run(i2c, I2CPriority.ofCurrentThread(), x -> {
+            pinSetup.run();
+            readLatches(x);
+        });
+        return new LatchedOutputPin(pin);
+    }
+
+    private synchronized void write(int pin, boolean high) {
+        int port = pin / 8;
+        byte mask = (byte) (1 << (pin % 8));
+        byte newValue = (byte) (high ? shadow[port] | mask : shadow[port] & ~mask);
+        if(newValue == shadow[port]) {
+            return;
+        }
+        shadow[port] = newValue;
+        dirty[port] = true;
+        if(!OutputBatch.defer(this, this::flush)) {
+            flush();
+        }
+    }
+
+    private synchronized boolean isHigh(int pin) {
+        return (shadow[pin / 8] & (1 << (pin % 8))) != 0;
+    }
+
+    private synchronized void flush() {
+        if(!dirty[0] && !dirty[1]) {
+            return;
+        }
+        I2CBusArbiter.run(i2c, I2CPriority.ofCurrentThread(), x -> {
+            if(dirty[0] && dirty[1]) {
+                x.writeRegister(REGISTER_GPIOA, shadow, 0, 2);
+            } else {
+                int port = dirty[0] ? 0 : 1;
+                x.writeRegister(REGISTER_GPIOA + port, shadow[port]);
+            }
+        });
+        dirty[0] = false;
+        dirty[1] = false;
+    }
+
+    private class LatchedOutputPin implements IOutputPin {
+        private final int pin;
+        private long waitAfterWriteTimeNs;
+
+        private LatchedOutputPin(int pin) {
+            this.pin = pin;
+        }
+
+        @Override
+        public void digitalWrite(PinState value) {
+            write(pin, value == PinState.HIGH);
+        }
+
+        @Override
+        public boolean isHigh() {
+            return Mcp23017OutputLatch.this.isHigh(pin);
+        }
+
+        @Override
+        public void digitalWriteAndWait(PinState state) {
+            digitalWrite(state);
+            long waitUntil = System.nanoTime() + waitAfterWriteTimeNs;
+            while (System.nanoTime() < waitUntil) {
+                Thread.onSpinWait();
+            }
+        }
+
+        @Override
+        public void setWaitAfterWriteTimeNs(long waitAfterWriteTimeNs) {
+            this.waitAfterWriteTimeNs = waitAfterWriteTimeNs;
+        }
+    }
+}
@@ -12,17 +12,19 @@ public class JobMetrics {
     long stepsMade;
     long startTime;
     Long stopTime;
+    //Only set for stepper jobs
+    StepTimingMetrics stepTiming;
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         JobMetrics that = (JobMetrics) o;
-        return id == that.id && mlPumped == that.mlPumped && stepsMade == that.stepsMade && startTime == that.startTime && Objects.equals(stopTime, that.stopTime);
+        return id == that.id && mlPumped == that.mlPumped && stepsMade == that.stepsMade && startTime == that.startTime && Objects.equals(stopTime, that.stopTime) && Objects.equals(stepTiming, that.stepTiming);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, mlPumped, stepsMade, startTime, stopTime);
+        return Objects.hash(id, mlPumped, stepsMade, startTime, stopTime, stepTiming);
     }
 }
@@ -16,6 +16,7 @@ public abstract class Pump {
     private boolean isPumpedUp;
     private AutomatedIngredient currentIngredient;
     private String name;
+    private Integer powerConsumptionInMa;
 
     public long getId() {
         return id;
@@ -91,6 +92,17 @@ public abstract class Pump {
         this.name = name;
     }
 
+    /**
+     * @return the current drawn by the motor while running or null if unknown
+     */
+    public Integer getPowerConsumptionInMa() {
+        return powerConsumptionInMa;
+    }
+
+    public void setPowerConsumptionInMa(Integer powerConsumptionInMa) {
+        this.powerConsumptionInMa = powerConsumptionInMa;
+    }
+
     public abstract boolean isCanPump();
 
     public abstract void shutdownDriver();
@@ -0,0 +1,27 @@
+package net.alex9849.cocktailpi.model.pump;
+
+import lombok.Getter;
+import lombok.Setter;
+import net.alex9849.motorlib.motor.Direction;
+
+/**
+ * A single run of a pump, either of a maintenance job or of a cocktail production.
+ */
+@Getter @Setter
+public class PumpJobTelemetry {
+    long id;
+    long pumpId;
+    Long ingredientId;
+    Kind kind;
+    Direction direction;
+    long startedAt;
+    //Null if the run had no planned end
+    Long plannedDurationInMs;
+    long actualDurationInMs;
+    long mlPumped;
+    long stepsMade;
+
+    public enum Kind {
+        MAINTENANCE, PRODUCTION
+    }
+}
@@ -0,0 +1,22 @@
+package net.alex9849.cocktailpi.model.pump;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The sum of the pump runs of a pump, a day or an ingredient. Only the key of the aggregation is set.
+ */
+@Getter @Setter
+public class PumpJobTelemetryAggregate {
+    Long pumpId;
+    //yyyy-MM-dd in local time
+    String day;
+    Long ingredientId;
+    String ingredientName;
+    long runs;
+    long runTimeInMs;
+    long plannedRunTimeInMs;
+    long mlPumped;
+    long stepsMade;
+    long lastRunAt;
+}
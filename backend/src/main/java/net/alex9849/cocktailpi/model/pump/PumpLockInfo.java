@@ -0,0 +1,22 @@
+package net.alex9849.cocktailpi.model.pump;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * A held or a requested pump lock.
+ */
+@Getter @Setter
+public class PumpLockInfo {
+    private String lockType;
+    //Empty for the global lock
+    private List<Long> pumpIds;
+    private String owner;
+    private String thread;
+    //0 for requested locks
+    private int holdCount;
+    //How long the lock has been held or requested
+    private long sinceInMs;
+}
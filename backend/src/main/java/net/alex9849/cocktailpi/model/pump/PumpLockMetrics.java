@@ -0,0 +1,20 @@
+package net.alex9849.cocktailpi.model.pump;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter @Setter
+public class PumpLockMetrics {
+    private String lockType;
+    private long acquisitions;
+    //Acquisitions that had to wait for the lock
+    private long contendedAcquisitions;
+    //Fail-fast attempts that didn't get the lock
+    private long refusals;
+    private long timeouts;
+    private long meanWaitInMs;
+    private long maxWaitInMs;
+    private long releases;
+    private long meanHoldInMs;
+    private long maxHoldInMs;
+}
@@ -0,0 +1,21 @@
+package net.alex9849.cocktailpi.model.pump;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Map;
+
+@Getter @Setter @EqualsAndHashCode
+public class StepTimingMetrics {
+    long samples;
+    long iterations;
+    long iterationsPerSecond;
+    long meanLatencyInMicros;
+    long p50LatencyInMicros;
+    long p99LatencyInMicros;
+    long p999LatencyInMicros;
+    long maxLatencyInMicros;
+    //Upper bound of the bucket in µs (exclusive) to the number of samples in it
+    Map<Long, Long> histogram;
+}
@@ -14,6 +14,9 @@ public class Valve extends OnOffPump {
     private ValveDriver motorDriver;
     @Getter @Setter
     private long timePerClInMs;
+    //The time the liquid keeps arriving at the load cell after the valve has been closed
+    @Getter @Setter
+    private long cutOffLagInMs;
 
     public Valve() {
         this.timePerClInMs = 100;
@@ -0,0 +1,226 @@
+package net.alex9849.cocktailpi.model.pump;
+
+import net.alex9849.cocktailpi.service.pumps.LoadCellSampler;
+import net.alex9849.cocktailpi.service.pumps.clock.Clock;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Doses a valve using the load cell. The flow rate gets estimated from the sample stream while the valve is open.
+ * The valve gets closed as soon as the current weight plus the liquid that is still in flight reaches the goal.
+ * The liquid in flight is the flow rate multiplied with the cut-off lag of the valve. The cut-off lag gets learned
+ * from the weight that still arrives after closing the valve and is stored at the valve together with the flow rate.
+ * If other pumps dispense onto the load cell at the same time, their modeled output gets subtracted from every sample.
+ * Nothing gets learned in that case, as the model error would distort the parameters of the valve.
+ */
+public class ValveDosingController {
+    public static final long TOLERANCE_IN_GRAMS = 1;
+    private static final long FLOW_WINDOW_IN_MS = 400;
+    private static final long MIN_FLOW_WINDOW_IN_MS = 150;
+    private static final long MAX_CUT_OFF_LAG_IN_MS = 2000;
+    private static final long SETTLE_TIME_IN_MS = 100;
+    private static final double LEARNING_RATE = 0.5;
+
+    private final Valve valve;
+    private final LoadCellSampler sampler;
+    private final Clock clock;
+    private long lastSampleSequence = -1;
+    private long currentGrams;
+    private long openTimeInMs;
+    private int pulses;
+    private boolean modelLearned;
+    private DoubleSupplier otherDispensersGrams;
+
+    public ValveDosingController(Valve valve, LoadCellSampler sampler, Clock clock) {
+        this.valve = valve;
+        this.sampler = sampler;
+        this.clock = clock;
+    }
+
+    /**
+     * @param otherDispensersGrams returns the grams that other pumps have dispensed onto the load cell
+     *                             since a fixed point in time. Null if no other pump runs.
+     */
+    public ValveDosingController setOtherDispensersGrams(DoubleSupplier otherDispensersGrams) {
+        this.otherDispensersGrams = otherDispensersGrams;
+        return this;
+    }
+
+    /**
+     * @return the average weight of the given number of samples without the liquid of the other pumps
+     */
+    public long readGrams(int times) throws InterruptedException {
+        if(otherDispensersGrams == null) {
+            return sampler.readGrams(times);
+        }
+        long sum = 0;
+        for(int i = 0; i < Math.max(1, times); i++) {
+            sum += readGramsOnce();
+        }
+        return sum / Math.max(1, times);
+    }
+
+    /**
+     * Returns every sample once, as long as the controller keeps up with the sampler.
+     */
+    private long readGramsOnce() throws InterruptedException {
+        LoadCellSampler.Sample sample = lastSampleSequence < 0 ? sampler.awaitNext()
+                : sampler.awaitNext(lastSampleSequence);
+        lastSampleSequence = sample.sequence();
+        long grams = sample.rawGrams();
+        if(otherDispensersGrams == null) {
+            return grams;
+        }
+        return Math.round(grams - otherDispensersGrams.getAsDouble());
+    }
+
+    /**
+     * Opens the valve until the goal has been reached. Short doses get corrected with additional pulses.
+     * @param startGrams the settled weight before the valve gets opened
+     * @param isCancelled checked after every sample
+     * @return the settled weight after the valve has been closed
+     * @throws InterruptedException if the dosing got cancelled. The valve is closed in that case.
+     */
+    public long dose(long startGrams, long goalGrams, BooleanSupplier isCancelled) throws InterruptedException {
+        long targetGrams = startGrams + goalGrams;
+        this.currentGrams = startGrams;
+        ValveDriver driver = valve.getMotorDriver();
+        try {
+            while (currentGrams < targetGrams && (pulses == 0 || targetGrams - currentGrams > TOLERANCE_IN_GRAMS)) {
+                runPulse(driver, targetGrams, isCancelled);
+            }
+        } finally {
+            driver.setOpen(false);
+        }
+        return currentGrams;
+    }
+
+    private void runPulse(ValveDriver driver, long targetGrams, BooleanSupplier isCancelled) throws InterruptedException {
+        Deque<long[]> samples = new ArrayDeque<>();
+        long pulseStartTime = clock.currentTimeMillis();
+        driver.setOpen(true);
+        pulses++;
+        double flowInGramsPerMs;
+        Double measuredFlowInGramsPerMs;
+        long now;
+        while (true) {
+            currentGrams = readGramsOnce();
+            now = clock.currentTimeMillis();
+            if(isCancelled.getAsBoolean()) {
+                openTimeInMs += now - pulseStartTime;
+                throw new InterruptedException();
+            }
+            //Samples taken before the liquid has arrived at the load cell would distort the flow
+            if(now - pulseStartTime >= valve.getCutOffLagInMs()) {
+                samples.addLast(new long[] {now, currentGrams});
+                while (now - samples.getFirst()[0] > FLOW_WINDOW_IN_MS) {
+                    samples.removeFirst();
+                }
+            }
+            measuredFlowInGramsPerMs = measureFlow(samples);
+            flowInGramsPerMs = measuredFlowInGramsPerMs != null ? measuredFlowInGramsPerMs : getLearnedFlowInGramsPerMs();
+            //If the valve has been open for a shorter time than the lag, only that part is in flight
+            long inFlightTime = Math.min(valve.getCutOffLagInMs(), now - pulseStartTime);
+            if(currentGrams + flowInGramsPerMs * inFlightTime >= targetGrams) {
+                break;
+            }
+        }
+        driver.setOpen(false);
+        long closeGrams = currentGrams;
+        openTimeInMs += now - pulseStartTime;
+        currentGrams = awaitSettled(now, isCancelled);
+
+        //Only learn from pulses that have been long enough to measure the flow
+        if(measuredFlowInGramsPerMs != null && otherDispensersGrams == null) {
+            double observedLag = (currentGrams - closeGrams) / measuredFlowInGramsPerMs;
+            double lag = valve.getCutOffLagInMs() + LEARNING_RATE * (observedLag - valve.getCutOffLagInMs());
+            valve.setCutOffLagInMs(Math.max(0, Math.min(MAX_CUT_OFF_LAG_IN_MS, Math.round(lag))));
+            double flow = getLearnedFlowInGramsPerMs() + LEARNING_RATE * (measuredFlowInGramsPerMs - getLearnedFlowInGramsPerMs());
+            valve.setTimePerClInMs(Math.max(1, Math.round(10 / flow)));
+            modelLearned = true;
+        }
+    }
+
+    /**
+     * Waits until no more liquid arrives at the load cell. Waits at least for the cut-off lag, as the liquid
+     * of short pulses might not have arrived yet.
+     * @return the average of the samples since the weight stopped increasing
+     */
+    private long awaitSettled(long closeTime, BooleanSupplier isCancelled) throws InterruptedException {
+        long maxGrams = currentGrams;
+        long lastIncreaseTime = closeTime;
+        long stableSum = 0;
+        int stableSamples = 0;
+        long now = closeTime;
+        while (now - closeTime < MAX_CUT_OFF_LAG_IN_MS
+                && (now - lastIncreaseTime < SETTLE_TIME_IN_MS || now - closeTime < valve.getCutOffLagInMs())) {
+            long grams = readGramsOnce();
+            now = clock.currentTimeMillis();
+            if(isCancelled.getAsBoolean()) {
+                throw new InterruptedException();
+            }
+            if(grams > maxGrams) {
+                maxGrams = grams;
+                lastIncreaseTime = now;
+                stableSum = 0;
+                stableSamples = 0;
+            } else {
+                stableSum += grams;
+                stableSamples++;
+            }
+        }
+        if(stableSamples == 0) {
+            return readGrams(7);
+        }
+        return Math.round(stableSum / (double) stableSamples);
+    }
+
+    /**
+     * @return the flow in grams per ms or null if the window is too short or no liquid has arrived yet
+     */
+    private static Double measureFlow(Deque<long[]> samples) {
+        if(samples.size() < 2) {
+            return null;
+        }
+        long[] first = samples.getFirst();
+        long[] last = samples.getLast();
+        long timeSpan = last[0] - first[0];
+        if(timeSpan < MIN_FLOW_WINDOW_IN_MS || last[1] <= first[1]) {
+            return null;
+        }
+        return (last[1] - first[1]) / (double) timeSpan;
+    }
+
+    private double getLearnedFlowInGramsPerMs() {
+        return 10d / Math.max(1, valve.getTimePerClInMs());
+    }
+
+    public long getCurrentGrams() {
+        return currentGrams;
+    }
+
+    /**
+     * @return the total time the valve has been open
+     */
+    public long getOpenTimeInMs() {
+        return openTimeInMs;
+    }
+
+    /**
+     * The learned parameters are only set at the valve. They need to be persisted by the caller.
+     * @return true if the cut-off lag and the flow of the valve have been updated
+     */
+    public boolean isModelLearned() {
+        return modelLearned;
+    }
+
+    /**
+     * @return the number of times the valve has been opened
+     */
+    public int getPulses() {
+        return pulses;
+    }
+}
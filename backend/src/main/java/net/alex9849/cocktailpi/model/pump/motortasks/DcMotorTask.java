@@ -3,6 +3,7 @@ package net.alex9849.cocktailpi.model.pump.motortasks;
 import net.alex9849.cocktailpi.model.pump.DcPump;
 import net.alex9849.cocktailpi.model.pump.JobMetrics;
 import net.alex9849.cocktailpi.model.pump.PumpJobState;
+import net.alex9849.cocktailpi.service.pumps.PowerBudget;
 import net.alex9849.motorlib.motor.DCMotor;
 import net.alex9849.motorlib.motor.Direction;
 
@@ -19,14 +20,25 @@ public class DcMotorTask extends PumpTask {
     @Override
     protected void pumpRun() {
         DCMotor dcMotor = dcPump.getMotorDriver();
-        dcMotor.setDirection(getDirection());
-        dcMotor.setRunning(true);
+        PowerBudget powerBudget = PowerBudget.getInstance();
         try {
-            Thread.sleep(duration);
-        } catch (InterruptedException ignored) {
-            //Ignore
+            powerBudget.claim(this, PowerBudget.Demand.of(dcPump));
+        } catch (InterruptedException e) {
+            cancel();
+            return;
+        }
+        try {
+            dcMotor.setDirection(getDirection());
+            dcMotor.setRunning(true);
+            try {
+                getClock().sleep(duration);
+            } catch (InterruptedException ignored) {
+                //Ignore
+            }
+            dcMotor.setRunning(false);
+        } finally {
+            powerBudget.release(this);
         }
-        dcMotor.setRunning(false);
     }
 
     @Override
@@ -39,6 +51,11 @@ public class DcMotorTask extends PumpTask {
         return runningState;
     }
 
+    @Override
+    public Long getPlannedDurationInMs() {
+        return isRunInfinity() ? null : duration;
+    }
+
     public long getMlPumped() {
         return (getTimeElapsed() * 10) /  dcPump.getTimePerClInMs();
     }
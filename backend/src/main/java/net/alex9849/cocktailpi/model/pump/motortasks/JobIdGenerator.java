@@ -0,0 +1,17 @@
+package net.alex9849.cocktailpi.model.pump.motortasks;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates the ids of the pump jobs. Ids are positive and unique within the lifetime of the application.
+ * After Long.MAX_VALUE the ids start at 1 again instead of becoming negative.
+ */
+public final class JobIdGenerator {
+    private static final AtomicLong lastId = new AtomicLong();
+
+    private JobIdGenerator() {}
+
+    public static long next() {
+        return lastId.updateAndGet(x -> x == Long.MAX_VALUE ? 1 : x + 1);
+    }
+}
@@ -3,13 +3,16 @@ package net.alex9849.cocktailpi.model.pump.motortasks;
 import net.alex9849.cocktailpi.model.pump.JobMetrics;
 import net.alex9849.cocktailpi.model.pump.Pump;
 import net.alex9849.cocktailpi.model.pump.PumpJobState;
+import net.alex9849.cocktailpi.service.pumps.clock.Clock;
+import net.alex9849.cocktailpi.service.pumps.clock.SystemClock;
 import net.alex9849.motorlib.motor.Direction;
 
+import java.util.Objects;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 public abstract class PumpTask implements Runnable {
-    private static long maxId;
     private final long jobId;
     private final Long prevJobId;
     private final Pump pump;
@@ -25,30 +28,54 @@ public abstract class PumpTask implements Runnable {
     private Long stopTime;
     private boolean cancelled;
     private Future<?> future;
+    private Clock clock = SystemClock.INSTANCE;
+    private Consumer<PumpTask> finishListener;
 
 
     public PumpTask(Long prevJobId, Pump pump, boolean runInfinity, boolean isPumpUpDown, Direction direction, Runnable callback) {
         this.prevJobId = prevJobId;
-        this.jobId = ++maxId;
+        this.jobId = JobIdGenerator.next();
         this.cdl = new CountDownLatch(1);
         this.pump = pump;
         this.isPumpUpDown = isPumpUpDown;
         this.direction = direction;
         this.runInfinity = runInfinity;
-        this.startTime = System.currentTimeMillis();
+        this.startTime = clock.currentTimeMillis();
         this.cancelled = false;
         this.callback = callback;
     }
 
     public void readify(Future<?> taskFuture) {
         this.future = taskFuture;
-        this.startTime = System.currentTimeMillis();
+        this.startTime = clock.currentTimeMillis();
         if(cancelled) {
             future.cancel(true);
         }
         cdl.countDown();
     }
 
+    /**
+     * Needs to be set before the task gets submitted.
+     */
+    public PumpTask setClock(Clock clock) {
+        this.clock = Objects.requireNonNull(clock);
+        this.startTime = clock.currentTimeMillis();
+        return this;
+    }
+
+    /**
+     * @param finishListener gets called with the finished task before the callback. Needs to be set before the task
+     *                       gets submitted.
+     */
+    public PumpTask setFinishListener(Consumer<PumpTask> finishListener) {
+        this.finishListener = finishListener;
+        return this;
+    }
+
+    protected Clock getClock() {
+        return clock;
+    }
+
     public long getJobId() {
         return jobId;
     }
@@ -65,7 +92,7 @@ public abstract class PumpTask implements Runnable {
 
     protected long getTimeElapsed() {
         if(this.stopTime == null) {
-            return System.currentTimeMillis() - this.startTime;
+            return clock.currentTimeMillis() - this.startTime;
         }
         return this.stopTime - this.startTime;
     }
@@ -77,19 +104,22 @@ public abstract class PumpTask implements Runnable {
     @Override
     public void run() {
         try {
-            cdl.await();
-            this.startTime = System.currentTimeMillis();
+            clock.await(cdl);
+            this.startTime = clock.currentTimeMillis();
             pumpRun();
 
             if(isPumpUpDown && !isCancelledExecutionThread()) {
                 pump.setPumpedUp(getDirection() == Direction.FORWARD);
             }
 
-            this.stopTime = System.currentTimeMillis();
+            this.stopTime = clock.currentTimeMillis();
             PumpJobState.RunningState runningState = getRunningState();
             this.finishedJobMetrics = getJobMetrics();
             this.finishedRunningState = runningState;
             pump.shutdownDriver();
+            if(finishListener != null) {
+                finishListener.accept(this);
+            }
             callback.run();
         } catch (InterruptedException e) {
             e.printStackTrace();
@@ -139,7 +169,18 @@ public abstract class PumpTask implements Runnable {
         return runInfinity;
     }
 
-    protected Direction getDirection() {
+    /**
+     * @return the planned duration or null if the task has no planned end or its duration isn't known beforehand
+     */
+    public Long getPlannedDurationInMs() {
+        return null;
+    }
+
+    public Pump getPump() {
+        return pump;
+    }
+
+    public Direction getDirection() {
         return direction;
     }
 
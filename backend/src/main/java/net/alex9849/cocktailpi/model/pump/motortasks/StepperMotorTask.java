@@ -3,19 +3,25 @@ package net.alex9849.cocktailpi.model.pump.motortasks;
 import net.alex9849.cocktailpi.model.pump.JobMetrics;
 import net.alex9849.cocktailpi.model.pump.PumpJobState;
 import net.alex9849.cocktailpi.model.pump.StepperPump;
-import net.alex9849.cocktailpi.service.pumps.StepperTaskWorker;
+import net.alex9849.cocktailpi.service.pumps.MotionScheduler;
+import net.alex9849.cocktailpi.service.pumps.cocktailfactory.PowerBudgetScheduler;
+import net.alex9849.cocktailpi.service.pumps.steptiming.StepTimingMonitor;
+import net.alex9849.cocktailpi.service.pumps.steptiming.StepTimingProbe;
+import net.alex9849.cocktailpi.service.pumps.steptiming.StepTimingStats;
 import net.alex9849.motorlib.motor.AcceleratingStepper;
 import net.alex9849.motorlib.motor.Direction;
-import net.openhft.affinity.AffinityLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
 public class StepperMotorTask extends PumpTask {
+    private final Logger logger = LoggerFactory.getLogger(StepperMotorTask.class);
     StepperPump stepperPump;
     long stepsToRun;
     private AcceleratingStepper driver;
+    private final StepTimingStats stepTimingStats = new StepTimingStats();
 
 
     /**
@@ -27,6 +33,18 @@ public class StepperMotorTask extends PumpTask {
         this.stepsToRun = Math.max(1, stepsToRun);
     }
 
+    /**
+     * @return the duration at the maximal speed of the stepper. The acceleration is ignored.
+     */
+    @Override
+    public Long getPlannedDurationInMs() {
+        Integer maxStepsPerSecond = stepperPump.getMaxStepsPerSecond();
+        if(isRunInfinity() || maxStepsPerSecond == null || maxStepsPerSecond <= 0) {
+            return null;
+        }
+        return stepsToRun * 1000 / maxStepsPerSecond;
+    }
+
     public long getMlPumped() {
         return (getStepsMade() * 10) / stepperPump.getStepsPerCl();
     }
@@ -39,7 +57,7 @@ public class StepperMotorTask extends PumpTask {
     public void cancel() {
         super.cancel();
         if(this.driver != null) {
-            StepperTaskWorker.getInstance().cancelTask(this.driver);
+            MotionScheduler.getInstance().cancel(this.driver);
         }
     }
 
@@ -49,19 +67,29 @@ public class StepperMotorTask extends PumpTask {
         if (isRunInfinity()) {
             //Pick a very large number
             stepsToRun = 10000000000L;
-        } else if (stepsToRun == 0) {
-            stepsToRun = 1;
         }
         if (getDirection() == Direction.BACKWARD) {
             driver.move(-stepsToRun);
         } else {
             driver.move(stepsToRun);
         }
-        Future<Void> future = StepperTaskWorker.getInstance().submitTask(driver);
+        StepTimingProbe probe = new StepTimingProbe(stepTimingStats,
+                StepTimingMonitor.getInstance().getPumpStats(stepperPump.getId()));
+        MotionScheduler.Move move = new MotionScheduler.Move(driver)
+                .setPowerConsumptionInMa(PowerBudgetScheduler.getPowerConsumption(stepperPump))
+                .setStepsPerSecond(stepperPump.getMaxStepsPerSecond() == null ? 0 : stepperPump.getMaxStepsPerSecond())
+                .setProbe(probe);
+        Future<Void> future = MotionScheduler.getInstance().submit(move);
         while (driver.distanceToGo() != 0 && !isCancelledExecutionThread()) {
             try {
                 future.get();
-            } catch (ExecutionException | InterruptedException ignored) {}
+            } catch (InterruptedException ignored) {
+            } catch (ExecutionException e) {
+                //The move failed. The stepper won't reach its target anymore.
+                logger.error("Move of stepper pump " + stepperPump.getId() + " failed!", e.getCause());
+                cancel();
+                return;
+            }
         }
     }
 
@@ -83,6 +111,7 @@ public class StepperMotorTask extends PumpTask {
         metrics.setStartTime(getStartTime());
         metrics.setStopTime(getStopTime());
         metrics.setStepsMade(getStepsMade());
+        metrics.setStepTiming(stepTimingStats.toMetrics());
         return metrics;
     }
 }
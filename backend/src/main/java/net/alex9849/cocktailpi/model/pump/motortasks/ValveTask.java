@@ -1,14 +1,20 @@
 package net.alex9849.cocktailpi.model.pump.motortasks;
 
 import net.alex9849.cocktailpi.model.pump.*;
+import net.alex9849.cocktailpi.service.pumps.LoadCellSampler;
+import net.alex9849.cocktailpi.service.pumps.PowerBudget;
 import net.alex9849.motorlib.motor.Direction;
-import net.alex9849.motorlib.sensor.HX711;
+
+import java.util.function.DoubleSupplier;
 
 public class ValveTask extends PumpTask {
     private Valve valve;
     private long goalGrams;
     private long initialReadGrams;
     private long currentGrams;
+    private ValveDosingController dosingController;
+    private DoubleSupplier otherDispensersGrams;
+    private boolean valveModelLearned;
 
     public ValveTask(Valve valve, long goalGrams, Long prevJobId, Pump pump,
                      boolean isPumpUp, Runnable callback) {
@@ -19,28 +25,68 @@ public class ValveTask extends PumpTask {
         this.initialReadGrams = 0;
     }
 
+    /**
+     * @param otherDispensersGrams returns the liquid that other pumps dispense onto the load cell while the valve
+     *                             gets dosed. Needs to be set before the task gets submitted.
+     */
+    public void setOtherDispensersGrams(DoubleSupplier otherDispensersGrams) {
+        this.otherDispensersGrams = otherDispensersGrams;
+    }
+
     @Override
     protected void pumpRun() {
         ValveDriver driver = valve.getMotorDriver();
 
-        HX711 hx711 = valve.getLoadCell().getHX711();
+        LoadCellSampler sampler = valve.getLoadCell().getSampler();
+        PowerBudget powerBudget = PowerBudget.getInstance();
+        try {
+            powerBudget.claim(this, PowerBudget.Demand.of(valve));
+        } catch (InterruptedException e) {
+            cancel();
+            return;
+        }
         try {
-            initialReadGrams = hx711.read();
-            currentGrams = hx711.read();
-            while ((isRunInfinity() || (currentGrams < initialReadGrams + goalGrams)) && !isCancelledExecutionThread()) {
-                driver.setOpen(true);
-                while ((isRunInfinity() || (currentGrams < initialReadGrams + goalGrams)) && !isCancelledExecutionThread()) {
-                    currentGrams = hx711.read_once();
-                }
-                driver.setOpen(false);
-                currentGrams = hx711.read(7);
+            if(!isRunInfinity()) {
+                dosingController = new ValveDosingController(valve, sampler, getClock())
+                        .setOtherDispensersGrams(otherDispensersGrams);
+                initialReadGrams = dosingController.readGrams(1);
+                currentGrams = initialReadGrams;
+                currentGrams = dosingController.dose(initialReadGrams, goalGrams, this::isCancelledExecutionThread);
+                valveModelLearned = dosingController.isModelLearned();
+                return;
             }
+            LoadCellSampler.Sample sample = sampler.awaitNext();
+            initialReadGrams = sample.rawGrams();
+            currentGrams = initialReadGrams;
+            driver.setOpen(true);
+            while (!isCancelledExecutionThread()) {
+                sample = sampler.awaitNext(sample.sequence());
+                currentGrams = sample.rawGrams();
+            }
+            driver.setOpen(false);
+            currentGrams = sampler.readGrams(7);
         } catch (InterruptedException e) {
+            if(dosingController != null) {
+                currentGrams = dosingController.getCurrentGrams();
+            }
             cancel();
+        } finally {
+            powerBudget.release(this);
         }
 
     }
 
+    public Valve getValve() {
+        return valve;
+    }
+
+    /**
+     * @return true if the dose has been completed and has updated the cut-off lag and the flow of the valve
+     */
+    public boolean isValveModelLearned() {
+        return valveModelLearned;
+    }
+
     @Override
     protected PumpJobState.RunningState genRunningState() {
         PumpJobState.RunningState runningState = new PumpJobState.RunningState();
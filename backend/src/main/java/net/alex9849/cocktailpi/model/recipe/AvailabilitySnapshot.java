@@ -0,0 +1,116 @@
+package net.alex9849.cocktailpi.model.recipe;
+
+import net.alex9849.cocktailpi.model.pump.Pump;
+import net.alex9849.cocktailpi.model.recipe.ingredient.AddableIngredient;
+import net.alex9849.cocktailpi.model.recipe.ingredient.Ingredient;
+import net.alex9849.cocktailpi.model.recipe.ingredient.IngredientGroup;
+import net.alex9849.cocktailpi.model.recipe.productionstep.AddIngredientsProductionStep;
+import net.alex9849.cocktailpi.model.recipe.productionstep.ProductionStepIngredient;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * The liquid that is available on the pumps at one point in time.
+ * Used to evaluate many recipes without reloading the pumps for each of them.
+ * The recipes don't get modified.
+ */
+public class AvailabilitySnapshot {
+    private final Map<Long, Integer> availableMlByIngredientId;
+    private final Map<Long, Set<AddableIngredient>> addableChildrenByGroupId = new HashMap<>();
+
+    /**
+     * @param pumps the pumps that can be used. Only completed pumps should be passed.
+     */
+    public AvailabilitySnapshot(List<Pump> pumps) {
+        this.availableMlByIngredientId = pumps.stream()
+                .filter(x -> x.getCurrentIngredientId() != null)
+                .collect(Collectors.toMap(Pump::getCurrentIngredientId, Pump::getFillingLevelInMl, Integer::sum));
+    }
+
+    public boolean isOnPump(long ingredientId) {
+        return availableMlByIngredientId.containsKey(ingredientId);
+    }
+
+    public int getAvailableMl(long ingredientId) {
+        return availableMlByIngredientId.getOrDefault(ingredientId, 0);
+    }
+
+    /**
+     * Prefers the child that is on a pump and has the most liquid left. Otherwise, the first child that is in the bar.
+     * @return the replacement or null if no child is available
+     */
+    public AddableIngredient findIngredientGroupReplacement(IngredientGroup ingredientGroup) {
+        Set<AddableIngredient> children = addableChildrenByGroupId
+                .computeIfAbsent(ingredientGroup.getId(), k -> ingredientGroup.getAddableIngredientChildren());
+        AddableIngredient fullestOnPump = null;
+        AddableIngredient firstInBar = null;
+        for (AddableIngredient child : children) {
+            if(isOnPump(child.getId())) {
+                if(fullestOnPump == null || getAvailableMl(child.getId()) > getAvailableMl(fullestOnPump.getId())) {
+                    fullestOnPump = child;
+                }
+            }
+            if(firstInBar == null && child.isInBar()) {
+                firstInBar = child;
+            }
+        }
+        return fullestOnPump != null ? fullestOnPump : firstInBar;
+    }
+
+    /**
+     * Evaluates the recipe the same way the FeasibilityFactory does, without boost and additional ingredients.
+     * @param amountInMl the size of a single serving
+     */
+    public RecipeAvailability evaluate(Recipe recipe, int amountInMl) {
+        List<ProductionStepIngredient> psIngredients = recipe.getProductionSteps().stream()
+                .filter(x -> x instanceof AddIngredientsProductionStep)
+                .map(x -> (AddIngredientsProductionStep) x)
+                .flatMap(x -> x.getStepIngredients().stream())
+                .toList();
+        int liquidAmountScaled = psIngredients.stream()
+                .filter(x -> x.getIngredient().getUnit() == Ingredient.Unit.MILLILITER)
+                .filter(ProductionStepIngredient::isScale)
+                .mapToInt(ProductionStepIngredient::getAmount).sum();
+        int liquidAmountUnscaled = psIngredients.stream()
+                .filter(x -> x.getIngredient().getUnit() == Ingredient.Unit.MILLILITER)
+                .filter(x -> !x.isScale())
+                .mapToInt(ProductionStepIngredient::getAmount).sum();
+        double multiplier = 1;
+        if(liquidAmountScaled > 0) {
+            multiplier = amountInMl - liquidAmountUnscaled < 0 ? 0 : amountInMl / ((double) liquidAmountScaled);
+        }
+
+        boolean allIngredientGroupsReplaced = true;
+        Map<Long, Integer> neededMlByIngredientId = new HashMap<>();
+        for(ProductionStepIngredient psi : psIngredients) {
+            int amount = psi.isScale() ? (int) (psi.getAmount() * multiplier) : psi.getAmount();
+            Ingredient ingredient = psi.getIngredient();
+            if(ingredient instanceof IngredientGroup ingredientGroup) {
+                ingredient = findIngredientGroupReplacement(ingredientGroup);
+                if(ingredient == null) {
+                    allIngredientGroupsReplaced = false;
+                    continue;
+                }
+            }
+            neededMlByIngredientId.merge(ingredient.getId(), amount, Integer::sum);
+        }
+
+        //Only automated ingredients limit the servings. Manual ingredients are expected to be in stock.
+        Integer servingsLeft = null;
+        for(Map.Entry<Long, Integer> entry : neededMlByIngredientId.entrySet()) {
+            if(entry.getValue() <= 0 || !isOnPump(entry.getKey())) {
+                continue;
+            }
+            int servings = getAvailableMl(entry.getKey()) / entry.getValue();
+            servingsLeft = servingsLeft == null ? servings : Math.min(servingsLeft, servings);
+        }
+
+        RecipeAvailability availability = new RecipeAvailability();
+        availability.setRecipeId(recipe.getId());
+        availability.setAmountInMl(amountInMl);
+        availability.setAllIngredientGroupsReplaced(allIngredientGroupsReplaced);
+        availability.setServingsLeft(servingsLeft);
+        return availability;
+    }
+}
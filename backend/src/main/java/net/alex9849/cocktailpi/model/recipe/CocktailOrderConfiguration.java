@@ -10,6 +10,8 @@ public class CocktailOrderConfiguration {
     //ProductionStep, IngredientGroupId, Replacement
     private Map<Long, Map<Long, AddableIngredient>> productionStepReplacements = new HashMap<>();
     private Integer amountOrderedInMl;
+    private int servings = 1;
+    private BatchMode batchMode = BatchMode.GLASSES;
     private Customisations customisations;
 
     public Map<Long, Map<Long, AddableIngredient>> getProductionStepReplacements() {
@@ -28,6 +30,25 @@ public class CocktailOrderConfiguration {
         this.amountOrderedInMl = amountOrderedInMl;
     }
 
+    /**
+     * @return the number of servings. amountOrderedInMl is the amount of a single serving.
+     */
+    public int getServings() {
+        return servings;
+    }
+
+    public void setServings(int servings) {
+        this.servings = servings;
+    }
+
+    public BatchMode getBatchMode() {
+        return batchMode;
+    }
+
+    public void setBatchMode(BatchMode batchMode) {
+        this.batchMode = batchMode;
+    }
+
     public AddableIngredient getReplacement(long productionStep, long ingredientGroupId) {
         return productionStepReplacements
                 .getOrDefault(productionStep, new HashMap<>())
@@ -42,6 +63,13 @@ public class CocktailOrderConfiguration {
         this.customisations = customisations;
     }
 
+    public enum BatchMode {
+        //Every serving gets produced into its own glass. The user confirms each glass swap.
+        GLASSES,
+        //All servings get produced into one pitcher at once.
+        PITCHER
+    }
+
     public static class Customisations {
         private int boost;
         private List<AdditionalIngredient> additionalIngredients;
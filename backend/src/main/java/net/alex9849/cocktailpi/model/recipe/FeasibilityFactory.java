@@ -17,6 +17,7 @@ public class FeasibilityFactory {
     private final Recipe recipe;
     private final CocktailOrderConfiguration orderConfiguration;
     private final List<Pump> pumps;
+    private final AvailabilitySnapshot availabilitySnapshot;
     private final FeasibilityReport feasibilityReport;
     private final FeasibleRecipe feasibleRecipe;
 
@@ -27,9 +28,15 @@ public class FeasibilityFactory {
         this.recipe = recipe;
         this.orderConfiguration = orderConfiguration;
         this.pumps = pumps;
+        this.availabilitySnapshot = new AvailabilitySnapshot(pumps);
         this.feasibilityReport = new FeasibilityReport();
         this.feasibleRecipe = new FeasibleRecipe();
         this.feasibleRecipe.setRecipe(recipe);
+        if(orderConfiguration.getServings() < 1) {
+            throw new IllegalArgumentException("At least one serving has to be ordered!");
+        }
+        this.feasibleRecipe.setServings(orderConfiguration.getServings());
+        this.feasibleRecipe.setBatchMode(orderConfiguration.getBatchMode());
         this.compute();
     }
 
@@ -119,7 +126,7 @@ public class FeasibilityFactory {
                     feasibleProductionStepIngredient.setIngredient(addableIngredient);
                     ingredientGroupReplacement.setSelectedReplacement(addableIngredient);
                 } else {
-                    AddableIngredient autoSelectedReplacement = findIngredientGroupReplacement(toReplaceIngredientGroup, this.pumps);
+                    AddableIngredient autoSelectedReplacement = availabilitySnapshot.findIngredientGroupReplacement(toReplaceIngredientGroup);
                     ingredientGroupReplacement.setSelectedReplacement(autoSelectedReplacement);
                     if(autoSelectedReplacement != null) {
                         feasibleProductionStepIngredient.setIngredient(autoSelectedReplacement);
@@ -246,39 +253,6 @@ public class FeasibilityFactory {
         return true;
     }
 
-    private AddableIngredient findIngredientGroupReplacement(IngredientGroup ingredientGroup, List<Pump> pumps) {
-        class IngredientWithRemainingLiquid {
-            AddableIngredient ingredient;
-            int fillingLevel;
-        }
-        Map<Long, Integer> ingredientFillingLevel = pumps.stream()
-                .filter(x -> x.getCurrentIngredientId() != null)
-                .collect(Collectors.toMap(Pump::getCurrentIngredientId, Pump::getFillingLevelInMl, Integer::sum));
-        List<AddableIngredient> inBar = new ArrayList<>();
-        List<IngredientWithRemainingLiquid> onPump = new ArrayList<>();
-        for (AddableIngredient addableIngredient : ingredientGroup.getAddableIngredientChildren()) {
-            if(addableIngredient.isOnPump()) {
-                IngredientWithRemainingLiquid ingredientWithRemainingLiquid = new IngredientWithRemainingLiquid();
-                ingredientWithRemainingLiquid.ingredient = addableIngredient;
-                ingredientWithRemainingLiquid.fillingLevel = ingredientFillingLevel.getOrDefault(addableIngredient.getId(), 0);
-                onPump.add(ingredientWithRemainingLiquid);
-            }
-            if(addableIngredient.isInBar()) {
-                inBar.add(addableIngredient);
-            }
-        }
-        onPump.sort(Comparator.comparingInt(x -> x.fillingLevel));
-        if(onPump.isEmpty() && inBar.isEmpty()) {
-            return null;
-        }
-        //First element
-        if(onPump.isEmpty()) {
-            return inBar.get(0);
-        }
-        //Last element (the one with most liquid left
-        return onPump.get(onPump.size() - 1).ingredient;
-    }
-
     public FeasibilityReport getFeasibilityReport() {
         return this.feasibilityReport;
     }
@@ -7,6 +7,8 @@ import java.util.List;
 public class FeasibleRecipe {
     private Recipe recipe;
     private List<ProductionStep> feasibleProductionSteps;
+    private int servings = 1;
+    private CocktailOrderConfiguration.BatchMode batchMode = CocktailOrderConfiguration.BatchMode.GLASSES;
 
     public Recipe getRecipe() {
         return recipe;
@@ -23,4 +25,23 @@ public class FeasibleRecipe {
     public void setFeasibleProductionSteps(List<ProductionStep> feasibleProductionSteps) {
         this.feasibleProductionSteps = feasibleProductionSteps;
     }
+
+    /**
+     * @return the number of servings. The feasibleProductionSteps describe a single serving.
+     */
+    public int getServings() {
+        return servings;
+    }
+
+    public void setServings(int servings) {
+        this.servings = servings;
+    }
+
+    public CocktailOrderConfiguration.BatchMode getBatchMode() {
+        return batchMode;
+    }
+
+    public void setBatchMode(CocktailOrderConfiguration.BatchMode batchMode) {
+        this.batchMode = batchMode;
+    }
 }
@@ -0,0 +1,17 @@
+package net.alex9849.cocktailpi.model.recipe;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter @Setter
+public class RecipeAvailability {
+    private long recipeId;
+    private int amountInMl;
+    private boolean allIngredientGroupsReplaced;
+    //Null if no ingredient of the recipe is on a pump
+    private Integer servingsLeft;
+
+    public boolean isFeasible() {
+        return allIngredientGroupsReplaced && (servingsLeft == null || servingsLeft >= 1);
+    }
+}
@@ -0,0 +1,16 @@
+package net.alex9849.cocktailpi.model.system.settings;
+
+/**
+ * Defines how the amount of an ingredient gets split, if multiple pumps hold that ingredient.
+ */
+public enum IngredientSplitMode {
+    /**
+     * The pumps get drained one after another. Pumps with a low filling level are used first.
+     */
+    SEQUENTIAL,
+    /**
+     * All pumps run at the same time. The amount is split in proportion to the flow rate and the
+     * filling level of the pumps, so that they finish together.
+     */
+    PARALLEL
+}
@@ -0,0 +1,49 @@
+package net.alex9849.cocktailpi.model.system.settings;
+
+public class PowerLimitSettings {
+    private boolean enable;
+    private Config settings;
+
+    public boolean isEnable() {
+        return enable;
+    }
+
+    public void setEnable(boolean enable) {
+        this.enable = enable;
+    }
+
+    public Config getSettings() {
+        return settings;
+    }
+
+    public void setSettings(Config settings) {
+        this.settings = settings;
+    }
+
+    public static class Config {
+        private int maxConcurrentMotors;
+        private int powerBudgetInMa;
+
+        /**
+         * @return the maximal number of motors that are allowed to run at the same time. 0 = unlimited
+         */
+        public int getMaxConcurrentMotors() {
+            return maxConcurrentMotors;
+        }
+
+        public void setMaxConcurrentMotors(int maxConcurrentMotors) {
+            this.maxConcurrentMotors = maxConcurrentMotors;
+        }
+
+        /**
+         * @return the maximal sum of the power consumption of all running motors. 0 = unlimited
+         */
+        public int getPowerBudgetInMa() {
+            return powerBudgetInMa;
+        }
+
+        public void setPowerBudgetInMa(int powerBudgetInMa) {
+            this.powerBudgetInMa = powerBudgetInMa;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package net.alex9849.cocktailpi.model.system.settings;
+
+/**
+ * Defines if motor driven pumps may run while a valve is dosed using the load cell.
+ */
+public enum ValveDosingMode {
+    /**
+     * Valves get the load cell exclusively. No motor runs while a valve is dosed.
+     */
+    EXCLUSIVE,
+    /**
+     * Motors keep running while a valve is dosed. Their modeled flow gets subtracted from the load cell signal
+     * to get the weight that has been dispensed by the valve.
+     */
+    CONCURRENT
+}
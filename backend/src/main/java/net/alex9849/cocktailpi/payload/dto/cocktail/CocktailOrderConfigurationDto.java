@@ -4,6 +4,7 @@ import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import lombok.*;
+import net.alex9849.cocktailpi.model.recipe.CocktailOrderConfiguration;
 
 import java.util.List;
 
@@ -11,13 +12,16 @@ import java.util.List;
 public class CocktailOrderConfigurationDto {
     public interface AmountToProduce { @Min(10) @Max(5000) Integer getAmountOrderedInMl(); }
     public interface ProductionStepReplacements { @NotNull() List<List<FeasibilityReportDto.IngredientGroupReplacementDto.Request.Create>> getProductionStepReplacements(); }
+    public interface Servings { @Min(1) @Max(50) Integer getServings(); }
     public interface Customisations { @NotNull() CustomisationsDto.Request.Create getCustomisations(); }
 
     @NoArgsConstructor(access = AccessLevel.PRIVATE)
     public static class Request {
         @Getter @Setter @EqualsAndHashCode
-        public static class Create implements AmountToProduce, ProductionStepReplacements, Customisations {
+        public static class Create implements AmountToProduce, Servings, ProductionStepReplacements, Customisations {
             Integer amountOrderedInMl;
+            Integer servings;
+            CocktailOrderConfiguration.BatchMode batchMode;
             List<List<FeasibilityReportDto.IngredientGroupReplacementDto.Request.Create>> productionStepReplacements;
             CustomisationsDto.Request.Create customisations;
         }
@@ -15,23 +15,35 @@ public class CocktailProgressDto {
     public interface State { CocktailProgress.State getState(); }
     public interface CurrentIngredientsToAddManually { List<ProductionStepIngredientDto.Response.Detailed> getCurrentIngredientsToAddManually(); }
     public interface WrittenInstruction { String getWrittenInstruction(); }
+    public interface StationId { Long getStationId(); }
+    public interface Servings { int getServings(); }
+    public interface CurrentServing { int getCurrentServing(); }
+    public interface PrimingTimeSavedInMs { long getPrimingTimeSavedInMs(); }
 
 
     @NoArgsConstructor(access = AccessLevel.PRIVATE)
     public static class Response {
 
         @Getter @Setter @EqualsAndHashCode
-        public static class Detailed implements Recipe, Progress, State, CurrentIngredientsToAddManually, WrittenInstruction {
+        public static class Detailed implements Recipe, Progress, State, CurrentIngredientsToAddManually, WrittenInstruction, StationId, Servings, CurrentServing, PrimingTimeSavedInMs {
             RecipeDto.Response.SearchResult recipe;
             int progress;
             long userId;
             CocktailProgress.State state;
             List<ProductionStepIngredientDto.Response.Detailed> currentIngredientsToAddManually;
             String writtenInstruction;
+            Long stationId;
+            int servings;
+            int currentServing;
+            long primingTimeSavedInMs;
 
             public Detailed(CocktailProgress cocktailprogress) {
                 this.progress = cocktailprogress.getProgress();
                 this.state = cocktailprogress.getState();
+                this.stationId = cocktailprogress.getStationId();
+                this.servings = cocktailprogress.getServings();
+                this.currentServing = cocktailprogress.getCurrentServing();
+                this.primingTimeSavedInMs = cocktailprogress.getPrimingTimeSavedInMs();
                 if(cocktailprogress.getCurrentIngredientsToAddManually() != null) {
                     this.currentIngredientsToAddManually = cocktailprogress.getCurrentIngredientsToAddManually()
                             .stream()
@@ -0,0 +1,114 @@
+package net.alex9849.cocktailpi.payload.dto.cocktail;
+
+import lombok.*;
+import net.alex9849.cocktailpi.model.cocktail.QueuedCocktailOrder;
+import net.alex9849.cocktailpi.model.user.User;
+import net.alex9849.cocktailpi.service.pumps.CocktailOrderQueueService;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class QueuedCocktailOrderDto {
+    private interface Id { long getId(); }
+    private interface Position { int getPosition(); }
+    private interface EstimatedStartTime { Date getEstimatedStartTime(); }
+    private interface EstimatedDuration { long getEstimatedDuration(); }
+    private interface UserId { long getUserId(); }
+    private interface Username { String getUsername(); }
+    private interface RecipeId { long getRecipeId(); }
+    private interface RecipeName { String getRecipeName(); }
+    private interface IsIngredient { boolean isIngredient(); }
+    private interface Priority { int getPriority(); }
+    private interface CreatedAt { Date getCreatedAt(); }
+    private interface StationId { Long getStationId(); }
+    private interface AwaitingGlassSwap { boolean isAwaitingGlassSwap(); }
+    private interface StationsAwaitingGlassSwap { List<Long> getStationsAwaitingGlassSwap(); }
+    private interface Orders { List<Response.Reduced> getOrders(); }
+    private interface Reason { String getReason(); }
+
+    @NoArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class Response {
+
+        /**
+         * Orders of other users only reveal their position in the queue.
+         */
+        @Getter @Setter @EqualsAndHashCode
+        public static class Reduced implements Id, Position, EstimatedStartTime, EstimatedDuration {
+            long id;
+            int position;
+            Date estimatedStartTime;
+            long estimatedDuration;
+
+            public Reduced(QueuedCocktailOrder order) {
+                this.id = order.getId();
+                this.position = order.getPosition();
+                this.estimatedStartTime = order.getEstimatedStartTime();
+                this.estimatedDuration = order.getEstimatedDuration();
+            }
+        }
+
+        @Getter @Setter @EqualsAndHashCode(callSuper = true)
+        public static class Detailed extends Reduced implements UserId, Username, RecipeId, RecipeName, IsIngredient,
+                Priority, CreatedAt, StationId {
+            long userId;
+            String username;
+            long recipeId;
+            String recipeName;
+            boolean ingredient;
+            int priority;
+            Date createdAt;
+            Long stationId;
+
+            public Detailed(QueuedCocktailOrder order) {
+                super(order);
+                this.userId = order.getUserId();
+                if(order.getUser() != null) {
+                    this.username = order.getUser().getUsername();
+                }
+                this.recipeId = order.getRecipeId();
+                this.recipeName = order.getRecipeName();
+                this.ingredient = order.isIngredient();
+                this.priority = order.getPriority();
+                this.createdAt = order.getCreatedAt();
+                this.stationId = order.getStationId();
+            }
+        }
+
+        /**
+         * Gets sent to the owner of an order that has been removed from the queue without being produced.
+         */
+        @Getter @Setter @EqualsAndHashCode(callSuper = true)
+        public static class Dropped extends Detailed implements Reason {
+            String reason;
+
+            public Dropped(QueuedCocktailOrder order, String reason) {
+                super(order);
+                this.reason = reason;
+            }
+        }
+
+        @Getter @Setter @EqualsAndHashCode
+        public static class Queue implements AwaitingGlassSwap, StationsAwaitingGlassSwap, Orders {
+            boolean awaitingGlassSwap;
+            List<Long> stationsAwaitingGlassSwap;
+            List<Reduced> orders;
+
+            /**
+             * @param stationsAwaitingGlassSwap contains null, if no stations are configured and a glass swap is required
+             */
+            public Queue(List<QueuedCocktailOrder> queue, Set<Long> stationsAwaitingGlassSwap, User viewer) {
+                this.awaitingGlassSwap = !stationsAwaitingGlassSwap.isEmpty();
+                this.stationsAwaitingGlassSwap = stationsAwaitingGlassSwap.stream()
+                        .filter(Objects::nonNull)
+                        .sorted()
+                        .toList();
+                this.orders = queue.stream()
+                        .map(x -> CocktailOrderQueueService.isVisibleFor(x, viewer) ? new Detailed(x) : new Reduced(x))
+                        .toList();
+            }
+        }
+    }
+}
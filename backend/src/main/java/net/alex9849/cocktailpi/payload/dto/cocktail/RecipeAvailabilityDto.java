@@ -0,0 +1,30 @@
+package net.alex9849.cocktailpi.payload.dto.cocktail;
+
+import lombok.*;
+import net.alex9849.cocktailpi.model.recipe.RecipeAvailability;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class RecipeAvailabilityDto {
+    private interface RecipeId { long getRecipeId(); }
+    private interface IsFeasible { boolean isFeasible(); }
+    private interface AmountInMl { int getAmountInMl(); }
+    private interface ServingsLeft { Integer getServingsLeft(); }
+
+    @NoArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class Response {
+        @Getter @Setter @EqualsAndHashCode
+        public static class Detailed implements RecipeId, IsFeasible, AmountInMl, ServingsLeft {
+            long recipeId;
+            boolean isFeasible;
+            int amountInMl;
+            Integer servingsLeft;
+
+            public Detailed(RecipeAvailability availability) {
+                this.recipeId = availability.getRecipeId();
+                this.isFeasible = availability.isFeasible();
+                this.amountInMl = availability.getAmountInMl();
+                this.servingsLeft = availability.getServingsLeft();
+            }
+        }
+    }
+}
@@ -27,6 +27,7 @@ public class PumpDto {
     private interface PatchIsPumpedUp { Boolean getIsPumpedUp(); }
     private interface Name { String getName(); }
     private interface CanControlDirection { boolean isCanControlDirection(); }
+    private interface PowerConsumptionInMa { @Min(0) Integer getPowerConsumptionInMa(); }
 
     private interface IRemoveFields { Set<String> getRemoveFields(); }
 
@@ -47,12 +48,13 @@ public class PumpDto {
                 @JsonSubTypes.Type(value = ValveDto.Request.Create.class, name = "valve"),
                 @JsonSubTypes.Type(value = StepperPumpDto.Request.Create.class, name = "stepper")
         })
-        public static class Create implements TubeCapacityInMl, PatchFillingLevelInMl, CurrentIngredientId, PatchIsPumpedUp, Name, IRemoveFields {
+        public static class Create implements TubeCapacityInMl, PatchFillingLevelInMl, CurrentIngredientId, PatchIsPumpedUp, Name, PowerConsumptionInMa, IRemoveFields {
             Double tubeCapacityInMl;
             Integer fillingLevelInMl;
             Boolean isPumpedUp;
             Long currentIngredientId;
             String name;
+            Integer powerConsumptionInMa;
             Set<String> removeFields;
 
         }
@@ -69,7 +71,7 @@ public class PumpDto {
                 @JsonSubTypes.Type(value = StepperPumpDto.Response.Detailed.class, name = "stepper")
         })
         public abstract static class Detailed implements Id, FillingLevelInMl, TubeCapacityInMl,
-                CurrentIngredient, IsPumpedUp, IState, ISetupStage, Name, CanControlDirection {
+                CurrentIngredient, IsPumpedUp, IState, ISetupStage, Name, CanControlDirection, PowerConsumptionInMa {
             long id;
             Double tubeCapacityInMl;
             int fillingLevelInMl;
@@ -79,6 +81,7 @@ public class PumpDto {
             PumpDto.State state;
             int setupStage;
             boolean canControlDirection;
+            Integer powerConsumptionInMa;
 
             public Detailed(Pump pump) {
                 BeanUtils.copyProperties(pump, this);
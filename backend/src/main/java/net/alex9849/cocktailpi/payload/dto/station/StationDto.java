@@ -0,0 +1,37 @@
+package net.alex9849.cocktailpi.payload.dto.station;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.*;
+import net.alex9849.cocktailpi.model.Station;
+
+import java.util.HashSet;
+import java.util.Set;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class StationDto {
+    private interface Id { long getId(); }
+    private interface Name { @NotNull @Size(min = 1, max = 30) String getName(); }
+    private interface GlassPosition { @Size(max = 100) String getGlassPosition(); }
+    private interface PumpIds { @NotNull Set<Long> getPumpIds(); }
+
+    @NoArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class Duplex {
+
+        @Getter @Setter @EqualsAndHashCode
+        public static class Detailed implements Id, Name, GlassPosition, PumpIds {
+            long id;
+            String name;
+            String glassPosition;
+            Set<Long> pumpIds;
+
+            public Detailed() {}
+            public Detailed(Station station) {
+                id = station.getId();
+                name = station.getName();
+                glassPosition = station.getGlassPosition();
+                pumpIds = new HashSet<>(station.getPumpIds());
+            }
+        }
+    }
+}
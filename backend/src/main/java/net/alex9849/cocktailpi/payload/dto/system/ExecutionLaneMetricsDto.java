@@ -0,0 +1,34 @@
+package net.alex9849.cocktailpi.payload.dto.system;
+
+import lombok.*;
+import net.alex9849.cocktailpi.service.executor.ExecutionLane;
+import net.alex9849.cocktailpi.service.executor.LaneMetrics;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class ExecutionLaneMetricsDto {
+
+    @Getter @Setter @EqualsAndHashCode
+    public static class Response {
+        ExecutionLane lane;
+        int threads;
+        int activeThreads;
+        int largestThreads;
+        int maxThreads;
+        long threadsCreated;
+        int queuedTasks;
+        long completedTasks;
+        long rejectedTasks;
+
+        public Response(LaneMetrics metrics) {
+            this.lane = metrics.getLane();
+            this.threads = metrics.getThreads();
+            this.activeThreads = metrics.getActiveThreads();
+            this.largestThreads = metrics.getLargestThreads();
+            this.maxThreads = metrics.getMaxThreads();
+            this.threadsCreated = metrics.getThreadsCreated();
+            this.queuedTasks = metrics.getQueuedTasks();
+            this.completedTasks = metrics.getCompletedTasks();
+            this.rejectedTasks = metrics.getRejectedTasks();
+        }
+    }
+}
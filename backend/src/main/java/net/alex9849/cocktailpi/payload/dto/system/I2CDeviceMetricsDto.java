@@ -0,0 +1,33 @@
+package net.alex9849.cocktailpi.payload.dto.system;
+
+import lombok.*;
+import net.alex9849.cocktailpi.service.i2c.I2CDeviceMetrics;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class I2CDeviceMetricsDto {
+
+    @Getter @Setter @EqualsAndHashCode
+    public static class Response {
+        int address;
+        long transactions;
+        long retries;
+        long failures;
+        long transactionsPerSecond;
+        long meanWaitInMicros;
+        long maxWaitInMicros;
+        long meanDurationInMicros;
+        long maxDurationInMicros;
+
+        public Response(I2CDeviceMetrics metrics) {
+            this.address = metrics.getAddress();
+            this.transactions = metrics.getTransactions();
+            this.retries = metrics.getRetries();
+            this.failures = metrics.getFailures();
+            this.transactionsPerSecond = metrics.getTransactionsPerSecond();
+            this.meanWaitInMicros = metrics.getMeanWaitInMicros();
+            this.maxWaitInMicros = metrics.getMaxWaitInMicros();
+            this.meanDurationInMicros = metrics.getMeanDurationInMicros();
+            this.maxDurationInMicros = metrics.getMaxDurationInMicros();
+        }
+    }
+}
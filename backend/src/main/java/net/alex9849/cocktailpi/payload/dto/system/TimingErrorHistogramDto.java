@@ -0,0 +1,36 @@
+package net.alex9849.cocktailpi.payload.dto.system;
+
+import lombok.*;
+import net.alex9849.cocktailpi.service.pumps.clock.TimingErrorHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class TimingErrorHistogramDto {
+
+    @Getter @Setter @EqualsAndHashCode
+    public static class Response {
+        long count;
+        long early;
+        long meanAbsErrorInMicros;
+        long maxAbsErrorInMicros;
+        long p99UpperBoundInMicros;
+        List<Long> bucketUpperBoundsInMicros;
+        long[] bucketCounts;
+
+        public Response(TimingErrorHistogram histogram) {
+            this.count = histogram.getCount();
+            this.early = histogram.getEarly();
+            this.meanAbsErrorInMicros = histogram.getMeanAbsErrorInMicros();
+            this.maxAbsErrorInMicros = histogram.getMaxAbsErrorInMicros();
+            this.p99UpperBoundInMicros = histogram.getPercentileUpperBoundInMicros(99);
+            this.bucketUpperBoundsInMicros = new ArrayList<>();
+            for(long upperBound : TimingErrorHistogram.BUCKET_UPPER_BOUNDS_IN_MICROS) {
+                //The last bucket is unbounded
+                this.bucketUpperBoundsInMicros.add(upperBound == Long.MAX_VALUE ? null : upperBound);
+            }
+            this.bucketCounts = histogram.getBucketCounts();
+        }
+    }
+}
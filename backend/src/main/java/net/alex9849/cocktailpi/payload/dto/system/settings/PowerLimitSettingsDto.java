@@ -0,0 +1,46 @@
+package net.alex9849.cocktailpi.payload.dto.system.settings;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import lombok.*;
+import net.alex9849.cocktailpi.model.system.settings.PowerLimitSettings;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class PowerLimitSettingsDto {
+    private interface IEnable { boolean isEnable(); }
+    private interface ISettings { @Valid Config getSettings(); }
+    private interface IMaxConcurrentMotors { @Min(0) int getMaxConcurrentMotors(); }
+    private interface IPowerBudgetInMa { @Min(0) int getPowerBudgetInMa(); }
+
+    @NoArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class Duplex {
+
+        @Getter @Setter @EqualsAndHashCode
+        public static class Detailed implements IEnable, ISettings {
+            boolean enable;
+            Config settings;
+
+            public Detailed() {}
+
+            public Detailed(PowerLimitSettings pls) {
+                this.enable = pls.isEnable();
+                if(pls.getSettings() != null) {
+                    this.settings = new Config(pls.getSettings());
+                }
+            }
+        }
+    }
+
+    @Getter @Setter @EqualsAndHashCode
+    public static class Config implements IMaxConcurrentMotors, IPowerBudgetInMa {
+        int maxConcurrentMotors;
+        int powerBudgetInMa;
+
+        public Config() {}
+
+        public Config(PowerLimitSettings.Config cfg) {
+            this.maxConcurrentMotors = cfg.getMaxConcurrentMotors();
+            this.powerBudgetInMa = cfg.getPowerBudgetInMa();
+        }
+    }
+}
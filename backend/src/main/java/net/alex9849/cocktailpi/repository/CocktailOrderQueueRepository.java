@@ -0,0 +1,122 @@
+package net.alex9849.cocktailpi.repository;
+
+import jakarta.annotation.PostConstruct;
+import net.alex9849.cocktailpi.model.cocktail.QueuedCocktailOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.support.JdbcDaoSupport;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+@Component
+public class CocktailOrderQueueRepository extends JdbcDaoSupport {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @PostConstruct
+    private void initialize() {
+        setDataSource(dataSource);
+    }
+
+    public QueuedCocktailOrder create(QueuedCocktailOrder order) {
+        return getJdbcTemplate().execute((ConnectionCallback<QueuedCocktailOrder>) con -> {
+            PreparedStatement pstmt = con.prepareStatement("INSERT INTO cocktail_order_queue (user_id, recipe_id, " +
+                    "recipe_name, is_ingredient, order_configuration, priority, estimated_duration, created_at, station_id) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+            pstmt.setLong(1, order.getUserId());
+            pstmt.setLong(2, order.getRecipeId());
+            pstmt.setString(3, order.getRecipeName());
+            pstmt.setBoolean(4, order.isIngredient());
+            pstmt.setString(5, order.getOrderConfiguration());
+            pstmt.setInt(6, order.getPriority());
+            pstmt.setLong(7, order.getEstimatedDuration());
+            pstmt.setLong(8, order.getCreatedAt().getTime());
+            if(order.getStationId() != null) {
+                pstmt.setLong(9, order.getStationId());
+            } else {
+                pstmt.setNull(9, Types.INTEGER);
+            }
+            pstmt.execute();
+            ResultSet rs = pstmt.getGeneratedKeys();
+            if (!rs.next()) {
+                throw new IllegalStateException("Error saving order");
+            }
+            order.setId(rs.getLong(1));
+            return order;
+        });
+    }
+
+    public boolean updatePriority(long id, int priority) {
+        return getJdbcTemplate().execute((ConnectionCallback<Boolean>) con -> {
+            PreparedStatement pstmt = con.prepareStatement("UPDATE cocktail_order_queue SET priority = ? WHERE id = ?");
+            pstmt.setInt(1, priority);
+            pstmt.setLong(2, id);
+            return pstmt.executeUpdate() != 0;
+        });
+    }
+
+    public boolean delete(long id) {
+        return getJdbcTemplate().execute((ConnectionCallback<Boolean>) con -> {
+            PreparedStatement pstmt = con.prepareStatement("DELETE FROM cocktail_order_queue WHERE id = ?");
+            pstmt.setLong(1, id);
+            return pstmt.executeUpdate() != 0;
+        });
+    }
+
+    public Optional<QueuedCocktailOrder> findById(long id) {
+        return getJdbcTemplate().execute((ConnectionCallback<Optional<QueuedCocktailOrder>>) con -> {
+            PreparedStatement pstmt = con.prepareStatement("SELECT * FROM cocktail_order_queue WHERE id = ?");
+            pstmt.setLong(1, id);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return Optional.of(parseRs(rs));
+            }
+            return Optional.empty();
+        });
+    }
+
+    /**
+     * @return all orders in the order in which they will be produced
+     */
+    public List<QueuedCocktailOrder> findAll() {
+        return getJdbcTemplate().execute((ConnectionCallback<List<QueuedCocktailOrder>>) con -> {
+            PreparedStatement pstmt = con.prepareStatement("SELECT * FROM cocktail_order_queue " +
+                    "ORDER BY priority DESC, created_at ASC, id ASC");
+            ResultSet rs = pstmt.executeQuery();
+            List<QueuedCocktailOrder> results = new ArrayList<>();
+            while (rs.next()) {
+                results.add(parseRs(rs));
+            }
+            return results;
+        });
+    }
+
+    private QueuedCocktailOrder parseRs(ResultSet rs) throws SQLException {
+        QueuedCocktailOrder order = new QueuedCocktailOrder();
+        order.setId(rs.getLong("id"));
+        order.setUserId(rs.getLong("user_id"));
+        order.setRecipeId(rs.getLong("recipe_id"));
+        order.setRecipeName(rs.getString("recipe_name"));
+        order.setIngredient(rs.getBoolean("is_ingredient"));
+        order.setOrderConfiguration(rs.getString("order_configuration"));
+        order.setPriority(rs.getInt("priority"));
+        order.setEstimatedDuration(rs.getLong("estimated_duration"));
+        order.setCreatedAt(new Date(rs.getLong("created_at")));
+        long stationId = rs.getLong("station_id");
+        if(!rs.wasNull()) {
+            order.setStationId(stationId);
+        }
+        return order;
+    }
+}
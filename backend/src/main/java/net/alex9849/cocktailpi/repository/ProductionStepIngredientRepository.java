@@ -1,6 +1,7 @@
 package net.alex9849.cocktailpi.repository;
 
 import jakarta.annotation.PostConstruct;
+import net.alex9849.cocktailpi.model.recipe.ingredient.Ingredient;
 import net.alex9849.cocktailpi.model.recipe.productionstep.ProductionStepIngredient;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.ConnectionCallback;
@@ -11,9 +12,7 @@ import javax.sql.DataSource;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
 
 @Component
 public class ProductionStepIngredientRepository extends JdbcDaoSupport {
@@ -45,6 +44,42 @@ public class ProductionStepIngredientRepository extends JdbcDaoSupport {
         });
     }
 
+    /**
+     * Loads the production step ingredients of multiple recipes at once. The ingredients are loaded with one query.
+     * @return the production step ingredients by recipe id and production step index
+     */
+    public Map<Long, Map<Integer, List<ProductionStepIngredient>>> loadProductionStepIngredients(Long... recipeIds) {
+        Map<Long, Map<Integer, List<ProductionStepIngredient>>> results = new HashMap<>();
+        if(recipeIds.length == 0) {
+            return results;
+        }
+        return getJdbcTemplate().execute((ConnectionCallback<Map<Long, Map<Integer, List<ProductionStepIngredient>>>>) con -> {
+            String stmt = "SELECT * FROM production_step_ingredients where recipe_id IN (";
+            stmt += String.join(",", Arrays.stream(recipeIds).map(x -> "?").toList());
+            stmt += ") order by amount desc";
+            PreparedStatement pstmt = con.prepareStatement(stmt);
+            for (int i = 0; i < recipeIds.length; i++) {
+                pstmt.setLong(i + 1, recipeIds[i]);
+            }
+            ResultSet rs = pstmt.executeQuery();
+            //Step ingredients might be equal by value
+            Map<ProductionStepIngredient, Long> ingredientIdByPsi = new IdentityHashMap<>();
+            while (rs.next()) {
+                ProductionStepIngredient psi = parseRs(rs);
+                ingredientIdByPsi.put(psi, rs.getLong("ingredient_id"));
+                results.computeIfAbsent(rs.getLong("recipe_id"), k -> new HashMap<>())
+                        .computeIfAbsent(rs.getInt("order"), k -> new ArrayList<>())
+                        .add(psi);
+            }
+            Map<Long, Ingredient> ingredientsById = new HashMap<>();
+            for(Ingredient ingredient : ingredientRepository.findByIds(new HashSet<>(ingredientIdByPsi.values()).toArray(new Long[0]))) {
+                ingredientsById.put(ingredient.getId(), ingredient);
+            }
+            ingredientIdByPsi.forEach((psi, ingredientId) -> psi.setIngredient(ingredientsById.get(ingredientId)));
+            return results;
+        });
+    }
+
     public List<ProductionStepIngredient> create(List<ProductionStepIngredient> stepIngredients, long recipeId, int orderIndex) {
         if(stepIngredients.isEmpty()) {
             return stepIngredients;
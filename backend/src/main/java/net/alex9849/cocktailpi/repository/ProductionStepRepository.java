@@ -4,6 +4,7 @@ import jakarta.annotation.PostConstruct;
 import jakarta.persistence.DiscriminatorValue;
 import net.alex9849.cocktailpi.model.recipe.productionstep.AddIngredientsProductionStep;
 import net.alex9849.cocktailpi.model.recipe.productionstep.ProductionStep;
+import net.alex9849.cocktailpi.model.recipe.productionstep.ProductionStepIngredient;
 import net.alex9849.cocktailpi.model.recipe.productionstep.WrittenInstructionProductionStep;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.ConnectionCallback;
@@ -15,9 +16,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
 
 @Component
 public class ProductionStepRepository extends JdbcDaoSupport {
@@ -47,6 +46,40 @@ public class ProductionStepRepository extends JdbcDaoSupport {
         });
     }
 
+    /**
+     * Loads the production steps of multiple recipes with a constant number of queries.
+     * @return the production steps by recipe id. Recipes without production steps are missing.
+     */
+    public Map<Long, List<ProductionStep>> loadByRecipeIds(Long... recipeIds) {
+        Map<Long, List<ProductionStep>> results = new HashMap<>();
+        if(recipeIds.length == 0) {
+            return results;
+        }
+        Map<Long, Map<Integer, List<ProductionStepIngredient>>> stepIngredients = productionStepIngredientRepository
+                .loadProductionStepIngredients(recipeIds);
+        return getJdbcTemplate().execute((ConnectionCallback<Map<Long, List<ProductionStep>>>) con -> {
+            String stmt = "SELECT * FROM production_steps where recipe_id IN (";
+            stmt += String.join(",", Arrays.stream(recipeIds).map(x -> "?").toList());
+            stmt += ") order by recipe_id asc, \"order\" asc";
+            PreparedStatement pstmt = con.prepareStatement(stmt);
+            for (int i = 0; i < recipeIds.length; i++) {
+                pstmt.setLong(i + 1, recipeIds[i]);
+            }
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                long recipeId = rs.getLong("recipe_id");
+                List<ProductionStep> recipeSteps = results.computeIfAbsent(recipeId, k -> new ArrayList<>());
+                ProductionStep productionStep = parseRs(rs);
+                if(productionStep instanceof AddIngredientsProductionStep addPs) {
+                    addPs.setStepIngredients(stepIngredients.getOrDefault(recipeId, Collections.emptyMap())
+                            .getOrDefault(recipeSteps.size(), new ArrayList<>()));
+                }
+                recipeSteps.add(productionStep);
+            }
+            return results;
+        });
+    }
+
     public boolean deleteByRecipe(long recipeId) {
         return getJdbcTemplate().execute((ConnectionCallback<Boolean>) con -> {
             PreparedStatement pstmt = con.prepareStatement("DELETE FROM production_steps WHERE recipe_id = ?");
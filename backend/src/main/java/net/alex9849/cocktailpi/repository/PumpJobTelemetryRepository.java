@@ -0,0 +1,154 @@
+package net.alex9849.cocktailpi.repository;
+
+import jakarta.annotation.PostConstruct;
+import net.alex9849.cocktailpi.model.pump.PumpJobTelemetry;
+import net.alex9849.cocktailpi.model.pump.PumpJobTelemetryAggregate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.support.JdbcDaoSupport;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+public class PumpJobTelemetryRepository extends JdbcDaoSupport {
+    private static final String AGGREGATES = "COUNT(*) AS runs, SUM(t.actual_duration) AS run_time, " +
+            "COALESCE(SUM(t.planned_duration), 0) AS planned_run_time, SUM(t.ml_pumped) AS ml_pumped, " +
+            "SUM(t.steps_made) AS steps_made, MAX(t.started_at) AS last_run_at ";
+    private static final String TIME_RANGE = "WHERE t.started_at >= ? AND t.started_at < ? ";
+
+    @Autowired
+    private DataSource dataSource;
+
+    @PostConstruct
+    private void initialize() {
+        setDataSource(dataSource);
+    }
+
+    /**
+     * Inserts all records with one batch.
+     */
+    public void createAll(List<PumpJobTelemetry> records) {
+        getJdbcTemplate().execute((ConnectionCallback<Void>) con -> {
+            PreparedStatement pstmt = con.prepareStatement("INSERT INTO pump_job_telemetry (pump_id, ingredient_id, " +
+                    "kind, direction, started_at, planned_duration, actual_duration, ml_pumped, steps_made) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            for(PumpJobTelemetry record : records) {
+                pstmt.setLong(1, record.getPumpId());
+                if(record.getIngredientId() != null) {
+                    pstmt.setLong(2, record.getIngredientId());
+                } else {
+                    pstmt.setNull(2, Types.INTEGER);
+                }
+                pstmt.setString(3, record.getKind().name());
+                pstmt.setString(4, record.getDirection().name());
+                pstmt.setLong(5, record.getStartedAt());
+                if(record.getPlannedDurationInMs() != null) {
+                    pstmt.setLong(6, record.getPlannedDurationInMs());
+                } else {
+                    pstmt.setNull(6, Types.INTEGER);
+                }
+                pstmt.setLong(7, record.getActualDurationInMs());
+                pstmt.setLong(8, record.getMlPumped());
+                pstmt.setLong(9, record.getStepsMade());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            return null;
+        });
+    }
+
+    /**
+     * @param from inclusive, in ms since epoch
+     * @param to exclusive, in ms since epoch
+     */
+    public List<PumpJobTelemetryAggregate> aggregateByPump(long from, long to) {
+        return getJdbcTemplate().execute((ConnectionCallback<List<PumpJobTelemetryAggregate>>) con -> {
+            PreparedStatement pstmt = con.prepareStatement("SELECT t.pump_id, " + AGGREGATES +
+                    "FROM pump_job_telemetry t " + TIME_RANGE +
+                    "GROUP BY t.pump_id ORDER BY t.pump_id");
+            pstmt.setLong(1, from);
+            pstmt.setLong(2, to);
+            ResultSet rs = pstmt.executeQuery();
+            List<PumpJobTelemetryAggregate> results = new ArrayList<>();
+            while (rs.next()) {
+                PumpJobTelemetryAggregate aggregate = parseAggregates(rs);
+                aggregate.setPumpId(rs.getLong("pump_id"));
+                results.add(aggregate);
+            }
+            return results;
+        });
+    }
+
+    /**
+     * @param pumpId only the runs of that pump or null for all pumps
+     */
+    public List<PumpJobTelemetryAggregate> aggregateByDay(long from, long to, Long pumpId) {
+        return getJdbcTemplate().execute((ConnectionCallback<List<PumpJobTelemetryAggregate>>) con -> {
+            PreparedStatement pstmt = con.prepareStatement("SELECT date(t.started_at / 1000, 'unixepoch', 'localtime') AS day, " +
+                    AGGREGATES + "FROM pump_job_telemetry t " + TIME_RANGE +
+                    "AND (? IS NULL OR t.pump_id = ?) " +
+                    "GROUP BY day ORDER BY day");
+            pstmt.setLong(1, from);
+            pstmt.setLong(2, to);
+            if(pumpId != null) {
+                pstmt.setLong(3, pumpId);
+                pstmt.setLong(4, pumpId);
+            } else {
+                pstmt.setNull(3, Types.INTEGER);
+                pstmt.setNull(4, Types.INTEGER);
+            }
+            ResultSet rs = pstmt.executeQuery();
+            List<PumpJobTelemetryAggregate> results = new ArrayList<>();
+            while (rs.next()) {
+                PumpJobTelemetryAggregate aggregate = parseAggregates(rs);
+                aggregate.setDay(rs.getString("day"));
+                results.add(aggregate);
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Runs without an ingredient (e.g. cleaning) are aggregated with an ingredient id of null.
+     */
+    public List<PumpJobTelemetryAggregate> aggregateByIngredient(long from, long to) {
+        return getJdbcTemplate().execute((ConnectionCallback<List<PumpJobTelemetryAggregate>>) con -> {
+            PreparedStatement pstmt = con.prepareStatement("SELECT t.ingredient_id, i.name AS ingredient_name, " +
+                    AGGREGATES + "FROM pump_job_telemetry t " +
+                    "LEFT JOIN ingredients i ON i.id = t.ingredient_id " + TIME_RANGE +
+                    "GROUP BY t.ingredient_id ORDER BY ml_pumped DESC");
+            pstmt.setLong(1, from);
+            pstmt.setLong(2, to);
+            ResultSet rs = pstmt.executeQuery();
+            List<PumpJobTelemetryAggregate> results = new ArrayList<>();
+            while (rs.next()) {
+                PumpJobTelemetryAggregate aggregate = parseAggregates(rs);
+                long ingredientId = rs.getLong("ingredient_id");
+                if(!rs.wasNull()) {
+                    aggregate.setIngredientId(ingredientId);
+                }
+                aggregate.setIngredientName(rs.getString("ingredient_name"));
+                results.add(aggregate);
+            }
+            return results;
+        });
+    }
+
+    private PumpJobTelemetryAggregate parseAggregates(ResultSet rs) throws SQLException {
+        PumpJobTelemetryAggregate aggregate = new PumpJobTelemetryAggregate();
+        aggregate.setRuns(rs.getLong("runs"));
+        aggregate.setRunTimeInMs(rs.getLong("run_time"));
+        aggregate.setPlannedRunTimeInMs(rs.getLong("planned_run_time"));
+        aggregate.setMlPumped(rs.getLong("ml_pumped"));
+        aggregate.setStepsMade(rs.getLong("steps_made"));
+        aggregate.setLastRunAt(rs.getLong("last_run_at"));
+        return aggregate;
+    }
+}
@@ -31,8 +31,8 @@ public class PumpRepository extends JdbcDaoSupport {
             PreparedStatement pstmt = con.prepareStatement("INSERT INTO pumps (dtype, name, " +
                     "completed, tube_capacity, current_ingredient_id, filling_level_in_ml, " +
                     "is_pumped_up, oo_pin_board, oo_pin_nr, time_per_cl_in_ms, is_power_state_high, acceleration, " +
-                    "step_pin_board, step_pin_nr, enable_pin_board, enable_pin_nr, steps_per_cl, max_steps_per_second) VALUES " +
-                    "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+                    "step_pin_board, step_pin_nr, enable_pin_board, enable_pin_nr, steps_per_cl, max_steps_per_second, " +
+                    "power_consumption_in_ma, cut_off_lag_in_ms) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
             setParameters(pump, pstmt);
             pstmt.execute();
             ResultSet rs = pstmt.getGeneratedKeys();
@@ -50,9 +50,25 @@ public class PumpRepository extends JdbcDaoSupport {
                     "completed = ?, tube_capacity = ?, current_ingredient_id = ?, " +
                     "filling_level_in_ml = ?, is_pumped_up = ?, oo_pin_board = ?, oo_pin_nr = ?, time_per_cl_in_ms = ?, " +
                     "is_power_state_high = ?, acceleration = ?, step_pin_board = ?, step_pin_nr = ?, enable_pin_board = ?, " +
-                    "enable_pin_nr = ?, steps_per_cl = ?, max_steps_per_second = ? WHERE id = ?");
+                    "enable_pin_nr = ?, steps_per_cl = ?, max_steps_per_second = ?, power_consumption_in_ma = ?, " +
+                    "cut_off_lag_in_ms = ? WHERE id = ?");
             setParameters(pump, pstmt);
-            pstmt.setLong(19, pump.getId());
+            pstmt.setLong(21, pump.getId());
+            return pstmt.executeUpdate() != 0;
+        });
+    }
+
+    /**
+     * Only updates the parameters that get learned by dosing the valve.
+     */
+    public boolean updateValveModel(long valveId, long timePerClInMs, long cutOffLagInMs) {
+        return getJdbcTemplate().execute((ConnectionCallback<Boolean>) con -> {
+            PreparedStatement pstmt = con.prepareStatement("UPDATE pumps SET time_per_cl_in_ms = ?, " +
+                    "cut_off_lag_in_ms = ? WHERE id = ? AND dtype = ?");
+            pstmt.setLong(1, timePerClInMs);
+            pstmt.setLong(2, cutOffLagInMs);
+            pstmt.setLong(3, valveId);
+            pstmt.setString(4, Valve.class.getAnnotation(DiscriminatorValue.class).value());
             return pstmt.executeUpdate() != 0;
         });
     }
@@ -131,6 +147,7 @@ public class PumpRepository extends JdbcDaoSupport {
         pstmt.setObject(5, pump.getCurrentIngredientId());
         pstmt.setObject(6, pump.getFillingLevelInMl());
         pstmt.setBoolean(7, pump.isPumpedUp());
+        pstmt.setObject(19, pump.getPowerConsumptionInMa());
         if(pump instanceof OnOffPump onOffPump) {
             if(onOffPump.getPin() != null) {
                 pstmt.setObject(8, onOffPump.getPin().getBoardId());
@@ -146,6 +163,11 @@ public class PumpRepository extends JdbcDaoSupport {
             } else {
                 pstmt.setNull(10, Types.INTEGER);
             }
+            if(onOffPump instanceof Valve valve) {
+                pstmt.setObject(20, valve.getCutOffLagInMs());
+            } else {
+                pstmt.setNull(20, Types.INTEGER);
+            }
             pstmt.setObject(11, onOffPump.isPowerStateHigh());
             pstmt.setNull(12, Types.INTEGER);
             pstmt.setNull(13, Types.INTEGER);
@@ -177,6 +199,7 @@ public class PumpRepository extends JdbcDaoSupport {
             }
             pstmt.setObject(17, stepperPump.getStepsPerCl());
             pstmt.setObject(18, stepperPump.getMaxStepsPerSecond());
+            pstmt.setNull(20, Types.INTEGER);
         } else {
             throw new IllegalArgumentException("Unknown Pump type: " + pump.getClass().getName());
         }
@@ -196,6 +219,7 @@ public class PumpRepository extends JdbcDaoSupport {
             } else {
                 Valve valve = new Valve();
                 valve.setTimePerClInMs((Integer) rs.getObject("time_per_cl_in_ms"));
+                valve.setCutOffLagInMs(rs.getLong("cut_off_lag_in_ms"));
                 onOffPump = valve;
             }
             long boardId = rs.getLong("oo_pin_board");
@@ -236,6 +260,7 @@ public class PumpRepository extends JdbcDaoSupport {
         }
         pump.setFillingLevelInMl((Integer) rs.getObject("filling_level_in_ml"));
         pump.setPumpedUp(rs.getBoolean("is_pumped_up"));
+        pump.setPowerConsumptionInMa((Integer) rs.getObject("power_consumption_in_ma"));
         return pump;
     }
 }
@@ -0,0 +1,134 @@
+package net.alex9849.cocktailpi.repository;
+
+import jakarta.annotation.PostConstruct;
+import net.alex9849.cocktailpi.model.Station;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.support.JdbcDaoSupport;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.*;
+
+@Component
+public class StationRepository extends JdbcDaoSupport {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @PostConstruct
+    private void initialize() {
+        setDataSource(dataSource);
+    }
+
+    public List<Station> findAll() {
+        return getJdbcTemplate().execute((ConnectionCallback<List<Station>>) con -> {
+            PreparedStatement pstmt = con.prepareStatement("SELECT * FROM stations ORDER BY name");
+            ResultSet rs = pstmt.executeQuery();
+            List<Station> results = new ArrayList<>();
+            while (rs.next()) {
+                results.add(parseRs(con, rs));
+            }
+            return results;
+        });
+    }
+
+    public Optional<Station> findById(long id) {
+        return getJdbcTemplate().execute((ConnectionCallback<Optional<Station>>) con -> {
+            PreparedStatement pstmt = con.prepareStatement("SELECT * FROM stations WHERE id = ?");
+            pstmt.setLong(1, id);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return Optional.of(parseRs(con, rs));
+            }
+            return Optional.empty();
+        });
+    }
+
+    public Set<Long> findIdsByName(String name) {
+        return getJdbcTemplate().execute((ConnectionCallback<Set<Long>>) con -> {
+            PreparedStatement pstmt = con.prepareStatement("SELECT id FROM stations WHERE name = ?");
+            pstmt.setString(1, name);
+            return DbUtils.executeGetIdsPstmt(pstmt);
+        });
+    }
+
+    /**
+     * @return the id of the station that the pump belongs to
+     */
+    public Optional<Long> findStationIdByPumpId(long pumpId) {
+        return getJdbcTemplate().execute((ConnectionCallback<Optional<Long>>) con -> {
+            PreparedStatement pstmt = con.prepareStatement("SELECT station_id FROM station_pumps WHERE pump_id = ?");
+            pstmt.setLong(1, pumpId);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return Optional.of(rs.getLong(1));
+            }
+            return Optional.empty();
+        });
+    }
+
+    public Station create(Station station) {
+        return getJdbcTemplate().execute((ConnectionCallback<Station>) con -> {
+            PreparedStatement pstmt = con.prepareStatement("INSERT INTO stations (name, glass_position) VALUES (?, ?)",
+                    Statement.RETURN_GENERATED_KEYS);
+            pstmt.setString(1, station.getName());
+            pstmt.setString(2, station.getGlassPosition());
+            pstmt.execute();
+            ResultSet rs = pstmt.getGeneratedKeys();
+            if (!rs.next()) {
+                throw new IllegalStateException("Error saving station");
+            }
+            station.setId(rs.getLong(1));
+            setPumps(con, station);
+            return station;
+        });
+    }
+
+    public boolean update(Station station) {
+        return getJdbcTemplate().execute((ConnectionCallback<Boolean>) con -> {
+            PreparedStatement pstmt = con.prepareStatement("UPDATE stations SET name = ?, glass_position = ? WHERE id = ?");
+            pstmt.setString(1, station.getName());
+            pstmt.setString(2, station.getGlassPosition());
+            pstmt.setLong(3, station.getId());
+            if(pstmt.executeUpdate() == 0) {
+                return false;
+            }
+            setPumps(con, station);
+            return true;
+        });
+    }
+
+    public boolean delete(long id) {
+        return getJdbcTemplate().execute((ConnectionCallback<Boolean>) con -> {
+            PreparedStatement pstmt = con.prepareStatement("DELETE FROM stations WHERE id = ?");
+            pstmt.setLong(1, id);
+            return pstmt.executeUpdate() != 0;
+        });
+    }
+
+    private void setPumps(Connection con, Station station) throws SQLException {
+        PreparedStatement delPstmt = con.prepareStatement("DELETE FROM station_pumps WHERE station_id = ?");
+        delPstmt.setLong(1, station.getId());
+        delPstmt.executeUpdate();
+        PreparedStatement insertPstmt = con.prepareStatement("INSERT INTO station_pumps (pump_id, station_id) VALUES (?, ?)");
+        for(Long pumpId : station.getPumpIds()) {
+            insertPstmt.setLong(1, pumpId);
+            insertPstmt.setLong(2, station.getId());
+            insertPstmt.addBatch();
+        }
+        insertPstmt.executeBatch();
+    }
+
+    private Station parseRs(Connection con, ResultSet rs) throws SQLException {
+        Station station = new Station();
+        station.setId(rs.getLong("id"));
+        station.setName(rs.getString("name"));
+        station.setGlassPosition(rs.getString("glass_position"));
+        PreparedStatement pstmt = con.prepareStatement("SELECT pump_id FROM station_pumps WHERE station_id = ?");
+        pstmt.setLong(1, station.getId());
+        station.setPumpIds(DbUtils.executeGetIdsPstmt(pstmt));
+        return station;
+    }
+}
@@ -4,9 +4,14 @@ import net.alex9849.cocktailpi.model.eventaction.*;
 import net.alex9849.cocktailpi.payload.dto.eventaction.*;
 import net.alex9849.cocktailpi.repository.EventActionExecutionGroupRepository;
 import net.alex9849.cocktailpi.repository.EventActionRepository;
+import net.alex9849.cocktailpi.service.executor.ExecutionLanes;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
@@ -15,7 +20,6 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 @Service
@@ -23,7 +27,7 @@ import java.util.concurrent.Future;
 public class EventService {
     private final Map<Long, RunningAction> latestRunningActionInstancesByActionId = new HashMap<>();
     private final Map<Long, RunningAction> runningActionsByRunId = new HashMap<>();
-    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ExecutorService executor = ExecutionLanes.background();
 
     @Autowired
     private WebSocketService webSocketService;
@@ -52,7 +56,7 @@ public class EventService {
                 EventActionInformation eai = new EventActionInformation();
                 eai.setEventActionId(runningAction.getEventAction().getId());
                 eai.setRunId(runningAction.getRunId());
-                eai.setHasLog(!runningAction.getLog().isEmpty());
+                eai.setHasLog(runningAction.getLogSize() > 0);
                 eai.setStatus(runningActionsByRunId.containsKey(runningAction.getRunId())
                         ? EventActionInformation.Status.RUNNING : EventActionInformation.Status.STOPPED);
                 information.add(eai);
@@ -68,6 +72,42 @@ public class EventService {
         return latestRunningActionInstancesByActionId.get(actionId).getLog();
     }
 
+    /**
+     * Returns a page of the log entries of the latest run of an action that are still retained.
+     * Page 0 contains the oldest retained entries.
+     */
+    public Page<RunningAction.LogEntry> getEventActionLog(long actionId, int page, int pageSize) {
+        page = Math.max(page, 0);
+        pageSize = Math.max(1, Math.min(pageSize, RunningAction.LOG_CAPACITY));
+        RunningAction runningAction;
+        synchronized (runningActionsByRunId) {
+            runningAction = latestRunningActionInstancesByActionId.get(actionId);
+        }
+        PageRequest pageRequest = PageRequest.of(page, pageSize);
+        if(runningAction == null) {
+            return new PageImpl<>(new ArrayList<>(), pageRequest, 0);
+        }
+        synchronized (runningAction) {
+            long firstRetained = runningAction.getFirstRetainedLogIndex();
+            long retained = runningAction.getLogSize() - firstRetained;
+            List<RunningAction.LogEntry> entries = runningAction.getLog(firstRetained + pageRequest.getOffset(), pageSize);
+            return new PageImpl<>(entries, pageRequest, retained);
+        }
+    }
+
+    /**
+     * Log entries of running actions are broadcast in batches to not flood the websocket
+     * with one message per line of output.
+     */
+    @Scheduled(fixedDelay = 100)
+    void flushEventActionLogs() {
+        List<RunningAction> toFlush;
+        synchronized (runningActionsByRunId) {
+            toFlush = new ArrayList<>(latestRunningActionInstancesByActionId.values());
+        }
+        toFlush.forEach(RunningAction::flushLog);
+    }
+
     /**
      * Cancels all running actions that have one or more ExecutionGroups
      * @param executionGroups A Set of ExecutionGroups. Function won't cancel anything if empty
@@ -130,7 +170,7 @@ public class EventService {
                 runningAction.subscribeToLog(x -> {
                     webSocketService.broadcastEventActionLog(action.getId(), x);
                     // On first log entry broadcast running actions information
-                    if(!x.isEmpty() && x.size() == runningAction.getLog().size()) {
+                    if(!x.isEmpty() && x.get(0).getIndex() == 0) {
                         webSocketService.broadcastRunningEventActionsStatus(getRunningActionsInformation());
                     }
                 });
@@ -142,9 +182,11 @@ public class EventService {
                         //Wait till runningaction is constructed completely
                         syncLatch.await();
                         action.trigger(runningAction);
+                        runningAction.flushLog();
                         cancelRunningAction(runningAction.getRunId());
                     } catch (Exception e) {
                         e.printStackTrace();
+                        runningAction.flushLog();
                         cancelRunningAction(runningAction.getRunId());
                     }
                 });
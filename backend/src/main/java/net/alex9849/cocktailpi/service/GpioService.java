@@ -8,7 +8,6 @@ import net.alex9849.cocktailpi.payload.dto.gpio.I2CGpioBoardDto;
 import net.alex9849.cocktailpi.payload.dto.gpio.LocalGpioBoardDto;
 import net.alex9849.cocktailpi.payload.dto.gpio.PinDto;
 import net.alex9849.cocktailpi.repository.GpioRepository;
-import net.alex9849.cocktailpi.service.pumps.PumpLockService;
 import net.alex9849.cocktailpi.service.pumps.PumpMaintenanceService;
 import net.alex9849.cocktailpi.utils.PinUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -31,9 +30,6 @@ public class GpioService {
     @Autowired
     private PumpMaintenanceService maintenanceService;
 
-    @Autowired
-    private PumpLockService pumpLockService;
-
     @Autowired
     private PinUtils pinUtils;
 
@@ -75,47 +71,45 @@ public class GpioService {
         return gpioRepository.createBoard(gpioBoard);
     }
 
+    /**
+     * The caller needs to hold the global lock.
+     */
     public GpioBoard updateGpioBoard(GpioBoard gpioBoard) {
-        pumpLockService.testAndAcquireGlobal(this);
-        try {
-            Optional<GpioBoard> oOldGpioBoard = gpioRepository.findById(gpioBoard.getId());
-            if(oOldGpioBoard.isEmpty()) {
-                throw new IllegalArgumentException("GpioBoard with id " + gpioBoard.getId() + " doesn't exist.");
-            }
-            GpioBoard oldGpioBoard = oOldGpioBoard.get();
-            if(oldGpioBoard.getClass() != gpioBoard.getClass()) {
-                throw new IllegalArgumentException("GpioBoard type can't be changed afterwards!");
-            }
+        Optional<GpioBoard> oOldGpioBoard = gpioRepository.findById(gpioBoard.getId());
+        if(oOldGpioBoard.isEmpty()) {
+            throw new IllegalArgumentException("GpioBoard with id " + gpioBoard.getId() + " doesn't exist.");
+        }
+        GpioBoard oldGpioBoard = oOldGpioBoard.get();
+        if(oldGpioBoard.getClass() != gpioBoard.getClass()) {
+            throw new IllegalArgumentException("GpioBoard type can't be changed afterwards!");
+        }
 
-            Optional<GpioBoard> withNameBoard = gpioRepository.getBoardsByName(gpioBoard.getName());
-            if(withNameBoard.isPresent() && withNameBoard.get().getId() != gpioBoard.getId()) {
-                throw new IllegalArgumentException("A GpioBoard with that name already exists!");
-            }
+        Optional<GpioBoard> withNameBoard = gpioRepository.getBoardsByName(gpioBoard.getName());
+        if(withNameBoard.isPresent() && withNameBoard.get().getId() != gpioBoard.getId()) {
+            throw new IllegalArgumentException("A GpioBoard with that name already exists!");
+        }
 
-            if(gpioBoard instanceof LocalGpioBoard) {
-                // OK
-            } else if (gpioBoard instanceof I2CGpioBoard i2CGpioBoard) {
-                I2CGpioBoard oldI2CGpioBoard = (I2CGpioBoard) oldGpioBoard;
-                if(oldI2CGpioBoard.getBoardModel() != i2CGpioBoard.getBoardModel()) {
-                    throw new IllegalArgumentException("GpioBoard BoardModel can't be changed afterwards!");
-                }
-                Optional<PinResource> oPinResource = getPinResourceByI2CAddress(oldI2CGpioBoard.getI2cAddress());
-                if(oPinResource.isPresent() && oPinResource.get().getId() != gpioBoard.getId()) {
-                    if(oPinResource.isPresent()) {
-                        throw new IllegalArgumentException("I2C-Address already in use!");
-                    }
-                    pinUtils.shutdownI2CAddress(i2CGpioBoard.getI2cAddress());
+        if(gpioBoard instanceof LocalGpioBoard) {
+            // OK
+        } else if (gpioBoard instanceof I2CGpioBoard i2CGpioBoard) {
+            I2CGpioBoard oldI2CGpioBoard = (I2CGpioBoard) oldGpioBoard;
+            if(oldI2CGpioBoard.getBoardModel() != i2CGpioBoard.getBoardModel()) {
+                throw new IllegalArgumentException("GpioBoard BoardModel can't be changed afterwards!");
+            }
+            Optional<PinResource> oPinResource = getPinResourceByI2CAddress(oldI2CGpioBoard.getI2cAddress());
+            if(oPinResource.isPresent() && oPinResource.get().getId() != gpioBoard.getId()) {
+                if(oPinResource.isPresent()) {
+                    throw new IllegalArgumentException("I2C-Address already in use!");
                 }
-
-            } else {
-                throw new IllegalStateException("Unknown board type: " + gpioBoard.getClass());
+                pinUtils.shutdownI2CAddress(i2CGpioBoard.getI2cAddress());
             }
-            gpioRepository.updateBoard(gpioBoard);
-            reloadGlobalPins();
-            return gpioRepository.findById(gpioBoard.getId()).orElse(null);
-        } finally {
-            pumpLockService.releaseGlobal(this);
+
+        } else {
+            throw new IllegalStateException("Unknown board type: " + gpioBoard.getClass());
         }
+        gpioRepository.updateBoard(gpioBoard);
+        reloadGlobalPins();
+        return gpioRepository.findById(gpioBoard.getId()).orElse(null);
     }
 
     private void reloadGlobalPins() {
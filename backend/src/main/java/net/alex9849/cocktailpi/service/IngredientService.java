@@ -6,6 +6,7 @@ import net.alex9849.cocktailpi.payload.dto.recipe.ingredient.IngredientDto;
 import net.alex9849.cocktailpi.payload.dto.recipe.ingredient.IngredientGroupDto;
 import net.alex9849.cocktailpi.payload.dto.recipe.ingredient.ManualIngredientDto;
 import net.alex9849.cocktailpi.repository.IngredientRepository;
+import net.alex9849.cocktailpi.service.pumps.PlanCache;
 import net.alex9849.cocktailpi.service.pumps.PumpDataService;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,6 +26,9 @@ public class IngredientService {
     @Autowired
     private PumpDataService pumpService;
 
+    @Autowired
+    private PlanCache planCache;
+
     public Ingredient getIngredient(long id) {
         return ingredientRepository.findById(id).orElse(null);
     }
@@ -142,6 +146,7 @@ public class IngredientService {
         AddableIngredient aIngredient = (AddableIngredient) ingredient;
         aIngredient.setInBar(inBar);
         ingredientRepository.update(aIngredient);
+        planCache.invalidate();
     }
 
     public void setImage(long ingredientId, byte[] image) {
@@ -164,6 +169,7 @@ public class IngredientService {
         }
         try {
             ingredientRepository.update(ingredient);
+            planCache.invalidate();
         } catch (UncategorizedSQLException e) {
             if(e.getMessage().contains("Illegal cycle detected")) {
                 throw new IllegalArgumentException("Illegal cycle detected");
@@ -181,11 +187,15 @@ public class IngredientService {
         if(ingredient instanceof AddableIngredient) {
             ((AddableIngredient) ingredient).setInBar(false);
         }
-        return ingredientRepository.create(ingredient);
+        Ingredient created = ingredientRepository.create(ingredient);
+        planCache.invalidate();
+        return created;
     }
 
     public boolean deleteIngredient(long id) {
-        return ingredientRepository.delete(id);
+        boolean deleted = ingredientRepository.delete(id);
+        planCache.invalidate();
+        return deleted;
     }
 
     public List<Ingredient> getGroupChildren(long id) {
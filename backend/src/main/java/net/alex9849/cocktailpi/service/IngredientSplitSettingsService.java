@@ -0,0 +1,35 @@
+package net.alex9849.cocktailpi.service;
+
+import net.alex9849.cocktailpi.model.system.settings.IngredientSplitMode;
+import net.alex9849.cocktailpi.repository.OptionsRepository;
+import net.alex9849.cocktailpi.service.pumps.PlanCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Objects;
+
+@Service
+@Transactional
+public class IngredientSplitSettingsService {
+    private static final String REPO_KEY_INGREDIENT_SPLIT_MODE = "Ingredient_Split_Mode";
+
+    @Autowired
+    private OptionsRepository optionsRepository;
+
+    @Autowired
+    private PlanCache planCache;
+
+    public IngredientSplitMode getIngredientSplitMode() {
+        return optionsRepository.getOption(REPO_KEY_INGREDIENT_SPLIT_MODE)
+                .map(IngredientSplitMode::valueOf)
+                .orElse(IngredientSplitMode.SEQUENTIAL);
+    }
+
+    public IngredientSplitMode setIngredientSplitMode(IngredientSplitMode mode) {
+        Objects.requireNonNull(mode);
+        optionsRepository.setOption(REPO_KEY_INGREDIENT_SPLIT_MODE, mode.name());
+        planCache.invalidate();
+        return getIngredientSplitMode();
+    }
+}
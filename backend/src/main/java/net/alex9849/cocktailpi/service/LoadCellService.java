@@ -4,7 +4,6 @@ import net.alex9849.cocktailpi.model.LoadCell;
 import net.alex9849.cocktailpi.model.gpio.PinResource;
 import net.alex9849.cocktailpi.payload.dto.system.settings.LoadCellDto;
 import net.alex9849.cocktailpi.repository.OptionsRepository;
-import net.alex9849.cocktailpi.service.pumps.PumpLockService;
 import net.alex9849.cocktailpi.utils.PinUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -22,9 +21,6 @@ public class LoadCellService {
     private static final String REPO_KEY_LOAD_CELL_REFERENCE_VALUE = "LC_REF_VALUE";
     private static final String REPO_KEY_LOAD_CELL_REFERENCE_WEIGHT = "LC_REF_WEIGHT";
 
-    @Autowired
-    private PumpLockService lockService;
-
     @Autowired
     private OptionsRepository optionsRepository;
 
@@ -40,12 +36,14 @@ public class LoadCellService {
             throw new IllegalStateException("Load cell not configured!");
         }
         try {
-            loadCell.getHX711().calibrateEmpty(7);
+            loadCell.setZeroForceValue(loadCell.getSampler().runExclusive(hx711 -> {
+                hx711.calibrateEmpty(7);
+                return hx711.emptyValue;
+            }));
         } catch (InterruptedException e) {
             throw new RuntimeException("Reading load cell has been interrupted!", e);
         }
-        loadCell.setZeroForceValue(getLoadCell().getHX711().emptyValue);
-        setLoadCell(loadCell);
+        saveCalibration(loadCell);
         return getLoadCell();
     }
 
@@ -55,13 +53,15 @@ public class LoadCellService {
             throw new IllegalStateException("Load cell not configured!");
         }
         try {
-            loadCell.getHX711().calibrateWeighted(referenceWeight, 7);
+            loadCell.setReferenceForceValue(loadCell.getSampler().runExclusive(hx711 -> {
+                hx711.calibrateWeighted(referenceWeight, 7);
+                return hx711.calibrationValue;
+            }));
         } catch (InterruptedException e) {
             throw new RuntimeException("Reading load cell has been interrupted!", e);
         }
-        loadCell.setReferenceForceValue(getLoadCell().getHX711().calibrationValue);
         loadCell.setReferenceForceValueWeight(referenceWeight);
-        setLoadCell(loadCell);
+        saveCalibration(loadCell);
         return getLoadCell();
     }
 
@@ -74,52 +74,65 @@ public class LoadCellService {
             throw new IllegalStateException("Load cell not calibrated!");
         }
         try {
-            return loadCell.getHX711().read(7);
+            //The sampler filters the signal continuously. Reading doesn't need to average samples.
+            return loadCell.getSampler().readFilteredGrams();
         } catch (InterruptedException e) {
             throw new RuntimeException("Reading load cell has been interrupted!", e);
         }
     }
 
+    /**
+     * The caller needs to hold the global lock.
+     */
     public void setLoadCell(LoadCell loadCell) {
-        if (!lockService.testAndAcquireGlobal(this)) {
-            throw new IllegalArgumentException("Some pumps are currently occupied!");
-        }
-        try {
-            optionsRepository.setOption(REPO_KEY_LOAD_CELL_ENABLED, Boolean.valueOf(loadCell != null).toString());
-            if(loadCell == null) {
-                optionsRepository.delOption(REPO_KEY_LOAD_CELL_CLK_PIN, false);
-                optionsRepository.delOption(REPO_KEY_LOAD_CELL_DT_PIN, false);
-                optionsRepository.delOption(REPO_KEY_LOAD_CELL_ZERO_VALUE, false);
-                optionsRepository.delOption(REPO_KEY_LOAD_CELL_REFERENCE_VALUE, false);
-                optionsRepository.delOption(REPO_KEY_LOAD_CELL_REFERENCE_WEIGHT, false);
-            } else {
-                LoadCell old = getLoadCell();
-                if(old != null) {
-                    loadCell.setZeroForceValue(old.getZeroForceValue());
-                    loadCell.setReferenceForceValue(old.getReferenceForceValue());
-                    loadCell.setReferenceForceValueWeight(old.getReferenceForceValueWeight());
-                }
+        optionsRepository.setOption(REPO_KEY_LOAD_CELL_ENABLED, Boolean.valueOf(loadCell != null).toString());
+        if(loadCell == null) {
+            optionsRepository.delOption(REPO_KEY_LOAD_CELL_CLK_PIN, false);
+            optionsRepository.delOption(REPO_KEY_LOAD_CELL_DT_PIN, false);
+            optionsRepository.delOption(REPO_KEY_LOAD_CELL_ZERO_VALUE, false);
+            optionsRepository.delOption(REPO_KEY_LOAD_CELL_REFERENCE_VALUE, false);
+            optionsRepository.delOption(REPO_KEY_LOAD_CELL_REFERENCE_WEIGHT, false);
+        } else {
+            LoadCell old = getLoadCell();
+            if(old != null) {
+                loadCell.setZeroForceValue(old.getZeroForceValue());
+                loadCell.setReferenceForceValue(old.getReferenceForceValue());
+                loadCell.setReferenceForceValueWeight(old.getReferenceForceValueWeight());
+            }
 
-                PinUtils.failIfPinOccupiedOrDoubled(PinResource.Type.LOAD_CELL, null, loadCell.getClkPin(), loadCell.getDtPin());
-                optionsRepository.setPinOption(REPO_KEY_LOAD_CELL_CLK_PIN, loadCell.getClkPin());
-                optionsRepository.setPinOption(REPO_KEY_LOAD_CELL_DT_PIN, loadCell.getDtPin());
-                optionsRepository.setOption(REPO_KEY_LOAD_CELL_ZERO_VALUE, String.valueOf(loadCell.getZeroForceValue()));
-                if(loadCell.getReferenceForceValue() != null) {
-                    optionsRepository.setOption(REPO_KEY_LOAD_CELL_REFERENCE_VALUE, String.valueOf(loadCell.getReferenceForceValue()));
-                }
-                if(loadCell.getReferenceForceValueWeight() != null) {
-                    optionsRepository.setOption(REPO_KEY_LOAD_CELL_REFERENCE_WEIGHT, String.valueOf(loadCell.getReferenceForceValueWeight()));
-                }
+            PinUtils.failIfPinOccupiedOrDoubled(PinResource.Type.LOAD_CELL, null, loadCell.getClkPin(), loadCell.getDtPin());
+            optionsRepository.setPinOption(REPO_KEY_LOAD_CELL_CLK_PIN, loadCell.getClkPin());
+            optionsRepository.setPinOption(REPO_KEY_LOAD_CELL_DT_PIN, loadCell.getDtPin());
+            optionsRepository.setOption(REPO_KEY_LOAD_CELL_ZERO_VALUE, String.valueOf(loadCell.getZeroForceValue()));
+            if(loadCell.getReferenceForceValue() != null) {
+                optionsRepository.setOption(REPO_KEY_LOAD_CELL_REFERENCE_VALUE, String.valueOf(loadCell.getReferenceForceValue()));
             }
-            checkedIfLoadCellPersisted = false;
-            reloadLoadCell();
-            pumpService.broadCastPumpLayout();
-        } finally {
-            lockService.releaseGlobal(this);
+            if(loadCell.getReferenceForceValueWeight() != null) {
+                optionsRepository.setOption(REPO_KEY_LOAD_CELL_REFERENCE_WEIGHT, String.valueOf(loadCell.getReferenceForceValueWeight()));
+            }
+        }
+        checkedIfLoadCellPersisted = false;
+        reloadLoadCell();
+        pumpService.broadCastPumpLayout();
+    }
+
+    /**
+     * The calibrated load cell keeps sampling. Only its calibration gets persisted.
+     */
+    private void saveCalibration(LoadCell loadCell) {
+        optionsRepository.setOption(REPO_KEY_LOAD_CELL_ZERO_VALUE, String.valueOf(loadCell.getZeroForceValue()));
+        if(loadCell.getReferenceForceValue() != null) {
+            optionsRepository.setOption(REPO_KEY_LOAD_CELL_REFERENCE_VALUE, String.valueOf(loadCell.getReferenceForceValue()));
+        }
+        if(loadCell.getReferenceForceValueWeight() != null) {
+            optionsRepository.setOption(REPO_KEY_LOAD_CELL_REFERENCE_WEIGHT, String.valueOf(loadCell.getReferenceForceValueWeight()));
         }
     }
 
     private void reloadLoadCell() {
+        if(this.loadCell != null) {
+            this.loadCell.stopSampling();
+        }
         boolean enabled = Boolean.parseBoolean(optionsRepository.getOption(REPO_KEY_LOAD_CELL_ENABLED).orElse(null));
         if(!enabled) {
             loadCell = null;
@@ -0,0 +1,70 @@
+package net.alex9849.cocktailpi.service;
+
+import net.alex9849.cocktailpi.model.system.settings.PowerLimitSettings;
+import net.alex9849.cocktailpi.payload.dto.system.settings.PowerLimitSettingsDto;
+import net.alex9849.cocktailpi.repository.OptionsRepository;
+import net.alex9849.cocktailpi.service.pumps.PlanCache;
+import net.alex9849.cocktailpi.service.pumps.PowerBudget;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+@Service
+@Transactional
+public class PowerLimitSettingsService {
+    private static final String REPO_KEY_PL_ENABLE = "PL_Enable";
+    private static final String REPO_KEY_PL_MAX_CONCURRENT_MOTORS = "PL_Max_Concurrent_Motors";
+    private static final String REPO_KEY_PL_POWER_BUDGET = "PL_Power_Budget";
+
+    @Autowired
+    private OptionsRepository optionsRepository;
+
+    @Autowired
+    private PlanCache planCache;
+
+    public PowerLimitSettings getPowerLimitSettings() {
+        PowerLimitSettings pls = new PowerLimitSettings();
+        pls.setEnable(Boolean.parseBoolean(optionsRepository.getOption(REPO_KEY_PL_ENABLE).orElse(null)));
+        if(pls.isEnable()) {
+            PowerLimitSettings.Config cfg = new PowerLimitSettings.Config();
+            cfg.setMaxConcurrentMotors(Integer.parseInt(optionsRepository.getOption(REPO_KEY_PL_MAX_CONCURRENT_MOTORS).orElse("0")));
+            cfg.setPowerBudgetInMa(Integer.parseInt(optionsRepository.getOption(REPO_KEY_PL_POWER_BUDGET).orElse("0")));
+            pls.setSettings(cfg);
+        }
+        return pls;
+    }
+
+    public PowerLimitSettings setPowerLimitSettings(PowerLimitSettings settings) {
+        optionsRepository.setOption(REPO_KEY_PL_ENABLE, Boolean.toString(settings.isEnable()));
+        if(settings.isEnable()) {
+            PowerLimitSettings.Config cfg = settings.getSettings();
+            optionsRepository.setOption(REPO_KEY_PL_MAX_CONCURRENT_MOTORS, String.valueOf(cfg.getMaxConcurrentMotors()));
+            optionsRepository.setOption(REPO_KEY_PL_POWER_BUDGET, String.valueOf(cfg.getPowerBudgetInMa()));
+        } else {
+            optionsRepository.delOption(REPO_KEY_PL_MAX_CONCURRENT_MOTORS, false);
+            optionsRepository.delOption(REPO_KEY_PL_POWER_BUDGET, false);
+        }
+        planCache.invalidate();
+        PowerLimitSettings newSettings = getPowerLimitSettings();
+        PowerBudget.getInstance().setPowerLimitSettings(newSettings);
+        return newSettings;
+    }
+
+    public PowerLimitSettings fromDto(PowerLimitSettingsDto.Duplex.Detailed dto) {
+        if(dto == null) {
+            return null;
+        }
+        PowerLimitSettings pls = new PowerLimitSettings();
+        pls.setEnable(dto.isEnable());
+        if(dto.isEnable()) {
+            if(dto.getSettings() == null) {
+                throw new IllegalArgumentException("Settings-Details are null!");
+            }
+            PowerLimitSettings.Config cfg = new PowerLimitSettings.Config();
+            cfg.setMaxConcurrentMotors(dto.getSettings().getMaxConcurrentMotors());
+            cfg.setPowerBudgetInMa(dto.getSettings().getPowerBudgetInMa());
+            pls.setSettings(cfg);
+        }
+        return pls;
+    }
+}
@@ -1,9 +1,14 @@
 package net.alex9849.cocktailpi.service;
 
+import net.alex9849.cocktailpi.model.Station;
 import net.alex9849.cocktailpi.model.cocktail.CocktailProgress;
 import net.alex9849.cocktailpi.model.pump.JobMetrics;
 import net.alex9849.cocktailpi.model.pump.Pump;
 import net.alex9849.cocktailpi.model.pump.PumpAdvice;
+import net.alex9849.cocktailpi.model.pump.PumpJobTelemetryAggregate;
+import net.alex9849.cocktailpi.model.pump.PumpLockInfo;
+import net.alex9849.cocktailpi.model.pump.PumpLockMetrics;
+import net.alex9849.cocktailpi.model.pump.StepTimingMetrics;
 import net.alex9849.cocktailpi.model.recipe.CocktailOrderConfiguration;
 import net.alex9849.cocktailpi.model.recipe.FeasibilityFactory;
 import net.alex9849.cocktailpi.model.recipe.Recipe;
@@ -14,12 +19,16 @@ import net.alex9849.cocktailpi.payload.dto.pump.PumpDto;
 import net.alex9849.cocktailpi.payload.dto.system.settings.ReversePumpSettingsDto;
 import net.alex9849.cocktailpi.service.pumps.CocktailOrderService;
 import net.alex9849.cocktailpi.service.pumps.PumpDataService;
+import net.alex9849.cocktailpi.service.pumps.PumpJobTelemetryService;
 import net.alex9849.cocktailpi.service.pumps.PumpLockService;
 import net.alex9849.cocktailpi.service.pumps.PumpMaintenanceService;
+import net.alex9849.cocktailpi.service.pumps.PumpsOccupiedException;
+import net.alex9849.cocktailpi.service.pumps.steptiming.StepTimingMonitor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class PumpService {
@@ -33,6 +42,9 @@ public class PumpService {
     @Autowired
     private PumpDataService dataService;
 
+    @Autowired
+    private PumpJobTelemetryService telemetryService;
+
     @Autowired
     private WebSocketService webSocketService;
 
@@ -59,7 +71,7 @@ public class PumpService {
 
     public Pump updatePump(Pump pump) {
         if (!lockService.testAndAcquirePumpLock(pump.getId(), dataService)) {
-            throw new IllegalArgumentException("Pumps are currently occupied!");
+            throw new PumpsOccupiedException("Pumps are currently occupied!");
         }
         try {
             Pump updatedPump = dataService.updatePump(pump);
@@ -72,10 +84,12 @@ public class PumpService {
 
     public void deletePump(long id) {
         if (!lockService.testAndAcquirePumpLock(id, dataService)) {
-            throw new IllegalArgumentException("Pumps are currently occupied!");
+            throw new PumpsOccupiedException("Pumps are currently occupied!");
         }
         try {
             dataService.deletePump(id);
+            StepTimingMonitor.getInstance().removePump(id);
+            maintenanceService.removePump(id);
             broadCastPumpLayout();
         } finally {
             lockService.releasePumpLock(id, dataService);
@@ -84,7 +98,7 @@ public class PumpService {
 
     public void runAllPumps() {
         if (!lockService.testAndAcquireGlobal(maintenanceService)) {
-            throw new IllegalArgumentException("Some pumps are currently occupied!");
+            throw new PumpsOccupiedException("Some pumps are currently occupied!");
         }
         maintenanceService.stopAllPumps();
         try {
@@ -114,7 +128,7 @@ public class PumpService {
 
     public long performPumpAdvice(Pump pump, PumpAdvice advice) {
         if (!lockService.testAndAcquirePumpLock(pump.getId(), maintenanceService)) {
-            throw new IllegalArgumentException("Pumps are currently occupied!");
+            throw new PumpsOccupiedException("Pumps are currently occupied!");
         }
         long jobId = maintenanceService.dispatchPumpJob(pump, advice,
                 () -> {
@@ -136,14 +150,82 @@ public class PumpService {
         return maintenanceService.getJobMetrics(id);
     }
 
+    public Map<Long, StepTimingMetrics> getStepTimingByPumpId() {
+        return StepTimingMonitor.getInstance().getMetricsByPumpId();
+    }
+
+    public Map<Integer, StepTimingMetrics> getStepTimingByCpu() {
+        return StepTimingMonitor.getInstance().getMetricsByCpu();
+    }
+
+    public void resetStepTiming() {
+        StepTimingMonitor.getInstance().reset();
+    }
+
+    public List<PumpLockInfo> getHeldPumpLocks() {
+        return lockService.getHeldLocks();
+    }
+
+    public List<PumpLockInfo> getRequestedPumpLocks() {
+        return lockService.getRequestedLocks();
+    }
+
+    public List<PumpLockMetrics> getPumpLockMetrics() {
+        return lockService.getMetrics();
+    }
+
+    public void resetPumpLockMetrics() {
+        lockService.resetMetrics();
+    }
+
+    /**
+     * @param from inclusive, in ms since epoch or null for no lower bound
+     * @param to exclusive, in ms since epoch or null for no upper bound
+     */
+    public List<PumpJobTelemetryAggregate> getTelemetryByPump(Long from, Long to) {
+        return telemetryService.getAggregatesByPump(from == null ? 0 : from, to == null ? Long.MAX_VALUE : to);
+    }
+
+    public List<PumpJobTelemetryAggregate> getTelemetryByDay(Long from, Long to, Long pumpId) {
+        return telemetryService.getAggregatesByDay(from == null ? 0 : from, to == null ? Long.MAX_VALUE : to, pumpId);
+    }
+
+    public List<PumpJobTelemetryAggregate> getTelemetryByIngredient(Long from, Long to) {
+        return telemetryService.getAggregatesByIngredient(from == null ? 0 : from, to == null ? Long.MAX_VALUE : to);
+    }
+
     public void orderCocktail(User user, Recipe recipe, CocktailOrderConfiguration orderConfiguration) {
-        if (!lockService.testAndAcquireGlobal(cocktailOrderService)) {
-            throw new IllegalArgumentException("Some pumps are currently occupied!");
+        orderCocktail(user, recipe, orderConfiguration, null, () -> {});
+    }
+
+    /**
+     * @param station the station that should produce the cocktail or null to use all pumps
+     * @param onFinish gets called after the cocktail has been finished or cancelled and the pumps have been released
+     */
+    public void orderCocktail(User user, Recipe recipe, CocktailOrderConfiguration orderConfiguration,
+                              Station station, Runnable onFinish) {
+        //Each production owns the locks of its pumps. Productions of other stations must not be able to release them.
+        Object lockOwner = PumpLockService.newOwner(station == null
+                ? "Cocktail production" : "Cocktail production of station " + station.getName());
+        Runnable releaseLocks;
+        if (station == null) {
+            if (!lockService.testAndAcquireGlobal(lockOwner)) {
+                throw new PumpsOccupiedException("Some pumps are currently occupied!");
+            }
+            releaseLocks = () -> lockService.releaseGlobal(lockOwner);
+        } else {
+            if (!lockService.testAndAcquirePumpLocks(station.getPumpIds(), lockOwner)) {
+                throw new PumpsOccupiedException("Some pumps of the station are currently occupied!");
+            }
+            releaseLocks = () -> lockService.releasePumpLocks(station.getPumpIds(), lockOwner);
         }
         try {
-            cocktailOrderService.orderCocktail(user, recipe, orderConfiguration, () -> lockService.releaseGlobal(cocktailOrderService));
+            cocktailOrderService.orderCocktail(user, recipe, orderConfiguration, station, () -> {
+                releaseLocks.run();
+                onFinish.run();
+            });
         } catch (Exception e) {
-            lockService.releaseGlobal(cocktailOrderService);
+            releaseLocks.run();
             throw e;
         }
     }
@@ -152,16 +234,16 @@ public class PumpService {
         return cocktailOrderService.checkFeasibility(recipe, orderConfig);
     }
 
-    public void continueCocktailProduction() {
-        cocktailOrderService.continueCocktailProduction();
+    public void continueCocktailProduction(Long stationId) {
+        cocktailOrderService.continueCocktailProduction(stationId);
     }
 
-    public boolean cancelCocktailOrder() {
-        return cocktailOrderService.cancelCocktailOrder();
+    public boolean cancelCocktailOrder(Long stationId) {
+        return cocktailOrderService.cancelCocktailOrder(stationId);
     }
 
-    public CocktailProgress getCurrentCocktailProgress() {
-        return cocktailOrderService.getCurrentCocktailProgress();
+    public CocktailProgress getCurrentCocktailProgress(Long stationId) {
+        return cocktailOrderService.getCurrentCocktailProgress(stationId);
     }
 
     public Pump fromDto(PumpDto.Request.Create pumpDto) {
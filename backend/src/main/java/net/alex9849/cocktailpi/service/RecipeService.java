@@ -274,6 +274,21 @@ public class RecipeService {
         return productionStepRepository.loadByRecipeId(recipeId);
     }
 
+    /**
+     * Loads the production steps of all given recipes at once, instead of lazy loading them one by one.
+     */
+    public void loadProductionSteps(List<Recipe> recipes) {
+        Map<Long, List<ProductionStep>> stepsByRecipeId = productionStepRepository
+                .loadByRecipeIds(recipes.stream().map(Recipe::getId).toArray(Long[]::new));
+        for(Recipe recipe : recipes) {
+            recipe.setProductionSteps(stepsByRecipeId.getOrDefault(recipe.getId(), new ArrayList<>()));
+        }
+    }
+
+    public Set<Long> getIdsInCollection(long collectionId) {
+        return recipeRepository.findIdsInCollection(collectionId);
+    }
+
     public enum FabricableFilter {
         ALL, IN_BAR, AUTOMATICALLY
     }
@@ -2,7 +2,6 @@ package net.alex9849.cocktailpi.service;
 
 import net.alex9849.cocktailpi.model.system.settings.ReversePumpSettings;
 import net.alex9849.cocktailpi.payload.dto.system.settings.ReversePumpSettingsDto;
-import net.alex9849.cocktailpi.service.pumps.PumpLockService;
 import net.alex9849.cocktailpi.service.pumps.PumpMaintenanceService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -15,20 +14,13 @@ public class ReversePumpSettingsService {
     @Autowired
     private PumpMaintenanceService maintenanceService;
 
-    @Autowired
-    private PumpLockService lockService;
-
 
 
+    /**
+     * The caller needs to hold the global lock.
+     */
     public void setReversePumpingSettings(ReversePumpSettings settings) {
-        if (!lockService.testAndAcquireGlobal(maintenanceService)) {
-            throw new IllegalArgumentException("Some pumps are currently occupied!");
-        }
-        try {
-            maintenanceService.setReversePumpingSettings(settings);
-        } finally {
-            lockService.releaseGlobal(maintenanceService);
-        }
+        maintenanceService.setReversePumpingSettings(settings);
     }
 
     public ReversePumpSettings fromDto(ReversePumpSettingsDto.Request.Create dto) {
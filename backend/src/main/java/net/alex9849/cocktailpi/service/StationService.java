@@ -0,0 +1,113 @@
+package net.alex9849.cocktailpi.service;
+
+import net.alex9849.cocktailpi.model.Station;
+import net.alex9849.cocktailpi.model.pump.Pump;
+import net.alex9849.cocktailpi.payload.dto.station.StationDto;
+import net.alex9849.cocktailpi.repository.StationRepository;
+import net.alex9849.cocktailpi.service.pumps.PumpDataService;
+import net.alex9849.cocktailpi.service.pumps.PlanCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Manages the stations. If no station has been configured, all pumps are used for a single production at a time.
+ * Otherwise, each station only uses its own pumps. Pumps that don't belong to a station aren't used for cocktails.
+ */
+@Service
+@Transactional
+public class StationService {
+
+    @Autowired
+    private StationRepository stationRepository;
+
+    @Autowired
+    private PumpDataService pumpDataService;
+
+    @Autowired
+    private PlanCache planCache;
+
+    public List<Station> getAll() {
+        return stationRepository.findAll();
+    }
+
+    public Station getById(long id) {
+        return stationRepository.findById(id).orElse(null);
+    }
+
+    public boolean isStationsConfigured() {
+        return !getAll().isEmpty();
+    }
+
+    /**
+     * @param station the station or null for all pumps
+     * @return the completed pumps that belong to the station
+     */
+    public List<Pump> getCompletedPumps(Station station) {
+        List<Pump> pumps = pumpDataService.getAllCompletedPumps();
+        if(station == null) {
+            return pumps;
+        }
+        return pumps.stream().filter(x -> station.getPumpIds().contains(x.getId())).toList();
+    }
+
+    /**
+     * Stations can't be changed while cocktails are being produced, because the pump locks are held per station.
+     * The caller needs to hold the global lock.
+     */
+    public Station createStation(Station station) {
+        validate(station);
+        Station created = stationRepository.create(station);
+        planCache.invalidate();
+        return created;
+    }
+
+    /**
+     * The caller needs to hold the global lock.
+     */
+    public Station updateStation(Station station) {
+        validate(station);
+        stationRepository.update(station);
+        planCache.invalidate();
+        return station;
+    }
+
+    /**
+     * The caller needs to hold the global lock.
+     */
+    public boolean deleteStation(long id) {
+        boolean deleted = stationRepository.delete(id);
+        planCache.invalidate();
+        return deleted;
+    }
+
+    private void validate(Station station) {
+        Set<Long> idsWithName = stationRepository.findIdsByName(station.getName());
+        if(!idsWithName.isEmpty() && !idsWithName.contains(station.getId())) {
+            throw new IllegalArgumentException("A station with the name " + station.getName() + " already exists!");
+        }
+        for(Long pumpId : station.getPumpIds()) {
+            if(pumpDataService.getPump(pumpId) == null) {
+                throw new IllegalArgumentException("Pump with id " + pumpId + " doesn't exist!");
+            }
+            Optional<Long> stationId = stationRepository.findStationIdByPumpId(pumpId);
+            if(stationId.isPresent() && stationId.get() != station.getId()) {
+                throw new IllegalArgumentException("Pump with id " + pumpId + " already belongs to a different station!");
+            }
+        }
+    }
+
+    public Station fromDto(StationDto.Duplex.Detailed dto) {
+        Station station = new Station();
+        station.setId(dto.getId());
+        station.setName(dto.getName());
+        station.setGlassPosition(dto.getGlassPosition());
+        station.setPumpIds(new HashSet<>(dto.getPumpIds()));
+        return station;
+    }
+}
@@ -19,7 +19,13 @@ import net.alex9849.cocktailpi.payload.dto.system.settings.I2cSettingsDto;
 import net.alex9849.cocktailpi.payload.response.GlobalSettings;
 import net.alex9849.cocktailpi.payload.response.VersionResponse;
 import net.alex9849.cocktailpi.repository.OptionsRepository;
+import net.alex9849.cocktailpi.service.executor.ExecutionLanes;
+import net.alex9849.cocktailpi.service.executor.LaneMetrics;
+import net.alex9849.cocktailpi.service.i2c.I2CBusArbiter;
+import net.alex9849.cocktailpi.service.i2c.I2CDeviceMetrics;
 import net.alex9849.cocktailpi.service.pumps.PumpMaintenanceService;
+import net.alex9849.cocktailpi.service.pumps.clock.SystemClock;
+import net.alex9849.cocktailpi.service.pumps.clock.TimingErrorHistogram;
 import net.alex9849.cocktailpi.utils.PinUtils;
 import net.alex9849.cocktailpi.utils.SpringUtility;
 import net.alex9849.motorlib.pin.PinState;
@@ -249,6 +255,26 @@ public class SystemService {
         }
     }
 
+    public List<LaneMetrics> getExecutionLaneMetrics() {
+        return ExecutionLanes.getMetrics();
+    }
+
+    public List<I2CDeviceMetrics> getI2CDeviceMetrics() {
+        return I2CBusArbiter.getMetrics();
+    }
+
+    public void resetI2CDeviceMetrics() {
+        I2CBusArbiter.resetMetrics();
+    }
+
+    public TimingErrorHistogram getMotorTimingErrors() {
+        return SystemClock.INSTANCE.getPrecisionTimer().getTimingErrorHistogram();
+    }
+
+    public void resetMotorTimingErrors() {
+        SystemClock.INSTANCE.getPrecisionTimer().getTimingErrorHistogram().reset();
+    }
+
     public List<I2cAddress> probeI2c() throws IOException {
         if(isDemoMode) {
             throw new IllegalArgumentException("I2C can't be probed in demomode!");
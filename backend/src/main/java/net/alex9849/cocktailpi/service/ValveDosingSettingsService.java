@@ -0,0 +1,35 @@
+package net.alex9849.cocktailpi.service;
+
+import net.alex9849.cocktailpi.model.system.settings.ValveDosingMode;
+import net.alex9849.cocktailpi.repository.OptionsRepository;
+import net.alex9849.cocktailpi.service.pumps.PlanCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Objects;
+
+@Service
+@Transactional
+public class ValveDosingSettingsService {
+    private static final String REPO_KEY_VALVE_DOSING_MODE = "Valve_Dosing_Mode";
+
+    @Autowired
+    private OptionsRepository optionsRepository;
+
+    @Autowired
+    private PlanCache planCache;
+
+    public ValveDosingMode getValveDosingMode() {
+        return optionsRepository.getOption(REPO_KEY_VALVE_DOSING_MODE)
+                .map(ValveDosingMode::valueOf)
+                .orElse(ValveDosingMode.EXCLUSIVE);
+    }
+
+    public ValveDosingMode setValveDosingMode(ValveDosingMode mode) {
+        Objects.requireNonNull(mode);
+        optionsRepository.setOption(REPO_KEY_VALVE_DOSING_MODE, mode.name());
+        planCache.invalidate();
+        return getValveDosingMode();
+    }
+}
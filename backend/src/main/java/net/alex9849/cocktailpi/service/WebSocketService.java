@@ -1,11 +1,14 @@
 package net.alex9849.cocktailpi.service;
 
 import net.alex9849.cocktailpi.model.cocktail.CocktailProgress;
+import net.alex9849.cocktailpi.model.cocktail.QueuedCocktailOrder;
 import net.alex9849.cocktailpi.model.eventaction.EventActionInformation;
 import net.alex9849.cocktailpi.model.eventaction.RunningAction;
 import net.alex9849.cocktailpi.model.pump.Pump;
 import net.alex9849.cocktailpi.model.pump.PumpJobState;
+import net.alex9849.cocktailpi.model.user.User;
 import net.alex9849.cocktailpi.payload.dto.cocktail.CocktailProgressDto;
+import net.alex9849.cocktailpi.payload.dto.cocktail.QueuedCocktailOrderDto;
 import net.alex9849.cocktailpi.payload.dto.eventaction.EventActionDto;
 import net.alex9849.cocktailpi.payload.dto.pump.PumpDto;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,10 +16,12 @@ import org.springframework.lang.Nullable;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.user.SimpUser;
 import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.stereotype.Controller;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Controller
@@ -30,12 +35,26 @@ public class WebSocketService {
     private SimpUserRegistry simpUserRegistry;
 
     public static final String WS_COCKTAIL_DESTINATION = "/topic/cocktailprogress";
+    public static final String WS_STATION_COCKTAIL_DESTINATION = "/topic/cocktailprogress/station";
     public static final String WS_PUMP_LAYOUT_DESTINATION = "/topic/pump/layout";
     public static final String WS_ACTIONS_STATUS_DESTINATION = "/topic/eventactionstatus";
     public static final String WS_ACTIONS_LOG_DESTINATION = "/topic/eventactionlog";
     public static final String WS_PUMP_RUNNING_STATE_DESTINATION = "/topic/pump/runningstate";
+    public static final String WS_COCKTAIL_QUEUE_DESTINATION = "/topic/cocktailqueue";
+    public static final String WS_COCKTAIL_QUEUE_DROPPED_DESTINATION = "/topic/cocktailqueue/dropped";
+
+    /**
+     * @return the destination of the cocktail progress of a station. The progress of productions that
+     * use all pumps gets sent to WS_COCKTAIL_DESTINATION.
+     */
+    public static String getCocktailProgressDestination(@Nullable Long stationId) {
+        if(stationId == null) {
+            return WS_COCKTAIL_DESTINATION;
+        }
+        return WS_STATION_COCKTAIL_DESTINATION + "/" + stationId;
+    }
 
-    public synchronized void broadcastCurrentCocktailProgress(@Nullable CocktailProgress cocktailprogress) {
+    public synchronized void broadcastCurrentCocktailProgress(@Nullable Long stationId, @Nullable CocktailProgress cocktailprogress) {
         Object cocktailprogressDto = "DELETE";
         if(cocktailprogress != null) {
             cocktailprogressDto = new CocktailProgressDto.Response.Detailed(cocktailprogress);
@@ -43,16 +62,16 @@ public class WebSocketService {
         List<String> subscribers = simpUserRegistry.getUsers().stream()
                 .map(SimpUser::getName).toList();
         for(String username : subscribers) {
-            simpMessagingTemplate.convertAndSendToUser(username, WS_COCKTAIL_DESTINATION, cocktailprogressDto);
+            simpMessagingTemplate.convertAndSendToUser(username, getCocktailProgressDestination(stationId), cocktailprogressDto);
         }
     }
 
-    public synchronized void sendCurrentCocktailProgessToUser(@Nullable CocktailProgress cocktailProgress, String name) {
+    public synchronized void sendCurrentCocktailProgessToUser(@Nullable Long stationId, @Nullable CocktailProgress cocktailProgress, String name) {
         Object cocktailProgressDto = "DELETE";
         if(cocktailProgress != null) {
             cocktailProgressDto = new CocktailProgressDto.Response.Detailed(cocktailProgress);
         }
-        simpMessagingTemplate.convertAndSendToUser(name, WS_COCKTAIL_DESTINATION, cocktailProgressDto);
+        simpMessagingTemplate.convertAndSendToUser(name, getCocktailProgressDestination(stationId), cocktailProgressDto);
     }
 
     public synchronized void broadcastPumpLayout(List<Pump> pumps) {
@@ -117,4 +136,25 @@ public class WebSocketService {
             simpMessagingTemplate.convertAndSendToUser(username, WS_PUMP_RUNNING_STATE_DESTINATION + "/" + pumpId, runningState);
         }
     }
+
+    public synchronized void broadcastCocktailQueue(List<QueuedCocktailOrder> queue, Set<Long> stationsAwaitingGlassSwap) {
+        for(SimpUser simpUser : simpUserRegistry.getUsers()) {
+            if(!(simpUser.getPrincipal() instanceof UsernamePasswordAuthenticationToken token)
+                    || !(token.getPrincipal() instanceof User user)) {
+                continue;
+            }
+            simpMessagingTemplate.convertAndSendToUser(simpUser.getName(), WS_COCKTAIL_QUEUE_DESTINATION,
+                    new QueuedCocktailOrderDto.Response.Queue(queue, stationsAwaitingGlassSwap, user));
+        }
+    }
+
+    public synchronized void sendCocktailQueueToUser(List<QueuedCocktailOrder> queue, Set<Long> stationsAwaitingGlassSwap, User user) {
+        simpMessagingTemplate.convertAndSendToUser(user.getUsername(), WS_COCKTAIL_QUEUE_DESTINATION,
+                new QueuedCocktailOrderDto.Response.Queue(queue, stationsAwaitingGlassSwap, user));
+    }
+
+    public synchronized void sendDroppedCocktailOrderToUser(QueuedCocktailOrder order, String reason, User user) {
+        simpMessagingTemplate.convertAndSendToUser(user.getUsername(), WS_COCKTAIL_QUEUE_DROPPED_DESTINATION,
+                new QueuedCocktailOrderDto.Response.Dropped(order, reason));
+    }
 }
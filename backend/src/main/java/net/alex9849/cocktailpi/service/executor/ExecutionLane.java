@@ -0,0 +1,12 @@
+package net.alex9849.cocktailpi.service.executor;
+
+public enum ExecutionLane {
+    //Motor control loops and pump jobs. Threads run with the highest priority.
+    REAL_TIME,
+    //Short commands that start and stop the real-time work. Must never wait behind the real-time lane.
+    CONTROL,
+    //Notifications, persistence and other short tasks
+    NORMAL,
+    //Event actions
+    BACKGROUND
+}
@@ -0,0 +1,164 @@
+package net.alex9849.cocktailpi.service.executor;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The thread pools that are shared by the whole application. The number of threads of every pool is limited and
+ * the threads are named by their lane. Tasks that don't get a thread wait in the unbounded queue of their lane.
+ * Tasks only get rejected once the lanes have been shut down.
+ * Idle threads terminate after a while, so that a long-running installation doesn't accumulate threads.
+ */
+public final class ExecutionLanes {
+    private static final long KEEP_ALIVE_IN_SECONDS = 30;
+    private static final int REAL_TIME_THREADS = 32;
+    private static final int CONTROL_THREADS = 4;
+    private static final int NORMAL_THREADS = 2;
+    private static final int BACKGROUND_THREADS = 8;
+    private static final Map<ExecutionLane, Lane> lanes = new EnumMap<>(ExecutionLane.class);
+    private static boolean shutdown;
+
+    private ExecutionLanes() {}
+
+    public static ExecutorService realTime() {
+        return getLane(ExecutionLane.REAL_TIME).executor;
+    }
+
+    public static ScheduledExecutorService normal() {
+        return (ScheduledExecutorService) getLane(ExecutionLane.NORMAL).executor;
+    }
+
+    public static ExecutorService background() {
+        return getLane(ExecutionLane.BACKGROUND).executor;
+    }
+
+    /**
+     * @return an executor that runs its tasks one after another on the given lane
+     */
+    public static Executor newSerialExecutor(ExecutionLane lane) {
+        return new SerialExecutor(getLane(lane).executor);
+    }
+
+    private static synchronized Lane getLane(ExecutionLane executionLane) {
+        if(shutdown) {
+            throw new IllegalStateException("Execution lanes have been shut down!");
+        }
+        return lanes.computeIfAbsent(executionLane, Lane::new);
+    }
+
+    public static synchronized List<LaneMetrics> getMetrics() {
+        List<LaneMetrics> metrics = new ArrayList<>();
+        for(ExecutionLane executionLane : ExecutionLane.values()) {
+            Lane lane = lanes.get(executionLane);
+            LaneMetrics laneMetrics = new LaneMetrics();
+            laneMetrics.setLane(executionLane);
+            if(lane != null) {
+                ThreadPoolExecutor executor = lane.executor;
+                laneMetrics.setThreads(executor.getPoolSize());
+                laneMetrics.setActiveThreads(executor.getActiveCount());
+                laneMetrics.setLargestThreads(executor.getLargestPoolSize());
+                laneMetrics.setMaxThreads(lane.maxThreads);
+                laneMetrics.setThreadsCreated(lane.threadsCreated.get());
+                laneMetrics.setQueuedTasks(executor.getQueue().size());
+                laneMetrics.setCompletedTasks(executor.getCompletedTaskCount());
+                laneMetrics.setRejectedTasks(lane.rejectedTasks.get());
+            }
+            metrics.add(laneMetrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * Interrupts all running tasks. Further tasks get rejected.
+     */
+    public static synchronized void shutdown() {
+        shutdown = true;
+        for(Lane lane : lanes.values()) {
+            lane.executor.shutdownNow();
+        }
+    }
+
+    private static class Lane {
+        private final ThreadPoolExecutor executor;
+        private final int maxThreads;
+        private final AtomicLong threadsCreated = new AtomicLong();
+        private final AtomicLong rejectedTasks = new AtomicLong();
+
+        private Lane(ExecutionLane executionLane) {
+            String namePrefix = "cocktailpi-" + executionLane.name().toLowerCase().replace('_', '-') + "-";
+            ThreadFactory threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, namePrefix + threadsCreated.incrementAndGet());
+                thread.setDaemon(true);
+                if(executionLane == ExecutionLane.REAL_TIME || executionLane == ExecutionLane.CONTROL) {
+                    thread.setPriority(Thread.MAX_PRIORITY);
+                }
+                return thread;
+            };
+            RejectedExecutionHandler rejectedExecutionHandler = (runnable, executor) -> {
+                rejectedTasks.incrementAndGet();
+                throw new RejectedExecutionException("Execution lane " + executionLane + " doesn't accept tasks!");
+            };
+
+            switch (executionLane) {
+                case NORMAL -> {
+                    ScheduledThreadPoolExecutor scheduledExecutor = new ScheduledThreadPoolExecutor(NORMAL_THREADS,
+                            threadFactory, rejectedExecutionHandler);
+                    //Cancelled periodic tasks would stay in the queue otherwise
+                    scheduledExecutor.setRemoveOnCancelPolicy(true);
+                    this.executor = scheduledExecutor;
+                    this.maxThreads = NORMAL_THREADS;
+                }
+                case REAL_TIME -> {
+                    this.executor = new ThreadPoolExecutor(REAL_TIME_THREADS, REAL_TIME_THREADS, KEEP_ALIVE_IN_SECONDS,
+                            TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory, rejectedExecutionHandler);
+                    this.maxThreads = REAL_TIME_THREADS;
+                }
+                case CONTROL -> {
+                    this.executor = new ThreadPoolExecutor(CONTROL_THREADS, CONTROL_THREADS, KEEP_ALIVE_IN_SECONDS,
+                            TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory, rejectedExecutionHandler);
+                    this.maxThreads = CONTROL_THREADS;
+                }
+                case BACKGROUND -> {
+                    this.executor = new ThreadPoolExecutor(BACKGROUND_THREADS, BACKGROUND_THREADS, KEEP_ALIVE_IN_SECONDS,
+                            TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory, rejectedExecutionHandler);
+                    this.maxThreads = BACKGROUND_THREADS;
+                }
+                default -> throw new IllegalStateException("Unknown execution lane: " + executionLane);
+            }
+            this.executor.setKeepAliveTime(KEEP_ALIVE_IN_SECONDS, TimeUnit.SECONDS);
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    private static class SerialExecutor implements Executor {
+        private final Executor executor;
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        private Runnable active;
+
+        private SerialExecutor(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            tasks.add(() -> {
+                try {
+                    task.run();
+                } finally {
+                    scheduleNext();
+                }
+            });
+            if(active == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            active = tasks.poll();
+            if(active != null) {
+                executor.execute(active);
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package net.alex9849.cocktailpi.service.executor;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ExecutionLanesLifecycle {
+
+    @PreDestroy
+    public void shutdown() {
+        ExecutionLanes.shutdown();
+    }
+}
@@ -0,0 +1,17 @@
+package net.alex9849.cocktailpi.service.executor;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter @Setter
+public class LaneMetrics {
+    private ExecutionLane lane;
+    private int threads;
+    private int activeThreads;
+    private int largestThreads;
+    private int maxThreads;
+    private long threadsCreated;
+    private int queuedTasks;
+    private long completedTasks;
+    private long rejectedTasks;
+}
@@ -0,0 +1,74 @@
+package net.alex9849.cocktailpi.service.executor;
+
+import net.openhft.affinity.Affinity;
+import net.openhft.affinity.AffinityLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The CPU core of the real-time threads, the PrecisionTimer and the MotionScheduler. Both threads get pinned to the
+ * same core while they are busy, so that the machine loses only one core to them.
+ * The core gets reserved with the first pinning and stays reserved, as only the reserving thread could release it.
+ * Threads that aren't pinned anymore run on all cores again and leave the reserved core to the other threads.
+ */
+public final class RealTimeCore {
+    public static final int NO_CPU = -1;
+    private static final Logger logger = LoggerFactory.getLogger(RealTimeCore.class);
+    private static AffinityLock reservation;
+
+    private RealTimeCore() {}
+
+    /**
+     * Pins the current thread to the real-time core until the returned pinning gets closed.
+     * The thread stays unpinned if no core could be reserved.
+     */
+    public static Pinning pinCurrentThread() {
+        int cpuId = getCpuId();
+        if(cpuId == NO_CPU) {
+            return new Pinning(NO_CPU);
+        }
+        try {
+            Affinity.setAffinity(cpuId);
+        } catch (RuntimeException e) {
+            logger.warn("Couldn't pin thread " + Thread.currentThread().getName() + " to cpu " + cpuId + "!", e);
+            return new Pinning(NO_CPU);
+        }
+        return new Pinning(cpuId);
+    }
+
+    /**
+     * @return the reserved core or {@link #NO_CPU} if no core could be reserved
+     */
+    public static synchronized int getCpuId() {
+        if(reservation == null) {
+            //Reserves a whole core without binding the current thread to it
+            reservation = AffinityLock.acquireCore(false);
+        }
+        return reservation.isAllocated() ? reservation.cpuId() : NO_CPU;
+    }
+
+    public static final class Pinning implements AutoCloseable {
+        private final int cpuId;
+
+        private Pinning(int cpuId) {
+            this.cpuId = cpuId;
+        }
+
+        /**
+         * @return the core the thread is pinned to or {@link #NO_CPU}
+         */
+        public int getCpuId() {
+            return cpuId;
+        }
+
+        /**
+         * Lets the current thread run on all cores again.
+         */
+        @Override
+        public void close() {
+            if(cpuId != NO_CPU) {
+                Affinity.resetToBaseAffinity();
+            }
+        }
+    }
+}
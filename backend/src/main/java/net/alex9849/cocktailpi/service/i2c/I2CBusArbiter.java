@@ -0,0 +1,175 @@
+package net.alex9849.cocktailpi.service.i2c;
+
+import com.pi4j.exception.Pi4JException;
+import com.pi4j.io.i2c.I2C;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Owns the I2C bus. All transactions need to be executed through the arbiter, so that transactions of different
+ * threads never interleave. Waiting transactions get the bus ordered by their priority and then by their arrival.
+ * The transaction gets executed on the calling thread, which avoids a thread handoff for real-time edges.
+ * A transaction may consist of multiple register accesses, which then are atomic towards other transactions.
+ * Transactions that fail (e.g. because the device didn't acknowledge) get retried.
+ * Transactions can be nested. Nested transactions are executed as part of the outer transaction.
+ */
+public final class I2CBusArbiter {
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final Object lock = new Object();
+    private static final PriorityQueue<Waiter> waiters = new PriorityQueue<>(
+            Comparator.comparing((Waiter x) -> x.priority).thenComparingLong(x -> x.sequence));
+    private static final Map<Integer, DeviceStats> statsByAddress = new HashMap<>();
+    private static Thread owner;
+    private static int holdCount;
+    private static long sequence;
+
+    private I2CBusArbiter() {}
+
+    public static <T> T execute(I2C device, I2CPriority priority, Function<I2C, T> transaction) {
+        long requestNanos = System.nanoTime();
+        acquire(priority);
+        try {
+            long startNanos = System.nanoTime();
+            int attempt = 1;
+            while (true) {
+                try {
+                    T result = transaction.apply(device);
+                    record(device, startNanos - requestNanos, System.nanoTime() - startNanos, attempt - 1, false);
+                    return result;
+                } catch (Pi4JException e) {
+                    if(attempt >= MAX_ATTEMPTS) {
+                        record(device, startNanos - requestNanos, System.nanoTime() - startNanos, attempt - 1, true);
+                        throw e;
+                    }
+                    attempt++;
+                    LockSupport.parkNanos(RETRY_BACKOFF_NANOS);
+                }
+            }
+        } finally {
+            release();
+        }
+    }
+
+    public static void run(I2C device, I2CPriority priority, Consumer<I2C> transaction) {
+        execute(device, priority, x -> {
+            transaction.accept(x);
+            return null;
+        });
+    }
+
+    private static void acquire(I2CPriority priority) {
+        Thread current = Thread.currentThread();
+        synchronized (lock) {
+            if(owner == current) {
+                holdCount++;
+                return;
+            }
+            if(owner == null && waiters.isEmpty()) {
+                owner = current;
+                holdCount = 1;
+                return;
+            }
+            waiters.add(new Waiter(current, priority, sequence++));
+            boolean interrupted = false;
+            while (owner != current) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    //Giving up the place in the queue could leave the bus without an owner
+                    interrupted = true;
+                }
+            }
+            if(interrupted) {
+                current.interrupt();
+            }
+        }
+    }
+
+    private static void release() {
+        synchronized (lock) {
+            if(--holdCount > 0) {
+                return;
+            }
+            Waiter next = waiters.poll();
+            owner = next == null ? null : next.thread;
+            holdCount = next == null ? 0 : 1;
+            lock.notifyAll();
+        }
+    }
+
+    private static void record(I2C device, long waitNanos, long durationNanos, int retries, boolean failed) {
+        synchronized (statsByAddress) {
+            statsByAddress.computeIfAbsent(device.device(), DeviceStats::new)
+                    .record(waitNanos, durationNanos, retries, failed);
+        }
+    }
+
+    public static List<I2CDeviceMetrics> getMetrics() {
+        synchronized (statsByAddress) {
+            List<I2CDeviceMetrics> metrics = new ArrayList<>();
+            for(DeviceStats stats : statsByAddress.values()) {
+                metrics.add(stats.toMetrics());
+            }
+            metrics.sort(Comparator.comparingInt(I2CDeviceMetrics::getAddress));
+            return metrics;
+        }
+    }
+
+    public static void resetMetrics() {
+        synchronized (statsByAddress) {
+            statsByAddress.clear();
+        }
+    }
+
+    private record Waiter(Thread thread, I2CPriority priority, long sequence) {}
+
+    private static class DeviceStats {
+        private final int address;
+        private final long sinceNanos = System.nanoTime();
+        private long transactions;
+        private long retries;
+        private long failures;
+        private long sumOfWaitNanos;
+        private long maxWaitNanos;
+        private long sumOfDurationNanos;
+        private long maxDurationNanos;
+
+        private DeviceStats(int address) {
+            this.address = address;
+        }
+
+        private void record(long waitNanos, long durationNanos, int retries, boolean failed) {
+            this.transactions++;
+            this.retries += retries;
+            if(failed) {
+                this.failures++;
+            }
+            this.sumOfWaitNanos += waitNanos;
+            this.maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+            this.sumOfDurationNanos += durationNanos;
+            this.maxDurationNanos = Math.max(maxDurationNanos, durationNanos);
+        }
+
+        private I2CDeviceMetrics toMetrics() {
+            I2CDeviceMetrics metrics = new I2CDeviceMetrics();
+            metrics.setAddress(address);
+            metrics.setTransactions(transactions);
+            metrics.setRetries(retries);
+            metrics.setFailures(failures);
+            double seconds = Math.max(1, System.nanoTime() - sinceNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+            metrics.setTransactionsPerSecond(Math.round(transactions / seconds));
+            if(transactions > 0) {
+                metrics.setMeanWaitInMicros(TimeUnit.NANOSECONDS.toMicros(sumOfWaitNanos / transactions));
+                metrics.setMeanDurationInMicros(TimeUnit.NANOSECONDS.toMicros(sumOfDurationNanos / transactions));
+            }
+            metrics.setMaxWaitInMicros(TimeUnit.NANOSECONDS.toMicros(maxWaitNanos));
+            metrics.setMaxDurationInMicros(TimeUnit.NANOSECONDS.toMicros(maxDurationNanos));
+            return metrics;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package net.alex9849.cocktailpi.service.i2c;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter @Setter
+public class I2CDeviceMetrics {
+    private int address;
+    private long transactions;
+    private long retries;
+    private long failures;
+    private long transactionsPerSecond;
+    private long meanWaitInMicros;
+    private long maxWaitInMicros;
+    private long meanDurationInMicros;
+    private long maxDurationInMicros;
+}
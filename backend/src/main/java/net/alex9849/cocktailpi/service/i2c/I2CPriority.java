@@ -0,0 +1,14 @@
+package net.alex9849.cocktailpi.service.i2c;
+
+public enum I2CPriority {
+    //Motor edges and steps. Get the bus before all other transactions.
+    REAL_TIME,
+    NORMAL;
+
+    /**
+     * @return REAL_TIME for threads with the maximal priority, like the precision timer and the motion scheduler
+     */
+    public static I2CPriority ofCurrentThread() {
+        return Thread.currentThread().getPriority() == Thread.MAX_PRIORITY ? REAL_TIME : NORMAL;
+    }
+}
@@ -0,0 +1,417 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.alex9849.cocktailpi.model.FeasibilityReport;
+import net.alex9849.cocktailpi.model.Station;
+import net.alex9849.cocktailpi.model.cocktail.QueuedCocktailOrder;
+import net.alex9849.cocktailpi.model.recipe.CocktailOrderConfiguration;
+import net.alex9849.cocktailpi.model.recipe.FeasibilityFactory;
+import net.alex9849.cocktailpi.model.recipe.Recipe;
+import net.alex9849.cocktailpi.model.user.ERole;
+import net.alex9849.cocktailpi.model.user.User;
+import net.alex9849.cocktailpi.payload.dto.cocktail.CocktailOrderConfigurationDto;
+import net.alex9849.cocktailpi.repository.CocktailOrderQueueRepository;
+import net.alex9849.cocktailpi.repository.OptionsRepository;
+import net.alex9849.cocktailpi.service.PumpService;
+import net.alex9849.cocktailpi.service.RecipeService;
+import net.alex9849.cocktailpi.service.StationService;
+import net.alex9849.cocktailpi.service.UserService;
+import net.alex9849.cocktailpi.service.WebSocketService;
+import net.alex9849.cocktailpi.service.executor.ExecutionLane;
+import net.alex9849.cocktailpi.service.executor.ExecutionLanes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Persistent queue of cocktail orders. The orders get produced back to back. Orders with a higher priority
+ * are produced first, orders with the same priority in FIFO order.
+ * If stations are configured, each station works through the orders that have been placed for it and the orders
+ * that may be produced by any station. Stations produce in parallel.
+ * If the glass swap confirmation is enabled, the next order of a station only gets started after someone confirmed
+ * that the glass of the previous order has been taken.
+ */
+@Service
+public class CocktailOrderQueueService {
+    private static final String REPO_KEY_GLASS_SWAP_CONFIRMATION = "Queue_Glass_Swap_Confirmation";
+    private final Logger logger = LoggerFactory.getLogger(CocktailOrderQueueService.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    //Runs one task after another, so that the queue never gets processed concurrently
+    private final Executor executor = ExecutionLanes.newSerialExecutor(ExecutionLane.NORMAL);
+    //Ids of the stations that wait for a glass swap. Contains null if no stations are configured.
+    private final Set<Long> stationsAwaitingGlassSwap = new HashSet<>();
+    //Owner of the order that has been started last on a station. The key is null if no stations are configured.
+    private final Map<Long, Long> lastUserIdByStationId = new HashMap<>();
+
+    @Autowired
+    private CocktailOrderQueueRepository queueRepository;
+
+    @Autowired
+    private OptionsRepository optionsRepository;
+
+    @Autowired
+    private PumpService pumpService;
+
+    @Autowired
+    private CocktailOrderService cocktailOrderService;
+
+    @Autowired
+    private RecipeService recipeService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private WebSocketService webSocketService;
+
+    @Autowired
+    private StationService stationService;
+
+    /**
+     * Gets called on startup. Orders that survived a restart don't get started, before someone confirmed that
+     * a glass is in place.
+     */
+    public synchronized void postConstruct() {
+        if(!isGlassSwapConfirmation() || queueRepository.findAll().isEmpty()) {
+            return;
+        }
+        for(Station station : getProductionStations()) {
+            this.stationsAwaitingGlassSwap.add(CocktailOrderService.getStationId(station));
+        }
+    }
+
+    /**
+     * @param stationId the station that should produce the order. Null if any station may produce it.
+     */
+    public synchronized QueuedCocktailOrder enqueue(User user, Recipe recipe, boolean isIngredient,
+                                                    CocktailOrderConfigurationDto.Request.Create orderConfigDto,
+                                                    int priority, Long stationId) {
+        List<Station> candidates = getProductionStations();
+        if(stationId != null) {
+            candidates = candidates.stream()
+                    .filter(x -> x != null && x.getId() == stationId)
+                    .toList();
+            if(candidates.isEmpty()) {
+                throw new IllegalArgumentException("Station not found!");
+            }
+        }
+        CocktailOrderConfiguration orderConfig = cocktailOrderService.fromDto(orderConfigDto);
+        Map<Station, FeasibilityFactory> feasibleStations = getFeasibleStations(
+                () -> loadRecipe(recipe.getId(), isIngredient), orderConfig, candidates);
+        Map.Entry<Station, FeasibilityFactory> firstFeasible = feasibleStations.entrySet().iterator().next();
+
+        QueuedCocktailOrder order = new QueuedCocktailOrder();
+        order.setUser(user);
+        order.setRecipeId(recipe.getId());
+        order.setRecipeName(recipe.getName());
+        order.setIngredient(isIngredient);
+        order.setPriority(priority);
+        order.setStationId(stationId);
+        order.setCreatedAt(new Date());
+        order.setEstimatedDuration(cocktailOrderService.estimateProductionTime(
+                firstFeasible.getValue().getFeasibleRecipe(), firstFeasible.getKey()));
+        try {
+            order.setOrderConfiguration(objectMapper.writeValueAsString(orderConfigDto));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Can't serialize order configuration!", e);
+        }
+        QueuedCocktailOrder createdOrder = queueRepository.create(order);
+        processQueue();
+        broadcastQueue();
+        return getQueue().stream()
+                .filter(x -> x.getId() == createdOrder.getId())
+                .findFirst().orElse(createdOrder);
+    }
+
+    /**
+     * @return all queued orders including their position and estimated start time. Orders that may be produced
+     * by any station are expected to be produced by the station that becomes available first.
+     */
+    public synchronized List<QueuedCocktailOrder> getQueue() {
+        List<QueuedCocktailOrder> queue = queueRepository.findAll();
+        long now = System.currentTimeMillis();
+        Map<Long, Long> availableAtByStationId = new HashMap<>();
+        for(Station station : getProductionStations()) {
+            Long stationId = CocktailOrderService.getStationId(station);
+            availableAtByStationId.put(stationId, now + cocktailOrderService.getEstimatedRemainingTime(stationId));
+        }
+        int position = 1;
+        for(QueuedCocktailOrder order : queue) {
+            Long stationId = order.getStationId();
+            if(!availableAtByStationId.containsKey(stationId)) {
+                stationId = availableAtByStationId.entrySet().stream()
+                        .min(Map.Entry.comparingByValue())
+                        .map(Map.Entry::getKey).orElse(null);
+            }
+            long estimatedStartTime = availableAtByStationId.getOrDefault(stationId, now);
+            order.setUser(userService.getUser(order.getUserId()));
+            order.setPosition(position++);
+            order.setEstimatedStartTime(new Date(estimatedStartTime));
+            availableAtByStationId.put(stationId, estimatedStartTime + order.getEstimatedDuration());
+        }
+        return queue;
+    }
+
+    public synchronized QueuedCocktailOrder getOrder(long id) {
+        return getQueue().stream()
+                .filter(x -> x.getId() == id)
+                .findFirst().orElse(null);
+    }
+
+    public static boolean isVisibleFor(QueuedCocktailOrder order, User user) {
+        return order.getUserId() == user.getId() || user.getAuthorities().contains(ERole.ROLE_ADMIN);
+    }
+
+    public synchronized boolean cancelOrder(long id) {
+        boolean deleted = queueRepository.delete(id);
+        if(deleted) {
+            broadcastQueue();
+        }
+        return deleted;
+    }
+
+    public synchronized void setPriority(long id, int priority) {
+        if(!queueRepository.updatePriority(id, priority)) {
+            throw new IllegalArgumentException("Order not found!");
+        }
+        broadcastQueue();
+    }
+
+    public synchronized boolean isAwaitingGlassSwap() {
+        return !stationsAwaitingGlassSwap.isEmpty();
+    }
+
+    /**
+     * @return the ids of the stations that wait for a glass swap. Contains null if no stations are configured.
+     */
+    public synchronized Set<Long> getStationsAwaitingGlassSwap() {
+        return new HashSet<>(stationsAwaitingGlassSwap);
+    }
+
+    /**
+     * Admins may always confirm a glass swap. Other users only if they own the last order of the station, whose glass
+     * has to be taken, or the next order of the station, whose glass has to be placed.
+     * @param stationId the station at which the glass has been swapped or null if no stations are configured
+     */
+    public synchronized boolean mayConfirmGlassSwap(Long stationId, User user) {
+        if(user.getAuthorities().contains(ERole.ROLE_ADMIN)) {
+            return true;
+        }
+        if(Objects.equals(lastUserIdByStationId.get(stationId), user.getId())) {
+            return true;
+        }
+        return queueRepository.findAll().stream()
+                .filter(x -> x.getStationId() == null || Objects.equals(x.getStationId(), stationId))
+                .findFirst()
+                .map(x -> x.getUserId() == user.getId())
+                .orElse(false);
+    }
+
+    /**
+     * @param stationId the station at which the glass has been swapped or null if no stations are configured
+     */
+    public synchronized void confirmGlassSwapped(Long stationId) {
+        if(!stationsAwaitingGlassSwap.remove(stationId)) {
+            throw new IllegalStateException("No glass swap required!");
+        }
+        processQueue();
+        broadcastQueue();
+    }
+
+    public boolean isGlassSwapConfirmation() {
+        return Boolean.parseBoolean(optionsRepository.getOption(REPO_KEY_GLASS_SWAP_CONFIRMATION).orElse(null));
+    }
+
+    public synchronized void setGlassSwapConfirmation(boolean enable) {
+        optionsRepository.setOption(REPO_KEY_GLASS_SWAP_CONFIRMATION, Boolean.toString(enable));
+        if(!enable && !stationsAwaitingGlassSwap.isEmpty()) {
+            stationsAwaitingGlassSwap.clear();
+            processQueue();
+            broadcastQueue();
+        }
+    }
+
+    /**
+     * Retries orders that couldn't be started, because the pumps were occupied, e.g. by maintenance jobs.
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void processQueueTask() {
+        if(processQueue()) {
+            broadcastQueue();
+        }
+    }
+
+    /**
+     * Starts the next orders on all stations that don't prepare a cocktail.
+     * @return true if the queue has been changed
+     */
+    private synchronized boolean processQueue() {
+        List<Station> stations = getProductionStations();
+        Set<Long> idleStationIds = new HashSet<>();
+        for(Station station : stations) {
+            Long stationId = CocktailOrderService.getStationId(station);
+            if(!stationsAwaitingGlassSwap.contains(stationId) && !cocktailOrderService.isMakingCocktail(stationId)) {
+                idleStationIds.add(stationId);
+            }
+        }
+        boolean changed = false;
+        for(QueuedCocktailOrder order : queueRepository.findAll()) {
+            if(idleStationIds.isEmpty()) {
+                break;
+            }
+            User user = userService.getUser(order.getUserId());
+            List<Station> candidates = stations;
+            if(order.getStationId() != null) {
+                candidates = stations.stream()
+                        .filter(x -> x != null && x.getId() == order.getStationId())
+                        .toList();
+            }
+            CocktailOrderConfiguration orderConfig;
+            Map<Station, FeasibilityFactory> feasibleStations;
+            try {
+                if(user == null || candidates.isEmpty()) {
+                    throw new IllegalArgumentException("User or station doesn't exist anymore!");
+                }
+                orderConfig = cocktailOrderService.fromDto(objectMapper.readValue(order.getOrderConfiguration(),
+                        CocktailOrderConfigurationDto.Request.Create.class));
+                feasibleStations = getFeasibleStations(() -> loadRecipe(order.getRecipeId(), order.isIngredient()),
+                        orderConfig, candidates);
+            } catch (IllegalArgumentException | JsonProcessingException e) {
+                dropOrder(order, user, e.getMessage());
+                changed = true;
+                continue;
+            }
+            Station station = null;
+            boolean foundIdleStation = false;
+            for(Station feasibleStation : feasibleStations.keySet()) {
+                if(idleStationIds.contains(CocktailOrderService.getStationId(feasibleStation))) {
+                    station = feasibleStation;
+                    foundIdleStation = true;
+                    break;
+                }
+            }
+            if(!foundIdleStation) {
+                //Only busy stations can produce the order. Wait for them.
+                continue;
+            }
+            Long stationId = CocktailOrderService.getStationId(station);
+            try {
+                pumpService.orderCocktail(user, loadRecipe(order.getRecipeId(), order.isIngredient()), orderConfig,
+                        station, () -> onOrderDone(stationId));
+            } catch (PumpsOccupiedException e) {
+                //E.g. a maintenance job is running. Try again later.
+                idleStationIds.remove(stationId);
+                continue;
+            } catch (IllegalArgumentException e) {
+                dropOrder(order, user, e.getMessage());
+                changed = true;
+                continue;
+            }
+            queueRepository.delete(order.getId());
+            lastUserIdByStationId.put(stationId, user.getId());
+            idleStationIds.remove(stationId);
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Removes an order that can't be produced anymore from the queue and tells its owner why.
+     * @param user the owner of the order or null if the owner doesn't exist anymore
+     */
+    private void dropOrder(QueuedCocktailOrder order, User user, String reason) {
+        logger.warn("Dropping queued order " + order.getId() + " (" + order.getRecipeName() + "): " + reason);
+        queueRepository.delete(order.getId());
+        if(user != null) {
+            order.setUser(user);
+            webSocketService.sendDroppedCocktailOrderToUser(order, reason, user);
+        }
+    }
+
+    private void onOrderDone(Long stationId) {
+        //Called by the production thread. Don't block it.
+        executor.execute(() -> {
+            synchronized (this) {
+                //The glass of the previous order might still be in place
+                if(isGlassSwapConfirmation()) {
+                    stationsAwaitingGlassSwap.add(stationId);
+                }
+                processQueue();
+            }
+            broadcastQueue();
+        });
+    }
+
+    /**
+     * @return the stations that produce cocktails. Contains null as only element, if no stations are configured.
+     */
+    private List<Station> getProductionStations() {
+        List<Station> stations = stationService.getAll();
+        if(stations.isEmpty()) {
+            return Collections.singletonList(null);
+        }
+        return stations;
+    }
+
+    private Recipe loadRecipe(long recipeId, boolean isIngredient) {
+        Recipe recipe;
+        if(isIngredient) {
+            recipe = recipeService.getIngredientRecipe(recipeId);
+        } else {
+            recipe = recipeService.getById(recipeId);
+        }
+        if(recipe == null) {
+            throw new IllegalArgumentException("Recipe doesn't exist anymore!");
+        }
+        return recipe;
+    }
+
+    /**
+     * @param recipeSupplier supplies a new instance of the recipe for each check, since the FeasibilityFactory modifies it
+     * @return the stations that can produce the order in the order of the candidates
+     * @throws IllegalArgumentException if none of the candidates can produce the order
+     */
+    private Map<Station, FeasibilityFactory> getFeasibleStations(Supplier<Recipe> recipeSupplier,
+                                                                 CocktailOrderConfiguration orderConfig,
+                                                                 List<Station> candidates) {
+        Map<Station, FeasibilityFactory> feasibleStations = new LinkedHashMap<>();
+        IllegalArgumentException lastException = null;
+        for(Station candidate : candidates) {
+            FeasibilityFactory feasibilityFactory = cocktailOrderService.checkFeasibility(recipeSupplier.get(), orderConfig, candidate);
+            try {
+                failIfNotFeasible(feasibilityFactory.getFeasibilityReport());
+                feasibleStations.put(candidate, feasibilityFactory);
+            } catch (IllegalArgumentException e) {
+                lastException = e;
+            }
+        }
+        if(feasibleStations.isEmpty()) {
+            throw Objects.requireNonNull(lastException);
+        }
+        return feasibleStations;
+    }
+
+    private void failIfNotFeasible(FeasibilityReport report) {
+        if(report.getRequiredIngredients().stream().anyMatch(x -> x.getAmountMissing() > 0)) {
+            throw new IllegalArgumentException("Some pumps don't have enough liquids left!");
+        }
+        if(!report.isFeasible()) {
+            throw new IllegalArgumentException("Cocktail not feasible!");
+        }
+    }
+
+    private void broadcastQueue() {
+        webSocketService.broadcastCocktailQueue(getQueue(), getStationsAwaitingGlassSwap());
+    }
+
+    public void sendQueueToUser(User user) {
+        webSocketService.sendCocktailQueueToUser(getQueue(), getStationsAwaitingGlassSwap(), Objects.requireNonNull(user));
+    }
+}
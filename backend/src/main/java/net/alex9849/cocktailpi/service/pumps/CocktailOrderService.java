@@ -1,39 +1,63 @@
 package net.alex9849.cocktailpi.service.pumps;
 
 import net.alex9849.cocktailpi.model.FeasibilityReport;
+import net.alex9849.cocktailpi.model.Glass;
+import net.alex9849.cocktailpi.model.Station;
 import net.alex9849.cocktailpi.model.cocktail.CocktailProgress;
 import net.alex9849.cocktailpi.model.eventaction.EventTrigger;
+import net.alex9849.cocktailpi.model.pump.DcPump;
 import net.alex9849.cocktailpi.model.pump.Pump;
+import net.alex9849.cocktailpi.model.pump.StepperPump;
+import net.alex9849.cocktailpi.model.pump.Valve;
+import net.alex9849.cocktailpi.model.recipe.AvailabilitySnapshot;
 import net.alex9849.cocktailpi.model.recipe.CocktailOrderConfiguration;
 import net.alex9849.cocktailpi.model.recipe.FeasibilityFactory;
+import net.alex9849.cocktailpi.model.recipe.FeasibleRecipe;
 import net.alex9849.cocktailpi.model.recipe.Recipe;
+import net.alex9849.cocktailpi.model.recipe.RecipeAvailability;
 import net.alex9849.cocktailpi.model.recipe.ingredient.AddableIngredient;
 import net.alex9849.cocktailpi.model.recipe.ingredient.Ingredient;
 import net.alex9849.cocktailpi.model.recipe.ingredient.IngredientGroup;
+import net.alex9849.cocktailpi.model.recipe.productionstep.AddIngredientsProductionStep;
+import net.alex9849.cocktailpi.model.recipe.productionstep.ProductionStep;
+import net.alex9849.cocktailpi.model.recipe.productionstep.ProductionStepIngredient;
 import net.alex9849.cocktailpi.model.user.User;
 import net.alex9849.cocktailpi.payload.dto.cocktail.CocktailOrderConfigurationDto;
 import net.alex9849.cocktailpi.payload.dto.cocktail.FeasibilityReportDto;
 import net.alex9849.cocktailpi.service.EventService;
+import net.alex9849.cocktailpi.service.GlassService;
+import net.alex9849.cocktailpi.service.IngredientSplitSettingsService;
+import net.alex9849.cocktailpi.service.ValveDosingSettingsService;
+import net.alex9849.cocktailpi.service.PowerLimitSettingsService;
+import net.alex9849.cocktailpi.service.RecipeService;
 import net.alex9849.cocktailpi.service.IngredientService;
+import net.alex9849.cocktailpi.service.StationService;
 import net.alex9849.cocktailpi.service.WebSocketService;
+import net.alex9849.cocktailpi.service.executor.ExecutionLanes;
 import net.alex9849.cocktailpi.service.pumps.cocktailfactory.CocktailFactory;
+import net.alex9849.cocktailpi.service.pumps.cocktailfactory.StepTimeline;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.*;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+/**
+ * Produces cocktails. Each station can produce one cocktail at a time. If no stations have been configured,
+ * one cocktail at a time gets produced using all pumps. Its station id is null.
+ */
 @Service
 @Transactional
 public class CocktailOrderService {
-    private CocktailFactory cocktailFactory;
-    private CocktailProgress prevCocktailProgress;
+    private final Map<Long, CocktailFactory> cocktailFactoryByStationId = new HashMap<>();
+    private final Map<CocktailFactory, CocktailProgress> prevCocktailProgressByFactory = new ConcurrentHashMap<>();
 
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ScheduledExecutorService scheduler = ExecutionLanes.normal();
 
     @Autowired
     private PumpDataService pumpDataService;
@@ -41,6 +65,9 @@ public class CocktailOrderService {
     @Autowired
     private PumpMaintenanceService pumpUpService;
 
+    @Autowired
+    private PumpJobTelemetryService pumpJobTelemetryService;
+
     @Autowired
     private WebSocketService webSocketService;
 
@@ -50,12 +77,42 @@ public class CocktailOrderService {
     @Autowired
     private EventService eventService;
 
+    @Autowired
+    private PowerLimitSettingsService powerLimitSettingsService;
+
+    @Autowired
+    private IngredientSplitSettingsService ingredientSplitSettingsService;
+
+    @Autowired
+    private ValveDosingSettingsService valveDosingSettingsService;
+
+    @Autowired
+    private StationService stationService;
+
+    @Autowired
+    private PlanCache planCache;
+
+    @Autowired
+    private GlassService glassService;
+
+    @Autowired
+    private RecipeService recipeService;
+
+    public static Long getStationId(Station station) {
+        return station == null ? null : station.getId();
+    }
 
-    public synchronized void orderCocktail(User user, Recipe recipe, CocktailOrderConfiguration orderConfiguration, Runnable onFinishCallback) {
-        if(this.cocktailFactory != null) {
-            throw new IllegalArgumentException("A cocktail is already being fabricated!");
+    /**
+     * @param station the station that should produce the cocktail or null to use all pumps
+     */
+    public synchronized void orderCocktail(User user, Recipe recipe, CocktailOrderConfiguration orderConfiguration,
+                                           Station station, Runnable onFinishCallback) {
+        Long stationId = getStationId(station);
+        if(isMakingCocktail(stationId)) {
+            throw new PumpsOccupiedException("A cocktail is already being fabricated!");
         }
-        FeasibilityFactory feasibilityFactory = this.checkFeasibility(recipe, orderConfiguration);
+        PlanCache.Key planKey = planCache.createKey(recipe, orderConfiguration, station);
+        FeasibilityFactory feasibilityFactory = this.checkFeasibility(planKey, recipe, orderConfiguration, station);
         FeasibilityReport report = feasibilityFactory.getFeasibilityReport();
         if(report.getRequiredIngredients().stream().anyMatch(x -> x.getAmountMissing() > 0)) {
             throw new IllegalArgumentException("Some pumps don't have enough liquids left!");
@@ -63,16 +120,31 @@ public class CocktailOrderService {
         if(!report.isFeasible()) {
             throw new IllegalArgumentException("Cocktail not feasible!");
         }
-        CocktailFactory cocktailFactory = new CocktailFactory(feasibilityFactory.getFeasibleRecipe(), user,
-                new HashSet<>(pumpDataService.getAllCompletedPumps()), this::onRequestPumpPersist)
-                .subscribeProgress(this::onCocktailProgressSubscriptionChange)
+        CocktailFactory preparedPlan = planCache.takePlan(planKey);
+        CocktailFactory cocktailFactory = (preparedPlan != null ? preparedPlan : createPlan(feasibilityFactory, station))
+                .setUser(user)
+                .setLoadCellArbiter(pumpUpService.getLoadCellArbiter())
+                .setTelemetrySink(pumpJobTelemetryService::record)
+                .setValveModelSink(pumpDataService::saveLearnedValveModel);
+        //The motors get driven directly. Maintenance jobs of other stations must not reverse the direction pin.
+        this.pumpUpService.acquireForwardDirection(cocktailFactory);
+        cocktailFactory.subscribeProgress(progress -> onCocktailProgressSubscriptionChange(cocktailFactory, progress))
                 .subscribeProgress(progess -> {
                     switch (progess.getState()) {
-                        case FINISHED, CANCELLED -> onFinishCallback.run();
+                        case FINISHED, CANCELLED -> {
+                            this.pumpUpService.releaseForwardDirection(cocktailFactory);
+                            onFinishCallback.run();
+                        }
                     }
                 });
-        this.cocktailFactory = cocktailFactory;
-        this.cocktailFactory.makeCocktail();
+        this.cocktailFactoryByStationId.put(stationId, cocktailFactory);
+        try {
+            cocktailFactory.makeCocktail();
+        } catch (RuntimeException e) {
+            this.cocktailFactoryByStationId.remove(stationId);
+            this.pumpUpService.releaseForwardDirection(cocktailFactory);
+            throw e;
+        }
         this.pumpUpService.reschedulePumpBack();
     }
 
@@ -81,16 +153,23 @@ public class CocktailOrderService {
         webSocketService.broadcastPumpLayout(pumpDataService.getAllPumps());
     }
 
-    private void onCocktailProgressSubscriptionChange(CocktailProgress progress) {
+    private void onCocktailProgressSubscriptionChange(CocktailFactory cocktailFactory, CocktailProgress progress) {
+        Long stationId = getStationId(cocktailFactory.getStation());
         if(progress.getState() == CocktailProgress.State.CANCELLED || progress.getState() == CocktailProgress.State.FINISHED) {
+            //Keep showing the result for a few seconds, unless the next cocktail has been started already
             this.scheduler.schedule(() -> {
-                this.cocktailFactory = null;
-                this.prevCocktailProgress = null;
-                this.webSocketService.broadcastCurrentCocktailProgress(null);
+                synchronized (this) {
+                    this.prevCocktailProgressByFactory.remove(cocktailFactory);
+                    if(this.cocktailFactoryByStationId.get(stationId) != cocktailFactory) {
+                        return;
+                    }
+                    this.cocktailFactoryByStationId.remove(stationId);
+                    this.webSocketService.broadcastCurrentCocktailProgress(stationId, null);
+                }
                 this.pumpUpService.reschedulePumpBack();
             }, 5000, TimeUnit.MILLISECONDS);
         }
-        this.webSocketService.broadcastCurrentCocktailProgress(progress);
+        this.webSocketService.broadcastCurrentCocktailProgress(stationId, progress);
 
         switch (progress.getState()) {
             case RUNNING:
@@ -109,6 +188,7 @@ public class CocktailOrderService {
                 eventService.triggerActions(EventTrigger.COCKTAIL_PRODUCTION_FINISHED);
                 break;
         }
+        CocktailProgress prevCocktailProgress = prevCocktailProgressByFactory.get(cocktailFactory);
         if(prevCocktailProgress != null) {
             if(prevCocktailProgress.getState() == CocktailProgress.State.MANUAL_ACTION_REQUIRED
                     || prevCocktailProgress.getState() == CocktailProgress.State.MANUAL_INGREDIENT_ADD) {
@@ -117,39 +197,175 @@ public class CocktailOrderService {
                 }
             }
         }
-        prevCocktailProgress = progress;
+        prevCocktailProgressByFactory.put(cocktailFactory, progress);
     }
 
     public FeasibilityFactory checkFeasibility(Recipe recipe, CocktailOrderConfiguration orderConfig) {
-        return new FeasibilityFactory(recipe, orderConfig, pumpDataService.getAllCompletedPumps());
+        return checkFeasibility(recipe, orderConfig, null);
     }
 
-    public synchronized void continueCocktailProduction() {
-        if (this.cocktailFactory == null || this.cocktailFactory.isFinished()) {
+    /**
+     * @param station only the pumps of this station are taken into account. Null for all pumps.
+     */
+    public FeasibilityFactory checkFeasibility(Recipe recipe, CocktailOrderConfiguration orderConfig, Station station) {
+        return checkFeasibility(planCache.createKey(recipe, orderConfig, station), recipe, orderConfig, station);
+    }
+
+    /**
+     * Checks the feasibility like checkFeasibility. If the recipe is feasible, the production plan gets prepared
+     * in the background, so that placing the order with the same configuration can start instantly.
+     */
+    public FeasibilityFactory checkFeasibilityAndPreparePlan(Recipe recipe, CocktailOrderConfiguration orderConfig, Station station) {
+        PlanCache.Key planKey = planCache.createKey(recipe, orderConfig, station);
+        FeasibilityFactory feasibilityFactory = checkFeasibility(planKey, recipe, orderConfig, station);
+        FeasibilityReport report = feasibilityFactory.getFeasibilityReport();
+        if(!report.isFeasible() || report.getRequiredIngredients().stream().anyMatch(x -> x.getAmountMissing() > 0)
+                || planCache.hasPlan(planKey)) {
+            return feasibilityFactory;
+        }
+        ExecutionLanes.background().execute(() -> {
+            try {
+                planCache.putPlan(planKey, createPlan(feasibilityFactory, station));
+            } catch (RuntimeException e) {
+                //The plan gets created again when the order is placed. The error will be reported then.
+            }
+        });
+        return feasibilityFactory;
+    }
+
+    /**
+     * Evaluates the feasibility and the number of default sized servings that are left for many recipes at once.
+     * All recipes are evaluated against one snapshot of the pumps. Boost and additional ingredients are not applied.
+     * @param station only the pumps of this station are taken into account. Null for all pumps.
+     */
+    public List<RecipeAvailability> getAvailability(List<Recipe> recipes, Station station) {
+        AvailabilitySnapshot snapshot = new AvailabilitySnapshot(stationService.getCompletedPumps(station));
+        Map<Long, Glass> glassesById = glassService.getAll().stream()
+                .collect(Collectors.toMap(Glass::getId, x -> x));
+        recipeService.loadProductionSteps(recipes);
+        List<RecipeAvailability> availabilities = new ArrayList<>();
+        for(Recipe recipe : recipes) {
+            Glass defaultGlass = glassesById.get(recipe.getDefaultGlassId());
+            int amountInMl = defaultGlass == null ? 0 : (int) defaultGlass.getSize();
+            availabilities.add(snapshot.evaluate(recipe, amountInMl));
+        }
+        return availabilities;
+    }
+
+    private FeasibilityFactory checkFeasibility(PlanCache.Key planKey, Recipe recipe, CocktailOrderConfiguration orderConfig, Station station) {
+        return planCache.getFeasibility(planKey, () -> new FeasibilityFactory(recipe, orderConfig, stationService.getCompletedPumps(station)));
+    }
+
+    /**
+     * Creates the production plan with a fresh copy of the pumps, since the plan decreases their filling levels.
+     */
+    private CocktailFactory createPlan(FeasibilityFactory feasibilityFactory, Station station) {
+        return new CocktailFactory(feasibilityFactory.getFeasibleRecipe(), null,
+                new HashSet<>(stationService.getCompletedPumps(station)), powerLimitSettingsService.getPowerLimitSettings(),
+                ingredientSplitSettingsService.getIngredientSplitMode(), this::onRequestPumpPersist)
+                .setValveDosingMode(valveDosingSettingsService.getValveDosingMode())
+                .setStation(station);
+    }
+
+    public synchronized void continueCocktailProduction(Long stationId) {
+        CocktailFactory cocktailFactory = this.cocktailFactoryByStationId.get(stationId);
+        if (cocktailFactory == null || cocktailFactory.isFinished()) {
             throw new IllegalStateException("No cocktail is being prepared currently!");
         }
-        this.cocktailFactory.continueProduction();
+        cocktailFactory.continueProduction();
     }
 
+    /**
+     * @return true if any station is producing a cocktail
+     */
     public synchronized boolean isMakingCocktail() {
-        return this.cocktailFactory != null
-                && !this.cocktailFactory.isCanceled()
-                && !this.cocktailFactory.isFinished();
+        return this.cocktailFactoryByStationId.keySet().stream().anyMatch(this::isMakingCocktail);
+    }
+
+    public synchronized boolean isMakingCocktail(Long stationId) {
+        CocktailFactory cocktailFactory = this.cocktailFactoryByStationId.get(stationId);
+        return cocktailFactory != null
+                && !cocktailFactory.isCanceled()
+                && !cocktailFactory.isFinished();
     }
 
-    public synchronized boolean cancelCocktailOrder() {
-        if(this.cocktailFactory == null || this.cocktailFactory.isFinished()) {
+    public synchronized boolean cancelCocktailOrder(Long stationId) {
+        CocktailFactory cocktailFactory = this.cocktailFactoryByStationId.get(stationId);
+        if(cocktailFactory == null || cocktailFactory.isFinished() || cocktailFactory.isCanceled()) {
             return false;
         }
-        this.cocktailFactory.cancelCocktail();
+        cocktailFactory.cancelCocktail();
         return true;
     }
 
-    public CocktailProgress getCurrentCocktailProgress() {
-        if(this.cocktailFactory == null) {
+    /**
+     * @return the estimated time in ms until the cocktail of the station has been finished.
+     * 0 if the station doesn't prepare a cocktail.
+     */
+    public synchronized long getEstimatedRemainingTime(Long stationId) {
+        if(!isMakingCocktail(stationId)) {
+            return 0;
+        }
+        return this.cocktailFactoryByStationId.get(stationId).getEstimatedRemainingTime();
+    }
+
+    /**
+     * Roughly estimates the time in ms that is required to produce the given recipe with the current pump layout.
+     * Each ingredient is expected to be pumped by the first pump that holds it. All servings are taken into account.
+     * @param station only the pumps of this station are taken into account. Null for all pumps.
+     */
+    public long estimateProductionTime(FeasibleRecipe feasibleRecipe, Station station) {
+        Map<Long, List<Pump>> pumpsByIngredientId = stationService.getCompletedPumps(station).stream()
+                .filter(x -> x.getCurrentIngredient() != null)
+                .collect(Collectors.groupingBy(x -> x.getCurrentIngredient().getId()));
+        long pumpingTime = 0;
+        long manualTime = 0;
+        for(ProductionStep productionStep : feasibleRecipe.getFeasibleProductionSteps()) {
+            if(!(productionStep instanceof AddIngredientsProductionStep addIngredientsStep)) {
+                manualTime += CocktailFactory.TIME_FOR_MANUAL_PROGRESS;
+                continue;
+            }
+            long motorTime = 0;
+            long valveTime = 0;
+            boolean manual = false;
+            for(ProductionStepIngredient psi : addIngredientsStep.getStepIngredients()) {
+                if(psi.getAmount() < 1) {
+                    continue;
+                }
+                List<Pump> pumps = pumpsByIngredientId.get(psi.getIngredient().getId());
+                if(pumps == null || pumps.isEmpty()) {
+                    manual = true;
+                    continue;
+                }
+                Pump pump = pumps.get(0);
+                if(pump instanceof DcPump dcPump) {
+                    motorTime = Math.max(motorTime, dcPump.getConvertMlToRuntime(psi.getAmount()));
+                } else if (pump instanceof StepperPump stepperPump) {
+                    long steps = (long) stepperPump.getStepsPerCl() * psi.getAmount() / 10;
+                    motorTime = Math.max(motorTime, steps * 1000 / Math.max(1, stepperPump.getMaxStepsPerSecond()));
+                } else if (pump instanceof Valve valve) {
+                    valveTime += StepTimeline.estimateValveTime(valve, psi.getAmount());
+                }
+            }
+            pumpingTime += motorTime + valveTime;
+            if(manual) {
+                manualTime += CocktailFactory.TIME_FOR_MANUAL_PROGRESS;
+            }
+        }
+        int servings = feasibleRecipe.getServings();
+        if(feasibleRecipe.getBatchMode() == CocktailOrderConfiguration.BatchMode.PITCHER) {
+            return pumpingTime * servings + manualTime;
+        }
+        //Every additional glass requires a glass swap
+        return (pumpingTime + manualTime) * servings + (servings - 1) * CocktailFactory.TIME_FOR_MANUAL_PROGRESS;
+    }
+
+    public synchronized CocktailProgress getCurrentCocktailProgress(Long stationId) {
+        CocktailFactory cocktailFactory = this.cocktailFactoryByStationId.get(stationId);
+        if(cocktailFactory == null) {
             return null;
         }
-        return this.cocktailFactory.getCocktailprogress();
+        return cocktailFactory.getCocktailprogress();
     }
 
     public CocktailOrderConfiguration fromDto(CocktailOrderConfigurationDto.Request.Create orderConfigDto) {
@@ -157,7 +373,13 @@ public class CocktailOrderService {
             return null;
         }
         CocktailOrderConfiguration orderConfig = new CocktailOrderConfiguration();
-        BeanUtils.copyProperties(orderConfigDto, orderConfig);
+        BeanUtils.copyProperties(orderConfigDto, orderConfig, "servings", "batchMode");
+        if(orderConfigDto.getServings() != null) {
+            orderConfig.setServings(orderConfigDto.getServings());
+        }
+        if(orderConfigDto.getBatchMode() != null) {
+            orderConfig.setBatchMode(orderConfigDto.getBatchMode());
+        }
         long pStep = 0;
         Map<Long, Map<Long, AddableIngredient>> replacements = new HashMap<>();
         orderConfig.setProductionStepReplacements(replacements);
@@ -0,0 +1,78 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import net.alex9849.motorlib.motor.Direction;
+import net.alex9849.motorlib.pin.IOutputPin;
+import net.alex9849.motorlib.pin.PinState;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Owns the direction pin, which is shared by all pumps. Maintenance jobs register the direction they pump into while
+ * they are running. The direction can only be changed if no job is running. Once the last backward job has finished,
+ * the direction gets switched back to forward.
+ * Cocktail productions drive their motors directly, so they hold the forward direction until they have finished.
+ */
+public class DirectionArbiter {
+    private final Set<Object> jobs = new HashSet<>();
+    private final Set<Object> forwardHolders = new HashSet<>();
+    private Direction direction = Direction.FORWARD;
+    private IOutputPin directionPin;
+
+    /**
+     * @param directionPin the pin or null, if the direction can't be controlled
+     */
+    public synchronized void setDirectionPin(IOutputPin directionPin) {
+        this.directionPin = directionPin;
+        writeDirectionPin();
+    }
+
+    public synchronized void acquire(Object job, Direction direction) {
+        if (direction != this.direction && !jobs.isEmpty()) {
+            throw new IllegalArgumentException("One or more pumps are currently pumping into the other direction!");
+        }
+        if (direction == Direction.BACKWARD && !forwardHolders.isEmpty()) {
+            throw new IllegalArgumentException("Pumps can't be reversed while a cocktail is being produced!");
+        }
+        setDirection(direction);
+        jobs.add(job);
+    }
+
+    public synchronized void release(Object job) {
+        if (jobs.remove(job) && jobs.isEmpty() && direction == Direction.BACKWARD) {
+            setDirection(Direction.FORWARD);
+        }
+    }
+
+    public synchronized void acquireForward(Object holder) {
+        if (direction != Direction.FORWARD) {
+            if (!jobs.isEmpty()) {
+                throw new IllegalArgumentException("One or more pumps are currently pumping into the other direction!");
+            }
+            setDirection(Direction.FORWARD);
+        }
+        forwardHolders.add(holder);
+    }
+
+    public synchronized void releaseForward(Object holder) {
+        forwardHolders.remove(holder);
+    }
+
+    public synchronized boolean isForwardHeld() {
+        return !forwardHolders.isEmpty();
+    }
+
+    private void setDirection(Direction direction) {
+        if (this.direction == direction) {
+            return;
+        }
+        this.direction = direction;
+        writeDirectionPin();
+    }
+
+    private void writeDirectionPin() {
+        if (directionPin != null) {
+            directionPin.digitalWrite(direction == Direction.FORWARD ? PinState.HIGH : PinState.LOW);
+        }
+    }
+}
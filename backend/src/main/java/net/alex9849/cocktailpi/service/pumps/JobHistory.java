@@ -0,0 +1,85 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import net.alex9849.cocktailpi.model.pump.JobMetrics;
+import net.alex9849.cocktailpi.model.pump.motortasks.PumpTask;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the pump jobs, so that their metrics can be looked up after they have finished.
+ * Live jobs are kept as tasks. Once a job has finished and isn't the current job of its pump anymore, it gets compacted
+ * to its final metrics, so that the task (and its pump, driver and callback) can be garbage collected.
+ * The metrics of finished jobs are kept in a ring that is bounded by size and by age. The oldest get evicted first.
+ */
+public class JobHistory {
+    private final Map<Long, PumpTask> liveJobs = new HashMap<>();
+    private final Map<Long, FinishedJob> finishedJobs = new HashMap<>();
+    private final Deque<FinishedJob> finishedRing = new ArrayDeque<>();
+    private int maxSize;
+    private long maxAgeInMs;
+
+    /**
+     * @param maxSize the maximal number of finished jobs to keep
+     * @param maxAgeInMinutes how long finished jobs are kept. 0 = as long as they fit into the ring
+     */
+    public synchronized void configure(int maxSize, int maxAgeInMinutes) {
+        this.maxSize = Math.max(0, maxSize);
+        this.maxAgeInMs = TimeUnit.MINUTES.toMillis(Math.max(0, maxAgeInMinutes));
+        evict(System.currentTimeMillis());
+    }
+
+    public synchronized void addLive(PumpTask pumpTask) {
+        liveJobs.put(pumpTask.getJobId(), pumpTask);
+    }
+
+    public synchronized PumpTask getLive(long jobId) {
+        return liveJobs.get(jobId);
+    }
+
+    /**
+     * Compacts all finished jobs that aren't needed as live jobs anymore and evicts the expired ones.
+     * @param currentJobIds the ids of the current jobs of all pumps. They are kept as live jobs.
+     */
+    public synchronized void compact(Collection<Long> currentJobIds) {
+        long now = System.currentTimeMillis();
+        Iterator<PumpTask> it = liveJobs.values().iterator();
+        while (it.hasNext()) {
+            PumpTask pumpTask = it.next();
+            if (!pumpTask.isFinished() || currentJobIds.contains(pumpTask.getJobId())) {
+                continue;
+            }
+            it.remove();
+            FinishedJob finishedJob = new FinishedJob(pumpTask.getJobId(), pumpTask.getJobMetrics(), now);
+            finishedJobs.put(pumpTask.getJobId(), finishedJob);
+            finishedRing.addLast(finishedJob);
+        }
+        evict(now);
+    }
+
+    public synchronized JobMetrics getJobMetrics(long jobId) {
+        PumpTask pumpTask = liveJobs.get(jobId);
+        if (pumpTask != null) {
+            return pumpTask.getJobMetrics();
+        }
+        FinishedJob finishedJob = finishedJobs.get(jobId);
+        if (finishedJob == null || isExpired(finishedJob, System.currentTimeMillis())) {
+            return null;
+        }
+        return finishedJob.metrics;
+    }
+
+    private void evict(long now) {
+        while (!finishedRing.isEmpty()
+                && (finishedRing.size() > maxSize || isExpired(finishedRing.peekFirst(), now))) {
+            FinishedJob evicted = finishedRing.removeFirst();
+            finishedJobs.remove(evicted.jobId);
+        }
+    }
+
+    private boolean isExpired(FinishedJob finishedJob, long now) {
+        return maxAgeInMs > 0 && now - finishedJob.compactedAt > maxAgeInMs;
+    }
+
+    private record FinishedJob(long jobId, JobMetrics metrics, long compactedAt) {}
+}
@@ -0,0 +1,97 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Grants exclusive access to the load cell. Valves are dosed by weight, so only one of them may use the load cell
+ * at a time, no matter if it is dosed by a maintenance job or by the production of a station.
+ * Maintenance jobs register themselves while they are running, because the output of running motors and valves
+ * disturbs the weighing of a valve.
+ */
+public class LoadCellArbiter {
+    private final Set<Object> motorJobs = new HashSet<>();
+    private final Set<Object> valveJobs = new HashSet<>();
+    private Object owner;
+    private int timesAcquired;
+    //The owner of the load cell, while motors are allowed to run next to it
+    private Object ownerSharingWithMotors;
+
+    /**
+     * Waits until the load cell is free and acquires it.
+     */
+    public synchronized void acquire(Object acquirer) throws InterruptedException {
+        while (owner != null && owner != acquirer) {
+            wait();
+        }
+        owner = acquirer;
+        timesAcquired++;
+    }
+
+    public synchronized boolean tryAcquire(Object acquirer) {
+        if(owner != null && owner != acquirer) {
+            return false;
+        }
+        owner = acquirer;
+        timesAcquired++;
+        return true;
+    }
+
+    public synchronized void release(Object acquirer) {
+        if(owner != acquirer) {
+            throw new IllegalArgumentException("Load cell occupied by a different owner!");
+        }
+        if(--timesAcquired <= 0) {
+            owner = null;
+            timesAcquired = 0;
+            notifyAll();
+        }
+    }
+
+    public synchronized boolean isOccupied() {
+        return owner != null;
+    }
+
+    /**
+     * Registers a motor driven maintenance job. Motors may only run if the load cell is free or if its owner
+     * subtracts their output.
+     */
+    public synchronized void acquireForMotorJob(Object job) {
+        if(owner != null && owner != ownerSharingWithMotors) {
+            throw new IllegalArgumentException("Load cell occupied! A valve is running that requires genuine load cell data!");
+        }
+        motorJobs.add(job);
+    }
+
+    /**
+     * Registers a valve maintenance job.
+     * @param weighing if the valve gets dosed by weight. The job owns the load cell in that case.
+     * @param shareWithMotors if motors may run next to the weighing valve
+     */
+    public synchronized void acquireForValveJob(Object job, boolean weighing, boolean shareWithMotors) {
+        if(weighing) {
+            if(!valveJobs.isEmpty() || (!shareWithMotors && !motorJobs.isEmpty())) {
+                throw new IllegalArgumentException("Load cell occupied! Other pumps are running currently.");
+            }
+            if(!tryAcquire(job)) {
+                throw new IllegalArgumentException("Load cell occupied! A different valve is being dosed currently.");
+            }
+            if(shareWithMotors) {
+                ownerSharingWithMotors = job;
+            }
+        } else if(owner != null) {
+            throw new IllegalArgumentException("Load cell occupied! A valve is running that requires genuine load cell data!");
+        }
+        valveJobs.add(job);
+    }
+
+    public synchronized void releaseJob(Object job) {
+        motorJobs.remove(job);
+        if(valveJobs.remove(job) && owner == job) {
+            if(ownerSharingWithMotors == job) {
+                ownerSharingWithMotors = null;
+            }
+            release(job);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import net.alex9849.cocktailpi.service.pumps.clock.Clock;
+import net.alex9849.cocktailpi.service.pumps.clock.SystemClock;
+import net.alex9849.motorlib.sensor.HX711;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Owns the HX711 of a load cell. A dedicated thread samples the chip and publishes every conversion into a lock-free
+ * ring buffer, so that any number of consumers can share the chip. Consumers read the latest sample or wait for the
+ * next one instead of doing their own blocking reads.
+ * The thread only samples while the samples are used. Once no consumer has asked for a sample within the keep-alive
+ * time, it parks until the next consumer shows up. The filter starts over after such a pause.
+ * Every sample carries the raw weight and a filtered weight. The filter takes the median of the last raw samples,
+ * which removes single spikes, and smooths it with an exponential moving average. Time-critical consumers like
+ * the valve dosing use the raw weight, as the filter adds lag.
+ * Calibrations need the chip for themselves. They get executed on the sampler thread between two conversions.
+ * The sampler of a simulated load cell doesn't start a thread. It samples on the thread of the consumer instead,
+ * so that productions can still be replayed in virtual time.
+ */
+public class LoadCellSampler {
+    private static final int BUFFER_SIZE = 64;
+    private static final int MEDIAN_WINDOW = 5;
+    private static final double EMA_ALPHA = 0.3;
+    private static final long SAMPLE_TIMEOUT_IN_MS = 2000;
+    private static final long MAX_FILTERED_AGE_IN_MS = 500;
+    private static final long ERROR_BACKOFF_IN_MS = 100;
+    private static final long KEEP_ALIVE_IN_MS = 10000;
+    private final Logger logger = LoggerFactory.getLogger(LoadCellSampler.class);
+
+    private final HX711 hx711;
+    private final Clock clock;
+    private final AtomicReferenceArray<Sample> buffer = new AtomicReferenceArray<>(BUFFER_SIZE);
+    private final AtomicLong latestSequence = new AtomicLong(-1);
+    //Advances its phase with every published sample. Gets terminated once the sampler stops.
+    private final Phaser published = new Phaser(1);
+    private final Queue<FutureTask<?>> commands = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private final long keepAliveNanos;
+    private volatile long lastDemandNanos = System.nanoTime();
+    private volatile boolean stopped;
+
+    //Only touched by the sampling thread
+    private final long[] medianWindow = new long[MEDIAN_WINDOW];
+    private int medianWindowSize;
+    private double ema;
+
+    private LoadCellSampler(HX711 hx711, Clock clock, boolean ownThread, long keepAliveInMs) {
+        this.hx711 = hx711;
+        this.clock = clock;
+        this.keepAliveNanos = TimeUnit.MILLISECONDS.toNanos(keepAliveInMs);
+        if(ownThread) {
+            thread = new Thread(this::run, "load-cell-sampler");
+            thread.setPriority(Thread.MAX_PRIORITY);
+            thread.setDaemon(true);
+        } else {
+            thread = null;
+        }
+    }
+
+    /**
+     * @return a sampler that samples the chip on its own thread, as long as the samples are used
+     */
+    public static LoadCellSampler startSampling(HX711 hx711) {
+        return startSampling(hx711, KEEP_ALIVE_IN_MS);
+    }
+
+    static LoadCellSampler startSampling(HX711 hx711, long keepAliveInMs) {
+        LoadCellSampler sampler = new LoadCellSampler(hx711, SystemClock.INSTANCE, true, keepAliveInMs);
+        sampler.thread.start();
+        return sampler;
+    }
+
+    /**
+     * @return a sampler that only samples the chip if a consumer waits for the next sample
+     */
+    public static LoadCellSampler sampleOnDemand(HX711 hx711, Clock clock) {
+        return new LoadCellSampler(hx711, clock, false, 0);
+    }
+
+    private void run() {
+        while (!stopped) {
+            runCommands();
+            if(isIdle()) {
+                //Gets unparked by the next consumer
+                LockSupport.park(this);
+                //The chip hasn't been sampled for a while. The filter must not mix old and new samples.
+                medianWindowSize = 0;
+                continue;
+            }
+            try {
+                sample();
+            } catch (InterruptedException e) {
+                //Stopped
+            } catch (RuntimeException e) {
+                logger.error("Sampling the load cell failed!", e);
+                try {
+                    Thread.sleep(ERROR_BACKOFF_IN_MS);
+                } catch (InterruptedException ignored) {
+                    //Stopped
+                }
+            }
+        }
+        published.forceTermination();
+        FutureTask<?> command;
+        while ((command = commands.poll()) != null) {
+            command.cancel(false);
+        }
+    }
+
+    private boolean isIdle() {
+        return commands.isEmpty() && System.nanoTime() - lastDemandNanos > keepAliveNanos;
+    }
+
+    /**
+     * Keeps the sampler thread sampling or wakes it up.
+     */
+    private void demand() {
+        lastDemandNanos = System.nanoTime();
+        if(thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void runCommands() {
+        FutureTask<?> command;
+        while ((command = commands.poll()) != null) {
+            command.run();
+            //The chip got used by the command. The filter must not mix samples from before and after.
+            medianWindowSize = 0;
+        }
+    }
+
+    private Sample sample() throws InterruptedException {
+        long rawGrams = hx711.read_once();
+        long time = clock.currentTimeMillis();
+        long sequence = latestSequence.get() + 1;
+        Sample sample = new Sample(sequence, time, rawGrams, filter(rawGrams));
+        buffer.set((int) (sequence % BUFFER_SIZE), sample);
+        latestSequence.set(sequence);
+        published.arrive();
+        return sample;
+    }
+
+    private long filter(long rawGrams) {
+        if(medianWindowSize < MEDIAN_WINDOW) {
+            medianWindow[medianWindowSize++] = rawGrams;
+        } else {
+            System.arraycopy(medianWindow, 1, medianWindow, 0, MEDIAN_WINDOW - 1);
+            medianWindow[MEDIAN_WINDOW - 1] = rawGrams;
+        }
+        long[] sorted = Arrays.copyOf(medianWindow, medianWindowSize);
+        Arrays.sort(sorted);
+        long median = sorted[medianWindowSize / 2];
+        if(medianWindowSize == 1) {
+            ema = median;
+        } else {
+            ema += EMA_ALPHA * (median - ema);
+        }
+        return Math.round(ema);
+    }
+
+    /**
+     * @return the latest sample or null if the chip hasn't been sampled yet
+     */
+    public Sample getLatest() {
+        demand();
+        long sequence = latestSequence.get();
+        if(sequence < 0) {
+            return null;
+        }
+        return buffer.get((int) (sequence % BUFFER_SIZE));
+    }
+
+    /**
+     * Returns the sample that follows the given one, waiting for it if it hasn't been taken yet. Consumers that
+     * have fallen behind by more than the ring buffer get the latest sample and skip the overwritten ones.
+     * @param afterSequence the sequence of the last sample the consumer has seen or -1
+     * @throws IllegalStateException if the chip doesn't respond or the sampler has been stopped
+     */
+    public Sample awaitNext(long afterSequence) throws InterruptedException {
+        demand();
+        if(thread == null) {
+            synchronized (this) {
+                Sample next = getNext(afterSequence);
+                return next != null ? next : sample();
+            }
+        }
+        while (true) {
+            //The phase needs to be read before the sample. Otherwise a sample could be published unnoticed in between.
+            int phase = published.getPhase();
+            Sample next = getNext(afterSequence);
+            if(next != null) {
+                return next;
+            }
+            if(phase < 0 || stopped) {
+                throw new IllegalStateException("Load cell sampler has been stopped!");
+            }
+            try {
+                published.awaitAdvanceInterruptibly(phase, SAMPLE_TIMEOUT_IN_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                throw new IllegalStateException("Load cell doesn't respond!");
+            }
+        }
+    }
+
+    private Sample getNext(long afterSequence) {
+        if(latestSequence.get() <= afterSequence) {
+            return null;
+        }
+        Sample next = buffer.get((int) ((afterSequence + 1) % BUFFER_SIZE));
+        if(next == null || next.sequence() != afterSequence + 1) {
+            return getLatest();
+        }
+        return next;
+    }
+
+    /**
+     * Waits for a sample that gets taken after the call.
+     */
+    public Sample awaitNext() throws InterruptedException {
+        return awaitNext(latestSequence.get());
+    }
+
+    /**
+     * @return the average raw weight of the given number of consecutive samples, that get taken after the call
+     */
+    public long readGrams(int times) throws InterruptedException {
+        Sample sample = awaitNext();
+        long sum = sample.rawGrams();
+        for(int i = 1; i < Math.max(1, times); i++) {
+            sample = awaitNext(sample.sequence());
+            sum += sample.rawGrams();
+        }
+        return sum / Math.max(1, times);
+    }
+
+    /**
+     * Doesn't wait, as long as the latest sample is recent.
+     * @return the latest filtered weight
+     */
+    public long readFilteredGrams() throws InterruptedException {
+        Sample latest = getLatest();
+        if(latest == null || clock.currentTimeMillis() - latest.timeInMs() > MAX_FILTERED_AGE_IN_MS) {
+            latest = awaitNext();
+        }
+        return latest.filteredGrams();
+    }
+
+    /**
+     * Runs the command with exclusive access to the chip, e.g. to calibrate it.
+     * @return the result of the command
+     */
+    public <T> T runExclusive(ChipCommand<T> command) throws InterruptedException {
+        if(thread == null) {
+            synchronized (this) {
+                return command.run(hx711);
+            }
+        }
+        FutureTask<T> task = new FutureTask<>(() -> command.run(hx711));
+        //Gets executed once the conversion that is currently running has finished
+        commands.offer(task);
+        demand();
+        if(stopped) {
+            task.cancel(false);
+        }
+        try {
+            return task.get();
+        } catch (CancellationException e) {
+            throw new IllegalStateException("Load cell sampler has been stopped!");
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof InterruptedException cause) {
+                throw cause;
+            }
+            if(e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Stops the sampler. Consumers that wait for a sample get an exception.
+     */
+    public void stop() {
+        stopped = true;
+        if(thread != null) {
+            thread.interrupt();
+        } else {
+            published.forceTermination();
+        }
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    @FunctionalInterface
+    public interface ChipCommand<T> {
+        T run(HX711 hx711) throws InterruptedException;
+    }
+
+    /**
+     * @param sequence increases by one with every sample
+     * @param timeInMs the time the conversion has been read
+     */
+    public record Sample(long sequence, long timeInMs, long rawGrams, long filteredGrams) {}
+}
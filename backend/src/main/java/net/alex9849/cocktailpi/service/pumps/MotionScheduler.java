@@ -0,0 +1,345 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import net.alex9849.cocktailpi.service.executor.RealTimeCore;
+import net.alex9849.cocktailpi.service.pumps.steptiming.StepTimingMonitor;
+import net.alex9849.cocktailpi.service.pumps.steptiming.StepTimingProbe;
+import net.alex9849.cocktailpi.service.pumps.steptiming.StepTimingStats;
+import net.alex9849.motorlib.motor.AcceleratingStepper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the moves of all steppers on one thread, the ones of maintenance jobs as well as the ones of the
+ * cocktail production. The moves are only touched by the scheduler thread itself. Other threads submit or cancel
+ * moves by putting commands into a lock-free queue, which gets drained between two step rounds.
+ * While moves are running, the thread can be pinned to the {@link RealTimeCore}, which it shares with the
+ * PrecisionTimer. It gets unpinned as soon as it gets idle.
+ * A move only gets started if it fits into the global step rate limit and its power can be claimed from the
+ * PowerBudget, which is shared with the DC pumps and valves of all jobs. Moves that don't fit wait until enough
+ * running moves or other claims have finished.
+ */
+public class MotionScheduler {
+    private static MotionScheduler instance;
+    private final Logger logger = LoggerFactory.getLogger(MotionScheduler.class);
+    private final Thread thread;
+    private final Queue<Command> commands;
+    private final List<Job> pendingJobs;
+    private final List<Job> runningJobs;
+    private final PowerBudget powerBudget;
+    private long runningStepsPerSecond;
+    private volatile boolean pinToCore = true;
+    private volatile int maxStepsPerSecond;
+
+    MotionScheduler(PowerBudget powerBudget) {
+        commands = new ConcurrentLinkedQueue<>();
+        pendingJobs = new ArrayList<>();
+        runningJobs = new ArrayList<>();
+        this.powerBudget = powerBudget;
+        thread = new Thread(this::run, "motion-scheduler");
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.setDaemon(true);
+        //Waiting moves might fit now
+        powerBudget.addReleaseListener(() -> LockSupport.unpark(thread));
+        thread.start();
+    }
+
+    public synchronized static MotionScheduler getInstance() {
+        if (instance == null) {
+            instance = new MotionScheduler(PowerBudget.getInstance());
+        }
+        return instance;
+    }
+
+    /**
+     * @param pinToCore pin the scheduler thread to a CPU core while moves are running
+     * @param maxStepsPerSecond the maximal sum of the step rates of all running moves. 0 = unlimited
+     */
+    public void configure(boolean pinToCore, int threadPriority, int maxStepsPerSecond) {
+        this.pinToCore = pinToCore;
+        this.maxStepsPerSecond = Math.max(0, maxStepsPerSecond);
+        thread.setPriority(Math.max(Thread.MIN_PRIORITY, Math.min(Thread.MAX_PRIORITY, threadPriority)));
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * @return completes once the move has finished or got cancelled
+     */
+    public Future<Void> submit(Move move) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        long startNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(move.startDelayInMs);
+        offer(new Command(Command.Type.SUBMIT, move.stepper, future, move, startNanos));
+        return future;
+    }
+
+    public void cancel(AcceleratingStepper stepper) {
+        offer(new Command(Command.Type.CANCEL, stepper, null, null, 0));
+    }
+
+    private void offer(Command command) {
+        commands.offer(command);
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        while (true) {
+            try {
+                schedule();
+            } catch (RuntimeException e) {
+                //Failures of single moves are handled by their jobs. The thread must survive anything else as well.
+                //The running moves get failed, so that nobody waits for them forever.
+                logger.error("Motion scheduler round failed!", e);
+                while (!runningJobs.isEmpty()) {
+                    failRunningJob(runningJobs.size() - 1, e);
+                }
+            }
+        }
+    }
+
+    private void schedule() {
+        drainCommands();
+        startDueJobs(System.nanoTime());
+        if (!runningJobs.isEmpty()) {
+            if (pinToCore) {
+                try (RealTimeCore.Pinning pinning = RealTimeCore.pinCurrentThread()) {
+                    runRounds(StepTimingMonitor.getInstance().getCoreStats(pinning.getCpuId()));
+                }
+            } else {
+                runRounds(StepTimingMonitor.getInstance().getCoreStats(StepTimingMonitor.UNPINNED_CPU));
+            }
+            return;
+        }
+        //Gets unparked by the next command
+        long nextStartNanos = pendingJobs.stream().mapToLong(x -> x.startNanos).min().orElse(Long.MAX_VALUE);
+        if (nextStartNanos == Long.MAX_VALUE) {
+            LockSupport.park(this);
+        } else {
+            LockSupport.parkNanos(this, nextStartNanos - System.nanoTime());
+        }
+    }
+
+    private void runRounds(StepTimingStats coreStats) {
+        StepTimingProbe coreProbe = new StepTimingProbe(coreStats);
+        try {
+            while (!runningJobs.isEmpty()) {
+                long now = System.nanoTime();
+                coreProbe.iteration(now, true);
+                for (int i = 0; i < runningJobs.size(); i++) {
+                    Job job = runningJobs.get(i);
+                    AcceleratingStepper stepper = job.move.stepper;
+                    try {
+                        if (stepper.distanceToGo() != 0) {
+                            boolean stepped = stepper.run();
+                            if (job.move.probe != null) {
+                                job.move.probe.iteration(now, stepped);
+                            }
+                        }
+                        if (stepper.distanceToGo() == 0) {
+                            finishRunningJob(i--);
+                        }
+                    } catch (RuntimeException e) {
+                        failRunningJob(i--, e);
+                    }
+                }
+                drainCommands();
+                if (!pendingJobs.isEmpty()) {
+                    startDueJobs(now);
+                }
+            }
+        } finally {
+            coreProbe.close();
+        }
+    }
+
+    /**
+     * Starts the longest waiting due jobs that fit into the limits.
+     */
+    private void startDueJobs(long now) {
+        for (int i = 0; i < pendingJobs.size(); i++) {
+            Job job = pendingJobs.get(i);
+            if (job.startNanos > now || !isFitting(job)) {
+                continue;
+            }
+            pendingJobs.remove(i--);
+            Move move = job.move;
+            try {
+                if (move.steps != null) {
+                    move.stepper.move(move.steps);
+                }
+                if (move.onStart != null) {
+                    move.onStart.run();
+                }
+            } catch (RuntimeException e) {
+                powerBudget.release(job);
+                job.fail(e);
+                continue;
+            }
+            runningJobs.add(job);
+            runningStepsPerSecond += move.stepsPerSecond;
+        }
+    }
+
+    /**
+     * Claims the power of the job, if it fits.
+     */
+    private boolean isFitting(Job job) {
+        Move move = job.move;
+        if (!runningJobs.isEmpty() && maxStepsPerSecond > 0
+                && runningStepsPerSecond + move.stepsPerSecond > maxStepsPerSecond) {
+            return false;
+        }
+        return move.powerClaimed || powerBudget.tryClaim(job, new PowerBudget.Demand(1, move.powerConsumptionInMa));
+    }
+
+    private void finishRunningJob(int index) {
+        Job job = runningJobs.remove(index);
+        runningStepsPerSecond -= job.move.stepsPerSecond;
+        powerBudget.release(job);
+        job.complete();
+    }
+
+    private void failRunningJob(int index, RuntimeException e) {
+        Job job = runningJobs.remove(index);
+        runningStepsPerSecond -= job.move.stepsPerSecond;
+        powerBudget.release(job);
+        job.fail(e);
+    }
+
+    private void drainCommands() {
+        Command command;
+        while ((command = commands.poll()) != null) {
+            switch (command.type) {
+                case SUBMIT -> pendingJobs.add(new Job(command.move, command.future, command.startNanos));
+                case CANCEL -> cancelJob(command.stepper);
+            }
+        }
+    }
+
+    private void cancelJob(AcceleratingStepper stepper) {
+        for (int i = 0; i < runningJobs.size(); i++) {
+            if (runningJobs.get(i).move.stepper == stepper) {
+                finishRunningJob(i);
+                return;
+            }
+        }
+        for (int i = 0; i < pendingJobs.size(); i++) {
+            if (pendingJobs.get(i).move.stepper == stepper) {
+                pendingJobs.remove(i).complete();
+                return;
+            }
+        }
+    }
+
+    /**
+     * A move of a stepper. The setters need to be called before the move gets submitted.
+     */
+    public static class Move {
+        private final AcceleratingStepper stepper;
+        private Long steps;
+        private long startDelayInMs;
+        private int powerConsumptionInMa;
+        private boolean powerClaimed;
+        private int stepsPerSecond;
+        private Runnable onStart;
+        private StepTimingProbe probe;
+
+        public Move(AcceleratingStepper stepper) {
+            this.stepper = Objects.requireNonNull(stepper);
+        }
+
+        /**
+         * @param steps the relative steps, which get set at the stepper once the move gets started.
+         *              If not set, the target of the stepper needs to be set before submitting the move.
+         */
+        public Move setSteps(long steps) {
+            this.steps = steps;
+            return this;
+        }
+
+        public Move setStartDelayInMs(long startDelayInMs) {
+            this.startDelayInMs = Math.max(0, startDelayInMs);
+            return this;
+        }
+
+        public Move setPowerConsumptionInMa(int powerConsumptionInMa) {
+            this.powerConsumptionInMa = Math.max(0, powerConsumptionInMa);
+            return this;
+        }
+
+        /**
+         * @param powerClaimed true if the submitter has already claimed the power of the move from the PowerBudget,
+         *                     e.g. together with the other motors of a production step
+         */
+        public Move setPowerClaimed(boolean powerClaimed) {
+            this.powerClaimed = powerClaimed;
+            return this;
+        }
+
+        /**
+         * @param stepsPerSecond the maximal step rate of the stepper. Counts towards the global step rate limit.
+         */
+        public Move setStepsPerSecond(int stepsPerSecond) {
+            this.stepsPerSecond = Math.max(0, stepsPerSecond);
+            return this;
+        }
+
+        /**
+         * @param onStart gets called on the scheduler thread once the move gets started. Needs to be short.
+         */
+        public Move setOnStart(Runnable onStart) {
+            this.onStart = onStart;
+            return this;
+        }
+
+        /**
+         * @param probe records the step timing of the move. Gets used by the scheduler thread only from now on.
+         */
+        public Move setProbe(StepTimingProbe probe) {
+            this.probe = probe;
+            return this;
+        }
+    }
+
+    private record Command(Type type, AcceleratingStepper stepper, CompletableFuture<Void> future,
+                           Move move, long startNanos) {
+        private enum Type {
+            SUBMIT, CANCEL
+        }
+    }
+
+    private static class Job {
+
+        public Job(Move move, CompletableFuture<Void> future, long startNanos) {
+            this.move = move;
+            this.future = future;
+            this.startNanos = startNanos;
+        }
+
+        private final Move move;
+        private final CompletableFuture<Void> future;
+        private final long startNanos;
+
+        private void complete() {
+            if(move.probe != null) {
+                move.probe.close();
+            }
+            future.complete(null);
+        }
+
+        private void fail(RuntimeException e) {
+            try {
+                if(move.probe != null) {
+                    move.probe.close();
+                }
+            } finally {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import net.alex9849.cocktailpi.model.Station;
+import net.alex9849.cocktailpi.model.recipe.CocktailOrderConfiguration;
+import net.alex9849.cocktailpi.model.recipe.FeasibilityFactory;
+import net.alex9849.cocktailpi.model.recipe.IngredientRecipe;
+import net.alex9849.cocktailpi.model.recipe.Recipe;
+import net.alex9849.cocktailpi.model.recipe.ingredient.AddableIngredient;
+import net.alex9849.cocktailpi.service.pumps.cocktailfactory.CocktailFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caches feasibility reports and production plans between the feasibility check and the actual order.
+ * Entries are keyed by the recipe and its last update, the normalized order configuration, the station and
+ * the layout version. The layout version gets increased whenever pumps, stations, ingredients or the
+ * production settings change. Entries with an outdated version are never hit again and get evicted over time.
+ * A production plan (CocktailFactory) can only be executed once and gets removed when it is taken.
+ */
+@Component
+public class PlanCache {
+    private static final int CAPACITY = 32;
+
+    private final AtomicLong layoutVersion = new AtomicLong();
+    private final Map<Key, FeasibilityFactory> feasibilityByKey = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, FeasibilityFactory> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+    private final Map<Key, CocktailFactory> planByKey = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, CocktailFactory> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    /**
+     * Must be called whenever something changes that affects feasibility or the production plan,
+     * e.g. pumps (including their filling levels), stations, ingredients or the production settings.
+     * Within a transaction the cache gets invalidated again after the commit, as plans that have been computed
+     * in the meantime still read the data from before the commit.
+     */
+    public void invalidate() {
+        invalidateNow();
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidateNow();
+                }
+            });
+        }
+    }
+
+    private void invalidateNow() {
+        layoutVersion.incrementAndGet();
+        synchronized (this) {
+            feasibilityByKey.clear();
+            planByKey.clear();
+        }
+    }
+
+    public long getLayoutVersion() {
+        return layoutVersion.get();
+    }
+
+    public Key createKey(Recipe recipe, CocktailOrderConfiguration orderConfig, Station station) {
+        String recipeKey = (recipe instanceof IngredientRecipe ? "ingredient:" : "recipe:") + recipe.getId()
+                + "@" + (recipe.getLastUpdate() == null ? 0 : recipe.getLastUpdate().getTime());
+        return new Key(recipeKey, normalize(orderConfig), station == null ? null : station.getId(), getLayoutVersion());
+    }
+
+    /**
+     * @param computation computes the feasibility if it hasn't been cached yet
+     */
+    public FeasibilityFactory getFeasibility(Key key, Supplier<FeasibilityFactory> computation) {
+        synchronized (this) {
+            FeasibilityFactory cached = feasibilityByKey.get(key);
+            if(cached != null) {
+                return cached;
+            }
+        }
+        FeasibilityFactory feasibilityFactory = computation.get();
+        synchronized (this) {
+            if(key.layoutVersion == getLayoutVersion()) {
+                feasibilityByKey.put(key, feasibilityFactory);
+            }
+        }
+        return feasibilityFactory;
+    }
+
+    public synchronized boolean hasPlan(Key key) {
+        return planByKey.containsKey(key);
+    }
+
+    public synchronized void putPlan(Key key, CocktailFactory cocktailFactory) {
+        if(key.layoutVersion == getLayoutVersion()) {
+            planByKey.put(key, cocktailFactory);
+        }
+    }
+
+    /**
+     * @return the prepared plan or null if there is none. The plan gets removed from the cache.
+     */
+    public synchronized CocktailFactory takePlan(Key key) {
+        if(key.layoutVersion != getLayoutVersion()) {
+            return null;
+        }
+        return planByKey.remove(key);
+    }
+
+    /**
+     * Creates a string that is equal for all configurations that lead to the same feasibility and plan.
+     */
+    private static String normalize(CocktailOrderConfiguration orderConfig) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("amount=").append(orderConfig.getAmountOrderedInMl());
+        sb.append(";servings=").append(orderConfig.getServings());
+        sb.append(";batch=").append(orderConfig.getBatchMode());
+        CocktailOrderConfiguration.Customisations customisations = orderConfig.getCustomisations();
+        if(customisations != null) {
+            sb.append(";boost=").append(customisations.getBoost());
+            if(customisations.getAdditionalIngredients() != null) {
+                //The additional ingredients get added to one production step, so their order doesn't matter
+                SortedMap<Long, Integer> additionalAmounts = new TreeMap<>();
+                for(CocktailOrderConfiguration.Customisations.AdditionalIngredient ai : customisations.getAdditionalIngredients()) {
+                    additionalAmounts.merge(ai.getIngredient().getId(), ai.getAmount(), Integer::sum);
+                }
+                sb.append(";additional=").append(additionalAmounts);
+            }
+        }
+        if(orderConfig.getProductionStepReplacements() != null) {
+            SortedMap<Long, SortedMap<Long, Long>> replacements = new TreeMap<>();
+            for(Map.Entry<Long, Map<Long, AddableIngredient>> stepEntry : orderConfig.getProductionStepReplacements().entrySet()) {
+                SortedMap<Long, Long> stepReplacements = new TreeMap<>();
+                for(Map.Entry<Long, AddableIngredient> entry : stepEntry.getValue().entrySet()) {
+                    //Null means that the replacement gets selected automatically
+                    if(entry.getValue() != null) {
+                        stepReplacements.put(entry.getKey(), entry.getValue().getId());
+                    }
+                }
+                if(!stepReplacements.isEmpty()) {
+                    replacements.put(stepEntry.getKey(), stepReplacements);
+                }
+            }
+            sb.append(";replacements=").append(replacements);
+        }
+        return sb.toString();
+    }
+
+    public record Key(String recipe, String orderConfig, Long stationId, long layoutVersion) {}
+}
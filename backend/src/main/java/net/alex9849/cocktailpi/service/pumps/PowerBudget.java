@@ -0,0 +1,108 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import net.alex9849.cocktailpi.model.pump.Pump;
+import net.alex9849.cocktailpi.model.system.settings.PowerLimitSettings;
+import net.alex9849.cocktailpi.service.pumps.cocktailfactory.PowerBudgetScheduler;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The power budget of the whole machine. The PowerBudgetScheduler plans the motors of a single production step
+ * within the limits, but productions of different stations and maintenance jobs run at the same time.
+ * Everything that switches on DC pumps, steppers or valves claims its share of the budget before and releases it
+ * afterward. A claim that doesn't fit waits until enough other claims have been released. A claim that exceeds
+ * the limits on its own gets granted as soon as nothing else is claimed.
+ */
+public class PowerBudget {
+    private static PowerBudget instance;
+    private final Map<Object, Demand> claims = new HashMap<>();
+    private final List<Runnable> releaseListeners = new CopyOnWriteArrayList<>();
+    private PowerBudgetScheduler limits = new PowerBudgetScheduler(null);
+    private int claimedMotors;
+    private int claimedPowerConsumptionInMa;
+
+    PowerBudget() {}
+
+    public synchronized static PowerBudget getInstance() {
+        if (instance == null) {
+            instance = new PowerBudget();
+        }
+        return instance;
+    }
+
+    public void setPowerLimitSettings(PowerLimitSettings powerLimitSettings) {
+        synchronized (this) {
+            this.limits = new PowerBudgetScheduler(powerLimitSettings);
+            notifyAll();
+        }
+        releaseListeners.forEach(Runnable::run);
+    }
+
+    /**
+     * @param listener gets called after a claim has been released or the limits have changed. Needs to be short.
+     */
+    public void addReleaseListener(Runnable listener) {
+        releaseListeners.add(listener);
+    }
+
+    /**
+     * @param holder identifies the claim. Can hold only one claim at a time.
+     * @return true if the claim has been granted
+     */
+    public synchronized boolean tryClaim(Object holder, Demand demand) {
+        if (claims.containsKey(holder)) {
+            throw new IllegalStateException("Holder already claims power!");
+        }
+        if (!claims.isEmpty() && !limits.isFitting(claimedMotors, claimedPowerConsumptionInMa,
+                demand.motors(), demand.powerConsumptionInMa())) {
+            return false;
+        }
+        claims.put(holder, demand);
+        claimedMotors += demand.motors();
+        claimedPowerConsumptionInMa += demand.powerConsumptionInMa();
+        return true;
+    }
+
+    /**
+     * Waits until the claim fits into the budget.
+     */
+    public synchronized void claim(Object holder, Demand demand) throws InterruptedException {
+        while (!tryClaim(holder, demand)) {
+            wait();
+        }
+    }
+
+    public void release(Object holder) {
+        synchronized (this) {
+            Demand demand = claims.remove(holder);
+            if (demand == null) {
+                return;
+            }
+            claimedMotors -= demand.motors();
+            claimedPowerConsumptionInMa -= demand.powerConsumptionInMa();
+            notifyAll();
+        }
+        releaseListeners.forEach(Runnable::run);
+    }
+
+    public synchronized int getClaimedMotors() {
+        return claimedMotors;
+    }
+
+    public synchronized int getClaimedPowerConsumptionInMa() {
+        return claimedPowerConsumptionInMa;
+    }
+
+    /**
+     * @param motors the number of motors and valves that run at the same time
+     */
+    public record Demand(int motors, int powerConsumptionInMa) {
+
+        public static Demand of(Pump pump) {
+            return new Demand(1, PowerBudgetScheduler.getPowerConsumption(pump));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import net.alex9849.cocktailpi.model.pump.motortasks.PumpTask;
+import net.alex9849.cocktailpi.service.executor.ExecutionLane;
+import net.alex9849.cocktailpi.service.executor.ExecutionLanes;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Owns the maintenance jobs of a single pump. The commands for the pump get executed one after another by its
+ * mailbox, so they don't need to synchronize with the commands of other pumps.
+ * The current job is published through a volatile field, so that the state of the pump can be read without locking.
+ */
+class PumpActor {
+    //The jobs run on the real-time lane. Commands like cancelling a job must not wait behind them.
+    private final Executor mailbox = ExecutionLanes.newSerialExecutor(ExecutionLane.CONTROL);
+    private volatile Thread commandThread;
+    private volatile PumpTask currentTask;
+
+    /**
+     * @return completes with the result of the command, once it has been executed by the mailbox
+     */
+    <T> CompletableFuture<T> submit(Supplier<T> command) {
+        return CompletableFuture.supplyAsync(() -> {
+            commandThread = Thread.currentThread();
+            try {
+                return command.get();
+            } finally {
+                commandThread = null;
+            }
+        }, mailbox);
+    }
+
+    /**
+     * Executes the command and waits for it. Commands that ask their own actor get executed right away.
+     */
+    <T> T ask(Supplier<T> command) {
+        if (commandThread == Thread.currentThread()) {
+            return command.get();
+        }
+        try {
+            return submit(command).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    PumpTask getCurrentTask() {
+        return currentTask;
+    }
+
+    /**
+     * Needs to be called by a command.
+     */
+    void setCurrentTask(PumpTask currentTask) {
+        this.currentTask = currentTask;
+    }
+}
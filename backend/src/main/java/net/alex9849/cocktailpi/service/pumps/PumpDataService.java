@@ -11,9 +11,12 @@ import net.alex9849.cocktailpi.repository.PumpRepository;
 import net.alex9849.cocktailpi.service.GpioService;
 import net.alex9849.cocktailpi.service.IngredientService;
 import net.alex9849.cocktailpi.service.SystemService;
+import net.alex9849.cocktailpi.service.executor.ExecutionLanes;
 import net.alex9849.cocktailpi.utils.PinUtils;
 import net.alex9849.cocktailpi.utils.SpringUtility;
 import net.alex9849.motorlib.pin.PinState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -24,10 +27,14 @@ import java.util.*;
 @Service
 @Transactional
 public class PumpDataService {
+    private final Logger logger = LoggerFactory.getLogger(PumpDataService.class);
 
     @Autowired
     private PumpRepository pumpRepository;
 
+    @Autowired
+    private PlanCache planCache;
+
     @Autowired
     private IngredientService ingredientService;
 
@@ -60,6 +67,7 @@ public class PumpDataService {
             PinUtils.failIfPinOccupiedOrDoubled(PinResource.Type.PUMP, pump.getId(), valve.getPin());
         }
         pump = pumpRepository.create(pump);
+        planCache.invalidate();
         updateDefaultPinState(null, pump);
         //Turn off pump
         if(pump.isCanPump()) {
@@ -85,6 +93,7 @@ public class PumpDataService {
 
         updateDefaultPinState(beforeUpdate, pump);
         pumpRepository.update(pump);
+        planCache.invalidate();
         if (beforeUpdate.isCanPump() && pump.isCanPump()){
             if(!Objects.equals(beforeUpdate.getMotorDriver(), pump.getMotorDriver())) {
                 beforeUpdate.shutdownDriver();
@@ -98,6 +107,24 @@ public class PumpDataService {
         return pump;
     }
 
+    /**
+     * Persists the cut-off lag and the flow that have been learned by dosing the valve. Gets written in the
+     * background, so that the dosing doesn't wait for the database. Other settings of the valve are not touched.
+     */
+    public void saveLearnedValveModel(Valve valve) {
+        long valveId = valve.getId();
+        long timePerClInMs = valve.getTimePerClInMs();
+        long cutOffLagInMs = valve.getCutOffLagInMs();
+        ExecutionLanes.background().execute(() -> {
+            try {
+                pumpRepository.updateValveModel(valveId, timePerClInMs, cutOffLagInMs);
+                planCache.invalidate();
+            } catch (RuntimeException e) {
+                logger.error("Saving the learned model of valve " + valveId + " failed!", e);
+            }
+        });
+    }
+
     public Optional<Pump> findByBcmPin(int bcmPin) {
         return pumpRepository.findByBcmPin(bcmPin);
     }
@@ -109,6 +136,7 @@ public class PumpDataService {
         }
         updateDefaultPinState(pump, null);
         pumpRepository.delete(id);
+        planCache.invalidate();
         if(pump.isCanPump()) {
             pump.shutdownDriver();
         }
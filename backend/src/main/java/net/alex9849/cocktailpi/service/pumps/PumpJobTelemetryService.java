@@ -0,0 +1,94 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import jakarta.annotation.PreDestroy;
+import net.alex9849.cocktailpi.model.pump.PumpJobTelemetry;
+import net.alex9849.cocktailpi.model.pump.PumpJobTelemetryAggregate;
+import net.alex9849.cocktailpi.repository.PumpJobTelemetryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores a record for every run of a pump. Recording only puts the record into a lock-free queue, so that the
+ * pumps don't wait for the database. The queue gets written periodically in batches.
+ * If the database can't keep up, the oldest records get dropped.
+ */
+@Service
+public class PumpJobTelemetryService {
+    private static final int MAX_PENDING_RECORDS = 10000;
+    private static final int MAX_BATCH_SIZE = 500;
+    private final Logger logger = LoggerFactory.getLogger(PumpJobTelemetryService.class);
+    private final Queue<PumpJobTelemetry> pendingRecords = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingRecordsCount = new AtomicInteger();
+    private final AtomicLong droppedRecords = new AtomicLong();
+
+    @Autowired
+    private PumpJobTelemetryRepository telemetryRepository;
+
+    /**
+     * Can be called from the pump threads.
+     */
+    public void record(PumpJobTelemetry record) {
+        pendingRecords.offer(record);
+        if(pendingRecordsCount.incrementAndGet() > MAX_PENDING_RECORDS && pendingRecords.poll() != null) {
+            pendingRecordsCount.decrementAndGet();
+            droppedRecords.incrementAndGet();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${alex9849.app.telemetry.flushIntervalInMs}")
+    @Transactional
+    public void flush() {
+        long dropped = droppedRecords.getAndSet(0);
+        if(dropped > 0) {
+            logger.warn("Dropped " + dropped + " pump job telemetry records. The database couldn't keep up.");
+        }
+        List<PumpJobTelemetry> batch = new ArrayList<>();
+        PumpJobTelemetry record;
+        while ((record = pendingRecords.poll()) != null) {
+            pendingRecordsCount.decrementAndGet();
+            batch.add(record);
+            if(batch.size() >= MAX_BATCH_SIZE) {
+                telemetryRepository.createAll(batch);
+                batch.clear();
+            }
+        }
+        if(!batch.isEmpty()) {
+            telemetryRepository.createAll(batch);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    /**
+     * @param from inclusive, in ms since epoch
+     * @param to exclusive, in ms since epoch
+     */
+    public List<PumpJobTelemetryAggregate> getAggregatesByPump(long from, long to) {
+        return telemetryRepository.aggregateByPump(from, to);
+    }
+
+    /**
+     * @param pumpId only the runs of that pump or null for all pumps
+     */
+    public List<PumpJobTelemetryAggregate> getAggregatesByDay(long from, long to, Long pumpId) {
+        return telemetryRepository.aggregateByDay(from, to, pumpId);
+    }
+
+    public List<PumpJobTelemetryAggregate> getAggregatesByIngredient(long from, long to) {
+        return telemetryRepository.aggregateByIngredient(from, to);
+    }
+}
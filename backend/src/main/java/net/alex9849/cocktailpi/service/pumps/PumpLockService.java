@@ -1,22 +1,75 @@
 package net.alex9849.cocktailpi.service.pumps;
 
+import net.alex9849.cocktailpi.model.pump.PumpLockInfo;
+import net.alex9849.cocktailpi.model.pump.PumpLockMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
+/**
+ * Grants the pumps to the services that use them. Pumps can be locked one by one or all at once by the global lock.
+ * The global lock has read/write semantics: The writer has exclusive access to all pumps. Readers only keep the
+ * writer out. They share the global lock with each other and with the pump locks.
+ * All locks are reentrant per owner. Requests get queued fairly: A request doesn't get a lock as long as an earlier
+ * waiting request of a different owner conflicts with it, no matter if it waits itself or tries to acquire fail-fast.
+ * Owners that already hold a lock bypass the queue, so that they can't deadlock with the requests that wait for them.
+ * Maintenance operations wait for the global lock before their transaction starts, so that waiting requests don't
+ * keep database connections open.
+ */
 @Service
 public class PumpLockService {
+    public enum LockType {
+        PUMP, GLOBAL_READ, GLOBAL_WRITE
+    }
+
     private static class LockData {
-        Object owner;
+        final Object owner;
+        final String thread;
+        final long acquiredAtNanos;
         int times_acquired;
+
+        LockData(Request request) {
+            this.owner = request.acquirer;
+            this.thread = request.thread;
+            this.acquiredAtNanos = System.nanoTime();
+        }
     }
+
+    private static class Request {
+        final LockType type;
+        final Collection<Long> pumpIds;
+        final Object acquirer;
+        final String thread;
+        final long sinceNanos;
+
+        Request(LockType type, Collection<Long> pumpIds, Object acquirer) {
+            this.type = type;
+            this.pumpIds = pumpIds;
+            this.acquirer = Objects.requireNonNull(acquirer);
+            this.thread = Thread.currentThread().getName();
+            this.sinceNanos = System.nanoTime();
+        }
+    }
+
     private final Map<Long, LockData> lockByPumpId = new HashMap<>();
+    //The number of pump locks per owner, so that the global lock doesn't need to check every pump lock
+    private final Map<Object, Integer> pumpLockCountByOwner = new IdentityHashMap<>();
+    private final Map<Object, LockData> globalReadLockByOwner = new IdentityHashMap<>();
     private LockData globalLock;
+    private final List<Request> waiters = new ArrayList<>();
+    private final Map<LockType, LockStats> statsByType = new EnumMap<>(LockType.class);
+
+    @Value("${alex9849.app.pumpLock.maintenanceWaitInSeconds}")
+    private long maintenanceWaitInSeconds;
 
     public synchronized boolean isPumpLocked(long pumpId) {
         return globalLock != null || lockByPumpId.containsKey(pumpId);
     }
+
     public synchronized boolean canAcquirePumpLock(long pumpId, Object acquirer) {
         if(globalLock != null && globalLock.owner != acquirer) {
             return false;
@@ -28,68 +81,409 @@ public class PumpLockService {
         if(!canAcquirePumpLock(pumpId, acquirer)) {
             throw new IllegalArgumentException("Pump locked by different service!");
         }
-        LockData ld = lockByPumpId.computeIfAbsent(pumpId, p -> new LockData());
-        ld.owner = acquirer;
-        ld.times_acquired++;
+        grant(new Request(LockType.PUMP, List.of(pumpId), acquirer), false);
     }
 
     public synchronized boolean testAndAcquirePumpLock(long pumpId, Object acquirer) {
-        if(canAcquirePumpLock(pumpId, acquirer)) {
-            acquirePumpLock(pumpId, acquirer);
-            return true;
-        }
-        return false;
+        return testAndAcquire(new Request(LockType.PUMP, List.of(pumpId), acquirer));
     }
 
     public synchronized void releasePumpLock(long pumpId, Object acquirer) {
         if(!canAcquirePumpLock(pumpId, acquirer)) {
             throw new IllegalArgumentException("Pump locked by different service!");
         }
-        lockByPumpId.computeIfPresent(pumpId, (k, v) -> {
-            if((--v.times_acquired) <= 0) {
-                return null;
-            }
-            return v;
-        });
+        LockData ld = lockByPumpId.get(pumpId);
+        if(ld == null) {
+            return;
+        }
+        if((--ld.times_acquired) <= 0) {
+            lockByPumpId.remove(pumpId);
+            pumpLockCountByOwner.computeIfPresent(acquirer, (k, v) -> v > 1 ? v - 1 : null);
+            getStats(LockType.PUMP).recordRelease(ld);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Acquires the locks of all given pumps or none of them.
+     * @return false if at least one of the pumps is locked by a different acquirer
+     */
+    public synchronized boolean testAndAcquirePumpLocks(Collection<Long> pumpIds, Object acquirer) {
+        return testAndAcquire(new Request(LockType.PUMP, List.copyOf(pumpIds), acquirer));
+    }
+
+    /**
+     * Waits until the locks of all given pumps can be acquired at once.
+     * @param timeout Long.MAX_VALUE waits forever
+     * @return false if the timeout has elapsed
+     */
+    public boolean tryAcquirePumpLocks(Collection<Long> pumpIds, Object acquirer, long timeout, TimeUnit unit) throws InterruptedException {
+        return await(new Request(LockType.PUMP, List.copyOf(pumpIds), acquirer), unit.toNanos(timeout));
+    }
+
+    public synchronized void releasePumpLocks(Collection<Long> pumpIds, Object acquirer) {
+        pumpIds.forEach(id -> releasePumpLock(id, acquirer));
     }
 
     public synchronized boolean canAcquireGlobal(Object acquirer) {
         if(globalLock != null && globalLock.owner != acquirer) {
             return false;
         }
-        return lockByPumpId.values().stream().noneMatch(x -> x.owner != acquirer);
+        return !isHeldByOthers(pumpLockCountByOwner, acquirer) && !isHeldByOthers(globalReadLockByOwner, acquirer);
     }
 
     public synchronized void acquireGlobal(Object acquirer) {
         if(!canAcquireGlobal(acquirer)) {
             throw new IllegalArgumentException("Pump locked by different service!");
         }
-        if(globalLock == null) {
-            globalLock = new LockData();
-            globalLock.owner = acquirer;
-        }
-        globalLock.times_acquired++;
+        grant(new Request(LockType.GLOBAL_WRITE, List.of(), acquirer), false);
     }
 
     public synchronized boolean testAndAcquireGlobal(Object acquirer) {
-        if(canAcquireGlobal(acquirer)) {
-            acquireGlobal(acquirer);
-            return true;
+        return testAndAcquire(new Request(LockType.GLOBAL_WRITE, List.of(), acquirer));
+    }
+
+    /**
+     * Waits until all pumps can be locked exclusively.
+     * @param timeout Long.MAX_VALUE waits forever
+     * @return false if the timeout has elapsed
+     */
+    public boolean tryAcquireGlobal(Object acquirer, long timeout, TimeUnit unit) throws InterruptedException {
+        return await(new Request(LockType.GLOBAL_WRITE, List.of(), acquirer), unit.toNanos(timeout));
+    }
+
+    /**
+     * Waits for the global lock as long as maintenance operations are allowed to wait, e.g. for a running
+     * cocktail production to finish. Can't be called within a transaction.
+     */
+    public void awaitGlobal(Object acquirer) {
+        awaitForMaintenance(new Request(LockType.GLOBAL_WRITE, List.of(), acquirer));
+    }
+
+    /**
+     * Runs the action while holding the global lock. Needs to be called before the transaction of the action starts,
+     * e.g. by the endpoint.
+     */
+    public <T> T callWithGlobal(Object acquirer, Supplier<T> action) {
+        awaitGlobal(acquirer);
+        try {
+            return action.get();
+        } finally {
+            releaseGlobal(acquirer);
         }
-        return false;
     }
 
     public synchronized void releaseGlobal(Object acquirer) {
-        if(!canAcquireGlobal(acquirer)) {
-            throw new IllegalArgumentException("Pump locked by different service!");
-        }
         if(globalLock == null) {
             return;
         }
+        if(globalLock.owner != acquirer) {
+            throw new IllegalArgumentException("Pump locked by different service!");
+        }
         globalLock.times_acquired--;
         if(globalLock.times_acquired <= 0) {
+            getStats(LockType.GLOBAL_WRITE).recordRelease(globalLock);
             globalLock = null;
+            notifyAll();
+        }
+    }
+
+    public synchronized boolean canAcquireGlobalRead(Object acquirer) {
+        return globalLock == null || globalLock.owner == acquirer;
+    }
+
+    public synchronized boolean testAndAcquireGlobalRead(Object acquirer) {
+        return testAndAcquire(new Request(LockType.GLOBAL_READ, List.of(), acquirer));
+    }
+
+    /**
+     * Waits until no one else holds the global lock exclusively.
+     * @param timeout Long.MAX_VALUE waits forever
+     * @return false if the timeout has elapsed
+     */
+    public boolean tryAcquireGlobalRead(Object acquirer, long timeout, TimeUnit unit) throws InterruptedException {
+        return await(new Request(LockType.GLOBAL_READ, List.of(), acquirer), unit.toNanos(timeout));
+    }
+
+    /**
+     * Can't be called within a transaction.
+     */
+    public void awaitGlobalRead(Object acquirer) {
+        awaitForMaintenance(new Request(LockType.GLOBAL_READ, List.of(), acquirer));
+    }
+
+    /**
+     * Runs the action while holding the global lock shared. Needs to be called before the transaction of the action
+     * starts, e.g. by the endpoint.
+     */
+    public <T> T callWithGlobalRead(Object acquirer, Supplier<T> action) {
+        awaitGlobalRead(acquirer);
+        try {
+            return action.get();
+        } finally {
+            releaseGlobalRead(acquirer);
+        }
+    }
+
+    public synchronized void releaseGlobalRead(Object acquirer) {
+        LockData ld = globalReadLockByOwner.get(acquirer);
+        if(ld == null) {
+            throw new IllegalArgumentException("Global lock not held by the acquirer!");
+        }
+        if((--ld.times_acquired) <= 0) {
+            globalReadLockByOwner.remove(acquirer);
+            getStats(LockType.GLOBAL_READ).recordRelease(ld);
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return an owner that shows up with the given name in the lock diagnostics
+     */
+    public static Object newOwner(String name) {
+        return new NamedOwner(name);
+    }
+
+    private void awaitForMaintenance(Request request) {
+        if(TransactionSynchronizationManager.isActualTransactionActive()) {
+            //The transaction would hold its database connection while waiting
+            throw new IllegalStateException("Can't wait for the pumps within a transaction!");
+        }
+        try {
+            if(!await(request, TimeUnit.SECONDS.toNanos(maintenanceWaitInSeconds))) {
+                throw new IllegalArgumentException("Some pumps are currently occupied!");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Waiting for the pumps has been interrupted!", e);
+        }
+    }
+
+    private synchronized boolean testAndAcquire(Request request) {
+        if(!isGrantable(request) || isQueuedBehind(request, waiters.size())) {
+            getStats(request.type).refusals++;
+            return false;
         }
+        grant(request, false);
+        return true;
     }
 
+    private synchronized boolean await(Request request, long timeoutNanos) throws InterruptedException {
+        if(isGrantable(request) && !isQueuedBehind(request, waiters.size())) {
+            grant(request, false);
+            return true;
+        }
+        long deadline = request.sinceNanos + timeoutNanos;
+        waiters.add(request);
+        try {
+            while (!isGrantable(request) || isQueuedBehind(request, waiters.indexOf(request))) {
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0) {
+                    getStats(request.type).timeouts++;
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            grant(request, true);
+            return true;
+        } finally {
+            waiters.remove(request);
+            //Requests behind this one might not be blocked anymore
+            notifyAll();
+        }
+    }
+
+    private boolean isGrantable(Request request) {
+        return switch (request.type) {
+            case PUMP -> request.pumpIds.stream().allMatch(id -> canAcquirePumpLock(id, request.acquirer));
+            case GLOBAL_READ -> canAcquireGlobalRead(request.acquirer);
+            case GLOBAL_WRITE -> canAcquireGlobal(request.acquirer);
+        };
+    }
+
+    /**
+     * @param position the number of waiting requests that have arrived before the request
+     */
+    private boolean isQueuedBehind(Request request, int position) {
+        Object acquirer = request.acquirer;
+        boolean holdsLock = (globalLock != null && globalLock.owner == acquirer)
+                || globalReadLockByOwner.containsKey(acquirer)
+                || pumpLockCountByOwner.containsKey(acquirer);
+        if(holdsLock) {
+            return false;
+        }
+        for(int i = 0; i < position; i++) {
+            Request earlier = waiters.get(i);
+            if(earlier.acquirer != acquirer && isConflicting(earlier, request)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isConflicting(Request a, Request b) {
+        if(a.type == LockType.GLOBAL_WRITE || b.type == LockType.GLOBAL_WRITE) {
+            return true;
+        }
+        if(a.type == LockType.PUMP && b.type == LockType.PUMP) {
+            return !Collections.disjoint(a.pumpIds, b.pumpIds);
+        }
+        return false;
+    }
+
+    private static boolean isHeldByOthers(Map<Object, ?> locksByOwner, Object acquirer) {
+        return locksByOwner.size() > (locksByOwner.containsKey(acquirer) ? 1 : 0);
+    }
+
+    private void grant(Request request, boolean contended) {
+        switch (request.type) {
+            case PUMP -> {
+                for(Long pumpId : request.pumpIds) {
+                    LockData ld = lockByPumpId.get(pumpId);
+                    if(ld == null) {
+                        ld = new LockData(request);
+                        lockByPumpId.put(pumpId, ld);
+                        pumpLockCountByOwner.merge(request.acquirer, 1, Integer::sum);
+                    }
+                    ld.times_acquired++;
+                }
+            }
+            case GLOBAL_READ -> globalReadLockByOwner.computeIfAbsent(request.acquirer, x -> new LockData(request))
+                    .times_acquired++;
+            case GLOBAL_WRITE -> {
+                if(globalLock == null) {
+                    globalLock = new LockData(request);
+                }
+                globalLock.times_acquired++;
+            }
+        }
+        getStats(request.type).recordAcquisition(System.nanoTime() - request.sinceNanos, contended);
+    }
+
+    private LockStats getStats(LockType lockType) {
+        return statsByType.computeIfAbsent(lockType, x -> new LockStats());
+    }
+
+    public synchronized List<PumpLockInfo> getHeldLocks() {
+        List<PumpLockInfo> locks = new ArrayList<>();
+        long now = System.nanoTime();
+        if(globalLock != null) {
+            locks.add(toInfo(LockType.GLOBAL_WRITE, List.of(), globalLock.owner, globalLock.thread,
+                    globalLock.times_acquired, now - globalLock.acquiredAtNanos));
+        }
+        for(LockData ld : globalReadLockByOwner.values()) {
+            locks.add(toInfo(LockType.GLOBAL_READ, List.of(), ld.owner, ld.thread,
+                    ld.times_acquired, now - ld.acquiredAtNanos));
+        }
+        new TreeMap<>(lockByPumpId).forEach((pumpId, ld) -> locks.add(toInfo(LockType.PUMP, List.of(pumpId),
+                ld.owner, ld.thread, ld.times_acquired, now - ld.acquiredAtNanos)));
+        return locks;
+    }
+
+    public synchronized List<PumpLockInfo> getRequestedLocks() {
+        List<PumpLockInfo> locks = new ArrayList<>();
+        long now = System.nanoTime();
+        for(Request request : waiters) {
+            locks.add(toInfo(request.type, request.pumpIds, request.acquirer, request.thread,
+                    0, now - request.sinceNanos));
+        }
+        return locks;
+    }
+
+    public synchronized List<PumpLockMetrics> getMetrics() {
+        List<PumpLockMetrics> metrics = new ArrayList<>();
+        for(LockType lockType : LockType.values()) {
+            metrics.add(getStats(lockType).toMetrics(lockType));
+        }
+        return metrics;
+    }
+
+    public synchronized void resetMetrics() {
+        statsByType.clear();
+    }
+
+    private static PumpLockInfo toInfo(LockType lockType, Collection<Long> pumpIds, Object owner, String thread,
+                                       int holdCount, long sinceNanos) {
+        PumpLockInfo info = new PumpLockInfo();
+        info.setLockType(lockType.name());
+        info.setPumpIds(new ArrayList<>(pumpIds));
+        info.setOwner(describe(owner));
+        info.setThread(thread);
+        info.setHoldCount(holdCount);
+        info.setSinceInMs(TimeUnit.NANOSECONDS.toMillis(sinceNanos));
+        return info;
+    }
+
+    private static String describe(Object owner) {
+        if(owner instanceof NamedOwner) {
+            return owner.toString();
+        }
+        String name = owner.getClass().getSimpleName();
+        //Spring proxies
+        int proxySuffix = name.indexOf("$$");
+        if(proxySuffix > 0) {
+            name = name.substring(0, proxySuffix);
+        }
+        return name + "@" + Integer.toHexString(System.identityHashCode(owner));
+    }
+
+    private static final class NamedOwner {
+        private final String name;
+
+        private NamedOwner(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name + "@" + Integer.toHexString(System.identityHashCode(this));
+        }
+    }
+
+    private static class LockStats {
+        private long acquisitions;
+        private long contendedAcquisitions;
+        private long refusals;
+        private long timeouts;
+        private long sumOfWaitNanos;
+        private long maxWaitNanos;
+        private long releases;
+        private long sumOfHoldNanos;
+        private long maxHoldNanos;
+
+        private void recordAcquisition(long waitNanos, boolean contended) {
+            this.acquisitions++;
+            if(contended) {
+                this.contendedAcquisitions++;
+            }
+            this.sumOfWaitNanos += waitNanos;
+            this.maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+        }
+
+        private void recordRelease(LockData lockData) {
+            long holdNanos = System.nanoTime() - lockData.acquiredAtNanos;
+            this.releases++;
+            this.sumOfHoldNanos += holdNanos;
+            this.maxHoldNanos = Math.max(maxHoldNanos, holdNanos);
+        }
+
+        private PumpLockMetrics toMetrics(LockType lockType) {
+            PumpLockMetrics metrics = new PumpLockMetrics();
+            metrics.setLockType(lockType.name());
+            metrics.setAcquisitions(acquisitions);
+            metrics.setContendedAcquisitions(contendedAcquisitions);
+            metrics.setRefusals(refusals);
+            metrics.setTimeouts(timeouts);
+            if(acquisitions > 0) {
+                metrics.setMeanWaitInMs(TimeUnit.NANOSECONDS.toMillis(sumOfWaitNanos / acquisitions));
+            }
+            metrics.setMaxWaitInMs(TimeUnit.NANOSECONDS.toMillis(maxWaitNanos));
+            metrics.setReleases(releases);
+            if(releases > 0) {
+                metrics.setMeanHoldInMs(TimeUnit.NANOSECONDS.toMillis(sumOfHoldNanos / releases));
+            }
+            metrics.setMaxHoldInMs(TimeUnit.NANOSECONDS.toMillis(maxHoldNanos));
+            return metrics;
+        }
+    }
 }
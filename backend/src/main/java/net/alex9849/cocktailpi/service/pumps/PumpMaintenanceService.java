@@ -8,17 +8,20 @@ import net.alex9849.cocktailpi.model.pump.motortasks.PumpTask;
 import net.alex9849.cocktailpi.model.pump.motortasks.StepperMotorTask;
 import net.alex9849.cocktailpi.model.pump.motortasks.ValveTask;
 import net.alex9849.cocktailpi.model.system.settings.ReversePumpSettings;
+import net.alex9849.cocktailpi.model.system.settings.ValveDosingMode;
 import net.alex9849.cocktailpi.payload.dto.system.settings.ReversePumpSettingsDto;
 import net.alex9849.cocktailpi.repository.OptionsRepository;
 import net.alex9849.cocktailpi.service.GpioService;
+import net.alex9849.cocktailpi.service.PowerLimitSettingsService;
+import net.alex9849.cocktailpi.service.ValveDosingSettingsService;
 import net.alex9849.cocktailpi.service.WebSocketService;
+import net.alex9849.cocktailpi.service.executor.ExecutionLanes;
 import net.alex9849.cocktailpi.utils.PinUtils;
 import net.alex9849.motorlib.motor.Direction;
-import net.alex9849.motorlib.pin.IOutputPin;
-import net.alex9849.motorlib.pin.PinState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
@@ -26,7 +29,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleSupplier;
 
 @Service
 @Transactional
@@ -45,32 +48,65 @@ public class PumpMaintenanceService {
     @Autowired
     private GpioService gpioService;
 
+    @Autowired
+    private ValveDosingSettingsService valveDosingSettingsService;
+
     @Autowired
     private OptionsRepository optionsRepository;
 
+    @Autowired
+    private PowerLimitSettingsService powerLimitSettingsService;
+
+    @Autowired
+    private PumpJobTelemetryService telemetryService;
+
+    @Value("${alex9849.app.motion.pinToCore}")
+    private boolean motionPinToCore;
+
+    @Value("${alex9849.app.motion.threadPriority}")
+    private int motionThreadPriority;
+
+    @Value("${alex9849.app.motion.maxStepsPerSecond}")
+    private int motionMaxStepsPerSecond;
+
+    @Value("${alex9849.app.jobHistory.maxSize}")
+    private int jobHistoryMaxSize;
+
+    @Value("${alex9849.app.jobHistory.maxAgeInMinutes}")
+    private int jobHistoryMaxAgeInMinutes;
+
     private final Logger logger = LoggerFactory.getLogger(PumpMaintenanceService.class);
 
-    private final ExecutorService liveTasksExecutor = Executors.newCachedThreadPool();
-    private final ScheduledExecutorService scheduledTasksExecutor = Executors.newSingleThreadScheduledExecutor();
-    private ReversePumpSettings reversePumpSettings;
+    private final ExecutorService liveTasksExecutor = ExecutionLanes.realTime();
+    private final ScheduledExecutorService scheduledTasksExecutor = ExecutionLanes.normal();
+    private volatile ReversePumpSettings reversePumpSettings;
+    private final Object pumpBackLock = new Object();
     private ScheduledFuture<?> automaticPumpBackTask;
-    private final Map<Long, Long> jobIdByPumpId = new HashMap<>();
-    private final Map<Long, PumpTask> pumpTasksByJobId = new HashMap<>();
+    private final Object settingsLock = new Object();
+    private final Map<Long, PumpActor> actorsByPumpId = new ConcurrentHashMap<>();
+    private final JobHistory jobHistory = new JobHistory();
+    //Only accessed by the pump state update
     private Map<Long, PumpJobState> lastState = new HashMap<>();
-    private Direction direction = Direction.FORWARD;
-    private IOutputPin directionPin;
-    private AtomicInteger loadCellOccupied = new AtomicInteger(0);
-
-    public synchronized void postConstruct() {
+    private final DirectionArbiter directionArbiter = new DirectionArbiter();
+    private final LoadCellArbiter loadCellArbiter = new LoadCellArbiter();
+
+    public void postConstruct() {
+        MotionScheduler motionScheduler = MotionScheduler.getInstance();
+        motionScheduler.configure(motionPinToCore, motionThreadPriority, motionMaxStepsPerSecond);
+        PowerBudget.getInstance().setPowerLimitSettings(powerLimitSettingsService.getPowerLimitSettings());
+        jobHistory.configure(jobHistoryMaxSize, jobHistoryMaxAgeInMinutes);
         configureReversePumpSettings(true);
         this.stopAllPumps();
     }
 
     private void configureReversePumpSettings (boolean reschedulePumpBack) {
-        this.reversePumpSettings = this.getReversePumpingSettings();
-        if(reversePumpSettings.isEnable()) {
-            directionPin = reversePumpSettings.getSettings().getDirectorPin().getOutputPin();
-            directionPin.digitalWrite(direction == Direction.FORWARD ? PinState.HIGH : PinState.LOW);
+        synchronized (settingsLock) {
+            this.reversePumpSettings = this.getReversePumpingSettings();
+            if(reversePumpSettings.isEnable()) {
+                directionArbiter.setDirectionPin(reversePumpSettings.getSettings().getDirectorPin().getOutputPin());
+            } else {
+                directionArbiter.setDirectionPin(null);
+            }
         }
         if(reschedulePumpBack) {
             this.reschedulePumpBack();
@@ -79,30 +115,54 @@ public class PumpMaintenanceService {
 
     @Scheduled(fixedDelay = 500)
     void performPumpStateUpdate() {
+        jobHistory.compact(getCurrentJobIds());
         for (Map.Entry<Long, PumpJobState> entry : getJobStateMapByPumpId(true).entrySet()) {
             webSocketService.broadcastPumpRunningState(entry.getKey(), entry.getValue());
         }
     }
 
-    public synchronized void stopAllPumps() {
+    public void stopAllPumps() {
         List<Pump> pumps = pumpDataService.getAllPumps();
+        //The pumps get stopped in parallel
+        List<CompletableFuture<?>> cancellations = new ArrayList<>();
+        for (Pump pump : pumps) {
+            PumpActor actor = actorsByPumpId.get(pump.getId());
+            if (actor != null) {
+                cancellations.add(actor.submit(() -> cancelCurrentTask(actor)));
+            }
+        }
+        cancellations.forEach(CompletableFuture::join);
         for (Pump pump : pumps) {
-            cancelByPumpId(pump.getId());
             if (pump.isCanPump()) {
                 pump.getMotorDriver().shutdown();
             }
         }
     }
 
-    private synchronized PumpTask getCurrentPumpTask(long pumpId) {
-        Long jobId = jobIdByPumpId.get(pumpId);
-        if(jobId == null) {
+    private PumpActor getActor(long pumpId) {
+        return actorsByPumpId.computeIfAbsent(pumpId, x -> new PumpActor());
+    }
+
+    private PumpTask getCurrentPumpTask(long pumpId) {
+        PumpActor actor = actorsByPumpId.get(pumpId);
+        if(actor == null) {
             return null;
         }
-        return pumpTasksByJobId.get(jobId);
+        return actor.getCurrentTask();
+    }
+
+    private Set<Long> getCurrentJobIds() {
+        Set<Long> jobIds = new HashSet<>();
+        for(PumpActor actor : actorsByPumpId.values()) {
+            PumpTask pumpTask = actor.getCurrentTask();
+            if(pumpTask != null) {
+                jobIds.add(pumpTask.getJobId());
+            }
+        }
+        return jobIds;
     }
 
-    public synchronized boolean isPumpRunning(long pumpId) {
+    public boolean isPumpRunning(long pumpId) {
         PumpTask pumpTask = getCurrentPumpTask(pumpId);
         if(pumpTask == null) {
             return false;
@@ -110,76 +170,108 @@ public class PumpMaintenanceService {
         return !pumpTask.isFinished();
     }
 
-    public synchronized void cancelByPumpId(long pumpId) {
-        PumpTask pumpTask = getCurrentPumpTask(pumpId);
+    public void cancelByPumpId(long pumpId) {
+        PumpActor actor = actorsByPumpId.get(pumpId);
+        if (actor != null) {
+            actor.ask(() -> cancelCurrentTask(actor));
+        }
+    }
+
+    private Void cancelCurrentTask(PumpActor actor) {
+        PumpTask pumpTask = actor.getCurrentTask();
         if (pumpTask != null) {
             pumpTask.cancel();
         }
+        return null;
     }
 
-    private synchronized boolean anyPumpsRunning() {
-        return this.jobIdByPumpId.values().stream()
-                .map(pumpTasksByJobId::get)
-                .anyMatch(x -> !x.isFinished());
+    /**
+     * Models the liquid that the motor driven jobs dispense from now on. Jobs that get started later are included.
+     * The liquid is assumed to weigh one gram per ml.
+     */
+    private DoubleSupplier createMotorFlowModel() {
+        Map<PumpTask, Long> mlPumpedBefore = new HashMap<>();
+        for(PumpActor actor : actorsByPumpId.values()) {
+            PumpTask pumpTask = actor.getCurrentTask();
+            if(pumpTask != null && !(pumpTask instanceof ValveTask)) {
+                mlPumpedBefore.put(pumpTask, pumpTask.getJobMetrics().getMlPumped());
+            }
+        }
+        //Only gets called by the valve job
+        return () -> {
+            for(PumpActor actor : actorsByPumpId.values()) {
+                PumpTask pumpTask = actor.getCurrentTask();
+                if(pumpTask != null && !(pumpTask instanceof ValveTask)) {
+                    mlPumpedBefore.putIfAbsent(pumpTask, 0L);
+                }
+            }
+            double grams = 0;
+            for(Map.Entry<PumpTask, Long> entry : mlPumpedBefore.entrySet()) {
+                grams += entry.getKey().getJobMetrics().getMlPumped() - entry.getValue();
+            }
+            return grams;
+        };
     }
 
-    public synchronized long dispatchPumpJob(Pump pump, PumpAdvice advice, Runnable callback) {
-        if (callback == null) {
-            callback = () -> {};
-        }
-        Direction direction = advice.getType() == PumpAdvice.Type.PUMP_DOWN ? Direction.BACKWARD : Direction.FORWARD;
+    /**
+     * Starts a job for the pump. Jobs for different pumps get dispatched in parallel.
+     * @param callback gets called once the job has finished or couldn't be started
+     * @return the id of the job
+     */
+    public long dispatchPumpJob(Pump pump, PumpAdvice advice, Runnable callback) {
+        Runnable nonNullCallback = callback == null ? () -> {} : callback;
+        PumpActor actor = getActor(pump.getId());
+        return actor.ask(() -> {
+            try {
+                return startPumpJob(actor, pump, advice, nonNullCallback);
+            } catch (RuntimeException e) {
+                nonNullCallback.run();
+                throw e;
+            }
+        });
+    }
 
-        if (direction != this.direction && anyPumpsRunning()) {
-            callback.run();
-            throw new IllegalArgumentException("One or more pumps are currently pumping into the other direction!");
-        }
+    /**
+     * Gets executed by the mailbox of the pump. The shared resources get acquired from their arbiters and released
+     * once the job has finished.
+     */
+    private long startPumpJob(PumpActor actor, Pump pump, PumpAdvice advice, Runnable callback) {
+        Direction direction = advice.getType() == PumpAdvice.Type.PUMP_DOWN ? Direction.BACKWARD : Direction.FORWARD;
 
         if ((!pump.isCanPumpUp() && (advice.getType() == PumpAdvice.Type.PUMP_UP || advice.getType() == PumpAdvice.Type.PUMP_DOWN))
                 || !pump.isCanPump()
         ) {
-            callback.run();
             throw new IllegalArgumentException("Pump setup isn't completed yet!");
         }
 
-        if (isPumpRunning(pump.getId())) {
-            cancelByPumpId(pump.getId());
-        }
-
         double overshootMultiplier = 1;
+        ReversePumpSettings reversePumpSettings = this.reversePumpSettings;
         if (direction == Direction.BACKWARD) {
             if(!reversePumpSettings.isEnable()) {
-                callback.run();
                 throw new IllegalArgumentException("Reverse pumping not enabled!");
             }
             if(advice.getType() == PumpAdvice.Type.PUMP_DOWN) {
                 overshootMultiplier += reversePumpSettings.getSettings().getOvershoot() / 100d;
             }
-            this.directionPin.digitalWrite(PinState.LOW);
-            final Runnable oldCallback = callback;
-            callback = () -> {
-                synchronized (this) {
-                    if (this.direction == Direction.BACKWARD && !this.anyPumpsRunning()) {
-                        this.directionPin.digitalWrite(PinState.HIGH);
-                        this.direction = Direction.FORWARD;
-                    }
-                    oldCallback.run();
-                }
-            };
         }
 
-        this.direction = direction;
-
-        Future<?> jobFuture;
+        //Identifies the job at the arbiters
+        Object job = new Object();
+        Runnable jobCallback = () -> {
+            try {
+                loadCellArbiter.releaseJob(job);
+                directionArbiter.release(job);
+            } finally {
+                callback.run();
+            }
+        };
+        PumpTask prevTask = actor.getCurrentTask();
+        Long prevJobId = prevTask == null ? null : prevTask.getJobId();
         PumpTask pumpTask;
-        Long prevJobId = jobIdByPumpId.get(pump.getId());
         boolean isPumpUpDown = advice.getType() == PumpAdvice.Type.PUMP_UP
                 || advice.getType() == PumpAdvice.Type.PUMP_DOWN;
 
         if (pump instanceof DcPump dcPump) {
-            if(loadCellOccupied.get() > 0) {
-                callback.run();
-                throw new IllegalArgumentException("Load cell occupied! A valve is running that requires genuine load cell data!");
-            }
             long timeToRun = 0;
             switch (advice.getType()) {
                 case PUMP_ML:
@@ -199,23 +291,13 @@ public class PumpMaintenanceService {
                     timeToRun = Long.MAX_VALUE;
                     break;
                 case PUMP_STEPS:
-                    callback.run();
                     throw new IllegalArgumentException("DcPump can't run certain number of steps!");
             }
 
-            if (timeToRun == Long.MAX_VALUE) {
-                pumpTask = new DcMotorTask(prevJobId, dcPump, this.direction, isPumpUpDown, Long.MAX_VALUE, callback);
-            } else {
-                pumpTask = new DcMotorTask(prevJobId, dcPump, this.direction, isPumpUpDown, timeToRun, callback);
-            }
-            jobFuture = liveTasksExecutor.submit(pumpTask);
-
+            pumpTask = new DcMotorTask(prevJobId, dcPump, direction, isPumpUpDown, timeToRun, jobCallback);
+            acquireForMotorJob(job, direction);
 
         } else if (pump instanceof StepperPump stepperPump) {
-            if(loadCellOccupied.get() > 0) {
-                callback.run();
-                throw new IllegalArgumentException("Load cell occupied! A valve is running that requires genuine load cell data!");
-            }
             long stepsToRun = 0;
             switch (advice.getType()) {
                 case PUMP_ML:
@@ -235,70 +317,106 @@ public class PumpMaintenanceService {
                     stepsToRun = Long.MAX_VALUE;
                     break;
                 case PUMP_TIME:
-                    callback.run();
                     throw new IllegalArgumentException("DcPump can't run certain amount of time!");
             }
 
-            pumpTask = new StepperMotorTask(prevJobId, stepperPump, this.direction, isPumpUpDown, stepsToRun, callback);
-            jobFuture = liveTasksExecutor.submit(pumpTask);
+            pumpTask = new StepperMotorTask(prevJobId, stepperPump, direction, isPumpUpDown, stepsToRun, jobCallback);
+            acquireForMotorJob(job, direction);
 
         } else if (pump instanceof Valve valve) {
             long mlToPump;
-            boolean requireLoadCell = false;
-            switch (advice.getType()) {
-                case PUMP_ML:
-                    if(anyPumpsRunning()) {
-                        callback.run();
-                        throw new IllegalArgumentException("Load cell occupied! Other pumps are running currently.");
-                    }
-                    requireLoadCell = true;
+            boolean requireLoadCell = switch (advice.getType()) {
+                case PUMP_ML -> {
                     mlToPump = advice.getAmount();
-                    break;
-                case PUMP_UP:
-                    if(anyPumpsRunning()) {
-                        callback.run();
-                        throw new IllegalArgumentException("Load cell occupied! Other pumps are running currently.");
-                    }
-                    requireLoadCell = true;
+                    yield true;
+                }
+                case PUMP_UP -> {
                     mlToPump = Math.round(valve.getTubeCapacityInMl());
-                    break;
-                case RUN:
-                    if(loadCellOccupied.get() > 0) {
-                        callback.run();
-                        throw new IllegalArgumentException("Load cell occupied! A valve is running that requires genuine load cell data!");
-                    }
+                    yield true;
+                }
+                case RUN -> {
                     mlToPump = Long.MAX_VALUE;
-                    break;
-                default:
-                    callback.run();
-                    throw new IllegalArgumentException("Valve can't run perform advice: " + advice.getType());
-            }
-
-            Runnable finalCallback = callback;
-            boolean finalRequireLoadCell = requireLoadCell;
-            Runnable valveTaskCallback = () -> {
-                if(finalRequireLoadCell) {
-                    loadCellOccupied.decrementAndGet();
+                    yield false;
                 }
-                finalCallback.run();
+                default -> throw new IllegalArgumentException("Valve can't run perform advice: " + advice.getType());
             };
-            if(requireLoadCell) {
-                loadCellOccupied.incrementAndGet();
+            boolean shareWithMotors = requireLoadCell
+                    && valveDosingSettingsService.getValveDosingMode() == ValveDosingMode.CONCURRENT;
+            ValveTask valveTask = new ValveTask(valve, mlToPump, prevJobId, valve, isPumpUpDown, jobCallback);
+            if(shareWithMotors) {
+                valveTask.setOtherDispensersGrams(createMotorFlowModel());
             }
-            pumpTask = new ValveTask(valve, mlToPump, prevJobId, valve, isPumpUpDown, valveTaskCallback);
-            jobFuture = liveTasksExecutor.submit(pumpTask);
+            directionArbiter.acquire(job, direction);
+            try {
+                loadCellArbiter.acquireForValveJob(job, requireLoadCell, shareWithMotors);
+            } catch (RuntimeException e) {
+                directionArbiter.release(job);
+                throw e;
+            }
+            pumpTask = valveTask;
 
         } else {
-            callback.run();
             throw new IllegalStateException("PumpType not known: " + pump.getClass().getName());
         }
 
-        jobIdByPumpId.put(pump.getId(), pumpTask.getJobId());
-        pumpTasksByJobId.put(pumpTask.getJobId(), pumpTask);
+        if (prevTask != null) {
+            prevTask.cancel();
+        }
+        pumpTask.setFinishListener(this::onPumpTaskFinished);
+        Future<?> jobFuture;
+        try {
+            jobFuture = liveTasksExecutor.submit(pumpTask);
+        } catch (RuntimeException e) {
+            loadCellArbiter.releaseJob(job);
+            directionArbiter.release(job);
+            throw e;
+        }
+        actor.setCurrentTask(pumpTask);
+        jobHistory.addLive(pumpTask);
         pumpTask.readify(jobFuture);
         return pumpTask.getJobId();
     }
-    public synchronized void reschedulePumpBack() {
+
+    private void onPumpTaskFinished(PumpTask pumpTask) {
+        recordTelemetry(pumpTask);
+        if(pumpTask instanceof ValveTask valveTask && valveTask.isValveModelLearned()) {
+            pumpDataService.saveLearnedValveModel(valveTask.getValve());
+        }
+    }
+
+    private void recordTelemetry(PumpTask pumpTask) {
+        JobMetrics metrics = pumpTask.getJobMetrics();
+        PumpJobTelemetry record = new PumpJobTelemetry();
+        record.setPumpId(pumpTask.getPump().getId());
+        record.setIngredientId(pumpTask.getPump().getCurrentIngredientId());
+        record.setKind(PumpJobTelemetry.Kind.MAINTENANCE);
+        record.setDirection(pumpTask.getDirection());
+        record.setStartedAt(metrics.getStartTime());
+        record.setPlannedDurationInMs(pumpTask.getPlannedDurationInMs());
+        record.setActualDurationInMs(Math.max(0, metrics.getStopTime() - metrics.getStartTime()));
+        record.setMlPumped(metrics.getMlPumped());
+        record.setStepsMade(metrics.getStepsMade());
+        telemetryService.record(record);
+    }
+
+    private void acquireForMotorJob(Object job, Direction direction) {
+        directionArbiter.acquire(job, direction);
+        try {
+            loadCellArbiter.acquireForMotorJob(job);
+        } catch (RuntimeException e) {
+            directionArbiter.release(job);
+            throw e;
+        }
+    }
+
+    public void reschedulePumpBack() {
+        synchronized (pumpBackLock) {
+            schedulePumpBack();
+        }
+    }
+
+    private void schedulePumpBack() {
+        ReversePumpSettings reversePumpSettings = this.reversePumpSettings;
         if (automaticPumpBackTask != null) {
             automaticPumpBackTask.cancel(false);
             automaticPumpBackTask = null;
@@ -311,6 +429,10 @@ public class PumpMaintenanceService {
         }
         long delay = reversePumpSettings.getSettings().getAutoPumpBackTimer();
         automaticPumpBackTask = scheduledTasksExecutor.scheduleAtFixedRate(() -> {
+            if (isForwardDirectionHeld()) {
+                logger.info("Can't perform pump-back: A cocktail is being produced!");
+                return;
+            }
             List<Pump> allPumps = pumpDataService.getAllPumps();
             for (Pump pump : allPumps) {
                 if (pump.isPumpedUp() && pump.isCanPumpUp() && pump.isCanControlDirection()) {
@@ -318,20 +440,52 @@ public class PumpMaintenanceService {
                         logger.info("Can't perform pump-back for pump with ID " + pump.getId() + ": Pump is currently occupied!");
                         continue;
                     }
-                    this.dispatchPumpJob(pump, new PumpAdvice(PumpAdvice.Type.PUMP_DOWN, 0), () -> {
-                        try {
-                            pumpDataService.updatePump(pump);
-                            webSocketService.broadcastPumpLayout(pumpDataService.getAllPumps());
-                        } finally {
-                            pumpLockService.releasePumpLock(pump.getId(), this);
-                        }
-                    });
+                    try {
+                        this.dispatchPumpJob(pump, new PumpAdvice(PumpAdvice.Type.PUMP_DOWN, 0), () -> {
+                            try {
+                                pumpDataService.updatePump(pump);
+                                webSocketService.broadcastPumpLayout(pumpDataService.getAllPumps());
+                            } finally {
+                                pumpLockService.releasePumpLock(pump.getId(), this);
+                            }
+                        });
+                    } catch (IllegalArgumentException e) {
+                        //The callback has already released the lock
+                        logger.info("Can't perform pump-back for pump with ID " + pump.getId() + ": " + e.getMessage());
+                    }
                 }
             }
         }, delay, delay, TimeUnit.MINUTES);
     }
 
-    public synchronized void setReversePumpingSettings(ReversePumpSettings settings) {
+    /**
+     * Keeps the pump direction set to forward until the holder releases it. Used by cocktail productions, which
+     * drive their motors directly and share the direction pin with the maintenance jobs of other stations.
+     */
+    public void acquireForwardDirection(Object holder) {
+        directionArbiter.acquireForward(holder);
+    }
+
+    public void releaseForwardDirection(Object holder) {
+        directionArbiter.releaseForward(holder);
+    }
+
+    public boolean isForwardDirectionHeld() {
+        return directionArbiter.isForwardHeld();
+    }
+
+    public LoadCellArbiter getLoadCellArbiter() {
+        return loadCellArbiter;
+    }
+
+    public void setReversePumpingSettings(ReversePumpSettings settings) {
+        synchronized (settingsLock) {
+            storeReversePumpingSettings(settings);
+        }
+        configureReversePumpSettings(true);
+    }
+
+    private void storeReversePumpingSettings(ReversePumpSettings settings) {
         optionsRepository.setOption("RPS_Enable", Boolean.valueOf(settings.isEnable()).toString());
         if (settings.isEnable()) {
             ReversePumpSettings.Config details = settings.getSettings();
@@ -347,10 +501,9 @@ public class PumpMaintenanceService {
             optionsRepository.delOption(REPO_KEY_PUMP_DIRECTION_PIN, false);
             optionsRepository.setOption("RPS_Enable", Boolean.valueOf(settings.isEnable()).toString());
         }
-        configureReversePumpSettings(true);
     }
 
-    public synchronized ReversePumpSettings getReversePumpingSettings() {
+    public ReversePumpSettings getReversePumpingSettings() {
         ReversePumpSettings rps = new ReversePumpSettings();
         rps.setEnable(Boolean.parseBoolean(optionsRepository.getOption("RPS_Enable").orElse(null)));
         if (rps.isEnable()) {
@@ -367,7 +520,10 @@ public class PumpMaintenanceService {
         return rps;
     }
 
-    public synchronized PumpJobState getJobStateByPumpId(long pumpId) {
+    /**
+     * Reads the state from the snapshot of the pump without locking.
+     */
+    public PumpJobState getJobStateByPumpId(long pumpId) {
         PumpJobState pumpState = new PumpJobState();
         PumpTask pumpTask = getCurrentPumpTask(pumpId);
         if(pumpTask == null) {
@@ -385,7 +541,7 @@ public class PumpMaintenanceService {
 
     private Map<Long, PumpJobState> getJobStateMapByPumpId(boolean onlyDelta) {
         Map<Long, PumpJobState> stateMap = new HashMap<>();
-        for (Long pumpId : this.jobIdByPumpId.keySet()) {
+        for (Long pumpId : this.actorsByPumpId.keySet()) {
             PumpJobState pumpState = getJobStateByPumpId(pumpId);
             stateMap.put(pumpId, pumpState);
         }
@@ -395,6 +551,10 @@ public class PumpMaintenanceService {
         Map<Long, PumpJobState> delta = new HashMap<>();
 
         for (Map.Entry<Long, PumpJobState> oldentry : this.lastState.entrySet()) {
+            //Deleted pumps
+            if (!stateMap.containsKey(oldentry.getKey())) {
+                continue;
+            }
             if (!oldentry.getValue().equals(stateMap.get(oldentry.getKey()))) {
                 delta.put(oldentry.getKey(), stateMap.get(oldentry.getKey()));
             }
@@ -410,12 +570,16 @@ public class PumpMaintenanceService {
 
     }
 
-    public synchronized JobMetrics getJobMetrics(long id) {
-        PumpTask pumpTask = pumpTasksByJobId.get(id);
-        if(pumpTask == null) {
-            return null;
-        }
-        return pumpTask.getJobMetrics();
+    public JobMetrics getJobMetrics(long id) {
+        return jobHistory.getJobMetrics(id);
+    }
+
+    /**
+     * Forgets the job state of a deleted pump. Its last job moves to the job history.
+     */
+    public void removePump(long pumpId) {
+        actorsByPumpId.remove(pumpId);
+        jobHistory.compact(getCurrentJobIds());
     }
 
     public ReversePumpSettings fromDto(ReversePumpSettingsDto.Request.Create dto) {
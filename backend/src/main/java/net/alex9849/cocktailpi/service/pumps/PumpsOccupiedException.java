@@ -0,0 +1,12 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+/**
+ * Thrown if a job can't be started, because the pumps or the station it needs are used by another job at the moment.
+ * Unlike other IllegalArgumentExceptions, the job might be startable later on.
+ */
+public class PumpsOccupiedException extends IllegalArgumentException {
+
+    public PumpsOccupiedException(String message) {
+        super(message);
+    }
+}
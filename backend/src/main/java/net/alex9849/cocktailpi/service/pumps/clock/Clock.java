@@ -0,0 +1,32 @@
+package net.alex9849.cocktailpi.service.pumps.clock;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Source of time for the production engine. The engine never reads the system time, sleeps or spawns threads
+ * directly, so that productions can be replayed in virtual time in the tests.
+ */
+public interface Clock {
+
+    long currentTimeMillis();
+
+    void sleep(long millis) throws InterruptedException;
+
+    void await(CountDownLatch latch) throws InterruptedException;
+
+    /**
+     * @return a scheduler whose pending tasks can be cancelled together by shutting it down
+     */
+    ClockScheduler newScheduler();
+
+    /**
+     * Schedules a motor edge (starting or stopping a motor) as precisely as possible.
+     * @param actuator the pump that gets switched by the edge
+     */
+    ClockTask scheduleEdge(Object actuator, Runnable edge, long delayInMs);
+
+    /**
+     * Runs the task concurrently to the caller. Used for time-critical loops like motor control.
+     */
+    ClockTask start(Runnable task);
+}
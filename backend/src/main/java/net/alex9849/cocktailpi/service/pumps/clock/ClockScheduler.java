@@ -0,0 +1,15 @@
+package net.alex9849.cocktailpi.service.pumps.clock;
+
+public interface ClockScheduler {
+
+    ClockTask schedule(Runnable task, long delayInMs);
+
+    ClockTask scheduleAtFixedRate(Runnable task, long initialDelayInMs, long periodInMs);
+
+    /**
+     * Cancels all tasks that have not been started yet.
+     */
+    void shutdown();
+
+    boolean isShutdown();
+}
@@ -0,0 +1,16 @@
+package net.alex9849.cocktailpi.service.pumps.clock;
+
+public interface ClockTask {
+
+    /**
+     * @param mayInterrupt interrupt the task if it is already running
+     */
+    void cancel(boolean mayInterrupt);
+
+    /**
+     * Waits for the task to terminate
+     */
+    void join() throws InterruptedException;
+
+    boolean isDone();
+}
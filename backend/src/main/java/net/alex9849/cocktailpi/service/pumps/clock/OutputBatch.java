@@ -0,0 +1,53 @@
+package net.alex9849.cocktailpi.service.pumps.clock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lets outputs that are written within the same batch defer their transfer to the hardware to the end of the batch.
+ * This way outputs that share a register (e.g. the pins of a port expander) get written with a single transaction.
+ * Batches are bound to the current thread.
+ */
+public final class OutputBatch {
+    private static final ThreadLocal<Map<Object, Runnable>> pendingFlushes = new ThreadLocal<>();
+
+    private OutputBatch() {}
+
+    /**
+     * Runs the writes and flushes all outputs that have been deferred by them afterwards.
+     * Flushes get executed even if a write fails.
+     */
+    public static void run(Runnable writes) {
+        if(pendingFlushes.get() != null) {
+            writes.run();
+            return;
+        }
+        Map<Object, Runnable> flushes = new LinkedHashMap<>();
+        pendingFlushes.set(flushes);
+        try {
+            writes.run();
+        } finally {
+            pendingFlushes.remove();
+            for(Runnable flush : flushes.values()) {
+                try {
+                    flush.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param output the output. Gets flushed only once per batch.
+     * @return false if no batch is running on the current thread. The output needs to flush itself in that case.
+     */
+    public static boolean defer(Object output, Runnable flush) {
+        Map<Object, Runnable> flushes = pendingFlushes.get();
+        if(flushes == null) {
+            return false;
+        }
+        flushes.putIfAbsent(output, flush);
+        return true;
+    }
+}
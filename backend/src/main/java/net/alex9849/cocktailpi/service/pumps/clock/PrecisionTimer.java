@@ -0,0 +1,215 @@
+package net.alex9849.cocktailpi.service.pumps.clock;
+
+import net.alex9849.cocktailpi.service.executor.RealTimeCore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Executes motor edges (starting or stopping a motor) at their planned time with sub-millisecond precision.
+ * A single thread with the highest priority parks until shortly before the next edge and spins for the rest of the time.
+ * While edges are pending, the thread is pinned to the {@link RealTimeCore}, which it shares with the MotionScheduler.
+ * The time an actuator needs to execute an edge (e.g. an I2C write to a port expander) gets measured. Later edges of
+ * the same actuator get triggered earlier by that time, so that they complete at the planned time.
+ * Edges that are due at about the same time get executed within one {@link OutputBatch}, so that outputs that share a
+ * register get written with a single transaction.
+ * Edges need to be short, as they delay all other edges.
+ */
+public class PrecisionTimer {
+    private static final long SPIN_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long MAX_LATENCY_COMPENSATION_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    //Weight of a new latency measurement in the moving average
+    private static final double LATENCY_SMOOTHING = 0.2;
+    //Edges that are due within this window get executed together in one OutputBatch
+    private static final long COALESCING_WINDOW_NANOS = TimeUnit.MICROSECONDS.toNanos(250);
+
+    private final Logger logger = LoggerFactory.getLogger(PrecisionTimer.class);
+    private final PriorityQueue<Edge> edges = new PriorityQueue<>(
+            Comparator.comparingLong((Edge x) -> x.triggerNanos).thenComparingLong(x -> x.sequence));
+    private final Map<Object, Long> actuationLatencyNanosByActuator = new WeakHashMap<>();
+    private final TimingErrorHistogram timingErrorHistogram = new TimingErrorHistogram();
+    private final boolean pinToCore;
+    private Thread thread;
+    private long sequence;
+
+    /**
+     * @param pinToCore pin the timer thread to a CPU core while edges are pending
+     */
+    public PrecisionTimer(boolean pinToCore) {
+        this.pinToCore = pinToCore;
+    }
+
+    /**
+     * @param actuator edges of the same actuator share the latency compensation
+     */
+    public synchronized ClockTask schedule(Object actuator, Runnable edge, long delayInMs) {
+        long plannedNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayInMs));
+        long latencyNanos = actuationLatencyNanosByActuator.getOrDefault(actuator, 0L);
+        Edge scheduledEdge = new Edge(actuator, edge, plannedNanos, plannedNanos - latencyNanos, sequence++);
+        edges.add(scheduledEdge);
+        if(thread == null) {
+            thread = new Thread(this::run, "precision-timer");
+            thread.setPriority(Thread.MAX_PRIORITY);
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            LockSupport.unpark(thread);
+        }
+        return scheduledEdge;
+    }
+
+    /**
+     * @return the errors of all executed edges (completion minus planned time)
+     */
+    public TimingErrorHistogram getTimingErrorHistogram() {
+        return timingErrorHistogram;
+    }
+
+    /**
+     * @return the measured time in ns the actuator needs to execute an edge
+     */
+    public synchronized long getActuationLatencyNanos(Object actuator) {
+        return actuationLatencyNanosByActuator.getOrDefault(actuator, 0L);
+    }
+
+    private void run() {
+        while (true) {
+            waitForEdges();
+            if(pinToCore) {
+                try (RealTimeCore.Pinning pinning = RealTimeCore.pinCurrentThread()) {
+                    executePendingEdges();
+                }
+            } else {
+                executePendingEdges();
+            }
+        }
+    }
+
+    private void executePendingEdges() {
+        Edge edge;
+        while ((edge = awaitNextEdge()) != null) {
+            List<Edge> batch = new ArrayList<>();
+            batch.add(edge);
+            synchronized (this) {
+                long coalesceUntil = System.nanoTime() + COALESCING_WINDOW_NANOS;
+                while (!edges.isEmpty() && edges.peek().triggerNanos <= coalesceUntil) {
+                    batch.add(edges.poll());
+                }
+            }
+            execute(batch);
+        }
+    }
+
+    private void waitForEdges() {
+        while (true) {
+            synchronized (this) {
+                if(!edges.isEmpty()) {
+                    return;
+                }
+            }
+            LockSupport.park(this);
+        }
+    }
+
+    /**
+     * @return the next edge as soon as it is due or null if no edges are pending anymore
+     */
+    private Edge awaitNextEdge() {
+        while (true) {
+            long remainingNanos;
+            synchronized (this) {
+                Edge next = edges.peek();
+                if(next == null) {
+                    return null;
+                }
+                remainingNanos = next.triggerNanos - System.nanoTime();
+                if(remainingNanos <= 0) {
+                    return edges.poll();
+                }
+            }
+            if(remainingNanos > SPIN_THRESHOLD_NANOS) {
+                //Might return earlier if an edge gets scheduled
+                LockSupport.parkNanos(this, remainingNanos - SPIN_THRESHOLD_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private void execute(List<Edge> batch) {
+        long startNanos = System.nanoTime();
+        try {
+            OutputBatch.run(() -> {
+                for(Edge edge : batch) {
+                    try {
+                        edge.edge.run();
+                    } catch (RuntimeException e) {
+                        logger.error("Edge of actuator " + edge.actuator + " failed!", e);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.error("Writing the outputs of an edge batch failed!", e);
+        } finally {
+            //The outputs of the batch get written at the end, so all edges complete at the same time
+            long stopNanos = System.nanoTime();
+            for(Edge edge : batch) {
+                timingErrorHistogram.record(stopNanos - edge.plannedNanos);
+            }
+            synchronized (this) {
+                for(Edge edge : batch) {
+                    long latencyNanos = Math.min(MAX_LATENCY_COMPENSATION_NANOS, stopNanos - startNanos);
+                    Long previousLatency = actuationLatencyNanosByActuator.get(edge.actuator);
+                    if(previousLatency != null) {
+                        latencyNanos = Math.round(previousLatency * (1 - LATENCY_SMOOTHING) + latencyNanos * LATENCY_SMOOTHING);
+                    }
+                    actuationLatencyNanosByActuator.put(edge.actuator, latencyNanos);
+                }
+            }
+            batch.forEach(x -> x.done.countDown());
+        }
+    }
+
+    private class Edge implements ClockTask {
+        private final Object actuator;
+        private final Runnable edge;
+        private final long plannedNanos;
+        private final long triggerNanos;
+        private final long sequence;
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private Edge(Object actuator, Runnable edge, long plannedNanos, long triggerNanos, long sequence) {
+            this.actuator = actuator;
+            this.edge = edge;
+            this.plannedNanos = plannedNanos;
+            this.triggerNanos = triggerNanos;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Removes the edge if it hasn't been executed yet. The timer thread is shared and therefore never gets interrupted.
+         */
+        @Override
+        public void cancel(boolean mayInterrupt) {
+            synchronized (PrecisionTimer.this) {
+                if(edges.remove(this)) {
+                    done.countDown();
+                }
+            }
+        }
+
+        @Override
+        public void join() throws InterruptedException {
+            done.await();
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package net.alex9849.cocktailpi.service.pumps.clock;
+
+import net.alex9849.cocktailpi.service.executor.ExecutionLanes;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The clock that is used on the real machine. Time passes in real time.
+ */
+public class SystemClock implements Clock {
+    public static final SystemClock INSTANCE = new SystemClock();
+    private final PrecisionTimer precisionTimer = new PrecisionTimer(true);
+
+    private SystemClock() {}
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    @Override
+    public void await(CountDownLatch latch) throws InterruptedException {
+        latch.await();
+    }
+
+    /**
+     * The returned scheduler is a view on the shared normal execution lane. Shutting it down cancels its tasks.
+     */
+    @Override
+    public ClockScheduler newScheduler() {
+        ScheduledExecutorService executor = ExecutionLanes.normal();
+        return new ClockScheduler() {
+            private final Set<Future<?>> futures = new HashSet<>();
+            private boolean shutdown;
+
+            @Override
+            public synchronized ClockTask schedule(Runnable task, long delayInMs) {
+                return track(executor.schedule(task, delayInMs, TimeUnit.MILLISECONDS));
+            }
+
+            @Override
+            public synchronized ClockTask scheduleAtFixedRate(Runnable task, long initialDelayInMs, long periodInMs) {
+                return track(executor.scheduleAtFixedRate(task, initialDelayInMs, periodInMs, TimeUnit.MILLISECONDS));
+            }
+
+            private ClockTask track(Future<?> future) {
+                if(shutdown) {
+                    future.cancel(false);
+                    throw new IllegalStateException("Scheduler has been shut down!");
+                }
+                futures.removeIf(Future::isDone);
+                futures.add(future);
+                return new FutureClockTask(future);
+            }
+
+            @Override
+            public synchronized void shutdown() {
+                shutdown = true;
+                futures.forEach(x -> x.cancel(false));
+                futures.clear();
+            }
+
+            @Override
+            public synchronized boolean isShutdown() {
+                return shutdown;
+            }
+        };
+    }
+
+    /**
+     * All edges get executed by one shared {@link PrecisionTimer}.
+     */
+    @Override
+    public ClockTask scheduleEdge(Object actuator, Runnable edge, long delayInMs) {
+        return precisionTimer.schedule(actuator, edge, delayInMs);
+    }
+
+    public PrecisionTimer getPrecisionTimer() {
+        return precisionTimer;
+    }
+
+    /**
+     * The task runs on the real-time execution lane with the highest thread priority.
+     */
+    @Override
+    public ClockTask start(Runnable task) {
+        StartedTask startedTask = new StartedTask(task);
+        startedTask.future = ExecutionLanes.realTime().submit(startedTask::run);
+        return startedTask;
+    }
+
+    /**
+     * Joining waits until the task has really terminated. A cancelled future returns from get() right away,
+     * even though the interrupted task might still be running.
+     */
+    private static class StartedTask implements ClockTask {
+        private final Runnable task;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CountDownLatch terminated = new CountDownLatch(1);
+        private volatile Future<?> future;
+
+        private StartedTask(Runnable task) {
+            this.task = task;
+        }
+
+        private void run() {
+            try {
+                //The task has already been cancelled and joined
+                if(!claimed.compareAndSet(false, true)) {
+                    return;
+                }
+                task.run();
+            } finally {
+                terminated.countDown();
+            }
+        }
+
+        @Override
+        public void cancel(boolean mayInterrupt) {
+            future.cancel(mayInterrupt);
+        }
+
+        @Override
+        public void join() throws InterruptedException {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                //Ignore
+            } catch (CancellationException e) {
+                claimIfCancelled();
+                terminated.await();
+            }
+        }
+
+        @Override
+        public boolean isDone() {
+            claimIfCancelled();
+            return terminated.getCount() == 0;
+        }
+
+        /**
+         * A cancelled task can't start anymore once it has been claimed here. Otherwise it is running or done.
+         */
+        private void claimIfCancelled() {
+            if(future.isCancelled() && claimed.compareAndSet(false, true)) {
+                terminated.countDown();
+            }
+        }
+    }
+
+    private record FutureClockTask(Future<?> future) implements ClockTask {
+        @Override
+        public void cancel(boolean mayInterrupt) {
+            future.cancel(mayInterrupt);
+        }
+
+        @Override
+        public void join() throws InterruptedException {
+            try {
+                future.get();
+            } catch (ExecutionException | CancellationException e) {
+                //Ignore
+            }
+        }
+
+        @Override
+        public boolean isDone() {
+            return future.isDone();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package net.alex9849.cocktailpi.service.pumps.clock;
+
+import java.util.Arrays;
+
+/**
+ * Counts timing errors (actual minus planned time) in buckets by their absolute value.
+ */
+public class TimingErrorHistogram {
+    public static final long[] BUCKET_UPPER_BOUNDS_IN_MICROS = {50, 100, 250, 500, 1000, 2000, 5000, 10000, 50000, Long.MAX_VALUE};
+    private final long[] bucketCounts = new long[BUCKET_UPPER_BOUNDS_IN_MICROS.length];
+    private long count;
+    private long early;
+    private long sumOfAbsErrorsInMicros;
+    private long maxAbsErrorInMicros;
+
+    public synchronized void record(long errorInNanos) {
+        long absErrorInMicros = Math.abs(errorInNanos) / 1000;
+        int bucket = 0;
+        while (absErrorInMicros >= BUCKET_UPPER_BOUNDS_IN_MICROS[bucket]) {
+            bucket++;
+        }
+        bucketCounts[bucket]++;
+        count++;
+        if(errorInNanos < 0) {
+            early++;
+        }
+        sumOfAbsErrorsInMicros += absErrorInMicros;
+        maxAbsErrorInMicros = Math.max(maxAbsErrorInMicros, absErrorInMicros);
+    }
+
+    /**
+     * @return the number of recorded errors per bucket. Bucket i contains all errors below BUCKET_UPPER_BOUNDS_IN_MICROS[i].
+     */
+    public synchronized long[] getBucketCounts() {
+        return Arrays.copyOf(bucketCounts, bucketCounts.length);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the number of edges that happened before the planned time
+     */
+    public synchronized long getEarly() {
+        return early;
+    }
+
+    public synchronized long getMeanAbsErrorInMicros() {
+        return count == 0 ? 0 : sumOfAbsErrorsInMicros / count;
+    }
+
+    public synchronized long getMaxAbsErrorInMicros() {
+        return maxAbsErrorInMicros;
+    }
+
+    /**
+     * @return the upper bound of the bucket that contains the given percentile
+     */
+    public synchronized long getPercentileUpperBoundInMicros(double percentile) {
+        long threshold = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for(int i = 0; i < bucketCounts.length; i++) {
+            seen += bucketCounts[i];
+            if(seen >= threshold && seen > 0) {
+                return Math.min(BUCKET_UPPER_BOUNDS_IN_MICROS[i], maxAbsErrorInMicros);
+            }
+        }
+        return 0;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(bucketCounts, 0);
+        count = 0;
+        early = 0;
+        sumOfAbsErrorsInMicros = 0;
+        maxAbsErrorInMicros = 0;
+    }
+}
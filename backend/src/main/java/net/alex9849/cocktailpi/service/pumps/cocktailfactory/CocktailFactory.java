@@ -1,7 +1,13 @@
 package net.alex9849.cocktailpi.service.pumps.cocktailfactory;
 
+import net.alex9849.cocktailpi.model.Station;
 import net.alex9849.cocktailpi.model.cocktail.CocktailProgress;
+import net.alex9849.cocktailpi.model.pump.DcPump;
 import net.alex9849.cocktailpi.model.pump.Pump;
+import net.alex9849.cocktailpi.model.pump.PumpJobTelemetry;
+import net.alex9849.cocktailpi.model.pump.StepperPump;
+import net.alex9849.cocktailpi.model.pump.Valve;
+import net.alex9849.cocktailpi.model.recipe.CocktailOrderConfiguration;
 import net.alex9849.cocktailpi.model.recipe.FeasibleRecipe;
 import net.alex9849.cocktailpi.model.recipe.ingredient.AutomatedIngredient;
 import net.alex9849.cocktailpi.model.recipe.ingredient.Ingredient;
@@ -10,7 +16,13 @@ import net.alex9849.cocktailpi.model.recipe.productionstep.AddIngredientsProduct
 import net.alex9849.cocktailpi.model.recipe.productionstep.ProductionStep;
 import net.alex9849.cocktailpi.model.recipe.productionstep.ProductionStepIngredient;
 import net.alex9849.cocktailpi.model.recipe.productionstep.WrittenInstructionProductionStep;
+import net.alex9849.cocktailpi.model.system.settings.IngredientSplitMode;
+import net.alex9849.cocktailpi.model.system.settings.ValveDosingMode;
+import net.alex9849.cocktailpi.model.system.settings.PowerLimitSettings;
 import net.alex9849.cocktailpi.model.user.User;
+import net.alex9849.cocktailpi.service.pumps.LoadCellArbiter;
+import net.alex9849.cocktailpi.service.pumps.clock.Clock;
+import net.alex9849.cocktailpi.service.pumps.clock.SystemClock;
 import net.alex9849.cocktailpi.service.pumps.cocktailfactory.productionstepworker.*;
 
 import java.util.*;
@@ -21,44 +33,93 @@ import java.util.stream.Collectors;
 public class CocktailFactory {
     private final int MINIMAL_PUMP_OPERATION_TIME_IN_MS = 500;
     private final int MINIMAL_PUMP_BREAK_TIME_IN_MS = 500;
+    public static final long TIME_FOR_MANUAL_PROGRESS = TimeUnit.SECONDS.toMillis(15);
 
     private final List<Consumer<CocktailProgress>> subscribers = new ArrayList<>();
     private final List<AbstractProductionStepWorker> productionStepWorkers = new ArrayList<>();
+    private final Map<AbstractProductionStepWorker, Integer> servingByWorker = new HashMap<>();
+    private final Set<AbstractProductionStepWorker> glassSwapWorkers = new HashSet<>();
     private AbstractProductionStepWorker currentProductionStepWorker = null;
     private Consumer<Set<Pump>> onRequestPumpPersist;
     private final Set<Pump> pumps;
     private final FeasibleRecipe feasibleRecipe;
-    private final User user;
+    private User user;
+    private final PowerBudgetScheduler powerBudgetScheduler;
+    private final IngredientSplitMode ingredientSplitMode;
+    private ValveDosingMode valveDosingMode = ValveDosingMode.EXCLUSIVE;
+    private Station station;
+    private LoadCellArbiter loadCellArbiter;
+    private Consumer<PumpJobTelemetry> telemetrySink;
+    private Consumer<Valve> valveModelSink;
+    private Clock clock = SystemClock.INSTANCE;
+    private final Set<Pump> pumpsPrimedJustInTime = new HashSet<>();
+    private final long primingTimeSavedInMs;
 
     private int requestedAmount;
     private CocktailProgress cocktailprogress;
     private CocktailProgress.State previousState = null;
     private CocktailProgress.State state = null;
 
-    public CocktailFactory(FeasibleRecipe feasibleRecipe, User user, Set<Pump> pumps, Consumer<Set<Pump>> onRequestPumpPersist) {
-        this(feasibleRecipe, user, pumps);
+    public CocktailFactory(FeasibleRecipe feasibleRecipe, User user, Set<Pump> pumps, PowerLimitSettings powerLimitSettings,
+                           IngredientSplitMode ingredientSplitMode, Consumer<Set<Pump>> onRequestPumpPersist) {
+        this(feasibleRecipe, user, pumps, powerLimitSettings, ingredientSplitMode);
         this.onRequestPumpPersist = onRequestPumpPersist;
     }
 
     /**
      * @param feasibleRecipe the recipe constisting only of productionsteps that contain ManualIngredients and AutomatedIngredients.
+     *                       All servings get produced. Glasses get swapped using a written instruction between the servings.
      * @param pumps pumps is an output parameter! The attribute fillingLevelInMl will be decreased according to the recipe.
+     * @param powerLimitSettings limits the motors that are allowed to run at the same time. Null means unlimited.
+     * @param ingredientSplitMode defines how an ingredient gets split if multiple pumps hold it.
      */
-    public CocktailFactory(FeasibleRecipe feasibleRecipe, User user, Set<Pump> pumps) {
+    public CocktailFactory(FeasibleRecipe feasibleRecipe, User user, Set<Pump> pumps, PowerLimitSettings powerLimitSettings,
+                           IngredientSplitMode ingredientSplitMode) {
         this.pumps = pumps;
+        this.powerBudgetScheduler = new PowerBudgetScheduler(powerLimitSettings);
+        this.ingredientSplitMode = Objects.requireNonNull(ingredientSplitMode);
         this.feasibleRecipe = feasibleRecipe;
         this.user = user;
         Map<Long, List<Pump>> pumpsByIngredientId = pumps.stream()
                 .filter(x -> x.getCurrentIngredient() != null)
                 .collect(Collectors.groupingBy(x -> x.getCurrentIngredient().getId()));
 
-        for(ProductionStep pStep : feasibleRecipe.getFeasibleProductionSteps()) {
-            this.productionStepWorkers.addAll(generateWorkers(pStep, pumpsByIngredientId));
+        List<ProductionStep> servingSteps = feasibleRecipe.getFeasibleProductionSteps();
+        int glasses = feasibleRecipe.getServings();
+        if(feasibleRecipe.getBatchMode() == CocktailOrderConfiguration.BatchMode.PITCHER) {
+            servingSteps = scaleProductionSteps(servingSteps, feasibleRecipe.getServings());
+            glasses = 1;
         }
-        Set<Pump> usedPumps = this.getUpdatedPumps();
-        if(!usedPumps.isEmpty()) {
-            this.productionStepWorkers.add(0, new PumpUpProductionStepWorker(this, usedPumps));
+        for(int glass = 1; glass <= glasses; glass++) {
+            List<AbstractProductionStepWorker> glassWorkers = new ArrayList<>();
+            if(glass > 1) {
+                WrittenInstructionProductionStepWorker glassSwapWorker = new WrittenInstructionProductionStepWorker(this,
+                        "Place the next glass (" + glass + "/" + glasses + ")");
+                this.glassSwapWorkers.add(glassSwapWorker);
+                glassWorkers.add(glassSwapWorker);
+            }
+            for(ProductionStep pStep : servingSteps) {
+                glassWorkers.addAll(generateWorkers(pStep, pumpsByIngredientId));
+            }
+            for(AbstractProductionStepWorker worker : glassWorkers) {
+                this.servingByWorker.put(worker, glass);
+            }
+            this.productionStepWorkers.addAll(glassWorkers);
+        }
+        if(glasses > 1) {
+            consolidateManualWorkers();
         }
+        //Motor driven pumps get primed just in time by the first step that uses them.
+        //Valves get primed once upfront, because they are dosed using the load cell.
+        Set<Pump> valvesToPrime = this.getUpdatedPumps().stream()
+                .filter(x -> x instanceof Valve && !x.isPumpedUp())
+                .collect(Collectors.toSet());
+        if(!valvesToPrime.isEmpty()) {
+            PumpUpProductionStepWorker pumpUpWorker = new PumpUpProductionStepWorker(this, valvesToPrime);
+            this.servingByWorker.put(pumpUpWorker, 1);
+            this.productionStepWorkers.add(0, pumpUpWorker);
+        }
+        this.primingTimeSavedInMs = computePrimingTimeSaved();
 
         Iterator<AbstractProductionStepWorker> workerIterator = this.productionStepWorkers.iterator();
         if(!workerIterator.hasNext()) {
@@ -80,6 +141,80 @@ public class CocktailFactory {
         setState(CocktailProgress.State.READY_TO_START);
     }
 
+    private static List<ProductionStep> scaleProductionSteps(List<ProductionStep> productionSteps, int factor) {
+        List<ProductionStep> scaledSteps = new ArrayList<>();
+        for(ProductionStep pStep : productionSteps) {
+            if(!(pStep instanceof AddIngredientsProductionStep addIngredientsStep)) {
+                scaledSteps.add(pStep);
+                continue;
+            }
+            List<ProductionStepIngredient> scaledIngredients = new ArrayList<>();
+            for(ProductionStepIngredient psi : addIngredientsStep.getStepIngredients()) {
+                ProductionStepIngredient scaledIngredient = new ProductionStepIngredient();
+                scaledIngredient.setIngredient(psi.getIngredient());
+                scaledIngredient.setAmount(psi.getAmount() * factor);
+                scaledIngredient.setScale(psi.isScale());
+                scaledIngredient.setBoostable(psi.isBoostable());
+                scaledIngredients.add(scaledIngredient);
+            }
+            AddIngredientsProductionStep scaledStep = new AddIngredientsProductionStep();
+            scaledStep.setStepIngredients(scaledIngredients);
+            scaledSteps.add(scaledStep);
+        }
+        return scaledSteps;
+    }
+
+    /**
+     * Merges directly consecutive manual workers of the same type within a serving, so that the user only has to
+     * confirm once per glass. This is safe, because no pump runs between them. The glass swap instruction never gets
+     * merged, so that every instruction shows up for the glass it belongs to.
+     */
+    private void consolidateManualWorkers() {
+        List<AbstractProductionStepWorker> consolidated = new ArrayList<>();
+        for(AbstractProductionStepWorker worker : this.productionStepWorkers) {
+            AbstractProductionStepWorker last = consolidated.isEmpty() ? null : consolidated.get(consolidated.size() - 1);
+            AbstractProductionStepWorker merged = null;
+            if(last == null || this.glassSwapWorkers.contains(last) || this.glassSwapWorkers.contains(worker)
+                    || !Objects.equals(this.servingByWorker.get(last), this.servingByWorker.get(worker))) {
+                consolidated.add(worker);
+                continue;
+            }
+            if(last instanceof WrittenInstructionProductionStepWorker lastWiWorker
+                    && worker instanceof WrittenInstructionProductionStepWorker wiWorker) {
+                merged = new WrittenInstructionProductionStepWorker(this, lastWiWorker.getProgress().getMessage()
+                        + "\n" + wiWorker.getProgress().getMessage());
+            }
+            if(last instanceof ManualProductionStepWorker lastManualWorker
+                    && worker instanceof ManualProductionStepWorker manualWorker) {
+                Map<Long, ProductionStepIngredient> ingredientsById = new LinkedHashMap<>();
+                List<ProductionStepIngredient> ingredients = new ArrayList<>(lastManualWorker.getProgress().getIngredientsToBeAdded());
+                ingredients.addAll(manualWorker.getProgress().getIngredientsToBeAdded());
+                for(ProductionStepIngredient psi : ingredients) {
+                    ProductionStepIngredient existing = ingredientsById.get(psi.getIngredient().getId());
+                    if(existing == null) {
+                        existing = new ProductionStepIngredient();
+                        existing.setIngredient(psi.getIngredient());
+                        existing.setScale(psi.isScale());
+                        existing.setBoostable(psi.isBoostable());
+                        ingredientsById.put(psi.getIngredient().getId(), existing);
+                    }
+                    existing.setAmount(existing.getAmount() + psi.getAmount());
+                }
+                merged = new ManualProductionStepWorker(this, new ArrayList<>(ingredientsById.values()));
+            }
+            if(merged == null) {
+                consolidated.add(worker);
+                continue;
+            }
+            this.servingByWorker.put(merged, this.servingByWorker.get(worker));
+            this.servingByWorker.remove(last);
+            this.servingByWorker.remove(worker);
+            consolidated.set(consolidated.size() - 1, merged);
+        }
+        this.productionStepWorkers.clear();
+        this.productionStepWorkers.addAll(consolidated);
+    }
+
     private List<AbstractProductionStepWorker> generateWorkers(ProductionStep pStep, Map<Long, List<Pump>> pumpsByIngredientId) {
         if(pStep instanceof AddIngredientsProductionStep) {
             return generateWorkers((AddIngredientsProductionStep) pStep, pumpsByIngredientId);
@@ -118,12 +253,141 @@ public class CocktailFactory {
             workers.add(new ManualProductionStepWorker(this, manualProductionSteps));
         }
         if(!automaticProductionSteps.isEmpty()) {
-            workers.add(new AutomaticProductionStepWorker(this, pumps,
-                    automaticProductionSteps, MINIMAL_PUMP_OPERATION_TIME_IN_MS, MINIMAL_PUMP_BREAK_TIME_IN_MS));
+            Set<Pump> pumpsToPrime = pumps.stream()
+                    .filter(x -> !x.isPumpedUp() && !pumpsPrimedJustInTime.contains(x))
+                    .collect(Collectors.toSet());
+            AutomaticProductionStepWorker worker = new AutomaticProductionStepWorker(this, pumps,
+                    automaticProductionSteps, MINIMAL_PUMP_OPERATION_TIME_IN_MS, MINIMAL_PUMP_BREAK_TIME_IN_MS, pumpsToPrime);
+            pumpsPrimedJustInTime.addAll(worker.getPrimedPumps());
+            workers.add(worker);
         }
         return workers;
     }
 
+    /**
+     * Compares the just in time priming with priming all pumps upfront in one step.
+     * @return the estimated time in ms that is saved by priming the pumps just in time
+     */
+    private long computePrimingTimeSaved() {
+        Map<Pump, Integer> primingTimeByPump = new HashMap<>();
+        for(Pump pump : pumpsPrimedJustInTime) {
+            if(pump instanceof DcPump dcPump) {
+                primingTimeByPump.put(dcPump, Math.max(1, dcPump.getConvertMlToRuntime(dcPump.getTubeCapacityInMl())));
+            } else if (pump instanceof StepperPump stepperPump) {
+                long steps = (long) (stepperPump.getStepsPerCl() * (stepperPump.getTubeCapacityInMl() / 10));
+                primingTimeByPump.put(stepperPump, PumpTimingStepCalculator.estimateStepperRunTime(stepperPump, steps));
+            }
+        }
+        long upfrontPrimingTime = powerBudgetScheduler.getMakespan(primingTimeByPump);
+        long primingOverhead = this.productionStepWorkers.stream()
+                .filter(x -> x instanceof AutomaticProductionStepWorker)
+                .mapToLong(x -> ((AutomaticProductionStepWorker) x).getPrimingOverheadInMs())
+                .sum();
+        return Math.max(0, upfrontPrimingTime - primingOverhead);
+    }
+
+    /**
+     * @return the estimated time in ms that is saved because the pumps get primed just in time
+     * instead of all at once before the first step
+     */
+    public long getPrimingTimeSavedInMs() {
+        return primingTimeSavedInMs;
+    }
+
+    public PowerBudgetScheduler getPowerBudgetScheduler() {
+        return powerBudgetScheduler;
+    }
+
+    public IngredientSplitMode getIngredientSplitMode() {
+        return ingredientSplitMode;
+    }
+
+    public ValveDosingMode getValveDosingMode() {
+        return valveDosingMode;
+    }
+
+    /**
+     * Needs to be set before the production gets started.
+     */
+    public CocktailFactory setValveDosingMode(ValveDosingMode valveDosingMode) {
+        this.valveDosingMode = Objects.requireNonNull(valveDosingMode);
+        return this;
+    }
+
+    /**
+     * @return the station that produces the cocktail or null if the cocktail is produced using all pumps
+     */
+    public Station getStation() {
+        return station;
+    }
+
+    public CocktailFactory setStation(Station station) {
+        this.station = station;
+        return this;
+    }
+
+    /**
+     * Plans might be prepared before the order has been placed. The user gets set afterwards.
+     */
+    public CocktailFactory setUser(User user) {
+        this.user = user;
+        return this;
+    }
+
+    /**
+     * @return the arbiter that grants exclusive access to the load cell or null if no other party uses the load cell
+     */
+    public LoadCellArbiter getLoadCellArbiter() {
+        return loadCellArbiter;
+    }
+
+    public CocktailFactory setLoadCellArbiter(LoadCellArbiter loadCellArbiter) {
+        this.loadCellArbiter = loadCellArbiter;
+        return this;
+    }
+
+    /**
+     * @param telemetrySink receives a record for every run of a pump. Productions without a sink (e.g. simulations)
+     *                      don't record anything.
+     */
+    public CocktailFactory setTelemetrySink(Consumer<PumpJobTelemetry> telemetrySink) {
+        this.telemetrySink = telemetrySink;
+        return this;
+    }
+
+    public void recordTelemetry(PumpJobTelemetry record) {
+        if(telemetrySink != null) {
+            telemetrySink.accept(record);
+        }
+    }
+
+    /**
+     * @param valveModelSink persists the cut-off lag and the flow that a valve has learned during a dose.
+     *                       Productions without a sink (e.g. simulations) only keep them in memory.
+     */
+    public CocktailFactory setValveModelSink(Consumer<Valve> valveModelSink) {
+        this.valveModelSink = valveModelSink;
+        return this;
+    }
+
+    public void saveLearnedValveModel(Valve valve) {
+        if(valveModelSink != null) {
+            valveModelSink.accept(valve);
+        }
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Needs to be set before the production gets started.
+     */
+    public CocktailFactory setClock(Clock clock) {
+        this.clock = Objects.requireNonNull(clock);
+        return this;
+    }
+
     public void requestPumpPersist(Set<Pump> pumps) {
         if(this.onRequestPumpPersist == null) {
             return;
@@ -223,6 +487,17 @@ public class CocktailFactory {
         this.notifySubscribers();
     }
 
+    /**
+     * Gets called by a worker that can't continue. The production gets cancelled, so that no pump keeps running
+     * and the next order can be started.
+     */
+    public void failProduction() {
+        if(isFinished() || isCanceled()) {
+            return;
+        }
+        cancelCocktail();
+    }
+
     public void continueProduction() {
         if(!(this.currentProductionStepWorker instanceof ManualFinishable)) {
             throw new IllegalStateException("No manual interaction required!");
@@ -267,10 +542,16 @@ public class CocktailFactory {
     public CocktailProgress getCocktailprogress() {
         CocktailProgress cocktailprogress = new CocktailProgress();
         cocktailprogress.setUser(this.user);
+        if(this.station != null) {
+            cocktailprogress.setStationId(this.station.getId());
+        }
         cocktailprogress.setRecipe(this.feasibleRecipe.getRecipe());
         cocktailprogress.setPreviousState(this.previousState);
         cocktailprogress.setState(this.state);
         cocktailprogress.setProgress(getProgressInPercent());
+        cocktailprogress.setServings(this.feasibleRecipe.getServings());
+        cocktailprogress.setCurrentServing(this.servingByWorker.getOrDefault(this.currentProductionStepWorker, 1));
+        cocktailprogress.setPrimingTimeSavedInMs(this.primingTimeSavedInMs);
 
         if(this.currentProductionStepWorker instanceof ManualProductionStepWorker) {
             ManualProductionStepWorker worker = (ManualProductionStepWorker) this.currentProductionStepWorker;
@@ -291,7 +572,24 @@ public class CocktailFactory {
             return 100;
         }
 
-        final long TIME_FOR_MANUAL_PROGRESS = TimeUnit.SECONDS.toMillis(15);
+        long[] timeNeededAndElapsed = getTimeNeededAndElapsed();
+        long timeNeeded = timeNeededAndElapsed[0];
+        long timeElapsed = timeNeededAndElapsed[1];
+        return Math.round((((float) timeElapsed) / timeNeeded) * 100);
+    }
+
+    /**
+     * @return the estimated time in ms that is required to finish the cocktail. Manual steps count with a fixed time.
+     */
+    public long getEstimatedRemainingTime() {
+        if(this.state == CocktailProgress.State.FINISHED || this.state == CocktailProgress.State.CANCELLED) {
+            return 0;
+        }
+        long[] timeNeededAndElapsed = getTimeNeededAndElapsed();
+        return Math.max(0, timeNeededAndElapsed[0] - timeNeededAndElapsed[1]);
+    }
+
+    private long[] getTimeNeededAndElapsed() {
         long timeNeeded = 0;
         long timeElapsed = 0;
         for(AbstractProductionStepWorker worker : this.productionStepWorkers) {
@@ -315,14 +613,17 @@ public class CocktailFactory {
                 throw new IllegalStateException("Unknown worker type!");
             }
         }
-        return Math.round((((float) timeElapsed) / timeNeeded) * 100);
+        return new long[] {timeNeeded, timeElapsed};
     }
 
+    /**
+     * @return the amount that is needed per ingredient to produce all servings of the recipe
+     */
     public static Map<Ingredient, Integer> getNeededAmountNeededPerIngredient(FeasibleRecipe recipe) {
         return recipe.getFeasibleProductionSteps().stream()
                 .filter(x -> x instanceof AddIngredientsProductionStep)
                 .map(x -> (AddIngredientsProductionStep) x)
                 .flatMap(x -> x.getStepIngredients().stream())
-                .collect(Collectors.toMap(x -> x.getIngredient(), x -> x.getAmount(), (a, b) -> a + b));
+                .collect(Collectors.toMap(x -> x.getIngredient(), x -> x.getAmount() * recipe.getServings(), (a, b) -> a + b));
     }
 }
@@ -0,0 +1,121 @@
+package net.alex9849.cocktailpi.service.pumps.cocktailfactory;
+
+import net.alex9849.cocktailpi.model.pump.Pump;
+import net.alex9849.cocktailpi.model.system.settings.PowerLimitSettings;
+
+import java.util.*;
+
+/**
+ * Plans the start times of motors so that the configured limit of concurrently running motors
+ * and the power budget are never exceeded.
+ * Uses a greedy list scheduling: Whenever a motor finishes, the longest waiting runs that fit
+ * into the remaining budget get started. This keeps the total runtime (makespan) close to the optimum.
+ */
+public class PowerBudgetScheduler {
+    private final int maxConcurrentMotors;
+    private final int powerBudgetInMa;
+
+    public PowerBudgetScheduler(PowerLimitSettings settings) {
+        if(settings != null && settings.isEnable() && settings.getSettings() != null) {
+            this.maxConcurrentMotors = Math.max(0, settings.getSettings().getMaxConcurrentMotors());
+            this.powerBudgetInMa = Math.max(0, settings.getSettings().getPowerBudgetInMa());
+        } else {
+            this.maxConcurrentMotors = 0;
+            this.powerBudgetInMa = 0;
+        }
+    }
+
+    public boolean isLimited() {
+        return maxConcurrentMotors > 0 || powerBudgetInMa > 0;
+    }
+
+    /**
+     * Pumps without a configured power consumption only count towards the maximal number of concurrent motors.
+     */
+    public static int getPowerConsumption(Pump pump) {
+        Integer powerConsumption = pump.getPowerConsumptionInMa();
+        return powerConsumption == null ? 0 : powerConsumption;
+    }
+
+    public boolean isFitting(int runningMotors, int runningPowerConsumption, int additionalPowerConsumption) {
+        return isFitting(runningMotors, runningPowerConsumption, 1, additionalPowerConsumption);
+    }
+
+    public boolean isFitting(int runningMotors, int runningPowerConsumption, int additionalMotors, int additionalPowerConsumption) {
+        if(maxConcurrentMotors > 0 && runningMotors + additionalMotors > maxConcurrentMotors) {
+            return false;
+        }
+        return powerBudgetInMa <= 0 || runningPowerConsumption + additionalPowerConsumption <= powerBudgetInMa;
+    }
+
+    /**
+     * @param runTimeByPump the time in ms each pump needs to run uninterrupted
+     * @return the time in ms until all pumps have finished, if they get started according to the schedule
+     */
+    public <T extends Pump> int getMakespan(Map<T, Integer> runTimeByPump) {
+        int makespan = 0;
+        for(Map.Entry<T, Integer> entry : schedule(runTimeByPump).entrySet()) {
+            makespan = Math.max(makespan, entry.getValue() + runTimeByPump.get(entry.getKey()));
+        }
+        return makespan;
+    }
+
+    /**
+     * @param runTimeByPump the time in ms each pump needs to run uninterrupted
+     * @return the start time in ms of each pump relative to the start of the schedule
+     */
+    public <T extends Pump> Map<T, Integer> schedule(Map<T, Integer> runTimeByPump) {
+        Map<T, Integer> startTimes = new HashMap<>();
+        if(!isLimited()) {
+            runTimeByPump.keySet().forEach(p -> startTimes.put(p, 0));
+            return startTimes;
+        }
+        //Longest runs first
+        List<T> waiting = new ArrayList<>(runTimeByPump.keySet());
+        waiting.sort(Comparator.comparingInt((T p) -> runTimeByPump.get(p)).reversed()
+                .thenComparingLong(Pump::getId));
+        List<T> running = new ArrayList<>();
+        int runningPowerConsumption = 0;
+        int time = 0;
+
+        while (!waiting.isEmpty()) {
+            Iterator<T> waitingIterator = waiting.iterator();
+            while (waitingIterator.hasNext()) {
+                T pump = waitingIterator.next();
+                int powerConsumption = getPowerConsumption(pump);
+                if(isFitting(running.size(), runningPowerConsumption, powerConsumption)) {
+                    startTimes.put(pump, time);
+                    running.add(pump);
+                    runningPowerConsumption += powerConsumption;
+                    waitingIterator.remove();
+                }
+            }
+            if(waiting.isEmpty()) {
+                break;
+            }
+            if(running.isEmpty()) {
+                //The pump exceeds the budget on its own. Let it run alone.
+                T pump = waiting.remove(0);
+                startTimes.put(pump, time);
+                running.add(pump);
+                runningPowerConsumption += getPowerConsumption(pump);
+                continue;
+            }
+            //Advance to the next point in time where a pump stops
+            int nextStop = Integer.MAX_VALUE;
+            for(T pump : running) {
+                nextStop = Math.min(nextStop, startTimes.get(pump) + runTimeByPump.get(pump));
+            }
+            time = nextStop;
+            Iterator<T> runningIterator = running.iterator();
+            while (runningIterator.hasNext()) {
+                T pump = runningIterator.next();
+                if(startTimes.get(pump) + runTimeByPump.get(pump) <= time) {
+                    runningPowerConsumption -= getPowerConsumption(pump);
+                    runningIterator.remove();
+                }
+            }
+        }
+        return startTimes;
+    }
+}
@@ -43,28 +43,31 @@ public class PumpPhase {
         return startedTime;
     }
 
-    public void setStarted() {
+    public void setStarted(long time) {
         if(this.startedTime == null) {
-            this.startedTime = System.currentTimeMillis();
+            this.startedTime = time;
         }
     }
 
-    public void setStopped() {
+    public void setStopped(long time) {
         if(this.startedTime == null) {
             throw new IllegalStateException("PumpPhase setStarted method call need to be done before setStopped call!");
         }
         if(this.stoppedTime == null) {
-            this.stoppedTime = System.currentTimeMillis();
+            this.stoppedTime = time;
         }
     }
 
-    public double getLiquidPumped() {
+    /**
+     * @param now the current time. Used if the phase is still running.
+     */
+    public double getLiquidPumped(long now) {
         if(getStartedTime() == null) {
             return 0;
         }
         Long stoppedTime = getStoppedTime();
         if(stoppedTime == null) {
-            stoppedTime = System.currentTimeMillis();
+            stoppedTime = now;
         }
         int runTimeElapsed = (int) (stoppedTime - getStartedTime());
         int runTimeRequested = this.stopTime - this.startTime;
@@ -78,8 +81,8 @@ public class PumpPhase {
         return liquidPumped;
     }
 
-    public double getRemainingLiquidToPump() {
-        return Math.max(0, getLiquidToPump() - getLiquidPumped());
+    public double getRemainingLiquidToPump(long now) {
+        return Math.max(0, getLiquidToPump() - getLiquidPumped(now));
     }
 
     public double getLiquidToPump() {
@@ -4,6 +4,7 @@ import net.alex9849.cocktailpi.model.pump.DcPump;
 import net.alex9849.cocktailpi.model.pump.Pump;
 import net.alex9849.cocktailpi.model.pump.StepperPump;
 import net.alex9849.cocktailpi.model.pump.Valve;
+import net.alex9849.cocktailpi.model.system.settings.IngredientSplitMode;
 import net.alex9849.cocktailpi.service.pumps.cocktailfactory.productionstepworker.PumpStepIngredient;
 import net.alex9849.motorlib.motor.AcceleratingStepper;
 
@@ -13,6 +14,13 @@ public class PumpTimingStepCalculator {
     private int longestPumpRunTime;
     private DcPump longestIngredientPump;
     private final Map<DcPump, Integer> otherPumpTimings;
+    private final PowerBudgetScheduler powerBudgetScheduler;
+    private final Map<DcPump, Integer> dcPumpStartTimes;
+    private final Map<DcPump, Integer> dcPumpRunTimes;
+    private final Map<StepperPump, Integer> stepperStartTimes;
+    private final Map<Pump, Integer> amountByPump;
+    private final Map<Pump, Double> primingInMlByPump;
+    private int primingOverheadInMs;
 
     Map<Valve, Long> valvesToRequestedGrams;
     private final Map<StepperPump, Long> steppersToSteps;
@@ -21,6 +29,37 @@ public class PumpTimingStepCalculator {
     private final int minimalBreakTime;
 
     public PumpTimingStepCalculator(Set<PumpStepIngredient> pumpStepIngredients, int minimalPumpTime, int minimalBreakTime) {
+        this(pumpStepIngredients, minimalPumpTime, minimalBreakTime, new PowerBudgetScheduler(null));
+    }
+
+    /**
+     * @param powerBudgetScheduler if limited, DC pumps and steppers get scheduled on one timeline,
+     *                             so that the power limit is never exceeded.
+     */
+    public PumpTimingStepCalculator(Set<PumpStepIngredient> pumpStepIngredients, int minimalPumpTime, int minimalBreakTime,
+                                    PowerBudgetScheduler powerBudgetScheduler) {
+        this(pumpStepIngredients, minimalPumpTime, minimalBreakTime, powerBudgetScheduler, IngredientSplitMode.SEQUENTIAL);
+    }
+
+    /**
+     * @param ingredientSplitMode defines how an ingredient gets split if multiple pumps hold it
+     */
+    public PumpTimingStepCalculator(Set<PumpStepIngredient> pumpStepIngredients, int minimalPumpTime, int minimalBreakTime,
+                                    PowerBudgetScheduler powerBudgetScheduler, IngredientSplitMode ingredientSplitMode) {
+        this(pumpStepIngredients, minimalPumpTime, minimalBreakTime, powerBudgetScheduler, ingredientSplitMode, new HashSet<>());
+    }
+
+    /**
+     * @param pumpsToPrime motor driven pumps that get primed right before they start dispensing. The priming run
+     *                     is prepended to the run of the pump, so that it overlaps with the dispensing of other pumps.
+     *                     Pumps that are not used by this step don't get primed. Valves are ignored.
+     */
+    public PumpTimingStepCalculator(Set<PumpStepIngredient> pumpStepIngredients, int minimalPumpTime, int minimalBreakTime,
+                                    PowerBudgetScheduler powerBudgetScheduler, IngredientSplitMode ingredientSplitMode,
+                                    Set<Pump> pumpsToPrime) {
+        Objects.requireNonNull(ingredientSplitMode);
+        Objects.requireNonNull(pumpsToPrime);
+        this.powerBudgetScheduler = Objects.requireNonNull(powerBudgetScheduler);
         if(minimalPumpTime <= 0) {
             throw new IllegalArgumentException("minimalPumpTime needs to be at least 1!");
         }
@@ -35,33 +74,46 @@ public class PumpTimingStepCalculator {
         this.updatedPumps = new HashSet<>();
         this.valvesToRequestedGrams = new HashMap<>();
         this.steppersToSteps = new HashMap<>();
+        this.dcPumpStartTimes = new HashMap<>();
+        this.stepperStartTimes = new HashMap<>();
+        this.amountByPump = new HashMap<>();
+        this.primingInMlByPump = new HashMap<>();
         this.longestPumpRunTime = 0;
         //Prioritize pumps with a low filling level
         pumpStepIngredients.forEach(x -> x.getApplicablePumps().sort(Comparator.comparingInt(Pump::getFillingLevelInMl)));
 
         Map<DcPump, Integer> timeToRunPerPump = new HashMap<>();
+        Map<StepperPump, Integer> timeToRunPerStepper = new HashMap<>();
+        Map<Pump, Integer> dispenseTimePerMotor = new HashMap<>();
 
         for(PumpStepIngredient pumpStepIngredient : pumpStepIngredients) {
+            Map<Pump, Integer> amountByPump;
+            if(ingredientSplitMode == IngredientSplitMode.PARALLEL) {
+                amountByPump = splitParallel(pumpStepIngredient, pumpsToPrime);
+            } else {
+                amountByPump = splitSequential(pumpStepIngredient);
+            }
             int remainingAmountToFillInMl = pumpStepIngredient.getAmount();
-            for(Pump pump : pumpStepIngredient.getApplicablePumps()) {
-                if(pump.getFillingLevelInMl() == 0) {
+            for(Map.Entry<Pump, Integer> entry : amountByPump.entrySet()) {
+                Pump pump = entry.getKey();
+                int amountToFillForPumpInMl = entry.getValue();
+                if(amountToFillForPumpInMl <= 0) {
                     continue;
                 }
-                if(remainingAmountToFillInMl <= 0) {
-                    break;
-                }
-                int amountToFillForPumpInMl;
-                if(pump.getFillingLevelInMl() > remainingAmountToFillInMl) {
-                    amountToFillForPumpInMl = remainingAmountToFillInMl;
-                    pump.setFillingLevelInMl(pump.getFillingLevelInMl() - amountToFillForPumpInMl);
-                } else {
-                    amountToFillForPumpInMl = pump.getFillingLevelInMl();
-                    pump.setFillingLevelInMl(0);
+                pump.setFillingLevelInMl(pump.getFillingLevelInMl() - amountToFillForPumpInMl);
+                this.amountByPump.put(pump, amountToFillForPumpInMl);
+                boolean prime = pumpsToPrime.contains(pump) && !(pump instanceof Valve);
+                if(prime) {
+                    this.primingInMlByPump.put(pump, pump.getTubeCapacityInMl());
                 }
 
                 int timeToRun;
                 if(pump instanceof DcPump dcPump) {
                     timeToRun = dcPump.getConvertMlToRuntime(amountToFillForPumpInMl);
+                    dispenseTimePerMotor.put(dcPump, Math.max(1, timeToRun));
+                    if(prime) {
+                        timeToRun += dcPump.getConvertMlToRuntime(dcPump.getTubeCapacityInMl());
+                    }
                     timeToRunPerPump.put(dcPump, timeToRun);
                     if(timeToRun > longestPumpRunTime) {
                         longestPumpRunTime = timeToRun;
@@ -69,17 +121,14 @@ public class PumpTimingStepCalculator {
                     }
 
                 } else if (pump instanceof StepperPump stepperPump) {
-                    int stepsToRun = (stepperPump.getStepsPerCl() * amountToFillForPumpInMl) / 10;
-                    steppersToSteps.put(stepperPump, (long) stepsToRun);
-
-                    AcceleratingStepper aStepper = stepperPump.getMotorDriver();
-                    long cPos = aStepper.getCurrentPosition();
-                    long cTarget = aStepper.getTargetPosition();
-                    aStepper.setCurrentPosition(0);
-                    aStepper.moveTo(stepsToRun);
-                    timeToRun = (int) aStepper.estimateTimeTillCompletion();
-                    aStepper.setCurrentPosition(cPos);
-                    aStepper.moveTo(cTarget);
+                    long stepsToRun = (stepperPump.getStepsPerCl() * amountToFillForPumpInMl) / 10;
+                    dispenseTimePerMotor.put(stepperPump, estimateStepperRunTime(stepperPump, stepsToRun));
+                    if(prime) {
+                        stepsToRun += (long) (stepperPump.getStepsPerCl() * (stepperPump.getTubeCapacityInMl() / 10));
+                    }
+                    steppersToSteps.put(stepperPump, stepsToRun);
+                    timeToRun = estimateStepperRunTime(stepperPump, stepsToRun);
+                    timeToRunPerStepper.put(stepperPump, timeToRun);
                     if(timeToRun > longestPumpRunTime) {
                         longestPumpRunTime = timeToRun;
                         longestIngredientPump = null;
@@ -101,16 +150,213 @@ public class PumpTimingStepCalculator {
         }
 
 
+        this.dcPumpRunTimes = new HashMap<>(timeToRunPerPump);
+        if(powerBudgetScheduler.isLimited()) {
+            Map<Pump, Integer> runTimes = new HashMap<>();
+            timeToRunPerPump.forEach((k, v) -> runTimes.put(k, Math.max(1, v)));
+            runTimes.putAll(timeToRunPerStepper);
+            Map<Pump, Integer> startTimes = powerBudgetScheduler.schedule(runTimes);
+            longestPumpRunTime = 0;
+            for(Map.Entry<Pump, Integer> entry : startTimes.entrySet()) {
+                if(entry.getKey() instanceof DcPump dcPump) {
+                    dcPumpStartTimes.put(dcPump, entry.getValue());
+                } else if (entry.getKey() instanceof StepperPump stepperPump) {
+                    stepperStartTimes.put(stepperPump, entry.getValue());
+                }
+                longestPumpRunTime = Math.max(longestPumpRunTime, entry.getValue() + runTimes.get(entry.getKey()));
+            }
+        }
+
+        if(!primingInMlByPump.isEmpty()) {
+            int longestDispenseTime;
+            if(powerBudgetScheduler.isLimited()) {
+                longestDispenseTime = powerBudgetScheduler.getMakespan(dispenseTimePerMotor);
+            } else {
+                longestDispenseTime = dispenseTimePerMotor.values().stream().mapToInt(x -> x).max().orElse(0);
+            }
+            this.primingOverheadInMs = Math.max(0, longestPumpRunTime - longestDispenseTime);
+        }
+
         if(longestIngredientPump != null) {
             timeToRunPerPump.remove(longestIngredientPump);
         }
         this.otherPumpTimings = timeToRunPerPump;
     }
 
+    /**
+     * Drains the pumps one after another. Pumps with a low filling level are used first.
+     */
+    private static Map<Pump, Integer> splitSequential(PumpStepIngredient pumpStepIngredient) {
+        Map<Pump, Integer> amountByPump = new LinkedHashMap<>();
+        int remainingAmountToFillInMl = pumpStepIngredient.getAmount();
+        for(Pump pump : pumpStepIngredient.getApplicablePumps()) {
+            if(pump.getFillingLevelInMl() == 0) {
+                continue;
+            }
+            if(remainingAmountToFillInMl <= 0) {
+                break;
+            }
+            int amountToFillForPumpInMl = Math.min(pump.getFillingLevelInMl(), remainingAmountToFillInMl);
+            amountByPump.put(pump, amountToFillForPumpInMl);
+            remainingAmountToFillInMl -= amountToFillForPumpInMl;
+        }
+        return amountByPump;
+    }
+
+    /**
+     * Splits the amount across all motor driven pumps in proportion to their flow rate, so that they finish
+     * together. Pumps that get primed first start dispensing later and get a smaller share accordingly.
+     * Pumps that would run dry get drained completely and the rest gets spread over the other pumps.
+     * Valves are only used for the amount that the pumps can't deliver.
+     */
+    private static Map<Pump, Integer> splitParallel(PumpStepIngredient pumpStepIngredient, Set<Pump> pumpsToPrime) {
+        int amount = pumpStepIngredient.getAmount();
+        Map<Pump, Double> flowRateByPump = new HashMap<>();
+        Map<Pump, Integer> primingTimeByPump = new HashMap<>();
+        for(Pump pump : pumpStepIngredient.getApplicablePumps()) {
+            if(pump.getFillingLevelInMl() > 0 && !(pump instanceof Valve)) {
+                flowRateByPump.put(pump, getFlowRate(pump, amount));
+                primingTimeByPump.put(pump, pumpsToPrime.contains(pump) ? getPrimingTime(pump) : 0);
+            }
+        }
+
+        //Water filling: Find the common run time at which the pumps deliver the requested amount
+        Map<Pump, Double> preciseAmountByPump = new HashMap<>();
+        Set<Pump> unsaturated = new HashSet<>(flowRateByPump.keySet());
+        double remaining = amount;
+        boolean saturatedPump = true;
+        while (saturatedPump && !unsaturated.isEmpty() && remaining > 0) {
+            saturatedPump = false;
+            double totalFlowRate = unsaturated.stream().mapToDouble(flowRateByPump::get).sum();
+            double primedAmount = unsaturated.stream().mapToDouble(x -> flowRateByPump.get(x) * primingTimeByPump.get(x)).sum();
+            double runTime = (remaining + primedAmount) / totalFlowRate;
+            Iterator<Pump> iterator = unsaturated.iterator();
+            while (iterator.hasNext()) {
+                Pump pump = iterator.next();
+                double pumpAmount = flowRateByPump.get(pump) * (runTime - primingTimeByPump.get(pump));
+                if(pumpAmount <= 0) {
+                    //The pump would still be priming when the others are done
+                    iterator.remove();
+                    saturatedPump = true;
+                } else if(pump.getFillingLevelInMl() <= pumpAmount) {
+                    preciseAmountByPump.put(pump, (double) pump.getFillingLevelInMl());
+                    remaining -= pump.getFillingLevelInMl();
+                    iterator.remove();
+                    saturatedPump = true;
+                }
+            }
+            if(!saturatedPump) {
+                for(Pump pump : unsaturated) {
+                    preciseAmountByPump.put(pump, flowRateByPump.get(pump) * (runTime - primingTimeByPump.get(pump)));
+                }
+            }
+        }
+
+        //Round down and hand out the remaining milliliters to the pumps with the largest fractions
+        Map<Pump, Integer> amountByPump = new LinkedHashMap<>();
+        List<Pump> byFraction = new ArrayList<>(preciseAmountByPump.keySet());
+        byFraction.sort(Comparator.comparingDouble((Pump p) -> preciseAmountByPump.get(p) % 1).reversed()
+                .thenComparingLong(Pump::getId));
+        int remainingAmountToFillInMl = amount;
+        for(Pump pump : byFraction) {
+            int pumpAmount = Math.min(remainingAmountToFillInMl, (int) Math.floor(preciseAmountByPump.get(pump)));
+            amountByPump.put(pump, pumpAmount);
+            remainingAmountToFillInMl -= pumpAmount;
+        }
+        for(Pump pump : byFraction) {
+            if(remainingAmountToFillInMl <= 0) {
+                break;
+            }
+            if(amountByPump.get(pump) < pump.getFillingLevelInMl()) {
+                amountByPump.put(pump, amountByPump.get(pump) + 1);
+                remainingAmountToFillInMl--;
+            }
+        }
+
+        //The pumps don't hold enough liquid. Use the valves for the rest.
+        for(Pump pump : pumpStepIngredient.getApplicablePumps()) {
+            if(remainingAmountToFillInMl <= 0) {
+                break;
+            }
+            if(!(pump instanceof Valve) || pump.getFillingLevelInMl() == 0) {
+                continue;
+            }
+            int amountToFillForPumpInMl = Math.min(pump.getFillingLevelInMl(), remainingAmountToFillInMl);
+            amountByPump.put(pump, amountToFillForPumpInMl);
+            remainingAmountToFillInMl -= amountToFillForPumpInMl;
+        }
+        return amountByPump;
+    }
+
+    /**
+     * @param referenceAmountInMl steppers don't pump linear because of their acceleration.
+     *                            Their flow rate gets estimated based on this amount.
+     * @return the flow rate in ml per ms
+     */
+    private static double getFlowRate(Pump pump, int referenceAmountInMl) {
+        int referenceTime;
+        if(pump instanceof DcPump dcPump) {
+            referenceTime = dcPump.getConvertMlToRuntime(referenceAmountInMl);
+        } else if (pump instanceof StepperPump stepperPump) {
+            referenceTime = estimateStepperRunTime(stepperPump, (long) stepperPump.getStepsPerCl() * referenceAmountInMl / 10);
+        } else {
+            throw new IllegalArgumentException("Unknown pump-type: " + pump.getClass().getName());
+        }
+        return (double) referenceAmountInMl / Math.max(1, referenceTime);
+    }
+
+    /**
+     * @return the time in ms the motor driven pump needs to fill its tube
+     */
+    private static int getPrimingTime(Pump pump) {
+        if(pump instanceof DcPump dcPump) {
+            return dcPump.getConvertMlToRuntime(dcPump.getTubeCapacityInMl());
+        } else if (pump instanceof StepperPump stepperPump) {
+            return estimateStepperRunTime(stepperPump, (long) (stepperPump.getStepsPerCl() * (stepperPump.getTubeCapacityInMl() / 10)));
+        }
+        throw new IllegalArgumentException("Unknown pump-type: " + pump.getClass().getName());
+    }
+
+    /**
+     * @return the estimated time in ms the stepper needs to make the given number of steps
+     */
+    public static int estimateStepperRunTime(StepperPump stepperPump, long steps) {
+        AcceleratingStepper aStepper = stepperPump.getMotorDriver();
+        long cPos = aStepper.getCurrentPosition();
+        long cTarget = aStepper.getTargetPosition();
+        aStepper.setCurrentPosition(0);
+        aStepper.moveTo(steps);
+        int timeToRun = (int) aStepper.estimateTimeTillCompletion();
+        aStepper.setCurrentPosition(cPos);
+        aStepper.moveTo(cTarget);
+        return timeToRun;
+    }
+
     public Set<Pump> getUpdatedPumps() {
         return updatedPumps;
     }
 
+    /**
+     * @return the amount in ml that gets dispensed into the glass by each pump. Excludes the priming liquid.
+     */
+    public Map<Pump, Integer> getAmountByPump() {
+        return amountByPump;
+    }
+
+    /**
+     * @return the pumps that get primed by this step and the liquid that is needed to fill their tubes
+     */
+    public Map<Pump, Double> getPrimingInMlByPump() {
+        return primingInMlByPump;
+    }
+
+    /**
+     * @return the time in ms by which the step takes longer, because pumps get primed during it
+     */
+    public int getPrimingOverheadInMs() {
+        return primingOverheadInMs;
+    }
+
     public int getLongestIngredientTime() {
         return longestPumpRunTime;
     }
@@ -121,6 +367,15 @@ public class PumpTimingStepCalculator {
 
     public Set<PumpPhase> getPumpPhases() {
         Set<PumpPhase> pumpPhases = new HashSet<>();
+        if(powerBudgetScheduler.isLimited()) {
+            //Pumps run uninterrupted in the slot that has been assigned by the scheduler
+            for(Map.Entry<DcPump, Integer> entry : this.dcPumpStartTimes.entrySet()) {
+                int startTime = entry.getValue();
+                int runTime = Math.max(1, this.dcPumpRunTimes.get(entry.getKey()));
+                pumpPhases.add(new PumpPhase(startTime, startTime + runTime, entry.getKey()));
+            }
+            return pumpPhases;
+        }
         if(longestIngredientPump != null) {
             pumpPhases.add(new PumpPhase(0, this.longestPumpRunTime, this.longestIngredientPump));
         }
@@ -161,6 +416,13 @@ public class PumpTimingStepCalculator {
         return steppersToSteps;
     }
 
+    /**
+     * @return the delay in ms after which each stepper should be started. Empty if the steppers start immediately.
+     */
+    public Map<StepperPump, Integer> getStepperStartTimes() {
+        return stepperStartTimes;
+    }
+
     public Map<Valve, Long> getValvesToRequestedGrams() {
         return valvesToRequestedGrams;
     }
@@ -0,0 +1,250 @@
+package net.alex9849.cocktailpi.service.pumps.cocktailfactory;
+
+import net.alex9849.cocktailpi.model.pump.Pump;
+import net.alex9849.cocktailpi.model.pump.StepperPump;
+import net.alex9849.cocktailpi.model.pump.Valve;
+import net.alex9849.cocktailpi.model.system.settings.ValveDosingMode;
+import net.alex9849.cocktailpi.service.pumps.PowerBudget;
+
+import java.util.*;
+
+/**
+ * Places the DC pump phases, stepper moves and valve dosings of a production step on one timeline.
+ * Valves are dosed using the load cell. Their windows get reserved at the earliest point in time at which
+ * no motor is running, so that only the liquid of the valve gets weighed. The motors fill the remaining time.
+ * The timeline gets split into segments at the valve windows. A segment is executed after the previous one
+ * has been completed, because the duration of a valve window is only an estimate.
+ * If valves are dosed concurrently, the valve windows start right away and the whole timeline is one segment,
+ * in which the valves and the motors run at the same time.
+ */
+public class StepTimeline {
+    private final List<Segment> segments;
+    private final int duration;
+
+    public StepTimeline(Set<PumpPhase> dcPumpPhases, Map<StepperPump, Long> steppersToSteps,
+                        Map<StepperPump, Integer> stepperStartTimes, Map<Valve, Long> valvesToRequestedGrams) {
+        this(dcPumpPhases, steppersToSteps, stepperStartTimes, valvesToRequestedGrams, ValveDosingMode.EXCLUSIVE);
+    }
+
+    public StepTimeline(Set<PumpPhase> dcPumpPhases, Map<StepperPump, Long> steppersToSteps,
+                        Map<StepperPump, Integer> stepperStartTimes, Map<Valve, Long> valvesToRequestedGrams,
+                        ValveDosingMode valveDosingMode) {
+        Objects.requireNonNull(valveDosingMode);
+        List<MotorRun> motorRuns = new ArrayList<>();
+        for(PumpPhase pumpPhase : dcPumpPhases) {
+            motorRuns.add(new MotorRun(pumpPhase.getStartTime(), pumpPhase.getStopTime(), pumpPhase, null));
+        }
+        for(Map.Entry<StepperPump, Long> entry : steppersToSteps.entrySet()) {
+            int startTime = stepperStartTimes.getOrDefault(entry.getKey(), 0);
+            int stopTime = startTime + PumpTimingStepCalculator.estimateStepperRunTime(entry.getKey(), entry.getValue());
+            motorRuns.add(new MotorRun(startTime, stopTime, null, entry.getKey()));
+        }
+        motorRuns.sort(Comparator.comparingInt(MotorRun::startTime));
+
+        if(valveDosingMode == ValveDosingMode.CONCURRENT && !valvesToRequestedGrams.isEmpty()) {
+            Segment segment = new Segment(0);
+            for(MotorRun motorRun : motorRuns) {
+                segment.add(motorRun, steppersToSteps);
+            }
+            int valveStopTime = 0;
+            for(Map.Entry<Valve, Long> entry : valvesToRequestedGrams.entrySet()) {
+                segment.valvesToRequestedGrams.put(entry.getKey(), entry.getValue());
+                valveStopTime += Math.max(1, estimateValveTime(entry.getKey(), entry.getValue()));
+            }
+            segment.stopTime = Math.max(segment.stopTime, valveStopTime);
+            this.segments = List.of(segment);
+            this.duration = segment.stopTime;
+            return;
+        }
+
+        //Reserve the valve windows
+        List<ValveWindow> valveWindows = new ArrayList<>();
+        int cursor = 0;
+        for(Map.Entry<Valve, Long> entry : valvesToRequestedGrams.entrySet()) {
+            int valveTime = Math.max(1, estimateValveTime(entry.getKey(), entry.getValue()));
+            int startTime = findFreeSlot(motorRuns, cursor, valveTime);
+            valveWindows.add(new ValveWindow(startTime, startTime + valveTime, entry.getKey(), entry.getValue()));
+            cursor = startTime + valveTime;
+        }
+
+        //Cut the timeline at the valve windows. Adjacent windows share one segment.
+        this.segments = new ArrayList<>();
+        int segmentStart = 0;
+        Iterator<MotorRun> motorRunIterator = motorRuns.iterator();
+        MotorRun nextMotorRun = motorRunIterator.hasNext() ? motorRunIterator.next() : null;
+        Segment valveSegment = null;
+        for(ValveWindow valveWindow : valveWindows) {
+            if(valveSegment == null || valveSegment.stopTime != valveWindow.startTime) {
+                Segment motorSegment = new Segment(segmentStart);
+                while (nextMotorRun != null && nextMotorRun.startTime < valveWindow.startTime) {
+                    motorSegment.add(nextMotorRun, steppersToSteps);
+                    nextMotorRun = motorRunIterator.hasNext() ? motorRunIterator.next() : null;
+                }
+                if(!motorSegment.isEmpty()) {
+                    this.segments.add(motorSegment);
+                }
+                valveSegment = new Segment(valveWindow.startTime);
+                this.segments.add(valveSegment);
+            }
+            valveSegment.valvesToRequestedGrams.put(valveWindow.valve, valveWindow.grams);
+            valveSegment.stopTime = valveWindow.stopTime;
+            segmentStart = valveWindow.stopTime;
+        }
+        Segment motorSegment = new Segment(segmentStart);
+        while (nextMotorRun != null) {
+            motorSegment.add(nextMotorRun, steppersToSteps);
+            nextMotorRun = motorRunIterator.hasNext() ? motorRunIterator.next() : null;
+        }
+        if(!motorSegment.isEmpty()) {
+            this.segments.add(motorSegment);
+        }
+        this.duration = this.segments.stream().mapToInt(x -> x.stopTime).max().orElse(0);
+    }
+
+    /**
+     * @return the earliest point in time after the cursor at which no motor runs for the given duration
+     */
+    private static int findFreeSlot(List<MotorRun> motorRunsSortedByStart, int cursor, int duration) {
+        int slotStart = cursor;
+        for(MotorRun motorRun : motorRunsSortedByStart) {
+            if(motorRun.stopTime <= slotStart) {
+                continue;
+            }
+            if(motorRun.startTime >= slotStart + duration) {
+                break;
+            }
+            slotStart = motorRun.stopTime;
+        }
+        return slotStart;
+    }
+
+    public static int estimateValveTime(Valve valve, long grams) {
+        return (int) (valve.getTimePerClInMs() * grams) / 10;
+    }
+
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return the estimated time in ms that is required to run all segments
+     */
+    public int getDuration() {
+        return duration;
+    }
+
+    private record MotorRun(int startTime, int stopTime, PumpPhase pumpPhase, StepperPump stepperPump) {}
+
+    private record ValveWindow(int startTime, int stopTime, Valve valve, long grams) {}
+
+    public static class Segment {
+        private final int startTime;
+        private int stopTime;
+        private final Set<PumpPhase> dcPumpPhases;
+        private final Map<StepperPump, Long> steppersToSteps;
+        private final Map<StepperPump, Integer> stepperStartTimes;
+        private final Map<Valve, Long> valvesToRequestedGrams;
+        private final List<MotorRun> motorRuns;
+
+        private Segment(int startTime) {
+            this.startTime = startTime;
+            this.stopTime = startTime;
+            this.dcPumpPhases = new HashSet<>();
+            this.steppersToSteps = new HashMap<>();
+            this.stepperStartTimes = new HashMap<>();
+            this.valvesToRequestedGrams = new LinkedHashMap<>();
+            this.motorRuns = new ArrayList<>();
+        }
+
+        private void add(MotorRun motorRun, Map<StepperPump, Long> steppersToSteps) {
+            if(motorRun.pumpPhase != null) {
+                this.dcPumpPhases.add(motorRun.pumpPhase);
+            } else {
+                this.steppersToSteps.put(motorRun.stepperPump, steppersToSteps.get(motorRun.stepperPump));
+                this.stepperStartTimes.put(motorRun.stepperPump, motorRun.startTime - this.startTime);
+            }
+            this.stopTime = Math.max(this.stopTime, motorRun.stopTime);
+            this.motorRuns.add(motorRun);
+        }
+
+        private boolean isEmpty() {
+            return dcPumpPhases.isEmpty() && steppersToSteps.isEmpty() && valvesToRequestedGrams.isEmpty();
+        }
+
+        public boolean isValveWindow() {
+            return !valvesToRequestedGrams.isEmpty();
+        }
+
+        /**
+         * @return true if motors run in this segment
+         */
+        public boolean hasMotorRuns() {
+            return !dcPumpPhases.isEmpty() || !steppersToSteps.isEmpty();
+        }
+
+        /**
+         * @return the planned start time in ms relative to the start of the timeline
+         */
+        public int getStartTime() {
+            return startTime;
+        }
+
+        public int getStopTime() {
+            return stopTime;
+        }
+
+        /**
+         * @return the pump phases. Their start and stop times are relative to the start of the timeline.
+         */
+        public Set<PumpPhase> getDcPumpPhases() {
+            return dcPumpPhases;
+        }
+
+        public Map<StepperPump, Long> getSteppersToSteps() {
+            return steppersToSteps;
+        }
+
+        /**
+         * @return the delay in ms after which each stepper should be started, relative to the start of the segment
+         */
+        public Map<StepperPump, Integer> getStepperStartTimes() {
+            return stepperStartTimes;
+        }
+
+        public Map<Valve, Long> getValvesToRequestedGrams() {
+            return valvesToRequestedGrams;
+        }
+
+        /**
+         * The valves of a segment get dosed one after another. They are expected to be open while any motor runs.
+         * @return the highest number of motors and valves that run at the same time and their highest power consumption
+         */
+        public PowerBudget.Demand getPeakPowerDemand() {
+            //Stops come before starts at the same time, as the schedule starts a motor as soon as another one stops
+            List<int[]> events = new ArrayList<>();
+            for(MotorRun motorRun : motorRuns) {
+                Pump pump = motorRun.pumpPhase != null ? motorRun.pumpPhase.getPump() : motorRun.stepperPump;
+                int powerConsumption = PowerBudgetScheduler.getPowerConsumption(pump);
+                events.add(new int[] {motorRun.startTime, 1, powerConsumption});
+                events.add(new int[] {motorRun.stopTime, -1, -powerConsumption});
+            }
+            events.sort(Comparator.<int[]>comparingInt(x -> x[0]).thenComparingInt(x -> x[1]));
+            int motors = 0;
+            int powerConsumption = 0;
+            int peakMotors = 0;
+            int peakPowerConsumption = 0;
+            for(int[] event : events) {
+                motors += event[1];
+                powerConsumption += event[2];
+                peakMotors = Math.max(peakMotors, motors);
+                peakPowerConsumption = Math.max(peakPowerConsumption, powerConsumption);
+            }
+            if(!valvesToRequestedGrams.isEmpty()) {
+                peakMotors++;
+                peakPowerConsumption += valvesToRequestedGrams.keySet().stream()
+                        .mapToInt(PowerBudgetScheduler::getPowerConsumption).max().orElse(0);
+            }
+            return new PowerBudget.Demand(peakMotors, peakPowerConsumption);
+        }
+    }
+}
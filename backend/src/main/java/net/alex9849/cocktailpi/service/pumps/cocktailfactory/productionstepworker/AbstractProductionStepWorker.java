@@ -9,10 +9,12 @@ import java.util.function.Consumer;
 public abstract class AbstractProductionStepWorker {
     private final CocktailFactory cocktailFactory;
     private final List<Consumer<StepProgress>> subscribers = new ArrayList<>();
-    private boolean finished = false;
-    private boolean started = false;
-    private boolean cancelled = false;
-    private Runnable onFinish = null;
+    //Guards the state transitions. Never held while callbacks run.
+    private final Object stateLock = new Object();
+    private volatile boolean finished = false;
+    private volatile boolean started = false;
+    private volatile boolean cancelled = false;
+    private volatile Runnable onFinish = null;
 
     public AbstractProductionStepWorker(CocktailFactory cocktailFactory) {
         this.cocktailFactory = cocktailFactory;
@@ -34,30 +36,36 @@ public abstract class AbstractProductionStepWorker {
     }
 
     public void start() {
-        if(this.started) {
-            throw new IllegalStateException("ProductionStepWorker has already been started!");
+        synchronized (stateLock) {
+            if(this.started) {
+                throw new IllegalStateException("ProductionStepWorker has already been started!");
+            }
+            if(this.finished || this.cancelled) {
+                throw new IllegalStateException("ProductionStepWorker has been canceled or finished!");
+            }
+            this.started = true;
         }
-        if(this.finished || this.cancelled) {
-            throw new IllegalStateException("ProductionStepWorker has been canceled or finished!");
-        }
-        this.started = true;
     }
 
     public boolean cancel() {
-        if(this.finished || this.cancelled) {
-            return false;
+        synchronized (stateLock) {
+            if(this.finished || this.cancelled) {
+                return false;
+            }
+            this.cancelled = true;
+            return true;
         }
-        this.cancelled = true;
-        return true;
     }
 
     public abstract StepProgress getProgress();
 
     protected void setFinished() {
-        if(this.finished || this.cancelled) {
-            return;
+        synchronized (stateLock) {
+            if(this.finished || this.cancelled) {
+                return;
+            }
+            this.finished = true;
         }
-        this.finished = true;
         if(this.onFinish != null) {
             this.onFinish.run();
         }
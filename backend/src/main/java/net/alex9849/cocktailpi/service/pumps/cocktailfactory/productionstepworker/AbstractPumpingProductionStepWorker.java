@@ -1,44 +1,68 @@
 package net.alex9849.cocktailpi.service.pumps.cocktailfactory.productionstepworker;
 
 import net.alex9849.cocktailpi.model.pump.Pump;
+import net.alex9849.cocktailpi.model.pump.PumpJobTelemetry;
 import net.alex9849.cocktailpi.model.pump.StepperPump;
 import net.alex9849.cocktailpi.model.pump.Valve;
-import net.alex9849.cocktailpi.model.pump.ValveDriver;
+import net.alex9849.cocktailpi.model.pump.ValveDosingController;
+import net.alex9849.cocktailpi.model.system.settings.ValveDosingMode;
+import net.alex9849.cocktailpi.service.pumps.LoadCellArbiter;
+import net.alex9849.cocktailpi.service.pumps.MotionScheduler;
+import net.alex9849.cocktailpi.service.pumps.PowerBudget;
 import net.alex9849.cocktailpi.service.pumps.cocktailfactory.CocktailFactory;
+import net.alex9849.cocktailpi.service.pumps.cocktailfactory.PowerBudgetScheduler;
 import net.alex9849.cocktailpi.service.pumps.cocktailfactory.PumpPhase;
+import net.alex9849.cocktailpi.service.pumps.cocktailfactory.StepTimeline;
+import net.alex9849.cocktailpi.service.pumps.clock.Clock;
+import net.alex9849.cocktailpi.service.pumps.clock.ClockScheduler;
+import net.alex9849.cocktailpi.service.pumps.clock.ClockTask;
+import net.alex9849.cocktailpi.service.pumps.steptiming.StepTimingMonitor;
+import net.alex9849.cocktailpi.service.pumps.steptiming.StepTimingProbe;
 import net.alex9849.motorlib.motor.AcceleratingStepper;
-import net.alex9849.motorlib.motor.MultiStepper;
-import net.alex9849.motorlib.sensor.HX711;
-import net.openhft.affinity.AffinityLock;
+import net.alex9849.motorlib.motor.Direction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.concurrent.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.DoubleSupplier;
 
 public abstract class AbstractPumpingProductionStepWorker extends AbstractProductionStepWorker {
-    private final ScheduledExecutorService scheduler;
-    private Thread runner;
+    private final Logger logger = LoggerFactory.getLogger(AbstractPumpingProductionStepWorker.class);
+    private ClockScheduler scheduler;
+    private volatile ClockTask runner;
     private Set<PumpPhase> pumpPhases;
     private Map<StepperPump, Long> steppersToSteps;
+    private Map<StepperPump, Integer> stepperStartTimes;
+    private final Map<StepperPump, Long> startedSteppers;
     private Map<Valve, Long> valvesToRequestedGrams;
     private Map<Valve, Long> valvesToPumpedGrams;
     private Map<Pump, Integer> notUsedLiquid;
     private Set<Pump> usedPumps;
-    private final Set<ScheduledFuture<?>> scheduledPumpFutures;
-    private ScheduledFuture<?> notifierTask;
+    private final Set<ClockTask> scheduledPumpFutures;
+    private ClockTask notifierTask;
+    private StepTimeline timeline;
+    private ValveDosingMode timelineValveDosingMode;
+    //Set by the runner, before it cancels the production from its own thread
+    private volatile boolean failed;
 
-    private int requiredWorkTime;
     private long startTime;
     private long endTime;
 
     public AbstractPumpingProductionStepWorker(CocktailFactory cocktailFactory) {
         super(cocktailFactory);
-        this.scheduler = Executors.newSingleThreadScheduledExecutor();
-        this.requiredWorkTime = 0;
         this.usedPumps = new HashSet<>();
         this.pumpPhases = new HashSet<>();
         this.steppersToSteps = new HashMap<>();
+        this.stepperStartTimes = new HashMap<>();
+        this.startedSteppers = new HashMap<>();
         this.valvesToRequestedGrams = new HashMap<>();
-        this.valvesToPumpedGrams = new HashMap<>();
+        //Gets written by the runner and read by cancel()
+        this.valvesToPumpedGrams = new ConcurrentHashMap<>();
         this.scheduledPumpFutures = new HashSet<>();
         this.notUsedLiquid = new HashMap<>();
     }
@@ -49,8 +73,7 @@ public abstract class AbstractPumpingProductionStepWorker extends AbstractProduc
             throw new IllegalStateException("Worker already started!");
         }
         this.pumpPhases = pumpPhases;
-        this.requiredWorkTime = Math.max(this.requiredWorkTime,
-                this.pumpPhases.stream().mapToInt(PumpPhase::getStopTime).max().orElse(0));
+        this.timeline = null;
         for(PumpPhase pumpPhase : this.pumpPhases) {
             this.usedPumps.add(pumpPhase.getPump());
         }
@@ -62,141 +85,392 @@ public abstract class AbstractPumpingProductionStepWorker extends AbstractProduc
             throw new IllegalStateException("Worker already started!");
         }
         this.valvesToRequestedGrams = valvesToRequestedGrams;
-        this.requiredWorkTime = this.requiredWorkTime + valvesToRequestedGrams.entrySet()
-                .stream().mapToInt((e) -> ((int) (e.getKey().getTimePerClInMs() * e.getValue()) / 10)).sum();
+        this.timeline = null;
         this.usedPumps.addAll(valvesToRequestedGrams.keySet());
     }
 
     protected synchronized void setSteppersToComplete(Map<StepperPump, Long> steppersToSteps) {
+        setSteppersToComplete(steppersToSteps, new HashMap<>());
+    }
+
+    /**
+     * @param stepperStartTimes the delay in ms after which a stepper should be started. Steppers that are
+     *                          not contained start immediately.
+     */
+    protected synchronized void setSteppersToComplete(Map<StepperPump, Long> steppersToSteps, Map<StepperPump, Integer> stepperStartTimes) {
         Objects.requireNonNull(steppersToSteps);
+        Objects.requireNonNull(stepperStartTimes);
         if(this.isStarted()) {
             throw new IllegalStateException("Worker already started!");
         }
-        for(Map.Entry<StepperPump, Long> entry : steppersToSteps.entrySet()) {
-            AcceleratingStepper driver = entry.getKey().getMotorDriver();
-            long cPos = driver.getCurrentPosition();
-            long cTarget = driver.getTargetPosition();
-            driver.setCurrentPosition(0);
-            driver.moveTo(entry.getValue());
-            this.requiredWorkTime = Math.max(this.requiredWorkTime, (int) driver.estimateTimeTillCompletion());
-            driver.setCurrentPosition(cPos);
-            driver.moveTo(cTarget);
-        }
         this.steppersToSteps.putAll(steppersToSteps);
+        this.stepperStartTimes.putAll(stepperStartTimes);
         this.usedPumps.addAll(steppersToSteps.keySet());
+        this.timeline = null;
     }
+
     protected Set<PumpPhase> getDcPumpPhases() {
         return pumpPhases;
     }
 
+    protected synchronized StepTimeline getTimeline() {
+        ValveDosingMode valveDosingMode = getCocktailFactory().getValveDosingMode();
+        if(this.timeline == null || this.timelineValveDosingMode != valveDosingMode) {
+            this.timeline = new StepTimeline(pumpPhases, steppersToSteps, stepperStartTimes, valvesToRequestedGrams, valveDosingMode);
+            this.timelineValveDosingMode = valveDosingMode;
+        }
+        return this.timeline;
+    }
+
     @Override
     public synchronized void start() {
         super.start();
-        this.startTime = System.currentTimeMillis();
+        StepTimeline timeline = getTimeline();
+        Clock clock = getCocktailFactory().getClock();
+        this.startTime = clock.currentTimeMillis();
         this.endTime = this.startTime + this.getRequiredPumpingTime();
-        CountDownLatch cl = new CountDownLatch(this.pumpPhases.size());
-
-        for (PumpPhase pumpPhase : this.pumpPhases) {
-            scheduledPumpFutures.add(scheduler.schedule(() -> {
-                pumpPhase.getPump().getMotorDriver().setRunning(true);
-                pumpPhase.setStarted();
-            }, pumpPhase.getStartTime(), TimeUnit.MILLISECONDS));
-
-            scheduledPumpFutures.add(scheduler.schedule(() -> {
-                pumpPhase.getPump().getMotorDriver().setRunning(false);
-                pumpPhase.setStopped();
-                cl.countDown();
-            }, pumpPhase.getStopTime(), TimeUnit.MILLISECONDS));
-        }
 
-        this.notifierTask = this.scheduler.scheduleAtFixedRate(this::notifySubscribers, 1, 1, TimeUnit.SECONDS);
+        this.scheduler = clock.newScheduler();
+        this.notifierTask = this.scheduler.scheduleAtFixedRate(this::notifySubscribers, 1000, 1000);
         Runnable runTask = () -> {
-            MultiStepper multiStepper = new MultiStepper();
-            for(Map.Entry<StepperPump, Long> entry : steppersToSteps.entrySet()) {
-                AcceleratingStepper driver = entry.getKey().getMotorDriver();
-                driver.move(entry.getValue());
-                multiStepper.addStepper(driver);
-            }
-            try (AffinityLock al = AffinityLock.acquireCore()) {
-                while (multiStepper.runRound()) {
-                    if(Thread.interrupted()) {
-                        return;
-                    }
-                }
-            }
+            PowerBudget powerBudget = PowerBudget.getInstance();
             try {
-                cl.await();
-            } catch (InterruptedException e) {
-                return;
-            }
-            try {
-                Long initialReadGrams = null;
-                for(Map.Entry<Valve, Long> entry : valvesToRequestedGrams.entrySet()) {
-                    Valve valve = entry.getKey();
-                    ValveDriver driver = valve.getMotorDriver();
-                    HX711 hx711 = valve.getLoadCell().getHX711();
-
-                    if(initialReadGrams == null) {
-                        initialReadGrams = hx711.read(7);
-                    }
-                    long currentGrams = initialReadGrams;
-                    long goalGrams = entry.getValue();
-
-                    long valveStartTime = System.currentTimeMillis();
-                    long valveEndTime = System.currentTimeMillis();
+                for(StepTimeline.Segment segment : timeline.getSegments()) {
+                    //Other stations and maintenance jobs share the budget
+                    powerBudget.claim(this, segment.getPeakPowerDemand());
                     try {
-                        while (currentGrams < initialReadGrams + goalGrams) {
-                            driver.setOpen(true);
-                            while (currentGrams < initialReadGrams + goalGrams) {
-                                currentGrams = hx711.read_once();
-                                if(Thread.interrupted()) {
-                                    throw new InterruptedException();
-                                }
-                            }
-                            valveEndTime = System.currentTimeMillis();
-                            driver.setOpen(false);
-                            currentGrams = hx711.read(7);
+                        if(segment.isValveWindow() && segment.hasMotorRuns()) {
+                            runValvesAndMotors(segment);
+                        } else if(segment.isValveWindow()) {
+                            runValves(segment.getValvesToRequestedGrams());
+                        } else {
+                            runMotors(segment);
                         }
-                    } catch (InterruptedException e) {
-                        driver.setOpen(false);
-                        currentGrams = hx711.read(7);
-                        valvesToPumpedGrams.put(valve, Math.max(0, currentGrams - initialReadGrams));
-                        return;
-                    }
-                    initialReadGrams = currentGrams;
-                    long valveTimeElapsed = valveEndTime - valveStartTime;
-                    if(entry.getValue() > 0) {
-                        valve.setTimePerClInMs((10 * valveTimeElapsed) / entry.getValue());
+                    } finally {
+                        powerBudget.release(this);
                     }
-                    valvesToPumpedGrams.put(valve, goalGrams);
                 }
             } catch (InterruptedException e) {
                 return;
+            } catch (RuntimeException e) {
+                logger.error("Production step failed! Cancelling the production.", e);
+                this.failed = true;
+                this.stopAllPumps();
+                getCocktailFactory().failProduction();
+                return;
             }
 
             onFinish();
         };
-        runner = new Thread(runTask);
-        runner.setPriority(Thread.MAX_PRIORITY);
-        runner.start();
+        runner = clock.start(runTask);
 
         this.notifySubscribers();
     }
 
-    @Override
-    public synchronized boolean cancel() {
-        if(!super.cancel()) {
+    private void runMotors(StepTimeline.Segment segment) throws InterruptedException {
+        Clock clock = getCocktailFactory().getClock();
+        long segmentStartTime = clock.currentTimeMillis();
+        CountDownLatch cl = new CountDownLatch(segment.getDcPumpPhases().size());
+        synchronized (scheduledPumpFutures) {
+            if(Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            for (PumpPhase pumpPhase : segment.getDcPumpPhases()) {
+                scheduledPumpFutures.add(clock.scheduleEdge(pumpPhase.getPump(), () -> {
+                    pumpPhase.getPump().getMotorDriver().setRunning(true);
+                    pumpPhase.setStarted(clock.currentTimeMillis());
+                }, pumpPhase.getStartTime() - segment.getStartTime()));
+
+                scheduledPumpFutures.add(clock.scheduleEdge(pumpPhase.getPump(), () -> {
+                    try {
+                        pumpPhase.getPump().getMotorDriver().setRunning(false);
+                        pumpPhase.setStopped(clock.currentTimeMillis());
+                        recordDcPumpPhase(pumpPhase, pumpPhase.getStoppedTime());
+                    } finally {
+                        //The segment must not wait forever if the edge fails
+                        cl.countDown();
+                    }
+                }, pumpPhase.getStopTime() - segment.getStartTime()));
+            }
+        }
+        if(!runSteppers(segment.getSteppersToSteps(), segment.getStepperStartTimes(), segmentStartTime)) {
+            throw new InterruptedException();
+        }
+        clock.await(cl);
+    }
+
+    private void runValves(Map<Valve, Long> valvesToRequestedGrams) throws InterruptedException {
+        LoadCellArbiter loadCellArbiter = getCocktailFactory().getLoadCellArbiter();
+        if(loadCellArbiter == null) {
+            dispenseValves(valvesToRequestedGrams, null);
+            return;
+        }
+        //Other stations and maintenance jobs might be using the load cell
+        loadCellArbiter.acquire(this);
+        try {
+            dispenseValves(valvesToRequestedGrams, null);
+        } finally {
+            loadCellArbiter.release(this);
+        }
+    }
+
+    /**
+     * Runs the motors of the segment concurrently, while the valves get dosed. The modeled output of the motors
+     * gets subtracted from the load cell signal.
+     */
+    private void runValvesAndMotors(StepTimeline.Segment segment) throws InterruptedException {
+        Clock clock = getCocktailFactory().getClock();
+        LoadCellArbiter loadCellArbiter = getCocktailFactory().getLoadCellArbiter();
+        if(loadCellArbiter != null) {
+            loadCellArbiter.acquire(this);
+        }
+        try {
+            ClockTask motorTask;
+            synchronized (scheduledPumpFutures) {
+                if(Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                motorTask = clock.start(() -> {
+                    try {
+                        runMotors(segment);
+                    } catch (InterruptedException e) {
+                        //The production got cancelled
+                    }
+                });
+                scheduledPumpFutures.add(motorTask);
+            }
+            dispenseValves(segment.getValvesToRequestedGrams(), () -> getModeledMotorGrams(segment));
+            motorTask.join();
+        } finally {
+            if(loadCellArbiter != null) {
+                loadCellArbiter.release(this);
+            }
+        }
+    }
+
+    /**
+     * Models the liquid the motors of the segment have dispensed so far. The flow of DC pumps is derived from the
+     * times they have been switched on and off. The flow of steppers is derived from the steps they have made.
+     * The liquid is assumed to weigh one gram per ml.
+     */
+    private double getModeledMotorGrams(StepTimeline.Segment segment) {
+        long now = getCocktailFactory().getClock().currentTimeMillis();
+        double grams = 0;
+        for(PumpPhase pumpPhase : segment.getDcPumpPhases()) {
+            Long startedTime = pumpPhase.getStartedTime();
+            if(startedTime == null) {
+                continue;
+            }
+            Long stoppedTime = pumpPhase.getStoppedTime();
+            long runTime = (stoppedTime == null ? now : stoppedTime) - startedTime;
+            grams += pumpPhase.getPump().getConvertRuntimeToMl((int) Math.min(runTime, pumpPhase.runTime()));
+        }
+        for(Map.Entry<StepperPump, Long> entry : segment.getSteppersToSteps().entrySet()) {
+            StepperPump stepperPump = entry.getKey();
+            if(!isStepperStarted(stepperPump)) {
+                continue;
+            }
+            long stepsMade = entry.getValue() - Math.abs(stepperPump.getMotorDriver().distanceToGo());
+            grams += (10d * stepsMade) / stepperPump.getStepsPerCl();
+        }
+        return grams;
+    }
+
+    /**
+     * @param otherDispensersGrams the liquid that gets dispensed by motors at the same time or null if no motor runs
+     */
+    private void dispenseValves(Map<Valve, Long> valvesToRequestedGrams, DoubleSupplier otherDispensersGrams) throws InterruptedException {
+        Clock clock = getCocktailFactory().getClock();
+        Long initialReadGrams = null;
+        for(Map.Entry<Valve, Long> entry : valvesToRequestedGrams.entrySet()) {
+            Valve valve = entry.getKey();
+            ValveDosingController dosingController = new ValveDosingController(valve, valve.getLoadCell().getSampler(), clock)
+                    .setOtherDispensersGrams(otherDispensersGrams);
+
+            if(initialReadGrams == null) {
+                initialReadGrams = dosingController.readGrams(7);
+            }
+            long goalGrams = entry.getValue();
+            long doseStartTime = clock.currentTimeMillis();
+            long currentGrams;
+            try {
+                currentGrams = dosingController.dose(initialReadGrams, goalGrams, Thread::interrupted);
+            } catch (InterruptedException e) {
+                currentGrams = dosingController.readGrams(7);
+                valvesToPumpedGrams.put(valve, Math.max(0, currentGrams - initialReadGrams));
+                recordTelemetry(valve, doseStartTime, null, clock.currentTimeMillis() - doseStartTime,
+                        Math.max(0, currentGrams - initialReadGrams), 0);
+                throw e;
+            }
+            valvesToPumpedGrams.put(valve, Math.max(0, currentGrams - initialReadGrams));
+            recordTelemetry(valve, doseStartTime, null, clock.currentTimeMillis() - doseStartTime,
+                    Math.max(0, currentGrams - initialReadGrams), 0);
+            if(dosingController.isModelLearned()) {
+                getCocktailFactory().saveLearnedValveModel(valve);
+            }
+            initialReadGrams = currentGrams;
+        }
+    }
+
+    /**
+     * @param stepperStartTimes the delay in ms after the segment start, after which each stepper should be started
+     * @return false if the thread has been interrupted
+     */
+    private boolean runSteppers(Map<StepperPump, Long> steppersToSteps, Map<StepperPump, Integer> stepperStartTimes,
+                                long segmentStartTime) {
+        if(steppersToSteps.isEmpty()) {
+            return true;
+        }
+        MotionScheduler motionScheduler = MotionScheduler.getInstance();
+        StepTimingMonitor stepTimingMonitor = StepTimingMonitor.getInstance();
+        long timeElapsed = getCocktailFactory().getClock().currentTimeMillis() - segmentStartTime;
+        List<AcceleratingStepper> submittedSteppers = new ArrayList<>();
+        List<Future<Void>> moves = new ArrayList<>();
+        for(Map.Entry<StepperPump, Long> entry : steppersToSteps.entrySet()) {
+            StepperPump stepperPump = entry.getKey();
+            AcceleratingStepper driver = stepperPump.getMotorDriver();
+            MotionScheduler.Move move = new MotionScheduler.Move(driver)
+                    .setSteps(entry.getValue())
+                    .setStartDelayInMs(stepperStartTimes.getOrDefault(stepperPump, 0) - timeElapsed)
+                    .setPowerConsumptionInMa(PowerBudgetScheduler.getPowerConsumption(stepperPump))
+                    .setPowerClaimed(true)
+                    .setStepsPerSecond(stepperPump.getMaxStepsPerSecond() == null ? 0 : stepperPump.getMaxStepsPerSecond())
+                    .setProbe(new StepTimingProbe(stepTimingMonitor.getPumpStats(stepperPump.getId())))
+                    .setOnStart(() -> markStepperStarted(stepperPump));
+            submittedSteppers.add(driver);
+            moves.add(motionScheduler.submit(move));
+        }
+        try {
+            for(Future<Void> move : moves) {
+                move.get();
+            }
+        } catch (InterruptedException e) {
+            submittedSteppers.forEach(motionScheduler::cancel);
+            //cancel() reads the remaining steps, so the moves need to have stopped before the runner terminates
+            awaitMovesStopped(moves);
+            steppersToSteps.forEach((stepperPump, steps) -> recordStepperRun(stepperPump,
+                    steps - Math.abs(stepperPump.getMotorDriver().distanceToGo()), steps));
             return false;
+        } catch (ExecutionException e) {
+            //The other steppers must not keep running
+            submittedSteppers.forEach(motionScheduler::cancel);
+            awaitMovesStopped(moves);
+            throw new IllegalStateException(e.getCause());
         }
-        for (ScheduledFuture<?> future : this.scheduledPumpFutures) {
-            future.cancel(true);
+        steppersToSteps.forEach((stepperPump, steps) -> recordStepperRun(stepperPump, steps, steps));
+        return true;
+    }
+
+    private static void awaitMovesStopped(List<Future<Void>> moves) {
+        boolean interrupted = false;
+        for(Future<Void> move : moves) {
+            while (true) {
+                try {
+                    move.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    break;
+                }
+            }
         }
-        if(this.runner != null) {
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void markStepperStarted(StepperPump stepperPump) {
+        synchronized (startedSteppers) {
+            startedSteppers.put(stepperPump, getCocktailFactory().getClock().currentTimeMillis());
+        }
+    }
+
+    private boolean isStepperStarted(StepperPump stepperPump) {
+        synchronized (startedSteppers) {
+            return startedSteppers.containsKey(stepperPump);
+        }
+    }
+
+    private Long getStepperStartedTime(StepperPump stepperPump) {
+        synchronized (startedSteppers) {
+            return startedSteppers.get(stepperPump);
+        }
+    }
+
+    private void recordDcPumpPhase(PumpPhase pumpPhase, long stoppedTime) {
+        Long startedTime = pumpPhase.getStartedTime();
+        if(startedTime == null) {
+            return;
+        }
+        long runTime = Math.max(0, stoppedTime - startedTime);
+        recordTelemetry(pumpPhase.getPump(), startedTime, (long) pumpPhase.runTime(), runTime,
+                Math.round(pumpPhase.getPump().getConvertRuntimeToMl((int) Math.min(runTime, pumpPhase.runTime()))), 0);
+    }
+
+    private void recordStepperRun(StepperPump stepperPump, long stepsMade, long plannedSteps) {
+        Long startedTime = getStepperStartedTime(stepperPump);
+        if(startedTime == null) {
+            return;
+        }
+        Integer maxStepsPerSecond = stepperPump.getMaxStepsPerSecond();
+        Long plannedDuration = (maxStepsPerSecond == null || maxStepsPerSecond <= 0) ? null
+                : plannedSteps * 1000 / maxStepsPerSecond;
+        long now = getCocktailFactory().getClock().currentTimeMillis();
+        recordTelemetry(stepperPump, startedTime, plannedDuration, Math.max(0, now - startedTime),
+                Math.round((10d * stepsMade) / stepperPump.getStepsPerCl()), stepsMade);
+    }
+
+    /**
+     * Production runs always pump forward.
+     */
+    private void recordTelemetry(Pump pump, long startedAt, Long plannedDurationInMs, long actualDurationInMs,
+                                 long mlPumped, long stepsMade) {
+        PumpJobTelemetry record = new PumpJobTelemetry();
+        record.setPumpId(pump.getId());
+        record.setIngredientId(pump.getCurrentIngredientId());
+        record.setKind(PumpJobTelemetry.Kind.PRODUCTION);
+        record.setDirection(Direction.FORWARD);
+        record.setStartedAt(startedAt);
+        record.setPlannedDurationInMs(plannedDurationInMs);
+        record.setActualDurationInMs(actualDurationInMs);
+        record.setMlPumped(mlPumped);
+        record.setStepsMade(stepsMade);
+        getCocktailFactory().recordTelemetry(record);
+    }
+
+    /**
+     * Waits until the runner has terminated. The runner needs the monitor of the worker to finish,
+     * so the monitor must not be held while waiting.
+     */
+    @Override
+    public boolean cancel() {
+        ClockTask runner;
+        synchronized (this) {
+            if(!super.cancel()) {
+                return false;
+            }
+            runner = this.runner;
+        }
+        //A failed runner cancels the production itself and can't wait for its own termination
+        if(runner != null && !this.failed) {
             try {
-                this.runner.interrupt();
-                this.runner.join();
+                runner.cancel(true);
+                runner.join();
             } catch (InterruptedException e) {
-                //Ignore
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            releaseResources();
+        }
+        return true;
+    }
+
+    private void releaseResources() {
+        synchronized (this.scheduledPumpFutures) {
+            for (ClockTask future : this.scheduledPumpFutures) {
+                future.cancel(true);
             }
         }
         if(this.notifierTask != null) {
@@ -204,22 +478,31 @@ public abstract class AbstractPumpingProductionStepWorker extends AbstractProduc
         }
 
         Map<Pump, Double> notUsedLiquidByPumpPrecise = new HashMap<>();
+        long now = getCocktailFactory().getClock().currentTimeMillis();
         for(PumpPhase pumpPhase : this.getDcPumpPhases()) {
+            if(pumpPhase.getStartedTime() != null && pumpPhase.getStoppedTime() == null) {
+                recordDcPumpPhase(pumpPhase, now);
+            }
             double notUsedLiquid = notUsedLiquidByPumpPrecise.computeIfAbsent(pumpPhase.getPump(), p -> 0d);
-            notUsedLiquid += pumpPhase.getRemainingLiquidToPump();
+            notUsedLiquid += pumpPhase.getRemainingLiquidToPump(now);
             notUsedLiquidByPumpPrecise.put(pumpPhase.getPump(), notUsedLiquid);
         }
         if(this.isStarted()) {
-            for(StepperPump stepperPump : this.steppersToSteps.keySet()) {
-                double notUsedLiquid = (double) (stepperPump.getMotorDriver().distanceToGo() * 10) / stepperPump.getStepsPerCl();
+            for(Map.Entry<StepperPump, Long> entry : this.steppersToSteps.entrySet()) {
+                StepperPump stepperPump = entry.getKey();
+                double notUsedLiquid;
+                if(isStepperStarted(stepperPump)) {
+                    notUsedLiquid = (double) (stepperPump.getMotorDriver().distanceToGo() * 10) / stepperPump.getStepsPerCl();
+                } else {
+                    notUsedLiquid = 10 * entry.getValue().doubleValue() / stepperPump.getStepsPerCl();
+                }
                 notUsedLiquidByPumpPrecise.put(stepperPump, notUsedLiquid);
             }
             for(Valve valve : this.valvesToRequestedGrams.keySet()) {
                 long requestedLiquid = valvesToRequestedGrams.get(valve);
-                Long pumpedLiquid = valvesToPumpedGrams.get(valve);
-                if(pumpedLiquid != null) {
-                    notUsedLiquidByPumpPrecise.put(valve, (double) Math.max(0, requestedLiquid - pumpedLiquid.longValue()));
-                }
+                //Valves that haven't been dosed yet or failed before dosing didn't dispense anything
+                long pumpedLiquid = valvesToPumpedGrams.getOrDefault(valve, 0L);
+                notUsedLiquidByPumpPrecise.put(valve, (double) Math.max(0, requestedLiquid - pumpedLiquid));
             }
         } else {
             for(Map.Entry<StepperPump, Long> entry : this.steppersToSteps.entrySet()) {
@@ -232,17 +515,16 @@ public abstract class AbstractPumpingProductionStepWorker extends AbstractProduc
         notUsedLiquidByPumpPrecise.forEach((key, value) -> notUsedLiquid.put(key, (int) Math.round(value)));
 
         this.stopAllPumps();
-        if (!this.scheduler.isShutdown()) {
+        if (this.scheduler != null && !this.scheduler.isShutdown()) {
             this.scheduler.shutdown();
         }
-        return true;
     }
 
     @Override
     public StepProgress getProgress() {
         StepProgress progress = new StepProgress();
         if(this.isStarted()) {
-            progress.setPercentCompleted(Math.min(100, (int) (((System.currentTimeMillis() - this.startTime) / ((double) (Math.max(1, this.endTime - this.startTime)))) * 100)));
+            progress.setPercentCompleted(Math.min(100, (int) (((getCocktailFactory().getClock().currentTimeMillis() - this.startTime) / ((double) (Math.max(1, this.endTime - this.startTime)))) * 100)));
         } else {
             progress.setPercentCompleted(0);
         }
@@ -257,14 +539,17 @@ public abstract class AbstractPumpingProductionStepWorker extends AbstractProduc
     }
 
     protected void onFinish() {
-        this.scheduledPumpFutures.forEach(x -> x.cancel(true));
+        synchronized (this.scheduledPumpFutures) {
+            this.scheduledPumpFutures.forEach(x -> x.cancel(true));
+        }
         this.notifierTask.cancel(false);
+        this.scheduler.shutdown();
         this.stopAllPumps();
         this.setFinished();
     }
 
     public long getRequiredPumpingTime() {
-        return this.requiredWorkTime;
+        return getTimeline().getDuration();
     }
 
     public Map<Pump, Integer> getNotUsedLiquid() {
@@ -6,6 +6,7 @@ import net.alex9849.cocktailpi.model.recipe.productionstep.ProductionStepIngredi
 import net.alex9849.cocktailpi.service.pumps.cocktailfactory.CocktailFactory;
 import net.alex9849.cocktailpi.service.pumps.cocktailfactory.PumpTimingStepCalculator;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -13,12 +14,25 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 public class AutomaticProductionStepWorker extends AbstractPumpingProductionStepWorker {
+    private final Map<Pump, Integer> amountByPump;
+    private final Set<Pump> primedPumps;
+    private final int primingOverheadInMs;
+
     /**
      *
      * @param pumps pumps is an output parameter! The attribute fillingLevelInMl will be decreased according to the recipe
      */
     public AutomaticProductionStepWorker(CocktailFactory cocktailFactory, Set<Pump> pumps,
                                          List<ProductionStepIngredient> productionStepInstructions, int minimalPumpTime, int minimalBreakTime) {
+        this(cocktailFactory, pumps, productionStepInstructions, minimalPumpTime, minimalBreakTime, new HashSet<>());
+    }
+
+    /**
+     * @param pumpsToPrime pumps that should get primed right before they start dispensing, if this step uses them
+     */
+    public AutomaticProductionStepWorker(CocktailFactory cocktailFactory, Set<Pump> pumps,
+                                         List<ProductionStepIngredient> productionStepInstructions, int minimalPumpTime, int minimalBreakTime,
+                                         Set<Pump> pumpsToPrime) {
         super(cocktailFactory);
         Map<Long, List<Pump>> pumpsByIngredientId = pumps.stream()
                 .filter(x -> x.getCurrentIngredient() != null)
@@ -41,10 +55,48 @@ public class AutomaticProductionStepWorker extends AbstractPumpingProductionStep
             pumpStepIngredients.add(pumpStepIngredient);
         }
         PumpTimingStepCalculator pumpTimingStepCalculator = new PumpTimingStepCalculator(pumpStepIngredients,
-                minimalPumpTime, minimalBreakTime);
+                minimalPumpTime, minimalBreakTime, cocktailFactory.getPowerBudgetScheduler(),
+                cocktailFactory.getIngredientSplitMode(), pumpsToPrime);
 
         this.setDcPumpPhases(pumpTimingStepCalculator.getPumpPhases());
-        this.setSteppersToComplete(pumpTimingStepCalculator.getSteppersToComplete());
+        this.setSteppersToComplete(pumpTimingStepCalculator.getSteppersToComplete(),
+                pumpTimingStepCalculator.getStepperStartTimes());
         this.setValvesToRequestedGrams(pumpTimingStepCalculator.getValvesToRequestedGrams());
+        this.amountByPump = pumpTimingStepCalculator.getAmountByPump();
+        this.primedPumps = pumpTimingStepCalculator.getPrimingInMlByPump().keySet();
+        this.primingOverheadInMs = pumpTimingStepCalculator.getPrimingOverheadInMs();
+    }
+
+    /**
+     * @return the pumps that get primed by this step
+     */
+    public Set<Pump> getPrimedPumps() {
+        return primedPumps;
+    }
+
+    /**
+     * @return the time in ms by which this step takes longer, because pumps get primed during it
+     */
+    public int getPrimingOverheadInMs() {
+        return primingOverheadInMs;
+    }
+
+    @Override
+    protected void onFinish() {
+        if(!primedPumps.isEmpty()) {
+            primedPumps.forEach(p -> p.setPumpedUp(true));
+            getCocktailFactory().requestPumpPersist(primedPumps);
+        }
+        super.onFinish();
+    }
+
+    @Override
+    public Map<Pump, Integer> getNotUsedLiquid() {
+        //The priming liquid stays in the tube. It never got subtracted from the filling level.
+        Map<Pump, Integer> notUsedLiquid = new HashMap<>(super.getNotUsedLiquid());
+        for(Pump pump : primedPumps) {
+            notUsedLiquid.computeIfPresent(pump, (p, v) -> Math.min(v, amountByPump.get(p)));
+        }
+        return notUsedLiquid;
     }
 }
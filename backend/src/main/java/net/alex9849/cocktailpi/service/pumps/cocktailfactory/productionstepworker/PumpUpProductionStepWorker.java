@@ -6,6 +6,7 @@ import net.alex9849.cocktailpi.model.pump.StepperPump;
 import net.alex9849.cocktailpi.model.pump.Valve;
 import net.alex9849.cocktailpi.service.pumps.cocktailfactory.CocktailFactory;
 import net.alex9849.cocktailpi.service.pumps.cocktailfactory.PumpPhase;
+import net.alex9849.cocktailpi.service.pumps.cocktailfactory.PumpTimingStepCalculator;
 
 import java.util.HashMap;
 import java.util.HashSet;
@@ -19,24 +20,35 @@ public class PumpUpProductionStepWorker extends AbstractPumpingProductionStepWor
         Set<PumpPhase> pumpPhases = new HashSet<>();
         Map<StepperPump, Long> steppersToSteps = new HashMap<>();
         Map<Valve, Long> valvesToGrams = new HashMap<>();
+        Map<Pump, Integer> runTimeByMotor = new HashMap<>();
         for(Pump pump : requiredPumps) {
             if(pump.isPumpedUp()) {
                 continue;
             }
             if(pump instanceof DcPump dcPump) {
-                int runtime = dcPump.getConvertMlToRuntime(pump.getTubeCapacityInMl());
-                PumpPhase pumpPhase = new PumpPhase(0, runtime, dcPump);
-                pumpPhases.add(pumpPhase);
+                runTimeByMotor.put(dcPump, dcPump.getConvertMlToRuntime(pump.getTubeCapacityInMl()));
             } else if (pump instanceof StepperPump stepperPump) {
-                steppersToSteps.put(stepperPump, (long) (stepperPump.getStepsPerCl() * (stepperPump.getTubeCapacityInMl() / 10)));
+                long steps = (long) (stepperPump.getStepsPerCl() * (stepperPump.getTubeCapacityInMl() / 10));
+                steppersToSteps.put(stepperPump, steps);
+                runTimeByMotor.put(stepperPump, PumpTimingStepCalculator.estimateStepperRunTime(stepperPump, steps));
             } else if (pump instanceof Valve valve) {
                 valvesToGrams.put(valve, Math.round(valve.getTubeCapacityInMl()));
             } else {
                 throw new IllegalStateException("Unknown pump-type: " + pump.getClass().getName());
             }
         }
+        Map<Pump, Integer> startTimeByMotor = cocktailFactory.getPowerBudgetScheduler().schedule(runTimeByMotor);
+        Map<StepperPump, Integer> stepperStartTimes = new HashMap<>();
+        for(Map.Entry<Pump, Integer> entry : startTimeByMotor.entrySet()) {
+            int startTime = entry.getValue();
+            if(entry.getKey() instanceof DcPump dcPump) {
+                pumpPhases.add(new PumpPhase(startTime, startTime + runTimeByMotor.get(dcPump), dcPump));
+            } else if (entry.getKey() instanceof StepperPump stepperPump) {
+                stepperStartTimes.put(stepperPump, startTime);
+            }
+        }
         this.setDcPumpPhases(pumpPhases);
-        this.setSteppersToComplete(steppersToSteps);
+        this.setSteppersToComplete(steppersToSteps, stepperStartTimes);
         this.setValvesToRequestedGrams(valvesToGrams);
     }
 
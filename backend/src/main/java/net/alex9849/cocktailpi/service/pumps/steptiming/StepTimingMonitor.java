@@ -0,0 +1,59 @@
+package net.alex9849.cocktailpi.service.pumps.steptiming;
+
+import net.alex9849.cocktailpi.model.pump.StepTimingMetrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the step timing of all stepper loops per motor and per CPU core.
+ * For a motor, the latency of a step is the time since the loop has checked the motor before. The step was due
+ * somewhere in between, so it is the upper bound of how late the step has been made. The iterations are the number
+ * of times the loop has checked the motor.
+ * For a core, the latency is the duration of a loop round, which is the upper bound for all motors in that loop.
+ */
+public class StepTimingMonitor {
+    public static final int UNPINNED_CPU = -1;
+    private static final StepTimingMonitor instance = new StepTimingMonitor();
+    private final Map<Long, StepTimingStats> statsByPumpId = new ConcurrentHashMap<>();
+    private final Map<Integer, StepTimingStats> statsByCpu = new ConcurrentHashMap<>();
+
+    private StepTimingMonitor() {}
+
+    public static StepTimingMonitor getInstance() {
+        return instance;
+    }
+
+    public StepTimingStats getPumpStats(long pumpId) {
+        return statsByPumpId.computeIfAbsent(pumpId, x -> new StepTimingStats());
+    }
+
+    /**
+     * @param cpu the core of the loop. Loops that aren't pinned to a core share the stats of {@link #UNPINNED_CPU}.
+     */
+    public StepTimingStats getCoreStats(int cpu) {
+        return statsByCpu.computeIfAbsent(cpu, x -> new StepTimingStats());
+    }
+
+    public Map<Long, StepTimingMetrics> getMetricsByPumpId() {
+        Map<Long, StepTimingMetrics> metrics = new TreeMap<>();
+        statsByPumpId.forEach((pumpId, stats) -> metrics.put(pumpId, stats.toMetrics()));
+        return metrics;
+    }
+
+    public Map<Integer, StepTimingMetrics> getMetricsByCpu() {
+        Map<Integer, StepTimingMetrics> metrics = new TreeMap<>();
+        statsByCpu.forEach((cpu, stats) -> metrics.put(cpu, stats.toMetrics()));
+        return metrics;
+    }
+
+    public void removePump(long pumpId) {
+        statsByPumpId.remove(pumpId);
+    }
+
+    public void reset() {
+        statsByPumpId.values().forEach(StepTimingStats::reset);
+        statsByCpu.values().forEach(StepTimingStats::reset);
+    }
+}
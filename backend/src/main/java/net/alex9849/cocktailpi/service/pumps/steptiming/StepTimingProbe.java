@@ -0,0 +1,75 @@
+package net.alex9849.cocktailpi.service.pumps.steptiming;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the iterations of a single stepper loop. A probe must only be used by one thread. Recording doesn't
+ * allocate and doesn't touch any shared state. The collected data gets flushed into the {@link StepTimingStats}
+ * every 100ms and once the probe gets closed.
+ */
+public class StepTimingProbe {
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final StepTimingStats[] targets;
+    private final long[] bucketCounts = new long[StepTimingStats.BUCKET_COUNT];
+    private long sumOfLatenciesInMicros;
+    private long maxLatencyInMicros;
+    private long iterations;
+    private long periodStartNanos;
+    private long lastIterationNanos;
+    private boolean running;
+
+    public StepTimingProbe(StepTimingStats... targets) {
+        this.targets = targets;
+    }
+
+    /**
+     * Records an iteration of the loop.
+     * @param recordLatency if the time since the previous iteration should be recorded as latency.
+     *                      For a motor that should be done if it made a step in this iteration, as the step
+     *                      could have been due at any time since the previous iteration.
+     */
+    public void iteration(long nowNanos, boolean recordLatency) {
+        if(!running) {
+            running = true;
+            periodStartNanos = nowNanos;
+            lastIterationNanos = nowNanos;
+            //There is no previous iteration to measure against
+            recordLatency = false;
+        }
+        if(recordLatency) {
+            long latencyInMicros = (nowNanos - lastIterationNanos) / 1000;
+            bucketCounts[StepTimingStats.bucketOf(latencyInMicros)]++;
+            sumOfLatenciesInMicros += latencyInMicros;
+            maxLatencyInMicros = Math.max(maxLatencyInMicros, latencyInMicros);
+        }
+        iterations++;
+        lastIterationNanos = nowNanos;
+        if(nowNanos - periodStartNanos >= FLUSH_INTERVAL_NANOS) {
+            flush();
+        }
+    }
+
+    /**
+     * Flushes the recorded data. The time until the next iteration won't be counted, e.g. because the loop goes idle.
+     */
+    public void close() {
+        if(running) {
+            flush();
+            running = false;
+        }
+    }
+
+    private void flush() {
+        for(StepTimingStats target : targets) {
+            target.add(bucketCounts, sumOfLatenciesInMicros, maxLatencyInMicros,
+                    iterations, lastIterationNanos - periodStartNanos);
+        }
+        Arrays.fill(bucketCounts, 0);
+        sumOfLatenciesInMicros = 0;
+        maxLatencyInMicros = 0;
+        iterations = 0;
+        periodStartNanos = lastIterationNanos;
+    }
+}
@@ -0,0 +1,116 @@
+package net.alex9849.cocktailpi.service.pumps.steptiming;
+
+import net.alex9849.cocktailpi.model.pump.StepTimingMetrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Accumulates the latencies and loop iterations of a stepper loop. The latencies get counted in log-linear buckets
+ * like in a HdrHistogram: Every power of two gets split into four buckets, which keeps the relative error below 25%.
+ * The loops don't write here directly, but flush their {@link StepTimingProbe} from time to time.
+ * All methods are thread safe.
+ */
+public class StepTimingStats {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //Latencies above 2^25 µs (~33s) end up in the last bucket
+    private static final int MAX_EXPONENT = 24;
+    static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong sumOfLatenciesInMicros = new AtomicLong();
+    private final AtomicLong maxLatencyInMicros = new AtomicLong();
+    private final AtomicLong iterations = new AtomicLong();
+    private final AtomicLong activeNanos = new AtomicLong();
+
+    static int bucketOf(long latencyInMicros) {
+        if(latencyInMicros < SUB_BUCKETS) {
+            return (int) Math.max(0, latencyInMicros);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(latencyInMicros);
+        if(exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (latencyInMicros >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the exclusive upper bound of the bucket in µs
+     */
+    static long upperBoundOf(int bucket) {
+        if(bucket < SUB_BUCKETS) {
+            return bucket + 1;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    void add(long[] probeBucketCounts, long probeSumOfLatenciesInMicros,
+             long probeMaxLatencyInMicros, long probeIterations, long probeActiveNanos) {
+        for(int i = 0; i < probeBucketCounts.length; i++) {
+            if(probeBucketCounts[i] != 0) {
+                bucketCounts.addAndGet(i, probeBucketCounts[i]);
+            }
+        }
+        sumOfLatenciesInMicros.addAndGet(probeSumOfLatenciesInMicros);
+        maxLatencyInMicros.accumulateAndGet(probeMaxLatencyInMicros, Math::max);
+        iterations.addAndGet(probeIterations);
+        activeNanos.addAndGet(probeActiveNanos);
+    }
+
+    /**
+     * @return the upper bound of the bucket that contains the given percentile
+     */
+    private long getPercentileUpperBoundInMicros(long[] counts, long count, double percentile) {
+        long threshold = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for(int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if(seen >= threshold && seen > 0) {
+                return Math.min(upperBoundOf(i), maxLatencyInMicros.get());
+            }
+        }
+        return 0;
+    }
+
+    public StepTimingMetrics toMetrics() {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        Map<Long, Long> histogram = new LinkedHashMap<>();
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = bucketCounts.get(i);
+            count += counts[i];
+            if(counts[i] != 0) {
+                histogram.put(upperBoundOf(i), counts[i]);
+            }
+        }
+        StepTimingMetrics metrics = new StepTimingMetrics();
+        metrics.setSamples(count);
+        metrics.setIterations(iterations.get());
+        long activeNanos = this.activeNanos.get();
+        metrics.setIterationsPerSecond(activeNanos == 0 ? 0 : Math.round(iterations.get() / (activeNanos / (double) TimeUnit.SECONDS.toNanos(1))));
+        metrics.setMeanLatencyInMicros(count == 0 ? 0 : sumOfLatenciesInMicros.get() / count);
+        metrics.setP50LatencyInMicros(getPercentileUpperBoundInMicros(counts, count, 50));
+        metrics.setP99LatencyInMicros(getPercentileUpperBoundInMicros(counts, count, 99));
+        metrics.setP999LatencyInMicros(getPercentileUpperBoundInMicros(counts, count, 99.9));
+        metrics.setMaxLatencyInMicros(maxLatencyInMicros.get());
+        metrics.setHistogram(histogram);
+        return metrics;
+    }
+
+    public void reset() {
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            bucketCounts.set(i, 0);
+        }
+        sumOfLatenciesInMicros.set(0);
+        maxLatencyInMicros.set(0);
+        iterations.set(0);
+        activeNanos.set(0);
+    }
+}
@@ -0,0 +1 @@
+ALTER TABLE pumps ADD COLUMN power_consumption_in_ma INTEGER check (power_consumption_in_ma >= 0);
@@ -0,0 +1,12 @@
+create table cocktail_order_queue
+(
+    id                  INTEGER not null primary key autoincrement,
+    user_id             INTEGER not null references users on delete cascade,
+    recipe_id           INTEGER not null,
+    recipe_name         TEXT    not null,
+    is_ingredient       BOOLEAN not null,
+    order_configuration TEXT    not null,
+    priority            INTEGER not null default 0,
+    estimated_duration  INTEGER not null default 0 check (estimated_duration >= 0),
+    created_at          INTEGER not null
+);
@@ -0,0 +1,14 @@
+create table stations
+(
+    id             INTEGER not null primary key autoincrement,
+    name           TEXT    not null unique,
+    glass_position TEXT
+);
+
+create table station_pumps
+(
+    pump_id    INTEGER not null primary key references pumps on delete cascade,
+    station_id INTEGER not null references stations on delete cascade
+);
+
+ALTER TABLE cocktail_order_queue ADD COLUMN station_id INTEGER references stations on delete set null;
@@ -0,0 +1 @@
+ALTER TABLE pumps ADD COLUMN cut_off_lag_in_ms INTEGER check (cut_off_lag_in_ms >= 0);
@@ -0,0 +1,16 @@
+create table pump_job_telemetry
+(
+    id                 INTEGER not null primary key autoincrement,
+    pump_id            INTEGER not null,
+    ingredient_id      INTEGER,
+    kind               TEXT    not null check (kind IN ('MAINTENANCE', 'PRODUCTION')),
+    direction          TEXT    not null check (direction IN ('FORWARD', 'BACKWARD')),
+    started_at         INTEGER not null,
+    planned_duration   INTEGER check (planned_duration >= 0),
+    actual_duration    INTEGER not null check (actual_duration >= 0),
+    ml_pumped          INTEGER not null default 0,
+    steps_made         INTEGER not null default 0
+);
+
+create index pump_job_telemetry_started_at on pump_job_telemetry (started_at);
+create index pump_job_telemetry_pump_id on pump_job_telemetry (pump_id, started_at);
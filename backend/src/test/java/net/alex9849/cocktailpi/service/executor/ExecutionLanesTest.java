@@ -0,0 +1,100 @@
+package net.alex9849.cocktailpi.service.executor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExecutionLanesTest {
+
+    private static LaneMetrics getMetrics(ExecutionLane lane) {
+        return ExecutionLanes.getMetrics().stream()
+                .filter(x -> x.getLane() == lane)
+                .findFirst().orElseThrow();
+    }
+
+    @Test
+    void realTimeThreadsAreNamedAndPrioritized() throws Exception {
+        Future<Thread> thread = ExecutionLanes.realTime().submit(Thread::currentThread);
+
+        assertTrue(thread.get().getName().startsWith("cocktailpi-real-time-"));
+        assertEquals(Thread.MAX_PRIORITY, thread.get().getPriority());
+        assertTrue(thread.get().isDaemon());
+    }
+
+    @Test
+    void serialExecutorRunsTasksOneAfterAnother() throws InterruptedException {
+        Executor executor = ExecutionLanes.newSerialExecutor(ExecutionLane.BACKGROUND);
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(50);
+        for(int i = 0; i < 50; i++) {
+            int task = i;
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                executed.add(task);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+        for(int i = 0; i < 50; i++) {
+            assertEquals(i, executed.get(i));
+        }
+    }
+
+    @Test
+    void failingTaskDoesNotStopSerialExecutor() throws InterruptedException {
+        Executor executor = ExecutionLanes.newSerialExecutor(ExecutionLane.NORMAL);
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(() -> {
+            throw new IllegalStateException("Task failed");
+        });
+        executor.execute(done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void threadsAreLimitedAndTasksQueued() throws InterruptedException {
+        ExecutorService background = ExecutionLanes.background();
+        int maxThreads = getMetrics(ExecutionLane.BACKGROUND).getMaxThreads();
+        CountDownLatch started = new CountDownLatch(maxThreads);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(maxThreads * 3);
+        for(int i = 0; i < maxThreads * 3; i++) {
+            background.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            });
+        }
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        LaneMetrics blocked = getMetrics(ExecutionLane.BACKGROUND);
+        assertEquals(maxThreads, blocked.getThreads());
+        assertEquals(maxThreads * 2, blocked.getQueuedTasks());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        LaneMetrics after = getMetrics(ExecutionLane.BACKGROUND);
+        assertEquals(0, after.getQueuedTasks());
+        assertTrue(after.getLargestThreads() <= after.getMaxThreads());
+    }
+}
@@ -0,0 +1,26 @@
+package net.alex9849.cocktailpi.service.executor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RealTimeCoreTest {
+
+    @Test
+    void allThreadsShareTheSameCore() throws Exception {
+        int cpuId;
+        try (RealTimeCore.Pinning pinning = RealTimeCore.pinCurrentThread()) {
+            cpuId = pinning.getCpuId();
+        }
+        CompletableFuture<Integer> otherThread = CompletableFuture.supplyAsync(() -> {
+            try (RealTimeCore.Pinning pinning = RealTimeCore.pinCurrentThread()) {
+                return pinning.getCpuId();
+            }
+        });
+
+        assertEquals(cpuId, otherThread.get());
+        assertEquals(RealTimeCore.getCpuId(), cpuId);
+    }
+}
@@ -0,0 +1,169 @@
+package net.alex9849.cocktailpi.service.i2c;
+
+import com.pi4j.exception.Pi4JException;
+import com.pi4j.io.i2c.I2C;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class I2CBusArbiterTest {
+    private I2C device;
+
+    @BeforeEach
+    void setUp() {
+        device = mock(I2C.class);
+        when(device.device()).thenReturn(0x20);
+        I2CBusArbiter.resetMetrics();
+    }
+
+    private I2CDeviceMetrics getMetrics() {
+        return I2CBusArbiter.getMetrics().stream()
+                .filter(x -> x.getAddress() == 0x20)
+                .findFirst().orElseThrow();
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.WAITING) {
+            assertTrue(System.nanoTime() < deadline, "Thread doesn't wait for the bus");
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void transactionsOfDifferentThreadsNeverInterleave() throws InterruptedException {
+        AtomicInteger onBus = new AtomicInteger();
+        AtomicInteger maxOnBus = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for(int i = 0; i < 8; i++) {
+            I2CPriority priority = i % 2 == 0 ? I2CPriority.REAL_TIME : I2CPriority.NORMAL;
+            Thread thread = new Thread(() -> {
+                for(int j = 0; j < 50; j++) {
+                    I2CBusArbiter.run(device, priority, x -> {
+                        maxOnBus.accumulateAndGet(onBus.incrementAndGet(), Math::max);
+                        Thread.onSpinWait();
+                        onBus.decrementAndGet();
+                    });
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, maxOnBus.get());
+        assertEquals(400, getMetrics().getTransactions());
+    }
+
+    @Test
+    void realTimeWaitersGetTheBusFirst() throws InterruptedException {
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> I2CBusArbiter.run(device, I2CPriority.NORMAL, x -> {
+            holding.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+        }));
+        holder.start();
+        assertTrue(holding.await(5, TimeUnit.SECONDS));
+
+        List<I2CPriority> order = Collections.synchronizedList(new ArrayList<>());
+        Thread normal = new Thread(() -> I2CBusArbiter.run(device, I2CPriority.NORMAL, x -> order.add(I2CPriority.NORMAL)));
+        normal.start();
+        awaitWaiting(normal);
+        Thread realTime = new Thread(() -> I2CBusArbiter.run(device, I2CPriority.REAL_TIME, x -> order.add(I2CPriority.REAL_TIME)));
+        realTime.start();
+        awaitWaiting(realTime);
+
+        release.countDown();
+        for(Thread thread : List.of(holder, normal, realTime)) {
+            thread.join();
+        }
+        assertEquals(List.of(I2CPriority.REAL_TIME, I2CPriority.NORMAL), order);
+    }
+
+    @Test
+    void failedTransactionGetsRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        int result = I2CBusArbiter.execute(device, I2CPriority.NORMAL, x -> {
+            if(attempts.incrementAndGet() < 3) {
+                throw new Pi4JException("No acknowledge");
+            }
+            return 42;
+        });
+
+        assertEquals(42, result);
+        assertEquals(2, getMetrics().getRetries());
+        assertEquals(0, getMetrics().getFailures());
+    }
+
+    @Test
+    void transactionFailsAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+        assertThrows(Pi4JException.class, () -> I2CBusArbiter.run(device, I2CPriority.NORMAL, x -> {
+            attempts.incrementAndGet();
+            throw new Pi4JException("No acknowledge");
+        }));
+
+        assertEquals(3, attempts.get());
+        assertEquals(1, getMetrics().getFailures());
+    }
+
+    @Test
+    void otherExceptionsAreNotRetriedAndReleaseTheBus() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        assertThrows(IllegalStateException.class, () -> I2CBusArbiter.run(device, I2CPriority.NORMAL, x -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("Transaction failed");
+        }));
+        assertEquals(1, attempts.get());
+
+        CountDownLatch done = new CountDownLatch(1);
+        new Thread(() -> I2CBusArbiter.run(device, I2CPriority.NORMAL, x -> done.countDown())).start();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void nestedTransactionsRunWithinTheOuterTransaction() throws InterruptedException {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch inOuter = new CountDownLatch(1);
+        CountDownLatch otherStarted = new CountDownLatch(1);
+        Thread other = new Thread(() -> {
+            try {
+                inOuter.await();
+            } catch (InterruptedException ignored) {
+            }
+            otherStarted.countDown();
+            I2CBusArbiter.run(device, I2CPriority.REAL_TIME, x -> order.add("other"));
+        });
+        other.start();
+
+        I2CBusArbiter.run(device, I2CPriority.NORMAL, x -> {
+            order.add("outer");
+            inOuter.countDown();
+            try {
+                otherStarted.await();
+                awaitWaiting(other);
+            } catch (InterruptedException ignored) {
+            }
+            I2CBusArbiter.run(device, I2CPriority.NORMAL, y -> order.add("nested"));
+        });
+        other.join();
+
+        assertEquals(List.of("outer", "nested", "other"), order);
+    }
+}
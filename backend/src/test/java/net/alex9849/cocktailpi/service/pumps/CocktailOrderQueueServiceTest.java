@@ -0,0 +1,159 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import net.alex9849.cocktailpi.model.FeasibilityReport;
+import net.alex9849.cocktailpi.model.cocktail.QueuedCocktailOrder;
+import net.alex9849.cocktailpi.model.recipe.CocktailOrderConfiguration;
+import net.alex9849.cocktailpi.model.recipe.FeasibilityFactory;
+import net.alex9849.cocktailpi.model.recipe.Recipe;
+import net.alex9849.cocktailpi.model.user.ERole;
+import net.alex9849.cocktailpi.model.user.User;
+import net.alex9849.cocktailpi.repository.CocktailOrderQueueRepository;
+import net.alex9849.cocktailpi.repository.OptionsRepository;
+import net.alex9849.cocktailpi.service.PumpService;
+import net.alex9849.cocktailpi.service.RecipeService;
+import net.alex9849.cocktailpi.service.StationService;
+import net.alex9849.cocktailpi.service.UserService;
+import net.alex9849.cocktailpi.service.WebSocketService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class CocktailOrderQueueServiceTest {
+    @Mock
+    private CocktailOrderQueueRepository queueRepository;
+    @Mock
+    private OptionsRepository optionsRepository;
+    @Mock
+    private PumpService pumpService;
+    @Mock
+    private CocktailOrderService cocktailOrderService;
+    @Mock
+    private RecipeService recipeService;
+    @Mock
+    private UserService userService;
+    @Mock
+    private WebSocketService webSocketService;
+    @Mock
+    private StationService stationService;
+    @InjectMocks
+    private CocktailOrderQueueService queueService;
+
+    private final List<QueuedCocktailOrder> queue = new ArrayList<>();
+    private User owner;
+
+    @BeforeEach
+    void setUp() {
+        owner = new User("owner", "owner@localhost", "");
+        owner.setId(7);
+        owner.setAuthority(ERole.ROLE_USER);
+        FeasibilityReport report = new FeasibilityReport();
+        report.setAllIngredientGroupsReplaced(true);
+        FeasibilityFactory feasibilityFactory = mock(FeasibilityFactory.class);
+        when(feasibilityFactory.getFeasibilityReport()).thenReturn(report);
+
+        when(queueRepository.findAll()).thenAnswer(x -> new ArrayList<>(queue));
+        when(queueRepository.delete(anyLong())).thenAnswer(x -> queue.removeIf(o -> o.getId() == (long) x.getArgument(0)));
+        when(stationService.getAll()).thenReturn(List.of());
+        when(userService.getUser(7)).thenReturn(owner);
+        when(recipeService.getById(3)).thenReturn(new Recipe());
+        when(cocktailOrderService.fromDto(any())).thenReturn(new CocktailOrderConfiguration());
+        when(cocktailOrderService.checkFeasibility(any(), any(), isNull())).thenReturn(feasibilityFactory);
+        queue.add(newOrder(1));
+    }
+
+    private QueuedCocktailOrder newOrder(long id) {
+        QueuedCocktailOrder order = new QueuedCocktailOrder();
+        order.setId(id);
+        order.setUserId(7);
+        order.setRecipeId(3);
+        order.setRecipeName("Mojito");
+        order.setOrderConfiguration("{}");
+        return order;
+    }
+
+    private void setGlassSwapConfirmation(boolean enabled) {
+        when(optionsRepository.getOption(anyString())).thenReturn(Optional.of(Boolean.toString(enabled)));
+    }
+
+    @Test
+    void startsNextOrder() {
+        queueService.processQueueTask();
+
+        verify(pumpService).orderCocktail(eq(owner), any(), any(), isNull(), any());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void keepsOrderWhilePumpsAreOccupied() {
+        doThrow(new PumpsOccupiedException("Some pumps are currently occupied!"))
+                .when(pumpService).orderCocktail(any(), any(), any(), any(), any());
+
+        queueService.processQueueTask();
+
+        assertEquals(1, queue.size());
+        verify(webSocketService, never()).sendDroppedCocktailOrderToUser(any(), any(), any());
+    }
+
+    @Test
+    void dropsInfeasibleOrderAndTellsOwner() {
+        doThrow(new IllegalArgumentException("Some pumps don't have enough liquids left!"))
+                .when(pumpService).orderCocktail(any(), any(), any(), any(), any());
+
+        queueService.processQueueTask();
+
+        assertTrue(queue.isEmpty());
+        verify(webSocketService).sendDroppedCocktailOrderToUser(argThat(x -> x.getId() == 1),
+                eq("Some pumps don't have enough liquids left!"), eq(owner));
+    }
+
+    @Test
+    void dropsOrderOfDeletedRecipeAndTellsOwner() {
+        when(recipeService.getById(3)).thenReturn(null);
+
+        queueService.processQueueTask();
+
+        assertTrue(queue.isEmpty());
+        verify(pumpService, never()).orderCocktail(any(), any(), any(), any(), any());
+        verify(webSocketService).sendDroppedCocktailOrderToUser(any(), eq("Recipe doesn't exist anymore!"), eq(owner));
+    }
+
+    @Test
+    void restartOnlyAwaitsGlassSwapIfConfirmationIsEnabled() {
+        setGlassSwapConfirmation(false);
+        queueService.postConstruct();
+        assertFalse(queueService.isAwaitingGlassSwap());
+
+        setGlassSwapConfirmation(true);
+        queueService.postConstruct();
+        assertTrue(queueService.isAwaitingGlassSwap());
+    }
+
+    @Test
+    void onlyOwnersAndAdminsMayConfirmGlassSwap() {
+        User stranger = new User("stranger", "stranger@localhost", "");
+        stranger.setId(8);
+        stranger.setAuthority(ERole.ROLE_USER);
+        User admin = new User("admin", "admin@localhost", "");
+        admin.setId(9);
+        admin.setAuthority(ERole.ROLE_ADMIN);
+
+        assertTrue(queueService.mayConfirmGlassSwap(null, owner));
+        assertTrue(queueService.mayConfirmGlassSwap(null, admin));
+        assertFalse(queueService.mayConfirmGlassSwap(null, stranger));
+    }
+}
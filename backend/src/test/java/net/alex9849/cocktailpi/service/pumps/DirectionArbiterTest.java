@@ -0,0 +1,66 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import net.alex9849.motorlib.motor.Direction;
+import net.alex9849.motorlib.pin.IOutputPin;
+import net.alex9849.motorlib.pin.PinState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DirectionArbiterTest {
+    private DirectionArbiter directionArbiter;
+    private IOutputPin directionPin;
+
+    @BeforeEach
+    void setUp() {
+        directionArbiter = new DirectionArbiter();
+        directionPin = mock(IOutputPin.class);
+        directionArbiter.setDirectionPin(directionPin);
+        clearInvocations(directionPin);
+    }
+
+    @Test
+    void lastBackwardJobSwitchesBackToForward() {
+        Object jobA = new Object();
+        Object jobB = new Object();
+        directionArbiter.acquire(jobA, Direction.BACKWARD);
+        directionArbiter.acquire(jobB, Direction.BACKWARD);
+        verify(directionPin).digitalWrite(PinState.LOW);
+
+        directionArbiter.release(jobA);
+        verify(directionPin, never()).digitalWrite(PinState.HIGH);
+        directionArbiter.release(jobB);
+        verify(directionPin).digitalWrite(PinState.HIGH);
+    }
+
+    @Test
+    void directionCantChangeWhileJobsAreRunning() {
+        directionArbiter.acquire(new Object(), Direction.FORWARD);
+
+        assertThrows(IllegalArgumentException.class, () -> directionArbiter.acquire(new Object(), Direction.BACKWARD));
+        verifyNoInteractions(directionPin);
+    }
+
+    @Test
+    void productionBlocksReversing() {
+        Object production = new Object();
+        directionArbiter.acquireForward(production);
+        assertTrue(directionArbiter.isForwardHeld());
+        assertThrows(IllegalArgumentException.class, () -> directionArbiter.acquire(new Object(), Direction.BACKWARD));
+
+        directionArbiter.releaseForward(production);
+        assertFalse(directionArbiter.isForwardHeld());
+        directionArbiter.acquire(new Object(), Direction.BACKWARD);
+        verify(directionPin).digitalWrite(PinState.LOW);
+    }
+
+    @Test
+    void productionCantStartWhileJobsPumpBackward() {
+        directionArbiter.acquire(new Object(), Direction.BACKWARD);
+
+        assertThrows(IllegalArgumentException.class, () -> directionArbiter.acquireForward(new Object()));
+        assertFalse(directionArbiter.isForwardHeld());
+    }
+}
@@ -0,0 +1,82 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import net.alex9849.cocktailpi.model.pump.JobMetrics;
+import net.alex9849.cocktailpi.model.pump.motortasks.PumpTask;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class JobHistoryTest {
+    private JobHistory jobHistory;
+
+    @BeforeEach
+    void setUp() {
+        jobHistory = new JobHistory();
+        jobHistory.configure(2, 0);
+    }
+
+    private static PumpTask newTask(long jobId, boolean finished) {
+        PumpTask pumpTask = mock(PumpTask.class);
+        JobMetrics metrics = new JobMetrics();
+        metrics.setId(jobId);
+        when(pumpTask.getJobId()).thenReturn(jobId);
+        when(pumpTask.isFinished()).thenReturn(finished);
+        when(pumpTask.getJobMetrics()).thenReturn(metrics);
+        return pumpTask;
+    }
+
+    @Test
+    void finishedJobsGetCompactedToTheirMetrics() {
+        PumpTask pumpTask = newTask(1, true);
+        jobHistory.addLive(pumpTask);
+
+        jobHistory.compact(List.of());
+        assertNull(jobHistory.getLive(1));
+        assertEquals(1, jobHistory.getJobMetrics(1).getId());
+        verify(pumpTask, times(1)).getJobMetrics();
+    }
+
+    @Test
+    void runningAndCurrentJobsStayLive() {
+        PumpTask running = newTask(1, false);
+        PumpTask current = newTask(2, true);
+        jobHistory.addLive(running);
+        jobHistory.addLive(current);
+
+        jobHistory.compact(List.of(2L));
+        assertSame(running, jobHistory.getLive(1));
+        assertSame(current, jobHistory.getLive(2));
+    }
+
+    @Test
+    void oldestFinishedJobsGetEvictedFirst() {
+        for(long jobId = 1; jobId <= 3; jobId++) {
+            jobHistory.addLive(newTask(jobId, true));
+            jobHistory.compact(List.of());
+        }
+
+        assertNull(jobHistory.getJobMetrics(1));
+        assertNotNull(jobHistory.getJobMetrics(2));
+        assertNotNull(jobHistory.getJobMetrics(3));
+    }
+
+    @Test
+    void shrinkingTheRingEvictsRightAway() {
+        jobHistory.addLive(newTask(1, true));
+        jobHistory.addLive(newTask(2, true));
+        jobHistory.compact(List.of());
+
+        jobHistory.configure(0, 0);
+        assertNull(jobHistory.getJobMetrics(1));
+        assertNull(jobHistory.getJobMetrics(2));
+    }
+
+    @Test
+    void unknownJobHasNoMetrics() {
+        assertNull(jobHistory.getJobMetrics(42));
+    }
+}
@@ -0,0 +1,106 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import net.alex9849.cocktailpi.service.pumps.clock.VirtualClock;
+import net.alex9849.motorlib.sensor.HX711;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class LoadCellSamplerTest {
+    private final AtomicLong grams = new AtomicLong(100);
+    private final AtomicInteger conversions = new AtomicInteger();
+    private HX711 hx711;
+    private LoadCellSampler sampler;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        hx711 = mock(HX711.class);
+        //A conversion of the chip takes some time
+        when(hx711.read_once()).thenAnswer(x -> {
+            Thread.sleep(1);
+            conversions.incrementAndGet();
+            return grams.get();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if(sampler != null) {
+            sampler.stop();
+        }
+    }
+
+    @Test
+    void idleSamplerStopsSampling() throws InterruptedException {
+        sampler = LoadCellSampler.startSampling(hx711, 100);
+        sampler.awaitNext();
+        Thread.sleep(300);
+
+        int conversionsWhileIdle = conversions.get();
+        Thread.sleep(200);
+        assertEquals(conversionsWhileIdle, conversions.get());
+    }
+
+    @Test
+    void consumerWakesUpIdleSampler() throws InterruptedException {
+        sampler = LoadCellSampler.startSampling(hx711, 100);
+        LoadCellSampler.Sample beforeIdle = sampler.awaitNext();
+        Thread.sleep(300);
+
+        LoadCellSampler.Sample afterIdle = sampler.awaitNext();
+        assertTrue(afterIdle.sequence() > beforeIdle.sequence());
+    }
+
+    @Test
+    void filterStartsOverAfterIdling() throws InterruptedException {
+        sampler = LoadCellSampler.startSampling(hx711, 100);
+        sampler.readGrams(10);
+        //Longer than the keep-alive and the maximal age of the filtered weight
+        Thread.sleep(700);
+
+        grams.set(500);
+        assertEquals(500, sampler.readFilteredGrams());
+    }
+
+    @Test
+    void exclusiveCommandWakesUpIdleSampler() throws InterruptedException {
+        sampler = LoadCellSampler.startSampling(hx711, 100);
+        sampler.awaitNext();
+        Thread.sleep(300);
+
+        assertEquals("calibrated", sampler.runExclusive(x -> "calibrated"));
+    }
+
+    @Test
+    void stoppedSamplerFailsConsumers() throws InterruptedException {
+        sampler = LoadCellSampler.startSampling(hx711, 100);
+        sampler.awaitNext();
+        sampler.stop();
+
+        assertThrows(IllegalStateException.class, () -> sampler.awaitNext());
+        assertThrows(IllegalStateException.class, () -> sampler.runExclusive(x -> "calibrated"));
+    }
+
+    @Test
+    void filterRemovesSpikes() throws InterruptedException {
+        sampler = LoadCellSampler.sampleOnDemand(hx711, new VirtualClock());
+        LoadCellSampler.Sample sample = sampler.awaitNext(-1);
+        for(int i = 0; i < 4; i++) {
+            sample = sampler.awaitNext(sample.sequence());
+        }
+
+        grams.set(10000);
+        sample = sampler.awaitNext(sample.sequence());
+        assertEquals(10000, sample.rawGrams());
+        assertEquals(100, sample.filteredGrams());
+        grams.set(100);
+        sample = sampler.awaitNext(sample.sequence());
+        assertEquals(100, sample.filteredGrams());
+    }
+}
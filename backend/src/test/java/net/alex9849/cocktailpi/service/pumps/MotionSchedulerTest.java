@@ -0,0 +1,149 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import net.alex9849.cocktailpi.model.system.settings.PowerLimitSettings;
+import net.alex9849.motorlib.motor.AcceleratingStepper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class MotionSchedulerTest {
+    private PowerBudget powerBudget;
+    private MotionScheduler motionScheduler;
+
+    @BeforeEach
+    void setUp() {
+        powerBudget = new PowerBudget();
+        PowerLimitSettings.Config config = new PowerLimitSettings.Config();
+        config.setMaxConcurrentMotors(2);
+        config.setPowerBudgetInMa(1000);
+        PowerLimitSettings settings = new PowerLimitSettings();
+        settings.setEnable(true);
+        settings.setSettings(config);
+        powerBudget.setPowerLimitSettings(settings);
+        motionScheduler = new MotionScheduler(powerBudget);
+        motionScheduler.configure(false, Thread.NORM_PRIORITY, 0);
+    }
+
+    /**
+     * @return a stepper that makes one step per call of run()
+     */
+    private static AcceleratingStepper newStepper(AtomicLong distanceToGo) {
+        AcceleratingStepper stepper = mock(AcceleratingStepper.class);
+        when(stepper.distanceToGo()).thenAnswer(x -> distanceToGo.get());
+        when(stepper.run()).thenAnswer(x -> distanceToGo.getAndUpdate(d -> d - Long.signum(d)) != 0);
+        doAnswer(x -> {
+            distanceToGo.addAndGet(x.getArgument(0));
+            return null;
+        }).when(stepper).move(anyLong());
+        return stepper;
+    }
+
+    private static void assertNotDone(Future<Void> future) throws Exception {
+        assertThrows(TimeoutException.class, () -> future.get(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void moveRunsToItsTargetAndReleasesItsPower() throws Exception {
+        AtomicLong distanceToGo = new AtomicLong();
+        AcceleratingStepper stepper = newStepper(distanceToGo);
+        Future<Void> future = motionScheduler.submit(new MotionScheduler.Move(stepper)
+                .setSteps(-1000)
+                .setPowerConsumptionInMa(400));
+
+        future.get(5, TimeUnit.SECONDS);
+        assertEquals(0, distanceToGo.get());
+        verify(stepper).move(-1000);
+        assertEquals(0, powerBudget.getClaimedMotors());
+    }
+
+    @Test
+    void cancelStopsRunningMove() throws Exception {
+        AtomicLong distanceToGo = new AtomicLong();
+        AcceleratingStepper stepper = newStepper(distanceToGo);
+        Future<Void> future = motionScheduler.submit(new MotionScheduler.Move(stepper)
+                .setSteps(Long.MAX_VALUE)
+                .setPowerConsumptionInMa(400));
+        assertNotDone(future);
+        assertEquals(1, powerBudget.getClaimedMotors());
+
+        motionScheduler.cancel(stepper);
+        future.get(5, TimeUnit.SECONDS);
+        assertNotEquals(0, distanceToGo.get());
+        assertEquals(0, powerBudget.getClaimedMotors());
+    }
+
+    @Test
+    void moveWaitsForPowerBudget() throws Exception {
+        Object otherJob = new Object();
+        powerBudget.claim(otherJob, new PowerBudget.Demand(1, 800));
+        AtomicLong distanceToGo = new AtomicLong();
+        Future<Void> future = motionScheduler.submit(new MotionScheduler.Move(newStepper(distanceToGo))
+                .setSteps(100)
+                .setPowerConsumptionInMa(400));
+        assertNotDone(future);
+        assertEquals(0, distanceToGo.get());
+
+        powerBudget.release(otherJob);
+        future.get(5, TimeUnit.SECONDS);
+        assertEquals(0, powerBudget.getClaimedMotors());
+    }
+
+    @Test
+    void moveWaitsForStepRateLimit() throws Exception {
+        motionScheduler.configure(false, Thread.NORM_PRIORITY, 1000);
+        AcceleratingStepper fastStepper = newStepper(new AtomicLong());
+        Future<Void> fastMove = motionScheduler.submit(new MotionScheduler.Move(fastStepper)
+                .setSteps(Long.MAX_VALUE)
+                .setStepsPerSecond(800));
+        assertNotDone(fastMove);
+
+        AtomicLong distanceToGo = new AtomicLong();
+        Future<Void> slowMove = motionScheduler.submit(new MotionScheduler.Move(newStepper(distanceToGo))
+                .setSteps(100)
+                .setStepsPerSecond(400));
+        assertNotDone(slowMove);
+        assertEquals(0, distanceToGo.get());
+
+        motionScheduler.cancel(fastStepper);
+        fastMove.get(5, TimeUnit.SECONDS);
+        slowMove.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void failingStepperOnlyFailsItsOwnMove() throws Exception {
+        AcceleratingStepper failingStepper = newStepper(new AtomicLong());
+        when(failingStepper.run()).thenThrow(new IllegalStateException("Driver failed"));
+        Future<Void> failingMove = motionScheduler.submit(new MotionScheduler.Move(failingStepper)
+                .setSteps(100)
+                .setPowerConsumptionInMa(400));
+        Future<Void> move = motionScheduler.submit(new MotionScheduler.Move(newStepper(new AtomicLong()))
+                .setSteps(100)
+                .setPowerConsumptionInMa(400));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failingMove.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        move.get(5, TimeUnit.SECONDS);
+        assertEquals(0, powerBudget.getClaimedMotors());
+    }
+
+    @Test
+    void delayedMoveStartsAfterItsDelay() throws Exception {
+        AtomicLong distanceToGo = new AtomicLong();
+        long startNanos = System.nanoTime();
+        Future<Void> future = motionScheduler.submit(new MotionScheduler.Move(newStepper(distanceToGo))
+                .setSteps(10)
+                .setStartDelayInMs(200));
+
+        future.get(5, TimeUnit.SECONDS);
+        assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+}
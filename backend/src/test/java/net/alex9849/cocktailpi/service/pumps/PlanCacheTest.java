@@ -0,0 +1,116 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import net.alex9849.cocktailpi.model.recipe.CocktailOrderConfiguration;
+import net.alex9849.cocktailpi.model.recipe.FeasibilityFactory;
+import net.alex9849.cocktailpi.model.recipe.Recipe;
+import net.alex9849.cocktailpi.model.recipe.ingredient.AutomatedIngredient;
+import net.alex9849.cocktailpi.service.pumps.cocktailfactory.CocktailFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class PlanCacheTest {
+    private final PlanCache planCache = new PlanCache();
+
+    @AfterEach
+    void tearDown() {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static Recipe newRecipe() {
+        Recipe recipe = new Recipe();
+        recipe.setId(3);
+        recipe.setLastUpdate(new Date(1000));
+        return recipe;
+    }
+
+    private static CocktailOrderConfiguration newOrderConfig(long... additionalIngredientIds) {
+        CocktailOrderConfiguration orderConfig = new CocktailOrderConfiguration();
+        orderConfig.setAmountOrderedInMl(250);
+        CocktailOrderConfiguration.Customisations customisations = new CocktailOrderConfiguration.Customisations();
+        customisations.setAdditionalIngredients(new ArrayList<>());
+        for(long id : additionalIngredientIds) {
+            AutomatedIngredient ingredient = new AutomatedIngredient();
+            ingredient.setId(id);
+            CocktailOrderConfiguration.Customisations.AdditionalIngredient ai = new CocktailOrderConfiguration.Customisations.AdditionalIngredient();
+            ai.setIngredient(ingredient);
+            ai.setAmount(10);
+            customisations.getAdditionalIngredients().add(ai);
+        }
+        orderConfig.setCustomisations(customisations);
+        return orderConfig;
+    }
+
+    @Test
+    void feasibilityGetsComputedOnce() {
+        PlanCache.Key key = planCache.createKey(newRecipe(), newOrderConfig(), null);
+        FeasibilityFactory feasibility = mock(FeasibilityFactory.class);
+
+        assertSame(feasibility, planCache.getFeasibility(key, () -> feasibility));
+        assertSame(feasibility, planCache.getFeasibility(key, () -> fail("Should have been cached")));
+    }
+
+    @Test
+    void orderOfAdditionalIngredientsDoesNotMatter() {
+        assertEquals(planCache.createKey(newRecipe(), newOrderConfig(1, 2), null),
+                planCache.createKey(newRecipe(), newOrderConfig(2, 1), null));
+        assertNotEquals(planCache.createKey(newRecipe(), newOrderConfig(1), null),
+                planCache.createKey(newRecipe(), newOrderConfig(2), null));
+    }
+
+    @Test
+    void planCanOnlyBeTakenOnce() {
+        PlanCache.Key key = planCache.createKey(newRecipe(), newOrderConfig(), null);
+        CocktailFactory plan = mock(CocktailFactory.class);
+        planCache.putPlan(key, plan);
+
+        assertTrue(planCache.hasPlan(key));
+        assertSame(plan, planCache.takePlan(key));
+        assertNull(planCache.takePlan(key));
+    }
+
+    @Test
+    void invalidateDropsOutdatedEntries() {
+        PlanCache.Key key = planCache.createKey(newRecipe(), newOrderConfig(), null);
+        planCache.putPlan(key, mock(CocktailFactory.class));
+
+        planCache.invalidate();
+
+        assertNull(planCache.takePlan(key));
+        //Plans that have been computed with the old layout don't get cached anymore
+        planCache.putPlan(key, mock(CocktailFactory.class));
+        assertFalse(planCache.hasPlan(key));
+        assertNotEquals(key, planCache.createKey(newRecipe(), newOrderConfig(), null));
+    }
+
+    @Test
+    void invalidateWithinTransactionGetsRepeatedAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        planCache.invalidate();
+
+        //A concurrent order computes a plan before the change has been committed
+        PlanCache.Key staleKey = planCache.createKey(newRecipe(), newOrderConfig(), null);
+        FeasibilityFactory staleFeasibility = mock(FeasibilityFactory.class);
+        planCache.getFeasibility(staleKey, () -> staleFeasibility);
+        planCache.putPlan(staleKey, mock(CocktailFactory.class));
+        assertTrue(planCache.hasPlan(staleKey));
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+
+        assertFalse(planCache.hasPlan(staleKey));
+        PlanCache.Key key = planCache.createKey(newRecipe(), newOrderConfig(), null);
+        FeasibilityFactory feasibility = mock(FeasibilityFactory.class);
+        assertSame(feasibility, planCache.getFeasibility(key, () -> feasibility));
+    }
+}
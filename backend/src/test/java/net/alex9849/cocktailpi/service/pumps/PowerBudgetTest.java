@@ -0,0 +1,106 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import net.alex9849.cocktailpi.model.system.settings.PowerLimitSettings;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PowerBudgetTest {
+    private PowerBudget powerBudget;
+
+    @BeforeEach
+    void setUp() {
+        powerBudget = new PowerBudget();
+        PowerLimitSettings.Config config = new PowerLimitSettings.Config();
+        config.setMaxConcurrentMotors(3);
+        config.setPowerBudgetInMa(1000);
+        PowerLimitSettings settings = new PowerLimitSettings();
+        settings.setEnable(true);
+        settings.setSettings(config);
+        powerBudget.setPowerLimitSettings(settings);
+    }
+
+    @Test
+    void claimsOfDifferentJobsShareTheBudget() {
+        Object productionA = new Object();
+        Object productionB = new Object();
+        Object maintenance = new Object();
+
+        assertTrue(powerBudget.tryClaim(productionA, new PowerBudget.Demand(2, 600)));
+        assertFalse(powerBudget.tryClaim(productionB, new PowerBudget.Demand(1, 500)));
+        assertTrue(powerBudget.tryClaim(maintenance, new PowerBudget.Demand(1, 400)));
+        assertFalse(powerBudget.tryClaim(productionB, new PowerBudget.Demand(1, 0)));
+        assertEquals(3, powerBudget.getClaimedMotors());
+        assertEquals(1000, powerBudget.getClaimedPowerConsumptionInMa());
+
+        powerBudget.release(productionA);
+        assertTrue(powerBudget.tryClaim(productionB, new PowerBudget.Demand(1, 500)));
+        assertEquals(900, powerBudget.getClaimedPowerConsumptionInMa());
+    }
+
+    @Test
+    void oversizedClaimRunsAlone() {
+        Object small = new Object();
+        Object oversized = new Object();
+
+        assertTrue(powerBudget.tryClaim(small, new PowerBudget.Demand(1, 100)));
+        assertFalse(powerBudget.tryClaim(oversized, new PowerBudget.Demand(1, 5000)));
+        powerBudget.release(small);
+        assertTrue(powerBudget.tryClaim(oversized, new PowerBudget.Demand(1, 5000)));
+        assertFalse(powerBudget.tryClaim(small, new PowerBudget.Demand(1, 100)));
+    }
+
+    @Test
+    void claimWaitsForRelease() throws InterruptedException {
+        Object holder = new Object();
+        Object waiter = new Object();
+        AtomicInteger releases = new AtomicInteger();
+        powerBudget.addReleaseListener(releases::incrementAndGet);
+        powerBudget.claim(holder, new PowerBudget.Demand(1, 800));
+
+        CountDownLatch granted = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try {
+                powerBudget.claim(waiter, new PowerBudget.Demand(1, 800));
+                granted.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        thread.start();
+        assertFalse(granted.await(100, TimeUnit.MILLISECONDS));
+
+        powerBudget.release(holder);
+        assertTrue(granted.await(1, TimeUnit.SECONDS));
+        assertEquals(1, releases.get());
+        thread.join();
+    }
+
+    @Test
+    void waitingClaimCanBeInterrupted() throws InterruptedException {
+        powerBudget.claim(new Object(), new PowerBudget.Demand(3, 0));
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try {
+                powerBudget.claim(new Object(), new PowerBudget.Demand(1, 0));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        thread.start();
+        thread.interrupt();
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        assertEquals(3, powerBudget.getClaimedMotors());
+    }
+
+    @Test
+    void holderCanOnlyClaimOnce() {
+        Object holder = new Object();
+        powerBudget.tryClaim(holder, new PowerBudget.Demand(1, 0));
+        assertThrows(IllegalStateException.class, () -> powerBudget.tryClaim(holder, new PowerBudget.Demand(1, 0)));
+    }
+}
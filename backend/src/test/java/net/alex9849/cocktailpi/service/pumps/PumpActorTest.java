@@ -0,0 +1,58 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PumpActorTest {
+
+    @Test
+    void commandsRunOneAfterAnother() throws Exception {
+        PumpActor pumpActor = new PumpActor();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Integer> executed = new ArrayList<>();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for(int i = 0; i < 20; i++) {
+            int command = i;
+            futures.add(pumpActor.submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                executed.add(command);
+                running.decrementAndGet();
+                return command;
+            }));
+        }
+
+        for(int i = 0; i < 20; i++) {
+            assertEquals(i, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, maxRunning.get());
+        for(int i = 0; i < 20; i++) {
+            assertEquals(i, executed.get(i));
+        }
+    }
+
+    @Test
+    void nestedAskRunsRightAway() {
+        PumpActor pumpActor = new PumpActor();
+
+        assertEquals("inner", pumpActor.ask(() -> pumpActor.ask(() -> "inner")));
+    }
+
+    @Test
+    void askRethrowsTheFailureOfTheCommand() {
+        PumpActor pumpActor = new PumpActor();
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> pumpActor.ask(() -> {
+            throw new IllegalArgumentException("Pump is occupied!");
+        }));
+        assertEquals("Pump is occupied!", e.getMessage());
+        assertEquals(1, pumpActor.ask(() -> 1));
+    }
+}
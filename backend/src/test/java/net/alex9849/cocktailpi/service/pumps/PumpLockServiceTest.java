@@ -0,0 +1,146 @@
+package net.alex9849.cocktailpi.service.pumps;
+
+import net.alex9849.cocktailpi.model.pump.PumpLockMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PumpLockServiceTest {
+    private PumpLockService lockService;
+    private final Object production = PumpLockService.newOwner("production");
+    private final Object maintenance = PumpLockService.newOwner("maintenance");
+    private final Object otherProduction = PumpLockService.newOwner("otherProduction");
+
+    @BeforeEach
+    void setUp() {
+        lockService = new PumpLockService();
+        ReflectionTestUtils.setField(lockService, "maintenanceWaitInSeconds", 5);
+    }
+
+    private CompletableFuture<Boolean> awaitGlobalAsync(Object acquirer) throws InterruptedException {
+        CompletableFuture<Boolean> granted = CompletableFuture.supplyAsync(() -> {
+            try {
+                return lockService.tryAcquireGlobal(acquirer, 5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (lockService.getRequestedLocks().isEmpty()) {
+            assertTrue(System.nanoTime() < deadline, "Request doesn't wait");
+            Thread.sleep(1);
+        }
+        return granted;
+    }
+
+    private PumpLockMetrics getMetrics(PumpLockService.LockType lockType) {
+        return lockService.getMetrics().stream()
+                .filter(x -> x.getLockType().equals(lockType.name()))
+                .findFirst().orElseThrow();
+    }
+
+    @Test
+    void waitingMaintenanceIsNotStarvedByNewProductions() throws Exception {
+        assertTrue(lockService.testAndAcquirePumpLock(1, production));
+        CompletableFuture<Boolean> granted = awaitGlobalAsync(maintenance);
+
+        assertFalse(lockService.testAndAcquirePumpLock(2, otherProduction));
+        assertFalse(granted.isDone());
+
+        lockService.releasePumpLock(1, production);
+        assertTrue(granted.get(5, TimeUnit.SECONDS));
+        assertFalse(lockService.testAndAcquirePumpLock(2, otherProduction));
+        lockService.releaseGlobal(maintenance);
+        assertTrue(lockService.testAndAcquirePumpLock(2, otherProduction));
+        assertEquals(1, getMetrics(PumpLockService.LockType.GLOBAL_WRITE).getContendedAcquisitions());
+    }
+
+    @Test
+    void holderBypassesTheQueue() throws Exception {
+        assertTrue(lockService.testAndAcquirePumpLock(1, production));
+        CompletableFuture<Boolean> granted = awaitGlobalAsync(maintenance);
+
+        //The production must be able to finish, otherwise the maintenance would wait for it forever
+        assertTrue(lockService.testAndAcquirePumpLock(2, production));
+        lockService.releasePumpLocks(List.of(1L, 2L), production);
+        assertTrue(granted.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void readerCanUpgradeWhileWriterWaits() throws Exception {
+        assertTrue(lockService.testAndAcquireGlobalRead(production));
+        CompletableFuture<Boolean> granted = awaitGlobalAsync(maintenance);
+
+        assertTrue(lockService.tryAcquireGlobal(production, 0, TimeUnit.SECONDS));
+        lockService.releaseGlobal(production);
+        lockService.releaseGlobalRead(production);
+        assertTrue(granted.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void waitersOfDifferentPumpsDontBlockEachOther() throws Exception {
+        assertTrue(lockService.testAndAcquirePumpLock(1, production));
+        CompletableFuture<Boolean> granted = CompletableFuture.supplyAsync(() -> {
+            try {
+                return lockService.tryAcquirePumpLocks(List.of(1L), otherProduction, 5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (lockService.getRequestedLocks().isEmpty()) {
+            Thread.sleep(1);
+        }
+
+        assertTrue(lockService.testAndAcquirePumpLock(2, maintenance));
+        lockService.releasePumpLock(1, production);
+        assertTrue(granted.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void waitTimesOut() throws InterruptedException {
+        assertTrue(lockService.testAndAcquirePumpLock(1, production));
+
+        assertFalse(lockService.tryAcquireGlobal(maintenance, 50, TimeUnit.MILLISECONDS));
+        assertTrue(lockService.getRequestedLocks().isEmpty());
+        assertEquals(1, getMetrics(PumpLockService.LockType.GLOBAL_WRITE).getTimeouts());
+        lockService.releasePumpLock(1, production);
+        assertTrue(lockService.testAndAcquireGlobal(maintenance));
+    }
+
+    @Test
+    void maintenanceFailsIfProductionDoesntFinishInTime() {
+        ReflectionTestUtils.setField(lockService, "maintenanceWaitInSeconds", 0);
+        assertTrue(lockService.testAndAcquirePumpLock(1, production));
+
+        assertThrows(IllegalArgumentException.class, () -> lockService.callWithGlobal(maintenance, () -> true));
+    }
+
+    @Test
+    void maintenanceCantWaitWithinTransaction() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            assertThrows(IllegalStateException.class, () -> lockService.awaitGlobal(maintenance));
+            assertThrows(IllegalStateException.class, () -> lockService.awaitGlobalRead(maintenance));
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+        assertTrue(lockService.getHeldLocks().isEmpty());
+    }
+
+    @Test
+    void callWithGlobalReleasesIfActionFails() {
+        assertThrows(IllegalStateException.class, () -> lockService.callWithGlobal(maintenance, () -> {
+            throw new IllegalStateException("Action failed");
+        }));
+
+        assertTrue(lockService.getHeldLocks().isEmpty());
+        assertTrue(lockService.testAndAcquirePumpLock(1, production));
+    }
+}
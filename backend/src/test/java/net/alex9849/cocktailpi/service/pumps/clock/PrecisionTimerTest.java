@@ -0,0 +1,40 @@
+package net.alex9849.cocktailpi.service.pumps.clock;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrecisionTimerTest {
+    private final PrecisionTimer timer = new PrecisionTimer(false);
+
+    @Test
+    void failingEdgeDoesNotStopOtherEdges() throws InterruptedException {
+        AtomicBoolean executed = new AtomicBoolean();
+        ClockTask failing = timer.schedule("a", () -> {
+            throw new IllegalStateException("I2C write failed");
+        }, 5);
+        ClockTask next = timer.schedule("b", () -> executed.set(true), 10);
+
+        failing.join();
+        next.join();
+
+        assertTrue(failing.isDone());
+        assertTrue(executed.get());
+        assertEquals(2, timer.getTimingErrorHistogram().getCount());
+    }
+
+    @Test
+    void cancelledEdgeDoesNotRun() throws InterruptedException {
+        AtomicBoolean executed = new AtomicBoolean();
+        ClockTask edge = timer.schedule("a", () -> executed.set(true), 1000);
+
+        edge.cancel(false);
+        edge.join();
+
+        assertTrue(edge.isDone());
+        assertFalse(executed.get());
+        assertEquals(0, timer.getTimingErrorHistogram().getCount());
+    }
+}
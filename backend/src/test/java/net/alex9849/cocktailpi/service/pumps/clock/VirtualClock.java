@@ -0,0 +1,244 @@
+package net.alex9849.cocktailpi.service.pumps.clock;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A discrete-event clock. Time only advances if the running task sleeps or waits. Due tasks are then executed
+ * in the order of their due time (ties in the order in which they have been scheduled) on the stack of the waiting task.
+ * Everything runs on the thread that drives the clock, so that a run is fully deterministic and
+ * takes as long as the computation, not as long as the simulated time.
+ * A task that sleeps while being executed on the stack of another sleeping task delays that task.
+ */
+public class VirtualClock implements Clock {
+    private final PriorityQueue<VirtualTask> dueTasks = new PriorityQueue<>(
+            Comparator.comparingLong((VirtualTask x) -> x.dueTime).thenComparingLong(x -> x.sequence));
+    private final Deque<VirtualTask> runningTasks = new ArrayDeque<>();
+    private final List<String> trace = new ArrayList<>();
+    private long sequence;
+    private long now;
+
+    @Override
+    public synchronized long currentTimeMillis() {
+        return now;
+    }
+
+    @Override
+    public synchronized void sleep(long millis) throws InterruptedException {
+        checkInterrupted();
+        long wakeUpTime = addSaturated(now, millis);
+        while (!dueTasks.isEmpty() && dueTasks.peek().dueTime <= wakeUpTime) {
+            runNextTask();
+            checkInterrupted();
+        }
+        now = Math.max(now, wakeUpTime);
+    }
+
+    /**
+     * @throws IllegalStateException if no task is left that could count down the latch
+     */
+    @Override
+    public synchronized void await(CountDownLatch latch) throws InterruptedException {
+        checkInterrupted();
+        while (latch.getCount() > 0) {
+            if(!runNextTask()) {
+                throw new IllegalStateException("Deadlock: Nothing left to run at " + now + " ms, but still waiting!");
+            }
+            checkInterrupted();
+        }
+    }
+
+    @Override
+    public ClockScheduler newScheduler() {
+        return new ClockScheduler() {
+            private final Set<VirtualTask> tasks = new HashSet<>();
+            private boolean shutdown;
+
+            @Override
+            public ClockTask schedule(Runnable task, long delayInMs) {
+                return scheduleAtFixedRate(task, delayInMs, 0);
+            }
+
+            @Override
+            public ClockTask scheduleAtFixedRate(Runnable task, long initialDelayInMs, long periodInMs) {
+                synchronized (VirtualClock.this) {
+                    if(shutdown) {
+                        throw new IllegalStateException("Scheduler has been shut down!");
+                    }
+                    tasks.removeIf(VirtualTask::isDone);
+                    VirtualTask virtualTask = submit(task, initialDelayInMs, periodInMs);
+                    tasks.add(virtualTask);
+                    return virtualTask;
+                }
+            }
+
+            @Override
+            public void shutdown() {
+                synchronized (VirtualClock.this) {
+                    shutdown = true;
+                    for(VirtualTask task : tasks) {
+                        if(!runningTasks.contains(task)) {
+                            task.cancel(false);
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public boolean isShutdown() {
+                return shutdown;
+            }
+        };
+    }
+
+    /**
+     * Edges are exact in virtual time.
+     */
+    @Override
+    public synchronized ClockTask scheduleEdge(Object actuator, Runnable edge, long delayInMs) {
+        return submit(edge, delayInMs, 0);
+    }
+
+    /**
+     * The task gets executed as soon as the driving thread waits or advances the clock.
+     */
+    @Override
+    public synchronized ClockTask start(Runnable task) {
+        return submit(task, 0, 0);
+    }
+
+    private VirtualTask submit(Runnable task, long delayInMs, long periodInMs) {
+        VirtualTask virtualTask = new VirtualTask(task, addSaturated(now, delayInMs), periodInMs, sequence++);
+        dueTasks.add(virtualTask);
+        return virtualTask;
+    }
+
+    /**
+     * Executes all tasks, until no task is due anymore. Periodic tasks keep the clock running until they get cancelled.
+     */
+    public synchronized void runUntilIdle() {
+        while (runNextTask()) {
+            //Continue
+        }
+    }
+
+    /**
+     * Executes all tasks that are due within the given time and advances the clock by it.
+     */
+    public synchronized void runFor(long millis) {
+        long endTime = addSaturated(now, millis);
+        while (!dueTasks.isEmpty() && dueTasks.peek().dueTime <= endTime) {
+            runNextTask();
+        }
+        now = Math.max(now, endTime);
+    }
+
+    /**
+     * @return false if no task has been due
+     */
+    private boolean runNextTask() {
+        VirtualTask task = dueTasks.poll();
+        while (task != null && task.cancelled) {
+            task = dueTasks.poll();
+        }
+        if(task == null) {
+            return false;
+        }
+        now = Math.max(now, task.dueTime);
+        runningTasks.push(task);
+        boolean failed = false;
+        try {
+            task.task.run();
+        } catch (RuntimeException e) {
+            //Like an executor, a failing periodic task doesn't get executed again
+            trace("Task failed: " + e);
+            failed = true;
+        } finally {
+            runningTasks.pop();
+        }
+        if(task.period > 0 && !task.cancelled && !failed) {
+            task.dueTime += task.period;
+            dueTasks.add(task);
+        } else {
+            task.done = true;
+        }
+        return true;
+    }
+
+    private static long addSaturated(long time, long millis) {
+        if(millis <= 0) {
+            return time;
+        }
+        return millis > Long.MAX_VALUE - time ? Long.MAX_VALUE : time + millis;
+    }
+
+    private void checkInterrupted() throws InterruptedException {
+        VirtualTask current = runningTasks.peek();
+        if(current != null && current.interrupted) {
+            current.interrupted = false;
+            throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Adds an entry with the current time to the event trace
+     */
+    public synchronized void trace(String event) {
+        trace.add(String.format("%8d ms: %s", now, event));
+    }
+
+    public synchronized List<String> getTrace() {
+        return new ArrayList<>(trace);
+    }
+
+    private class VirtualTask implements ClockTask {
+        private final Runnable task;
+        private final long period;
+        private final long sequence;
+        private long dueTime;
+        private boolean cancelled;
+        private boolean interrupted;
+        private boolean done;
+
+        private VirtualTask(Runnable task, long dueTime, long period, long sequence) {
+            this.task = task;
+            this.dueTime = dueTime;
+            this.period = period;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void cancel(boolean mayInterrupt) {
+            synchronized (VirtualClock.this) {
+                cancelled = true;
+                if(runningTasks.contains(this)) {
+                    interrupted = mayInterrupt;
+                } else {
+                    done = true;
+                }
+            }
+        }
+
+        /**
+         * Runs the clock until the task has terminated. Returns immediately if the task is
+         * currently running further down the stack, as it can't terminate before the caller returns.
+         */
+        @Override
+        public void join() {
+            synchronized (VirtualClock.this) {
+                while (!done && !runningTasks.contains(this)) {
+                    if(!runNextTask()) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean isDone() {
+            synchronized (VirtualClock.this) {
+                return done;
+            }
+        }
+    }
+}
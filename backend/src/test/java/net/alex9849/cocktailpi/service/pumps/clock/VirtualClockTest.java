@@ -0,0 +1,98 @@
+package net.alex9849.cocktailpi.service.pumps.clock;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualClockTest {
+    private final VirtualClock clock = new VirtualClock();
+
+    @Test
+    void runsTasksInOrderOfTheirDueTime() {
+        ClockScheduler scheduler = clock.newScheduler();
+        List<String> executed = new ArrayList<>();
+        scheduler.schedule(() -> executed.add("b@" + clock.currentTimeMillis()), 200);
+        scheduler.schedule(() -> executed.add("a@" + clock.currentTimeMillis()), 100);
+        scheduler.schedule(() -> executed.add("c@" + clock.currentTimeMillis()), 200);
+
+        clock.runUntilIdle();
+
+        assertEquals(List.of("a@100", "b@200", "c@200"), executed);
+        assertEquals(200, clock.currentTimeMillis());
+    }
+
+    @Test
+    void sleepAdvancesTimeAndRunsDueTasks() {
+        List<Long> executed = new ArrayList<>();
+        long[] wokeUpAt = {-1};
+        clock.newScheduler().scheduleAtFixedRate(() -> executed.add(clock.currentTimeMillis()), 0, 40);
+        clock.start(() -> {
+            try {
+                clock.sleep(100);
+                wokeUpAt[0] = clock.currentTimeMillis();
+            } catch (InterruptedException e) {
+                fail(e);
+            }
+        });
+
+        clock.runFor(100);
+
+        assertEquals(100, wokeUpAt[0]);
+        assertEquals(List.of(0L, 40L, 80L), executed);
+    }
+
+    @Test
+    void cancelledTaskDoesNotRun() {
+        boolean[] executed = {false};
+        ClockTask task = clock.newScheduler().schedule(() -> executed[0] = true, 50);
+
+        task.cancel(false);
+        clock.runUntilIdle();
+
+        assertFalse(executed[0]);
+        assertTrue(task.isDone());
+    }
+
+    @Test
+    void cancelInterruptsSleepingTask() {
+        boolean[] interrupted = {false};
+        ClockTask[] sleeper = new ClockTask[1];
+        sleeper[0] = clock.start(() -> {
+            try {
+                clock.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted[0] = true;
+            }
+        });
+        clock.newScheduler().schedule(() -> sleeper[0].cancel(true), 500);
+
+        clock.runUntilIdle();
+
+        assertTrue(interrupted[0]);
+        assertTrue(sleeper[0].isDone());
+        assertTrue(clock.currentTimeMillis() < 10_000);
+    }
+
+    @Test
+    void shutdownCancelsPeriodicTasks() {
+        ClockScheduler scheduler = clock.newScheduler();
+        int[] runs = {0};
+        scheduler.scheduleAtFixedRate(() -> runs[0]++, 0, 10);
+        scheduler.schedule(scheduler::shutdown, 35);
+
+        clock.runUntilIdle();
+
+        assertEquals(4, runs[0]);
+        assertTrue(scheduler.isShutdown());
+        assertThrows(IllegalStateException.class, () -> scheduler.schedule(() -> {}, 0));
+    }
+
+    @Test
+    void awaitWithoutAnyoneToCountDownFails() {
+        assertThrows(IllegalStateException.class, () -> clock.await(new CountDownLatch(1)));
+    }
+}
@@ -0,0 +1,181 @@
+package net.alex9849.cocktailpi.service.pumps.cocktailfactory;
+
+import net.alex9849.cocktailpi.model.cocktail.CocktailProgress;
+import net.alex9849.cocktailpi.model.LoadCell;
+import net.alex9849.cocktailpi.model.pump.Pump;
+import net.alex9849.cocktailpi.model.pump.Valve;
+import net.alex9849.cocktailpi.model.recipe.FeasibleRecipe;
+import net.alex9849.cocktailpi.model.recipe.ingredient.AutomatedIngredient;
+import net.alex9849.cocktailpi.model.recipe.productionstep.AddIngredientsProductionStep;
+import net.alex9849.cocktailpi.model.recipe.productionstep.ProductionStep;
+import net.alex9849.cocktailpi.model.recipe.productionstep.ProductionStepIngredient;
+import net.alex9849.cocktailpi.model.recipe.productionstep.WrittenInstructionProductionStep;
+import net.alex9849.cocktailpi.model.system.settings.IngredientSplitMode;
+import net.alex9849.cocktailpi.service.executor.ExecutionLane;
+import net.alex9849.cocktailpi.service.executor.ExecutionLanes;
+import net.alex9849.cocktailpi.service.executor.LaneMetrics;
+import net.alex9849.cocktailpi.service.pumps.PowerBudget;
+import net.alex9849.cocktailpi.service.pumps.clock.VirtualClock;
+import net.alex9849.cocktailpi.service.pumps.simulation.SimulatedDcPump;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CocktailFactoryTest {
+
+    private static WrittenInstructionProductionStep instruction(String message) {
+        WrittenInstructionProductionStep step = new WrittenInstructionProductionStep();
+        step.setMessage(message);
+        return step;
+    }
+
+    private static CocktailFactory newFactory(int servings, ProductionStep... steps) {
+        FeasibleRecipe recipe = new FeasibleRecipe();
+        recipe.setFeasibleProductionSteps(List.of(steps));
+        recipe.setServings(servings);
+        return new CocktailFactory(recipe, null, new HashSet<>(), null, IngredientSplitMode.SEQUENTIAL);
+    }
+
+    /**
+     * Confirms every step of the production.
+     * @return the written instructions in the order they have been shown, prefixed with their serving
+     */
+    private static List<String> runThrough(CocktailFactory factory) {
+        List<String> instructions = new ArrayList<>();
+        factory.makeCocktail();
+        while (!factory.isFinished()) {
+            CocktailProgress progress = factory.getCocktailprogress();
+            instructions.add(progress.getCurrentServing() + ": " + progress.getWrittenInstruction());
+            factory.continueProduction();
+        }
+        return instructions;
+    }
+
+    @Test
+    void singleServingKeepsAllSteps() {
+        CocktailFactory factory = newFactory(1, instruction("Add ice"), instruction("Stir"));
+
+        assertEquals(List.of("1: Add ice", "1: Stir"), runThrough(factory));
+    }
+
+    @Test
+    void glassSwapNeverGetsMerged() {
+        CocktailFactory factory = newFactory(2, instruction("Add ice"), instruction("Stir"));
+
+        assertEquals(List.of("1: Add ice\nStir", "2: Place the next glass (2/2)", "2: Add ice\nStir"),
+                runThrough(factory));
+    }
+
+    /**
+     * Runs 1,000 productions in real time. Every other production gets cancelled right after it has been started,
+     * which races the cancel against the finishing runner.
+     */
+    @Test
+    void thousandProductionsDontLeak() {
+        AutomatedIngredient gin = new AutomatedIngredient();
+        gin.setId(1L);
+        gin.setName("Gin");
+        gin.setPumpTimeMultiplier(1);
+        //Only the pins of the pump use the virtual clock
+        SimulatedDcPump pump = new SimulatedDcPump(new VirtualClock());
+        pump.setId(1L);
+        pump.setName("Pump 1");
+        pump.setTimePerClInMs(10);
+        pump.setTubeCapacityInMl(5d);
+        pump.setCurrentIngredient(gin);
+        pump.setPumpedUp(true);
+        ProductionStepIngredient psi = new ProductionStepIngredient();
+        psi.setIngredient(gin);
+        psi.setAmount(10);
+        AddIngredientsProductionStep step = new AddIngredientsProductionStep();
+        step.setStepIngredients(List.of(psi));
+        FeasibleRecipe recipe = new FeasibleRecipe();
+        recipe.setFeasibleProductionSteps(List.of(step));
+
+        assertTimeoutPreemptively(Duration.ofMinutes(2), () -> {
+            for(int i = 0; i < 1000; i++) {
+                pump.setFillingLevelInMl(1000);
+                CocktailFactory factory = new CocktailFactory(recipe, null, Set.<Pump>of(pump), null, IngredientSplitMode.SEQUENTIAL);
+                CountDownLatch done = new CountDownLatch(1);
+                factory.subscribeProgress(x -> {
+                    if(x.getState() == CocktailProgress.State.FINISHED || x.getState() == CocktailProgress.State.CANCELLED) {
+                        done.countDown();
+                    }
+                });
+                factory.makeCocktail();
+                if(i % 2 == 1) {
+                    try {
+                        factory.cancelCocktail();
+                    } catch (IllegalStateException e) {
+                        //Already finished
+                    }
+                }
+                assertTrue(done.await(5, TimeUnit.SECONDS), "Production " + i + " didn't terminate");
+            }
+        });
+
+        assertEquals(0, PowerBudget.getInstance().getClaimedMotors());
+        assertFalse(pump.getRunPin().isHigh());
+        LaneMetrics realTime = ExecutionLanes.getMetrics().stream()
+                .filter(x -> x.getLane() == ExecutionLane.REAL_TIME)
+                .findFirst().orElseThrow();
+        assertEquals(0, realTime.getQueuedTasks());
+        assertTrue(realTime.getThreads() <= realTime.getMaxThreads());
+    }
+
+    /**
+     * The runner cancels the production from its own thread, while pumps of the production are still running.
+     */
+    @Test
+    void failingStepCancelsTheProductionInRealTime() {
+        AutomatedIngredient gin = new AutomatedIngredient();
+        gin.setId(1L);
+        gin.setName("Gin");
+        gin.setPumpTimeMultiplier(1);
+        Valve valve = new Valve() {
+            @Override
+            public LoadCell getLoadCell() {
+                throw new IllegalStateException("Load cell doesn't respond!");
+            }
+
+            @Override
+            public boolean isCanPump() {
+                return true;
+            }
+        };
+        valve.setId(1L);
+        valve.setName("Valve 1");
+        valve.setCurrentIngredient(gin);
+        valve.setFillingLevelInMl(500);
+        valve.setPumpedUp(true);
+        ProductionStepIngredient psi = new ProductionStepIngredient();
+        psi.setIngredient(gin);
+        psi.setAmount(40);
+        AddIngredientsProductionStep step = new AddIngredientsProductionStep();
+        step.setStepIngredients(List.of(psi));
+        FeasibleRecipe recipe = new FeasibleRecipe();
+        recipe.setFeasibleProductionSteps(List.of(step));
+        CocktailFactory factory = new CocktailFactory(recipe, null, Set.<Pump>of(valve), null, IngredientSplitMode.SEQUENTIAL);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        factory.subscribeProgress(x -> {
+            if(x.getState() == CocktailProgress.State.CANCELLED) {
+                cancelled.countDown();
+            }
+        });
+
+        factory.makeCocktail();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> cancelled.await());
+        assertTrue(factory.isCanceled());
+        assertEquals(500, valve.getFillingLevelInMl());
+        assertEquals(0, PowerBudget.getInstance().getClaimedMotors());
+    }
+}
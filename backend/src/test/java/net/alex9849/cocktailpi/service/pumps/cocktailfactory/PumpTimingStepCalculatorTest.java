@@ -0,0 +1,89 @@
+package net.alex9849.cocktailpi.service.pumps.cocktailfactory;
+
+import net.alex9849.cocktailpi.model.pump.DcPump;
+import net.alex9849.cocktailpi.model.pump.Pump;
+import net.alex9849.cocktailpi.model.recipe.ingredient.AutomatedIngredient;
+import net.alex9849.cocktailpi.model.system.settings.IngredientSplitMode;
+import net.alex9849.cocktailpi.service.pumps.cocktailfactory.productionstepworker.PumpStepIngredient;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PumpTimingStepCalculatorTest {
+    private final AutomatedIngredient gin = newIngredient();
+
+    private static AutomatedIngredient newIngredient() {
+        AutomatedIngredient ingredient = new AutomatedIngredient();
+        ingredient.setId(1L);
+        ingredient.setName("Gin");
+        ingredient.setPumpTimeMultiplier(1);
+        return ingredient;
+    }
+
+    private DcPump newPump(long id, int timePerClInMs, double tubeCapacityInMl) {
+        DcPump pump = new DcPump();
+        pump.setId(id);
+        pump.setTimePerClInMs(timePerClInMs);
+        pump.setTubeCapacityInMl(tubeCapacityInMl);
+        pump.setCurrentIngredient(gin);
+        pump.setFillingLevelInMl(1000);
+        return pump;
+    }
+
+    private PumpTimingStepCalculator splitParallel(int amount, Set<Pump> pumpsToPrime, DcPump... pumps) {
+        PumpStepIngredient psi = new PumpStepIngredient(gin, amount, new ArrayList<>(List.of(pumps)));
+        return new PumpTimingStepCalculator(Set.of(psi), 500, 500, new PowerBudgetScheduler(null),
+                IngredientSplitMode.PARALLEL, pumpsToPrime);
+    }
+
+    /**
+     * @return the time the pump runs including its priming
+     */
+    private static int getRunTime(PumpTimingStepCalculator calculator, DcPump pump) {
+        double mlToPump = calculator.getAmountByPump().get(pump) + calculator.getPrimingInMlByPump().getOrDefault(pump, 0d);
+        return pump.getConvertMlToRuntime(mlToPump);
+    }
+
+    @Test
+    void pumpsWithSameFlowGetEqualShares() {
+        DcPump pumpA = newPump(1, 1000, 5);
+        DcPump pumpB = newPump(2, 1000, 5);
+
+        PumpTimingStepCalculator calculator = splitParallel(60, Set.of(), pumpA, pumpB);
+
+        assertEquals(30, calculator.getAmountByPump().get(pumpA));
+        assertEquals(30, calculator.getAmountByPump().get(pumpB));
+    }
+
+    @Test
+    void primedPumpGetsSmallerShareAndFinishesTogether() {
+        //Priming takes 500 ms, in which the other pump dispenses 5 ml
+        DcPump primedPump = newPump(1, 1000, 5);
+        DcPump pump = newPump(2, 1000, 5);
+
+        PumpTimingStepCalculator calculator = splitParallel(60, Set.of(primedPump), primedPump, pump);
+
+        Map<Pump, Integer> amountByPump = calculator.getAmountByPump();
+        assertEquals(60, amountByPump.get(primedPump) + amountByPump.get(pump));
+        assertTrue(Math.abs(amountByPump.get(pump) - amountByPump.get(primedPump) - 5) <= 1, amountByPump.toString());
+        //Both finish within the time of one ml
+        assertTrue(Math.abs(getRunTime(calculator, primedPump) - getRunTime(calculator, pump)) <= 100);
+        assertEquals(calculator.getLongestIngredientTime(), Math.max(getRunTime(calculator, primedPump), getRunTime(calculator, pump)));
+        assertEquals(5d, calculator.getPrimingInMlByPump().get(primedPump));
+    }
+
+    @Test
+    void pumpThatWouldStillBePrimingDoesNotGetUsed() {
+        //Priming takes 20 s, while the other pump is done after 2 s
+        DcPump primedPump = newPump(1, 1000, 200);
+        DcPump pump = newPump(2, 1000, 5);
+
+        PumpTimingStepCalculator calculator = splitParallel(20, Set.of(primedPump), primedPump, pump);
+
+        assertEquals(20, calculator.getAmountByPump().get(pump));
+        assertFalse(calculator.getAmountByPump().containsKey(primedPump));
+        assertFalse(calculator.getPrimingInMlByPump().containsKey(primedPump));
+    }
+}
@@ -0,0 +1,152 @@
+package net.alex9849.cocktailpi.service.pumps.cocktailfactory.productionstepworker;
+
+import net.alex9849.cocktailpi.model.recipe.FeasibleRecipe;
+import net.alex9849.cocktailpi.model.recipe.productionstep.WrittenInstructionProductionStep;
+import net.alex9849.cocktailpi.model.system.settings.IngredientSplitMode;
+import net.alex9849.cocktailpi.service.pumps.clock.Clock;
+import net.alex9849.cocktailpi.service.pumps.clock.ClockScheduler;
+import net.alex9849.cocktailpi.service.pumps.clock.ClockTask;
+import net.alex9849.cocktailpi.service.pumps.cocktailfactory.CocktailFactory;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AbstractPumpingProductionStepWorkerTest {
+
+    private static CocktailFactory newFactory() {
+        WrittenInstructionProductionStep step = new WrittenInstructionProductionStep();
+        step.setMessage("Add ice");
+        FeasibleRecipe recipe = new FeasibleRecipe();
+        recipe.setFeasibleProductionSteps(List.of(step));
+        return new CocktailFactory(recipe, null, new HashSet<>(), null, IngredientSplitMode.SEQUENTIAL);
+    }
+
+    @Test
+    void cancelDoesNotBlockTheFinishingRunner() {
+        RunnerOnJoinClock clock = new RunnerOnJoinClock();
+        AbstractPumpingProductionStepWorker worker = new AbstractPumpingProductionStepWorker(newFactory().setClock(clock)) {};
+        boolean[] finished = {false};
+        worker.setOnFinishCallback(() -> finished[0] = true);
+        worker.start();
+
+        //The runner finishes while cancel() waits for it
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertTrue(worker.cancel()));
+
+        assertTrue(worker.isCancelled());
+        assertFalse(worker.isFinished());
+        assertFalse(finished[0]);
+        assertFalse(worker.cancel());
+    }
+
+    @Test
+    void cancelOfFinishedWorkerIsIgnored() {
+        RunnerOnJoinClock clock = new RunnerOnJoinClock();
+        AbstractPumpingProductionStepWorker worker = new AbstractPumpingProductionStepWorker(newFactory().setClock(clock)) {};
+        worker.start();
+        clock.runRunner();
+
+        assertTrue(worker.isFinished());
+        assertFalse(worker.cancel());
+        assertFalse(worker.isCancelled());
+    }
+
+    /**
+     * Runs the runner of the worker on its own thread not before it gets joined, even if it has been cancelled.
+     * This is the case of a runner that is already past its last interruption point when the worker gets cancelled.
+     */
+    private static class RunnerOnJoinClock implements Clock {
+        private Runnable runner;
+
+        void runRunner() {
+            Thread thread = new Thread(runner);
+            thread.start();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return 0;
+        }
+
+        @Override
+        public void sleep(long millis) {}
+
+        @Override
+        public void await(CountDownLatch latch) throws InterruptedException {
+            latch.await();
+        }
+
+        @Override
+        public ClockScheduler newScheduler() {
+            return new ClockScheduler() {
+                private boolean shutdown;
+
+                @Override
+                public ClockTask schedule(Runnable task, long delayInMs) {
+                    return new DoneTask();
+                }
+
+                @Override
+                public ClockTask scheduleAtFixedRate(Runnable task, long initialDelayInMs, long periodInMs) {
+                    return new DoneTask();
+                }
+
+                @Override
+                public void shutdown() {
+                    shutdown = true;
+                }
+
+                @Override
+                public boolean isShutdown() {
+                    return shutdown;
+                }
+            };
+        }
+
+        @Override
+        public ClockTask scheduleEdge(Object actuator, Runnable edge, long delayInMs) {
+            return new DoneTask();
+        }
+
+        @Override
+        public ClockTask start(Runnable task) {
+            this.runner = task;
+            return new ClockTask() {
+                @Override
+                public void cancel(boolean mayInterrupt) {}
+
+                @Override
+                public void join() {
+                    runRunner();
+                }
+
+                @Override
+                public boolean isDone() {
+                    return false;
+                }
+            };
+        }
+    }
+
+    private static class DoneTask implements ClockTask {
+        @Override
+        public void cancel(boolean mayInterrupt) {}
+
+        @Override
+        public void join() {}
+
+        @Override
+        public boolean isDone() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package net.alex9849.cocktailpi.service.pumps.simulation;
+
+import net.alex9849.cocktailpi.model.cocktail.CocktailProgress;
+import net.alex9849.cocktailpi.model.pump.Pump;
+import net.alex9849.cocktailpi.model.pump.motortasks.PumpTask;
+import net.alex9849.cocktailpi.model.recipe.ingredient.AutomatedIngredient;
+import net.alex9849.cocktailpi.service.pumps.LoadCellArbiter;
+import net.alex9849.cocktailpi.service.pumps.clock.ClockScheduler;
+import net.alex9849.cocktailpi.service.pumps.clock.VirtualClock;
+import net.alex9849.cocktailpi.service.pumps.cocktailfactory.CocktailFactory;
+
+import java.util.List;
+
+/**
+ * Runs productions and pump jobs against simulated pumps in virtual time. A run takes milliseconds and
+ * always produces the same event trace for the same input.
+ * Stepper pumps can't be simulated, as the stepper timing is done by the motor library itself.
+ */
+public class ProductionSimulator {
+    private final VirtualClock clock;
+    private final ClockScheduler scheduler;
+    private final SimulatedLoadCell loadCell;
+    private final LoadCellArbiter loadCellArbiter;
+    private long manualStepDurationInMs;
+    private long nextPumpId;
+
+    public ProductionSimulator() {
+        this.clock = new VirtualClock();
+        this.scheduler = clock.newScheduler();
+        this.loadCell = new SimulatedLoadCell(clock, 12);
+        this.loadCellArbiter = new LoadCellArbiter();
+        this.manualStepDurationInMs = CocktailFactory.TIME_FOR_MANUAL_PROGRESS;
+        this.nextPumpId = 1;
+    }
+
+    public SimulatedDcPump createDcPump(AutomatedIngredient ingredient, int timePerClInMs, int fillingLevelInMl) {
+        SimulatedDcPump pump = new SimulatedDcPump(clock);
+        pump.setTimePerClInMs(timePerClInMs);
+        initPump(pump, ingredient, fillingLevelInMl);
+        return pump;
+    }
+
+    public SimulatedValve createValve(AutomatedIngredient ingredient, double flowInGramsPerSecond, int fillingLevelInMl) {
+        return createValve(ingredient, flowInGramsPerSecond, 0, fillingLevelInMl);
+    }
+
+    /**
+     * @param inFlightDelayInMs the time the liquid needs from the valve to the load cell
+     */
+    public SimulatedValve createValve(AutomatedIngredient ingredient, double flowInGramsPerSecond, long inFlightDelayInMs, int fillingLevelInMl) {
+        SimulatedValve valve = new SimulatedValve(clock, loadCell, flowInGramsPerSecond, inFlightDelayInMs);
+        initPump(valve, ingredient, fillingLevelInMl);
+        return valve;
+    }
+
+    private <T extends Pump & SimulatedDispenser> void initPump(T pump, AutomatedIngredient ingredient, int fillingLevelInMl) {
+        long id = nextPumpId++;
+        pump.setId(id);
+        pump.setName("Pump " + id);
+        pump.setTubeCapacityInMl(5d);
+        pump.setCurrentIngredient(ingredient);
+        pump.setFillingLevelInMl(fillingLevelInMl);
+        pump.setPumpedUp(true);
+        loadCell.addDispenser(pump);
+    }
+
+    /**
+     * Manual steps get confirmed after this time
+     */
+    public void setManualStepDurationInMs(long manualStepDurationInMs) {
+        this.manualStepDurationInMs = manualStepDurationInMs;
+    }
+
+    /**
+     * Runs the production until it is done. Manual steps get confirmed automatically.
+     * @return the state the production ended in
+     */
+    public CocktailProgress.State runProduction(CocktailFactory cocktailFactory) {
+        cocktailFactory.setClock(clock);
+        cocktailFactory.setLoadCellArbiter(loadCellArbiter);
+        boolean[] manualStepConfirmationPending = {false};
+        CocktailProgress.State[] lastState = {null};
+        cocktailFactory.subscribeProgress(progress -> {
+            if(progress.getState() != lastState[0]) {
+                lastState[0] = progress.getState();
+                clock.trace("Production " + progress.getState() + " (serving " + progress.getCurrentServing() + ")");
+            }
+            boolean manualStep = progress.getState() == CocktailProgress.State.MANUAL_INGREDIENT_ADD
+                    || progress.getState() == CocktailProgress.State.MANUAL_ACTION_REQUIRED;
+            if(manualStep && !manualStepConfirmationPending[0]) {
+                manualStepConfirmationPending[0] = true;
+                scheduler.schedule(() -> {
+                    manualStepConfirmationPending[0] = false;
+                    clock.trace("Manual step confirmed");
+                    cocktailFactory.continueProduction();
+                }, manualStepDurationInMs);
+            }
+        });
+        cocktailFactory.makeCocktail();
+        clock.runUntilIdle();
+        return cocktailFactory.getCocktailprogress().getState();
+    }
+
+    /**
+     * Cancels the production after the given time. Needs to be called before the production gets run.
+     */
+    public void cancelProductionAfter(CocktailFactory cocktailFactory, long delayInMs) {
+        scheduler.schedule(() -> {
+            if(!cocktailFactory.isFinished() && !cocktailFactory.isCanceled()) {
+                clock.trace("Production cancelled");
+                cocktailFactory.cancelCocktail();
+            }
+        }, delayInMs);
+    }
+
+    /**
+     * Runs a pump maintenance job until it is done.
+     */
+    public void runPumpTask(PumpTask pumpTask) {
+        pumpTask.setClock(clock);
+        clock.start(pumpTask);
+        pumpTask.readify(null);
+        clock.runUntilIdle();
+    }
+
+    public double getWeightOnLoadCell() {
+        return loadCell.getWeightInGrams();
+    }
+
+    public VirtualClock getClock() {
+        return clock;
+    }
+
+    public List<String> getTrace() {
+        return clock.getTrace();
+    }
+}
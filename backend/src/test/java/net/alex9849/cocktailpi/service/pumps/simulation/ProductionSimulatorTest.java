@@ -0,0 +1,130 @@
+package net.alex9849.cocktailpi.service.pumps.simulation;
+
+import net.alex9849.cocktailpi.model.cocktail.CocktailProgress;
+import net.alex9849.cocktailpi.model.pump.Pump;
+import net.alex9849.cocktailpi.model.recipe.FeasibleRecipe;
+import net.alex9849.cocktailpi.model.recipe.ingredient.AutomatedIngredient;
+import net.alex9849.cocktailpi.model.recipe.productionstep.AddIngredientsProductionStep;
+import net.alex9849.cocktailpi.model.recipe.productionstep.ProductionStepIngredient;
+import net.alex9849.cocktailpi.model.system.settings.IngredientSplitMode;
+import net.alex9849.cocktailpi.service.pumps.PowerBudget;
+import net.alex9849.cocktailpi.service.pumps.cocktailfactory.CocktailFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductionSimulatorTest {
+
+    private static AutomatedIngredient ingredient(long id) {
+        AutomatedIngredient ingredient = new AutomatedIngredient();
+        ingredient.setId(id);
+        ingredient.setName("Ingredient " + id);
+        ingredient.setPumpTimeMultiplier(1);
+        return ingredient;
+    }
+
+    private static CocktailFactory newFactory(Set<Pump> pumps, Map<AutomatedIngredient, Integer> amountsInMl) {
+        List<ProductionStepIngredient> stepIngredients = new ArrayList<>();
+        amountsInMl.entrySet().stream()
+                .sorted(Comparator.comparingLong(x -> x.getKey().getId()))
+                .forEach(x -> {
+                    ProductionStepIngredient psi = new ProductionStepIngredient();
+                    psi.setIngredient(x.getKey());
+                    psi.setAmount(x.getValue());
+                    stepIngredients.add(psi);
+                });
+        AddIngredientsProductionStep step = new AddIngredientsProductionStep();
+        step.setStepIngredients(stepIngredients);
+        FeasibleRecipe recipe = new FeasibleRecipe();
+        recipe.setFeasibleProductionSteps(List.of(step));
+        return new CocktailFactory(recipe, null, pumps, null, IngredientSplitMode.SEQUENTIAL);
+    }
+
+    @Test
+    void dcPumpRunsForItsCalibratedTime() {
+        ProductionSimulator simulator = new ProductionSimulator();
+        AutomatedIngredient gin = ingredient(1);
+        SimulatedDcPump pump = simulator.createDcPump(gin, 1000, 500);
+
+        CocktailProgress.State state = simulator.runProduction(newFactory(Set.of(pump), Map.of(gin, 40)));
+
+        assertEquals(CocktailProgress.State.FINISHED, state);
+        assertEquals(4000, pump.getRunPin().getHighTimeInMs());
+        assertEquals(4000, simulator.getClock().currentTimeMillis());
+        assertEquals(460, pump.getFillingLevelInMl());
+    }
+
+    @Test
+    void runsAreDeterministic() {
+        List<List<String>> traces = new ArrayList<>();
+        for(int i = 0; i < 2; i++) {
+            ProductionSimulator simulator = new ProductionSimulator();
+            AutomatedIngredient gin = ingredient(1);
+            AutomatedIngredient rum = ingredient(2);
+            Set<Pump> pumps = Set.of(simulator.createDcPump(gin, 1000, 500),
+                    simulator.createValve(rum, 25, 150, 500));
+            simulator.runProduction(newFactory(pumps, Map.of(gin, 40, rum, 30)));
+            traces.add(simulator.getTrace());
+        }
+        assertEquals(traces.get(0), traces.get(1));
+    }
+
+    @Test
+    void cancelStopsThePumpAndReturnsTheLiquid() {
+        ProductionSimulator simulator = new ProductionSimulator();
+        AutomatedIngredient gin = ingredient(1);
+        SimulatedDcPump pump = simulator.createDcPump(gin, 1000, 500);
+        CocktailFactory factory = newFactory(Set.of(pump), Map.of(gin, 40));
+        simulator.cancelProductionAfter(factory, 1500);
+
+        CocktailProgress.State state = simulator.runProduction(factory);
+
+        assertEquals(CocktailProgress.State.CANCELLED, state);
+        assertFalse(pump.getRunPin().isHigh());
+        assertEquals(1500, pump.getRunPin().getHighTimeInMs());
+        assertEquals(485, pump.getFillingLevelInMl());
+    }
+
+    @Test
+    void valveCutOffLearnsTheLiquidInFlight() {
+        ProductionSimulator simulator = new ProductionSimulator();
+        AutomatedIngredient rum = ingredient(2);
+        //3.75 g are still in flight when the valve gets closed
+        SimulatedValve valve = simulator.createValve(rum, 25, 150, 500);
+
+        double[] dosedGrams = new double[5];
+        for(int i = 0; i < dosedGrams.length; i++) {
+            double weightBefore = simulator.getWeightOnLoadCell();
+            CocktailProgress.State state = simulator.runProduction(newFactory(Set.of(valve), Map.of(rum, 40)));
+            //Let the liquid in flight arrive
+            simulator.getClock().runFor(1000);
+            assertEquals(CocktailProgress.State.FINISHED, state);
+            assertFalse(valve.getRunPin().isHigh());
+            dosedGrams[i] = simulator.getWeightOnLoadCell() - weightBefore;
+        }
+
+        assertTrue(dosedGrams[0] >= 40 && dosedGrams[0] <= 44, "First dose: " + dosedGrams[0]);
+        assertEquals(40, dosedGrams[dosedGrams.length - 1], 1);
+    }
+
+    @Test
+    void failingValveCancelsTheProduction() {
+        ProductionSimulator simulator = new ProductionSimulator();
+        AutomatedIngredient gin = ingredient(1);
+        AutomatedIngredient rum = ingredient(2);
+        SimulatedDcPump pump = simulator.createDcPump(gin, 1000, 500);
+        SimulatedValve valve = simulator.createValve(rum, 25, 500);
+        valve.setFailing(true);
+
+        CocktailProgress.State state = simulator.runProduction(newFactory(Set.of(pump, valve), Map.of(gin, 40, rum, 30)));
+
+        assertEquals(CocktailProgress.State.CANCELLED, state);
+        assertFalse(pump.getRunPin().isHigh());
+        assertFalse(valve.getRunPin().isHigh());
+        assertEquals(0, PowerBudget.getInstance().getClaimedMotors());
+        //Nothing has been dispensed by the valve
+        assertEquals(500, valve.getFillingLevelInMl());
+    }
+}
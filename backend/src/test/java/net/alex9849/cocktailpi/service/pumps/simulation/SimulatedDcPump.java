@@ -0,0 +1,53 @@
+package net.alex9849.cocktailpi.service.pumps.simulation;
+
+import net.alex9849.cocktailpi.model.pump.DcPump;
+import net.alex9849.cocktailpi.service.pumps.clock.VirtualClock;
+import net.alex9849.motorlib.motor.DCMotor;
+import net.alex9849.motorlib.pin.PinState;
+
+/**
+ * A dc pump that pumps exactly as fast as it has been calibrated.
+ */
+public class SimulatedDcPump extends DcPump implements SimulatedDispenser {
+    private final VirtualClock clock;
+    private SimulatedOutputPin runPin;
+    private DCMotor motorDriver;
+
+    public SimulatedDcPump(VirtualClock clock) {
+        this.clock = clock;
+        setIsPowerStateHigh(true);
+    }
+
+    @Override
+    public DCMotor getMotorDriver() {
+        if(motorDriver == null) {
+            motorDriver = new DCMotor(getRunPin(), new SimulatedOutputPin(clock, getName() + " direction"), PinState.HIGH);
+        }
+        return motorDriver;
+    }
+
+    @Override
+    public void shutdownDriver() {
+        if(this.motorDriver != null) {
+            this.motorDriver.shutdown();
+            this.motorDriver = null;
+        }
+    }
+
+    @Override
+    public boolean isCanPump() {
+        return getTimePerClInMs() != null;
+    }
+
+    public SimulatedOutputPin getRunPin() {
+        if(runPin == null) {
+            runPin = new SimulatedOutputPin(clock, getName());
+        }
+        return runPin;
+    }
+
+    @Override
+    public double getDispensedGrams() {
+        return getConvertRuntimeToMl((int) getRunPin().getHighTimeInMs());
+    }
+}
@@ -0,0 +1,9 @@
+package net.alex9849.cocktailpi.service.pumps.simulation;
+
+/**
+ * A simulated pump that dispenses liquid onto the simulated load cell
+ */
+public interface SimulatedDispenser {
+
+    double getDispensedGrams();
+}
@@ -0,0 +1,47 @@
+package net.alex9849.cocktailpi.service.pumps.simulation;
+
+import net.alex9849.cocktailpi.service.pumps.clock.VirtualClock;
+import net.alex9849.motorlib.pin.IInputPin;
+import net.alex9849.motorlib.sensor.HX711;
+
+/**
+ * Returns the calibrated weight of the simulated load cell. Every conversion advances the clock by the sample period,
+ * like waiting for the data ready signal of the real chip.
+ */
+public class SimulatedHX711 extends HX711 {
+    private final VirtualClock clock;
+    private final SimulatedLoadCell loadCell;
+    private final long samplePeriodInMs;
+
+    public SimulatedHX711(VirtualClock clock, SimulatedLoadCell loadCell, long samplePeriodInMs) {
+        super(new IInputPin() {
+            @Override
+            public boolean isHigh() {
+                return false;
+            }
+        }, new SimulatedOutputPin(clock, "HX711 clock"), 128);
+        this.clock = clock;
+        this.loadCell = loadCell;
+        this.samplePeriodInMs = samplePeriodInMs;
+    }
+
+    @Override
+    public long read_once() throws InterruptedException {
+        clock.sleep(samplePeriodInMs);
+        return Math.round(loadCell.getWeightInGrams());
+    }
+
+    @Override
+    public long read() throws InterruptedException {
+        return read_once();
+    }
+
+    @Override
+    public long read(int times) throws InterruptedException {
+        long sum = 0;
+        for(int i = 0; i < Math.max(1, times); i++) {
+            sum += read_once();
+        }
+        return sum / Math.max(1, times);
+    }
+}
@@ -0,0 +1,57 @@
+package net.alex9849.cocktailpi.service.pumps.simulation;
+
+import net.alex9849.cocktailpi.model.LoadCell;
+import net.alex9849.cocktailpi.service.pumps.LoadCellSampler;
+import net.alex9849.cocktailpi.service.pumps.clock.VirtualClock;
+import net.alex9849.motorlib.sensor.HX711;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A load cell that weighs everything the registered dispensers have dispensed.
+ */
+public class SimulatedLoadCell extends LoadCell {
+    private final List<SimulatedDispenser> dispensers = new ArrayList<>();
+    private final SimulatedHX711 hx711;
+    private final LoadCellSampler sampler;
+
+    /**
+     * @param samplePeriodInMs the time a single conversion of the HX711 takes
+     */
+    public SimulatedLoadCell(VirtualClock clock, long samplePeriodInMs) {
+        this.hx711 = new SimulatedHX711(clock, this, samplePeriodInMs);
+        this.sampler = LoadCellSampler.sampleOnDemand(hx711, clock);
+    }
+
+    public void addDispenser(SimulatedDispenser dispenser) {
+        dispensers.add(dispenser);
+    }
+
+    public double getWeightInGrams() {
+        return dispensers.stream().mapToDouble(SimulatedDispenser::getDispensedGrams).sum();
+    }
+
+    @Override
+    public HX711 getHX711() {
+        return hx711;
+    }
+
+    /**
+     * Samples in virtual time on the thread of the consumer.
+     */
+    @Override
+    public LoadCellSampler getSampler() {
+        return sampler;
+    }
+
+    @Override
+    public boolean isCalibrateable() {
+        return true;
+    }
+
+    @Override
+    public boolean isCalibrated() {
+        return true;
+    }
+}
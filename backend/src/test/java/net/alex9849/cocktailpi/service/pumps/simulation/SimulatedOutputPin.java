@@ -0,0 +1,82 @@
+package net.alex9849.cocktailpi.service.pumps.simulation;
+
+import net.alex9849.cocktailpi.service.pumps.clock.VirtualClock;
+import net.alex9849.motorlib.pin.IOutputPin;
+import net.alex9849.motorlib.pin.PinState;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An output pin that writes its state changes to the trace of the clock and
+ * keeps track of the time it has been high.
+ */
+public class SimulatedOutputPin implements IOutputPin {
+    private final VirtualClock clock;
+    private final String name;
+    private boolean high;
+    private long highSince;
+    private long highTimeInMs;
+    private final List<long[]> highPhases = new ArrayList<>();
+
+    public SimulatedOutputPin(VirtualClock clock, String name) {
+        this.clock = clock;
+        this.name = name;
+    }
+
+    @Override
+    public void digitalWrite(PinState value) {
+        boolean high = value == PinState.HIGH;
+        if(this.high == high) {
+            return;
+        }
+        long now = clock.currentTimeMillis();
+        if(high) {
+            highSince = now;
+        } else {
+            highTimeInMs += now - highSince;
+            highPhases.add(new long[] {highSince, now});
+        }
+        this.high = high;
+        clock.trace(name + " " + value);
+    }
+
+    @Override
+    public boolean isHigh() {
+        return high;
+    }
+
+    @Override
+    public void digitalWriteAndWait(PinState state) {
+        digitalWrite(state);
+    }
+
+    @Override
+    public void setWaitAfterWriteTimeNs(long waitAfterWriteTimeNs) {
+        //Writes take no time
+    }
+
+    /**
+     * @return the total time in ms the pin has been high, including the current high phase
+     */
+    public long getHighTimeInMs() {
+        if(high) {
+            return highTimeInMs + clock.currentTimeMillis() - highSince;
+        }
+        return highTimeInMs;
+    }
+
+    /**
+     * @return the time in ms the pin has been high until the given point in time
+     */
+    public long getHighTimeInMs(long until) {
+        long highTime = 0;
+        for(long[] highPhase : highPhases) {
+            highTime += Math.max(0, Math.min(highPhase[1], until) - highPhase[0]);
+        }
+        if(high) {
+            highTime += Math.max(0, until - highSince);
+        }
+        return highTime;
+    }
+}
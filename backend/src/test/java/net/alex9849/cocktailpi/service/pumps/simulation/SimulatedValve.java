@@ -0,0 +1,84 @@
+package net.alex9849.cocktailpi.service.pumps.simulation;
+
+import net.alex9849.cocktailpi.model.LoadCell;
+import net.alex9849.cocktailpi.model.pump.Valve;
+import net.alex9849.cocktailpi.model.pump.ValveDriver;
+import net.alex9849.cocktailpi.service.pumps.clock.VirtualClock;
+import net.alex9849.motorlib.pin.PinState;
+
+/**
+ * A valve with a constant flow rate that dispenses onto the simulated load cell.
+ * The liquid arrives at the load cell after the in-flight delay, so it keeps arriving after the valve has been closed.
+ */
+public class SimulatedValve extends Valve implements SimulatedDispenser {
+    private final VirtualClock clock;
+    private final SimulatedLoadCell loadCell;
+    private final double flowInGramsPerSecond;
+    private final long inFlightDelayInMs;
+    private SimulatedOutputPin runPin;
+    private ValveDriver motorDriver;
+    private boolean failing;
+
+    public SimulatedValve(VirtualClock clock, SimulatedLoadCell loadCell, double flowInGramsPerSecond) {
+        this(clock, loadCell, flowInGramsPerSecond, 0);
+    }
+
+    public SimulatedValve(VirtualClock clock, SimulatedLoadCell loadCell, double flowInGramsPerSecond, long inFlightDelayInMs) {
+        this.clock = clock;
+        this.loadCell = loadCell;
+        this.flowInGramsPerSecond = flowInGramsPerSecond;
+        this.inFlightDelayInMs = inFlightDelayInMs;
+        setIsPowerStateHigh(true);
+    }
+
+    /**
+     * A failing valve can't be switched, like a valve whose port expander doesn't respond anymore.
+     */
+    public void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+
+    @Override
+    public ValveDriver getMotorDriver() {
+        if(failing) {
+            throw new IllegalStateException("Valve " + getName() + " doesn't respond!");
+        }
+        if (motorDriver == null) {
+            motorDriver = new ValveDriver(getRunPin(), PinState.HIGH);
+        }
+        return motorDriver;
+    }
+
+    @Override
+    public void shutdownDriver() {
+        if(this.motorDriver != null) {
+            this.motorDriver.shutdown();
+            this.motorDriver = null;
+        }
+    }
+
+    @Override
+    public boolean isCanPump() {
+        return true;
+    }
+
+    @Override
+    public LoadCell getLoadCell() {
+        return loadCell;
+    }
+
+    public SimulatedOutputPin getRunPin() {
+        if(runPin == null) {
+            runPin = new SimulatedOutputPin(clock, getName());
+        }
+        return runPin;
+    }
+
+    @Override
+    public double getDispensedGrams() {
+        if(inFlightDelayInMs == 0) {
+            return getRunPin().getHighTimeInMs() * flowInGramsPerSecond / 1000;
+        }
+        return getRunPin().getHighTimeInMs(clock.currentTimeMillis() - inFlightDelayInMs) * flowInGramsPerSecond / 1000;
+    }
+}
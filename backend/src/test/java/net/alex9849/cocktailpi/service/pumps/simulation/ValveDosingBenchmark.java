@@ -0,0 +1,126 @@
+package net.alex9849.cocktailpi.service.pumps.simulation;
+
+import net.alex9849.cocktailpi.model.pump.ValveDosingController;
+import net.alex9849.cocktailpi.model.pump.ValveDriver;
+import net.alex9849.cocktailpi.service.pumps.LoadCellSampler;
+import net.alex9849.cocktailpi.service.pumps.clock.VirtualClock;
+import net.alex9849.motorlib.sensor.HX711;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the predictive valve cut-off with the previous dosing loop in virtual time.
+ * The previous loop closes the valve once the goal has been read and reopens it until the settled weight
+ * reaches the goal. Every scenario doses the same sequence of goals. The predictive cut-off gets run with a fresh
+ * valve that first needs to learn its parameters and with a valve that has already dosed the sequence once.
+ * The learned parameters get persisted after every dose, so the learned valve corresponds to a valve in production
+ * that has already been used. The time of a dose lasts until all liquid has arrived at the load cell.
+ * Not part of the application. Run it with the main method.
+ */
+public class ValveDosingBenchmark {
+    private static final double[] FLOWS_IN_GRAMS_PER_SECOND = {10, 25, 50};
+    private static final long[] IN_FLIGHT_DELAYS_IN_MS = {0, 150, 400};
+    private static final long[] GOALS_IN_GRAMS = {20, 40, 60, 15, 30, 50, 25, 40, 10, 60};
+    private static final long HX711_SAMPLE_PERIOD_IN_MS = 12;
+
+    public static void main(String[] args) {
+        run().forEach(System.out::println);
+    }
+
+    public static List<Result> run() {
+        List<Result> results = new ArrayList<>();
+        for(double flow : FLOWS_IN_GRAMS_PER_SECOND) {
+            for(long delay : IN_FLIGHT_DELAYS_IN_MS) {
+                for(Controller controller : Controller.values()) {
+                    results.add(runScenario(controller, flow, delay));
+                }
+            }
+        }
+        return results;
+    }
+
+    private static Result runScenario(Controller controller, double flowInGramsPerSecond, long inFlightDelayInMs) {
+        VirtualClock clock = new VirtualClock();
+        SimulatedLoadCell loadCell = new SimulatedLoadCell(clock, HX711_SAMPLE_PERIOD_IN_MS);
+        SimulatedValve valve = new SimulatedValve(clock, loadCell, flowInGramsPerSecond, inFlightDelayInMs);
+        valve.setId(1L);
+        valve.setName("Valve");
+        loadCell.addDispenser(valve);
+        HX711 hx711 = loadCell.getHX711();
+        LoadCellSampler sampler = loadCell.getSampler();
+
+        long[] totalTimeInMs = {0};
+        double[] errors = new double[GOALS_IN_GRAMS.length];
+        clock.start(() -> {
+            try {
+                if(controller == Controller.PREDICTIVE_LEARNED) {
+                    for(long goal : GOALS_IN_GRAMS) {
+                        new ValveDosingController(valve, sampler, clock).dose(sampler.readGrams(7), goal, () -> false);
+                        awaitLoadCellStable(clock, loadCell);
+                    }
+                }
+                for(int i = 0; i < GOALS_IN_GRAMS.length; i++) {
+                    double weightBefore = loadCell.getWeightInGrams();
+                    long startTime = clock.currentTimeMillis();
+                    long startGrams = sampler.readGrams(7);
+                    if(controller == Controller.PREVIOUS) {
+                        doseLikeBefore(valve.getMotorDriver(), hx711, startGrams, GOALS_IN_GRAMS[i]);
+                    } else {
+                        new ValveDosingController(valve, sampler, clock).dose(startGrams, GOALS_IN_GRAMS[i], () -> false);
+                    }
+                    //The dose is done once all liquid has arrived in the glass
+                    awaitLoadCellStable(clock, loadCell);
+                    totalTimeInMs[0] += clock.currentTimeMillis() - startTime;
+                    errors[i] = loadCell.getWeightInGrams() - weightBefore - GOALS_IN_GRAMS[i];
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        clock.runUntilIdle();
+
+        double meanAbsError = 0;
+        double maxAbsError = 0;
+        for(double error : errors) {
+            meanAbsError += Math.abs(error) / errors.length;
+            maxAbsError = Math.max(maxAbsError, Math.abs(error));
+        }
+        return new Result(controller, flowInGramsPerSecond, inFlightDelayInMs,
+                GOALS_IN_GRAMS.length, totalTimeInMs[0], meanAbsError, maxAbsError);
+    }
+
+    private static void awaitLoadCellStable(VirtualClock clock, SimulatedLoadCell loadCell) throws InterruptedException {
+        double weight;
+        do {
+            weight = loadCell.getWeightInGrams();
+            clock.sleep(1);
+        } while (loadCell.getWeightInGrams() != weight);
+    }
+
+    private static void doseLikeBefore(ValveDriver driver, HX711 hx711, long startGrams, long goalGrams) throws InterruptedException {
+        long currentGrams = startGrams;
+        while (currentGrams < startGrams + goalGrams) {
+            driver.setOpen(true);
+            while (currentGrams < startGrams + goalGrams) {
+                currentGrams = hx711.read_once();
+            }
+            driver.setOpen(false);
+            currentGrams = hx711.read(7);
+        }
+    }
+
+    public enum Controller {
+        PREVIOUS, PREDICTIVE, PREDICTIVE_LEARNED
+    }
+
+    public record Result(Controller controller, double flowInGramsPerSecond, long inFlightDelayInMs, int doses,
+                         long totalTimeInMs, double meanAbsErrorInGrams, double maxAbsErrorInGrams) {
+
+        @Override
+        public String toString() {
+            return String.format("%-18s flow=%4.0fg/s delay=%3dms doses=%d time=%6dms meanAbsError=%5.2fg maxAbsError=%5.2fg",
+                    controller, flowInGramsPerSecond, inFlightDelayInMs, doses, totalTimeInMs, meanAbsErrorInGrams, maxAbsErrorInGrams);
+        }
+    }
+}
@@ -330,6 +330,10 @@ export default {
           abort_btn_label: 'Afbryd'
         }
       },
+      queue: {
+        headline: 'Kø',
+        glass_swap_confirmation_label: 'Bekræft glasskift før den næste bestilling starter'
+      },
       default_filter: {
         headline: 'Standardfilter',
         enable_btn_label: 'Aktivér standardfilter',
@@ -633,7 +637,8 @@ export default {
     make_cocktail_occupied: {
       fulfilled_msg: 'Maskinen er klar!',
       occupied_cocktail_msg: 'Maskinen er optaget! En cocktail bliver tilberedt i øjeblikket!',
-      occupied_pumps_msg: 'Maskinen optaget! En eller flere pumper bliver rengjort/primet i øjeblikket!'
+      occupied_pumps_msg: 'Maskinen optaget! En eller flere pumper bliver rengjort/primet i øjeblikket!',
+      queued_msg: 'Din bestilling sættes i kø og tilberedes, så snart maskinen er ledig.'
     },
     make_cocktail_insufficient_ingredients: {
       fulfilled_msg: 'Følgende ingredienser vil blive forbrugt:',
@@ -960,6 +965,17 @@ export default {
         }
       }
     },
+    cocktail_queue: {
+      headline: 'Kø',
+      empty_msg: 'Ingen bestillinger venter.',
+      other_order_label: 'Bestilling fra en anden bruger',
+      estimated_start_label: 'Forventet start: {time}',
+      glass_swap_msg: 'Tag venligst den færdige cocktail og stil et tomt glas frem. Den næste bestilling starter, når du har bekræftet det.',
+      confirm_glass_swap_btn_label: 'Glas stillet frem',
+      confirm_glass_swap_station_btn_label: 'Glas stillet frem ved station {nr}',
+      queued_msg: 'Din bestilling er sat i kø på plads {position}!',
+      dropped_msg: 'Din bestilling "{name}" er fjernet fra køen: {reason}'
+    },
     circular_cocktail_progress: {
       headline: 'Nuværende fremstillet cocktail',
       no_cocktail_msg: 'I øjeblikket bliver der ikke fremstillet nogen cocktail!<br>' +
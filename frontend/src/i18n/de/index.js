@@ -356,6 +356,10 @@ export default {
           abort_btn_label: 'Abbrechen'
         }
       },
+      queue: {
+        headline: 'Warteschlange',
+        glass_swap_confirmation_label: 'Glaswechsel vor dem Start der nächsten Bestellung bestätigen'
+      },
       default_filter: {
         headline: 'Standardfilter',
         enable_btn_label: 'Standardfilter aktivieren',
@@ -706,7 +710,8 @@ export default {
     make_cocktail_occupied: {
       fulfilled_msg: 'Maschine ist nicht belegt!',
       occupied_cocktail_msg: 'Maschine belegt! Ein Cocktail wird gerade zubereitet!',
-      occupied_pumps_msg: 'Maschine belegt! Eine oder mehrere Pumpen werden gerade gereinigt/angepumpt!'
+      occupied_pumps_msg: 'Maschine belegt! Eine oder mehrere Pumpen werden gerade gereinigt/angepumpt!',
+      queued_msg: 'Ihre Bestellung wird in die Warteschlange gestellt und zubereitet, sobald die Maschine frei ist.'
     },
     make_cocktail_insufficient_ingredients: {
       fulfilled_msg: 'Die folgenden Zutaten werden verbraucht:',
@@ -1039,6 +1044,17 @@ export default {
         }
       }
     },
+    cocktail_queue: {
+      headline: 'Warteschlange',
+      empty_msg: 'Es warten keine Bestellungen.',
+      other_order_label: 'Bestellung eines anderen Benutzers',
+      estimated_start_label: 'Voraussichtlicher Start: {time}',
+      glass_swap_msg: 'Bitte nehmen Sie den fertigen Cocktail und stellen Sie ein leeres Glas bereit. Die nächste Bestellung startet, sobald Sie dies bestätigt haben.',
+      confirm_glass_swap_btn_label: 'Glas bereitgestellt',
+      confirm_glass_swap_station_btn_label: 'Glas an Station {nr} bereitgestellt',
+      queued_msg: 'Ihre Bestellung wurde an Position {position} in die Warteschlange gestellt!',
+      dropped_msg: "Ihre Bestellung '{name}' wurde aus der Warteschlange entfernt: {reason}"
+    },
     circular_cocktail_progress: {
       headline: 'Derzeit hergestellter Cocktail',
       no_cocktail_msg: 'Derzeit wird kein Cocktail hergestellt!<br>' +
@@ -361,6 +361,10 @@ export default {
           abort_btn_label: 'Abort'
         }
       },
+      queue: {
+        headline: 'Queue',
+        glass_swap_confirmation_label: 'Confirm the glass swap before the next order starts'
+      },
       default_filter: {
         headline: 'Default filter',
         enable_btn_label: 'Enable default filter',
@@ -764,7 +768,8 @@ export default {
     make_cocktail_occupied: {
       fulfilled_msg: 'Machine is not occupied!',
       occupied_cocktail_msg: 'Machine occupied! A cocktail ist getting prepared currently!',
-      occupied_pumps_msg: 'Machine occupied! One or more pumps are getting cleaned/pumping up currently!'
+      occupied_pumps_msg: 'Machine occupied! One or more pumps are getting cleaned/pumping up currently!',
+      queued_msg: 'Your order will be queued and produced as soon as the machine is free.'
     },
     make_cocktail_insufficient_ingredients: {
       fulfilled_msg: 'The following ingredients will be consumed:',
@@ -1119,6 +1124,17 @@ export default {
         }
       }
     },
+    cocktail_queue: {
+      headline: 'Queue',
+      empty_msg: 'No orders are waiting.',
+      other_order_label: 'Order of another user',
+      estimated_start_label: 'Estimated start: {time}',
+      glass_swap_msg: 'Please take the finished cocktail and place an empty glass. The next order starts after you confirmed it.',
+      confirm_glass_swap_btn_label: 'Glass placed',
+      confirm_glass_swap_station_btn_label: 'Glass placed at station {nr}',
+      queued_msg: 'Your order has been queued at position {position}!',
+      dropped_msg: 'Your order "{name}" has been removed from the queue: {reason}'
+    },
     circular_cocktail_progress: {
       headline: 'Currently fabricated cocktail',
       no_cocktail_msg: 'Currently, no cocktail gets fabricated!<br>' +
@@ -1,15 +1,19 @@
 import axios from 'axios'
 import JsUtils from 'src/services/JsUtils'
+import Querystring from 'querystring'
 
 const API_PATH = 'api/cocktail/'
 
 class CocktailService {
-  order (recipeId, orderConfig, isIngredient = false) {
+  order (recipeId, orderConfig, isIngredient = false, priority, stationId) {
     let params = {
-      isIngredient
+      isIngredient,
+      priority,
+      stationId
     }
     params = JsUtils.cleanObject(params)
     return axios.put(API_PATH + String(recipeId), orderConfig, { params })
+      .then(response => response.data)
   }
 
   checkFeasibility (recipeId, orderConfig, isIngredient = false) {
@@ -21,6 +25,21 @@ class CocktailService {
       .then(response => response.data)
   }
 
+  getAvailability (recipeIds, collectionId, stationId) {
+    let params = {
+      recipeIds,
+      collectionId,
+      stationId
+    }
+    params = JsUtils.cleanObject(params)
+    const config = {
+      params,
+      paramsSerializer: (params) => Querystring.stringify(params)
+    }
+    return axios.get(API_PATH + 'availability', config)
+      .then(response => response.data)
+  }
+
   cancelCocktail () {
     return axios.delete(API_PATH)
   }
@@ -28,6 +47,40 @@ class CocktailService {
   continueProduction () {
     return axios.post(API_PATH + 'continueproduction')
   }
+
+  getQueue () {
+    return axios.get(API_PATH + 'queue')
+      .then(response => response.data)
+  }
+
+  cancelQueuedOrder (orderId) {
+    return axios.delete(API_PATH + 'queue/' + String(orderId))
+  }
+
+  setQueuedOrderPriority (orderId, priority) {
+    return axios.put(API_PATH + 'queue/' + String(orderId) + '/priority', priority, {
+      headers: { 'Content-Type': 'application/json' }
+    })
+  }
+
+  confirmGlassSwapped (stationId) {
+    let params = {
+      stationId
+    }
+    params = JsUtils.cleanObject(params)
+    return axios.post(API_PATH + 'queue/glassswapped', null, { params })
+  }
+
+  getGlassSwapConfirmation () {
+    return axios.get(API_PATH + 'queue/glassswapconfirmation')
+      .then(response => response.data)
+  }
+
+  setGlassSwapConfirmation (enable) {
+    return axios.put(API_PATH + 'queue/glassswapconfirmation', enable, {
+      headers: { 'Content-Type': 'application/json' }
+    })
+  }
 }
 
 export default new CocktailService()
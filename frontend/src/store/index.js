@@ -1,6 +1,7 @@
 import { createStore } from 'vuex'
 import auth from './modules/auth/index'
 import cocktailProgress from './modules/cocktailprogress/index'
+import cocktailQueue from './modules/cocktailqueue/index'
 import pumpLayout from './modules/pumplayout/index'
 import category from './modules/category/index'
 import websocket from './modules/websocket/index'
@@ -12,6 +13,7 @@ const store = createStore({
   modules: {
     auth,
     cocktailProgress,
+    cocktailQueue,
     pumpLayout,
     category,
     websocket,
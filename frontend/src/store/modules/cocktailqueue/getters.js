@@ -0,0 +1,3 @@
+export const getOrders = state => state.queue.orders
+export const isAwaitingGlassSwap = state => state.queue.awaitingGlassSwap
+export const getStationsAwaitingGlassSwap = state => state.queue.stationsAwaitingGlassSwap
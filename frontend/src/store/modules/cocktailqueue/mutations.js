@@ -0,0 +1,3 @@
+export const setQueue = (state, payload) => {
+  state.queue = payload
+}
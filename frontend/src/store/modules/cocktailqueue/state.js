@@ -0,0 +1,9 @@
+export default function () {
+  return {
+    queue: {
+      awaitingGlassSwap: false,
+      stationsAwaitingGlassSwap: [],
+      orders: []
+    }
+  }
+}